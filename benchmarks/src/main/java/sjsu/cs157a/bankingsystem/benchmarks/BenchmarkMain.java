@@ -0,0 +1,48 @@
+package sjsu.cs157a.bankingsystem.benchmarks;
+
+import java.io.File;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import sjsu.cs157a.bankingsystem.Config;
+
+/**
+ * Runs the benchmarks once single-threaded and once with one thread per pooled connection, writing each run's results
+ * as JSON into the results directory so that builds can be compared.
+ * Run from the project root so that config.json is found, e.g.
+ * java -jar benchmarks/target/benchmarks.jar [JMH options such as -p users=10000 or a benchmark name regex]
+ * For example, -Dbench.threads=1 with the regex PasswordBenchmark measures logins per second per core.
+ * The thread counts can be overridden with -Dbench.threads=1,4,16.
+ */
+public class BenchmarkMain {
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		String threads = System.getProperty("bench.threads", "1," + Config.getInt("poolMaxSize", 10));
+		File results = new File(System.getProperty("bench.results", "benchmarks/results"));
+		results.mkdirs();
+		for (String count : threads.split(",")) {
+			int t = Integer.parseInt(count.trim());
+			OptionsBuilder builder = new OptionsBuilder();
+			// Benchmarks named on the command line are inherited from the parent options, and name the results file.
+			String name = "database";
+			if (commandLine.getIncludes().isEmpty()) {
+				builder.include(DatabaseBenchmark.class.getSimpleName());
+			} else {
+				name = commandLine.getIncludes().get(0).replaceAll("\\W", "").toLowerCase();
+			}
+			Options options = builder
+					.parent(commandLine)
+					.threads(t)
+					.resultFormat(ResultFormatType.JSON)
+					.result(new File(results, name + "-" + t + "t.json").getPath())
+					.build();
+			new Runner(options).run();
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package sjsu.cs157a.bankingsystem.benchmarks;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sjsu.cs157a.bankingsystem.Credentials;
+import sjsu.cs157a.bankingsystem.Database;
+import sjsu.cs157a.bankingsystem.SQLConnector;
+import sjsu.cs157a.bankingsystem.Transaction;
+import sjsu.cs157a.bankingsystem.TransactionPage;
+
+/**
+ * Benchmarks of the Database operations behind the console menus, against the local MySQL server in config.json.
+ * Each thread borrows one pooled connection for the whole trial and picks a random seeded user per call, so the
+ * multi-threaded runs measure contention on the pool and on the database rather than on a single account.
+ * Run through BenchmarkMain, or directly with the JMH command line, e.g. -t 8 -p users=10000.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DatabaseBenchmark {
+	@Param("1000")
+	public int users;
+
+	@Param("20")
+	public int transactionsPerAccount;
+
+	private Dataset dataset;
+
+	@Setup(Level.Trial)
+	public void seed() throws SQLException {
+		dataset = Dataset.seed(users, transactionsPerAccount);
+	}
+
+	/**
+	 * A connection held by one benchmark thread for the whole trial.
+	 */
+	@State(Scope.Thread)
+	public static class Session {
+		Connection conn;
+
+		@Setup(Level.Trial)
+		public void borrow() throws SQLException {
+			conn = SQLConnector.getInstance().getConnection();
+			if (conn == null) {
+				throw new SQLException("No connection to local MySQL server.");
+			}
+		}
+
+		@TearDown(Level.Trial)
+		public void release() throws SQLException {
+			conn.close();
+		}
+	}
+
+	private int randomUser() {
+		return ThreadLocalRandom.current().nextInt(dataset.size());
+	}
+
+	@Benchmark
+	public Credentials getUserCredentials(Session session) {
+		return Database.getUserCredentials(session.conn, dataset.getEmail(randomUser()));
+	}
+
+	@Benchmark
+	public long getBankAccountBalance(Session session) {
+		return Database.getBankAccountBalance(session.conn, Dataset.BENCH_BANK, Dataset.ACC_TYPE, dataset.getUserID(randomUser()));
+	}
+
+	@Benchmark
+	public long calculateNetWorth(Session session) {
+		return Database.calculateNetWorth(session.conn, dataset.getUserID(randomUser()));
+	}
+
+	@Benchmark
+	public long deposit(Session session) {
+		long userID = dataset.getUserID(randomUser());
+		Database.deposit(session.conn, userID, Dataset.BENCH_BANK, Dataset.ACC_TYPE, "Deposit", 1);
+		return userID;
+	}
+
+	@Benchmark
+	public List<Transaction> getRecentTransactions(Session session) {
+		return Database.getRecentTransactions(session.conn, dataset.getUserID(randomUser()), Dataset.BENCH_BANK, Dataset.ACC_TYPE);
+	}
+
+	@Benchmark
+	public TransactionPage getTransactionPage(Session session) {
+		return Database.getTransactionPage(session.conn, dataset.getUserID(randomUser()), Dataset.BENCH_BANK, Dataset.ACC_TYPE, 20, null);
+	}
+}
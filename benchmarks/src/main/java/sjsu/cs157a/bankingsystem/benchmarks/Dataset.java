@@ -0,0 +1,100 @@
+package sjsu.cs157a.bankingsystem.benchmarks;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import sjsu.cs157a.bankingsystem.Account;
+import sjsu.cs157a.bankingsystem.Bank;
+import sjsu.cs157a.bankingsystem.BatchResult;
+import sjsu.cs157a.bankingsystem.Credentials;
+import sjsu.cs157a.bankingsystem.Database;
+import sjsu.cs157a.bankingsystem.PasswordHasher;
+import sjsu.cs157a.bankingsystem.Posting;
+import sjsu.cs157a.bankingsystem.SQLConnector;
+
+/**
+ * A synthetic set of users seeded into the local bank_system database for benchmarking.
+ * Every user is named bench-N@example.com, shares one password (and, to keep seeding cheap, one salted hash of it), and holds a Checking account at BENCH_BANK with a seeded
+ * transaction history, plus an empty Loans account. Seeding is idempotent: users and accounts left by an earlier run are reused, so only the first run
+ * against a given size pays for the inserts.
+ */
+public class Dataset {
+	public static final String BENCH_BANK = "BENCHMARK BANK";
+	public static final String ACC_TYPE = "Checking";
+	public static final String LOAN_ACC_TYPE = "Loans";
+	public static final String PASSWORD = "benchmark-password";
+
+	private final long[] userIDs;
+	private final String[] emails;
+	private final byte[] passwordHash;
+
+	private Dataset(long[] userIDs, String[] emails, byte[] passwordHash) {
+		this.userIDs = userIDs;
+		this.emails = emails;
+		this.passwordHash = passwordHash;
+	}
+
+	/**
+	 * Seeds the dataset, creating whatever an earlier run did not.
+	 * @param users The number of users.
+	 * @param transactionsPerAccount The number of deposits seeded into each new account.
+	 * @return Returns the seeded dataset.
+	 * @throws SQLException Thrown if no connection could be borrowed or a user could not be created.
+	 */
+	public static Dataset seed(int users, int transactionsPerAccount) throws SQLException {
+		byte[] passwordHash = PasswordHasher.getInstance().hash(PASSWORD);
+		long[] userIDs = new long[users];
+		String[] emails = new String[users];
+		try (Connection conn = SQLConnector.getInstance().getConnection()) {
+			if (conn == null) {
+				throw new SQLException("No connection to local MySQL server.");
+			}
+			if (Bank.findBank(conn, BENCH_BANK) == null) {
+				Bank.createBank(conn, BENCH_BANK);
+			}
+			List<Posting> postings = new ArrayList<Posting>();
+			for (int i = 0; i < users; i++) {
+				emails[i] = "bench-" + i + "@example.com";
+				long userID = Database.createUser(conn, "Bench", "User" + i, emails[i], passwordHash);
+				if (userID == -2) {
+					Credentials credentials = Database.getUserCredentials(conn, emails[i]);
+					userID = credentials == null ? -1 : credentials.getUserID();
+				}
+				if (userID < 0) {
+					throw new SQLException("Could not create or find benchmark user " + emails[i]);
+				}
+				userIDs[i] = userID;
+				if (Account.getAllUserBankAccountsAtBank(conn, BENCH_BANK, userID).isEmpty()) {
+					Account.createBankAccount(conn, BENCH_BANK, ACC_TYPE, userID);
+					Account.createBankAccount(conn, BENCH_BANK, LOAN_ACC_TYPE, userID);
+					for (int t = 0; t < transactionsPerAccount; t++) {
+						postings.add(new Posting(userID, BENCH_BANK, ACC_TYPE, Posting.DEPOSIT, 100 + t));
+					}
+				}
+			}
+			if (!postings.isEmpty()) {
+				BatchResult result = Database.postBatch(conn, postings, 500, 5000);
+				System.out.println("Seeded " + result);
+			}
+		}
+		return new Dataset(userIDs, emails, passwordHash);
+	}
+
+	public int size() {
+		return userIDs.length;
+	}
+
+	public long getUserID(int index) {
+		return userIDs[index];
+	}
+
+	public String getEmail(int index) {
+		return emails[index];
+	}
+
+	public byte[] getPasswordHash() {
+		return passwordHash;
+	}
+}
@@ -0,0 +1,276 @@
+package sjsu.cs157a.bankingsystem.benchmarks;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import sjsu.cs157a.bankingsystem.Account;
+import sjsu.cs157a.bankingsystem.Bank;
+import sjsu.cs157a.bankingsystem.Loan;
+import sjsu.cs157a.bankingsystem.SQLConnector;
+import sjsu.cs157a.bankingsystem.Transaction;
+import sjsu.cs157a.bankingsystem.User;
+
+/**
+ * A headless workload driver that replays console sessions from many virtual users at once, for capacity planning.
+ * Each virtual user logs in as a random seeded user, performs load.sessionSteps operations drawn from the configured mix
+ * with an exponentially distributed think time between them, then starts a new session. Like the console, every
+ * operation borrows a pooled connection and returns it, so pool waits count towards latency.
+ * At the end it prints throughput, errors and p50/p99/p99.9/max latency per operation. Settings are system properties:
+ * <ul>
+ * <li>load.users: virtual users, each on its own thread (default 50).</li>
+ * <li>load.durationSeconds: how long to measure, after load.warmupSeconds of unrecorded warmup (default 60 and 10).</li>
+ * <li>load.thinkMillis: mean think time between operations (default 100).</li>
+ * <li>load.sessionSteps: operations per session after login (default 20).</li>
+ * <li>load.mix: relative weights of the session operations (default banks:15,accounts:15,deposit:25,withdraw:10,history:25,loan:10).</li>
+ * <li>load.seedUsers and load.transactionsPerAccount: the size of the seeded dataset (default 1000 and 20).</li>
+ * </ul>
+ * Run from the project root so that config.json is found, e.g.
+ * java -Dload.users=200 -cp benchmarks/target/benchmarks.jar sjsu.cs157a.bankingsystem.benchmarks.LoadGenerator
+ */
+public class LoadGenerator {
+	static final String LOGIN = "login";
+	static final String BANKS = "banks";
+	static final String ACCOUNTS = "accounts";
+	static final String DEPOSIT = "deposit";
+	static final String WITHDRAW = "withdraw";
+	static final String HISTORY = "history";
+	static final String LOAN = "loan";
+
+	// Latencies are recorded in microseconds, up to one minute, to three significant digits.
+	private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+	private final Dataset dataset;
+	private final int sessionSteps;
+	private final long thinkMillis;
+	private final String[] mixOperations;
+	private final int[] mixCumulativeWeights;
+	private final Map<String, Recorder> recorders = new LinkedHashMap<String, Recorder>();
+	private final Map<String, AtomicLong> errors = new LinkedHashMap<String, AtomicLong>();
+	private volatile boolean recording;
+	private volatile boolean running = true;
+
+	LoadGenerator(Dataset dataset, int sessionSteps, long thinkMillis, String mix) {
+		this.dataset = dataset;
+		this.sessionSteps = sessionSteps;
+		this.thinkMillis = thinkMillis;
+		String[] entries = mix.split(",");
+		mixOperations = new String[entries.length];
+		mixCumulativeWeights = new int[entries.length];
+		int total = 0;
+		for (int i = 0; i < entries.length; i++) {
+			String[] entry = entries[i].trim().split(":");
+			mixOperations[i] = entry[0].trim();
+			total += Integer.parseInt(entry[1].trim());
+			mixCumulativeWeights[i] = total;
+		}
+		for (String operation : new String[] { LOGIN, BANKS, ACCOUNTS, DEPOSIT, WITHDRAW, HISTORY, LOAN }) {
+			recorders.put(operation, new Recorder(MAX_LATENCY_MICROS, 3));
+			errors.put(operation, new AtomicLong());
+		}
+		for (String operation : mixOperations) {
+			if (!recorders.containsKey(operation)) {
+				throw new IllegalArgumentException("Unknown operation in load.mix: " + operation);
+			}
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int users = Integer.getInteger("load.users", 50);
+		long warmupSeconds = Long.getLong("load.warmupSeconds", 10);
+		long durationSeconds = Long.getLong("load.durationSeconds", 60);
+		Dataset dataset = Dataset.seed(Integer.getInteger("load.seedUsers", 1000), Integer.getInteger("load.transactionsPerAccount", 20));
+		final LoadGenerator generator = new LoadGenerator(dataset,
+				Integer.getInteger("load.sessionSteps", 20),
+				Long.getLong("load.thinkMillis", 100),
+				System.getProperty("load.mix", "banks:15,accounts:15,deposit:25,withdraw:10,history:25,loan:10"));
+
+		ExecutorService virtualUsers = Executors.newFixedThreadPool(users);
+		for (int i = 0; i < users; i++) {
+			virtualUsers.execute(new Runnable() {
+				@Override
+				public void run() {
+					generator.runVirtualUser();
+				}
+			});
+		}
+		System.out.println("Warming up " + users + " virtual users for " + warmupSeconds + "s.");
+		TimeUnit.SECONDS.sleep(warmupSeconds);
+		generator.startRecording();
+		System.out.println("Measuring for " + durationSeconds + "s.");
+		long start = System.nanoTime();
+		TimeUnit.SECONDS.sleep(durationSeconds);
+		Map<String, Histogram> histograms = generator.stopRecording();
+		double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+		generator.running = false;
+		virtualUsers.shutdown();
+		virtualUsers.awaitTermination(1, TimeUnit.MINUTES);
+
+		System.out.println(report(histograms, generator.errors, elapsedSeconds, users));
+		System.out.println(SQLConnector.getInstance().getPoolStats());
+		SQLConnector.getInstance().shutdown();
+	}
+
+	/**
+	 * Runs sessions back to back until the generator is stopped.
+	 */
+	void runVirtualUser() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		while (running) {
+			int index = random.nextInt(dataset.size());
+			if (!perform(LOGIN, index)) {
+				think(random);
+				continue;
+			}
+			for (int step = 0; step < sessionSteps && running; step++) {
+				think(random);
+				perform(pickOperation(random), index);
+			}
+			think(random);
+		}
+	}
+
+	private String pickOperation(ThreadLocalRandom random) {
+		int roll = random.nextInt(mixCumulativeWeights[mixCumulativeWeights.length - 1]);
+		for (int i = 0; i < mixCumulativeWeights.length; i++) {
+			if (roll < mixCumulativeWeights[i]) {
+				return mixOperations[i];
+			}
+		}
+		return mixOperations[mixOperations.length - 1];
+	}
+
+	private void think(ThreadLocalRandom random) {
+		if (thinkMillis <= 0) {
+			return;
+		}
+		// Exponentially distributed, as for independent users.
+		long pause = (long) (-Math.log(1 - random.nextDouble()) * thinkMillis);
+		try {
+			Thread.sleep(pause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			running = false;
+		}
+	}
+
+	/**
+	 * Performs and times one operation for the seeded user at the given index, on a freshly borrowed connection.
+	 * @return Returns true if the operation succeeded.
+	 */
+	boolean perform(String operation, int index) {
+		long userID = dataset.getUserID(index);
+		long start = System.nanoTime();
+		boolean ok;
+		try (Connection conn = SQLConnector.getInstance().getConnection()) {
+			if (conn == null) {
+				ok = false;
+			} else {
+				ok = execute(conn, operation, index, userID);
+			}
+		} catch (SQLException e) {
+			ok = false;
+		} catch (RuntimeException e) {
+			ok = false;
+		}
+		long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+		if (recording) {
+			recorders.get(operation).recordValue(Math.min(micros, MAX_LATENCY_MICROS));
+			if (!ok) {
+				errors.get(operation).incrementAndGet();
+			}
+		}
+		return ok;
+	}
+
+	private boolean execute(Connection conn, String operation, int index, long userID) {
+		switch (operation) {
+		case LOGIN:
+			return User.login(conn, dataset.getEmail(index), Dataset.PASSWORD) == userID;
+		case BANKS:
+			return !Bank.getAllBanks(conn).isEmpty();
+		case ACCOUNTS:
+			return !Account.getAllUserBankAccountsAtBank(conn, Dataset.BENCH_BANK, userID).isEmpty();
+		case DEPOSIT:
+			return Transaction.deposit(conn, userID, Dataset.BENCH_BANK, Dataset.ACC_TYPE, "Deposit", 100);
+		case WITHDRAW:
+			// Deposits outweigh withdrawals in the default mix, so a refused overdraft is rare and counted as an error.
+			return Transaction.withdraw(conn, userID, Dataset.BENCH_BANK, Dataset.ACC_TYPE, "Withdraw", 100);
+		case HISTORY:
+			return Transaction.getRecentTransactions(conn, userID, Dataset.BENCH_BANK, Dataset.ACC_TYPE) != null;
+		case LOAN:
+			// As in the console: view the current loans, then take out another.
+			if (Loan.getLoans(conn, userID) == null) {
+				return false;
+			}
+			return Loan.createLoan(conn, userID, Dataset.BENCH_BANK, 100);
+		default:
+			throw new IllegalArgumentException(operation);
+		}
+	}
+
+	private void startRecording() {
+		for (Recorder recorder : recorders.values()) {
+			// Discard anything recorded before the measurement window.
+			recorder.reset();
+		}
+		for (AtomicLong count : errors.values()) {
+			count.set(0);
+		}
+		recording = true;
+	}
+
+	private Map<String, Histogram> stopRecording() {
+		recording = false;
+		Map<String, Histogram> histograms = new LinkedHashMap<String, Histogram>();
+		for (Map.Entry<String, Recorder> entry : recorders.entrySet()) {
+			histograms.put(entry.getKey(), entry.getValue().getIntervalHistogram());
+		}
+		return histograms;
+	}
+
+	/**
+	 * Formats one line per operation, plus a total, with latencies in milliseconds.
+	 */
+	static String report(Map<String, Histogram> histograms, Map<String, AtomicLong> errors, double elapsedSeconds, int users) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%d virtual users, %.1fs measured%n", users, elapsedSeconds));
+		sb.append(String.format("%-10s %10s %10s %8s %9s %9s %9s %9s%n", "operation", "count", "ops/s", "errors", "p50 ms", "p99 ms", "p99.9 ms", "max ms"));
+		Histogram total = new Histogram(MAX_LATENCY_MICROS, 3);
+		long totalErrors = 0;
+		List<String> lines = new ArrayList<String>();
+		for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+			Histogram histogram = entry.getValue();
+			if (histogram.getTotalCount() == 0) {
+				continue;
+			}
+			long errorCount = errors.get(entry.getKey()).get();
+			total.add(histogram);
+			totalErrors += errorCount;
+			lines.add(line(entry.getKey(), histogram, errorCount, elapsedSeconds));
+		}
+		for (String line : lines) {
+			sb.append(line);
+		}
+		sb.append(line("total", total, totalErrors, elapsedSeconds));
+		return sb.toString();
+	}
+
+	private static String line(String operation, Histogram histogram, long errorCount, double elapsedSeconds) {
+		return String.format("%-10s %10d %10.1f %8d %9.2f %9.2f %9.2f %9.2f%n", operation, histogram.getTotalCount(),
+				histogram.getTotalCount() / elapsedSeconds, errorCount,
+				histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(99) / 1000.0,
+				histogram.getValueAtPercentile(99.9) / 1000.0, histogram.getMaxValue() / 1000.0);
+	}
+}
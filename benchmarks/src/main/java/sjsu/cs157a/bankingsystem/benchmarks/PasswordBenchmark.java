@@ -0,0 +1,53 @@
+package sjsu.cs157a.bankingsystem.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sjsu.cs157a.bankingsystem.PasswordHasher;
+
+/**
+ * Benchmarks of password hashing and verification at the cost configured in config.json (passwordMemoryKiB,
+ * passwordIterations, passwordParallelism), without the database. Each verify is the CPU cost of one login, so the
+ * single-threaded throughput of verify is the number of logins per second one core can sustain; with more threads it
+ * shows how far memory bandwidth lets that scale. Use it to choose the cost: high enough to slow offline guessing,
+ * low enough that passwordVerifyThreads cores cover the expected login rate.
+ * Run through BenchmarkMain from the project root, e.g.
+ * java -Dbench.threads=1,4 -jar benchmarks/target/benchmarks.jar PasswordBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PasswordBenchmark {
+	private PasswordHasher hasher;
+	private byte[] stored;
+
+	@Setup(Level.Trial)
+	public void hashPassword() {
+		hasher = PasswordHasher.getInstance();
+		stored = hasher.hash(Dataset.PASSWORD);
+	}
+
+	@Benchmark
+	public boolean verify() {
+		return hasher.verify(Dataset.PASSWORD, stored);
+	}
+
+	@Benchmark
+	public byte[] hash() {
+		return hasher.hash(Dataset.PASSWORD);
+	}
+}
@@ -0,0 +1,35 @@
+/*
+ * Migration 10: write-behind checkpoints.
+ * Run against an existing bank_system database with the mysql client, e.g. mysql -u root bank_system < V10__write_behind.sql
+ *
+ * In write-behind mode postings are acknowledged once they are in a local log, and flushed into Transactions by a
+ * background writer. WriteBehindCheckpoints records how far each writer's log has been flushed, in the same transaction
+ * as the rows, so a writer restarting after a crash neither skips nor repeats a posting.
+ */
+USE bank_system;
+
+/* How far each write-behind log has been flushed into Transactions: every posting up to flushedSeq is in the table.
+   Updated in the same transaction as the rows it covers, so a writer restarting after a crash resumes exactly there. */
+CREATE TABLE WriteBehindCheckpoints (
+    writer VARCHAR(64),
+	flushedSeq BIGINT UNSIGNED,
+	updatedAt TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+	PRIMARY KEY(writer)
+);
+
+DROP PROCEDURE IF EXISTS GetWriteBehindCheckpoint;
+DROP PROCEDURE IF EXISTS SetWriteBehindCheckpoint;
+
+DELIMITER $$
+CREATE PROCEDURE GetWriteBehindCheckpoint (writer VARCHAR(64), OUT flushedSeq BIGINT UNSIGNED)
+BEGIN
+    SELECT COALESCE(MAX(w.flushedSeq), 0) INTO flushedSeq FROM WriteBehindCheckpoints w WHERE w.writer = writer;
+END$$
+CREATE PROCEDURE SetWriteBehindCheckpoint (writer VARCHAR(64), flushedSeq BIGINT UNSIGNED)
+BEGIN
+    INSERT INTO WriteBehindCheckpoints(writer, flushedSeq) VALUES(writer, flushedSeq)
+    ON DUPLICATE KEY UPDATE flushedSeq = VALUES(flushedSeq);
+END$$
+DELIMITER ;
+
+INSERT INTO SchemaVersion(version, description) VALUES(10, 'Write-behind checkpoints');
@@ -0,0 +1,36 @@
+/*
+ * Migration 11: salted password hashes, verified by email.
+ * Run against an existing bank_system database with the mysql client, e.g. mysql -u root bank_system < V11__salted_passwords.sql
+ *
+ * Passwords were stored as an unsalted SHA-256 and matched by GetUserID on email AND pw. They are now Argon2id PHC
+ * strings of up to 128 bytes, each with its own salt and cost, so the hash can no longer be matched in SQL: login looks
+ * the user up by the unique index on email and verifies the hash in Java. Existing SHA-256 hashes are kept as they are
+ * and replaced through UpdatePassword the next time each user logs in.
+ */
+USE bank_system;
+
+ALTER TABLE Users MODIFY pw VARBINARY(128);
+ALTER TABLE ArchivedUsers MODIFY pw VARBINARY(128);
+
+DROP PROCEDURE IF EXISTS CreateUser;
+DROP PROCEDURE IF EXISTS GetUserID;
+DROP PROCEDURE IF EXISTS GetUserCredentials;
+DROP PROCEDURE IF EXISTS UpdatePassword;
+
+DELIMITER $$
+CREATE PROCEDURE CreateUser (firstName VARCHAR(36), lastName VARCHAR(36), email VARCHAR(256), pw VARBINARY(128))
+BEGIN
+    INSERT INTO Users(firstName, lastName, email, pw) VALUES(firstName, lastName, email, pw);
+END$$
+/* Looks a user up by the unique index on email alone; the password hash is verified in Java. */
+CREATE PROCEDURE GetUserCredentials (email VARCHAR(256))
+BEGIN
+    SELECT Users.userID, Users.pw FROM Users WHERE Users.email=email;
+END$$
+CREATE PROCEDURE UpdatePassword (userID BIGINT UNSIGNED, pw VARBINARY(128))
+BEGIN
+    UPDATE Users SET Users.pw = pw WHERE Users.userID = userID;
+END$$
+DELIMITER ;
+
+INSERT INTO SchemaVersion(version, description) VALUES(11, 'Salted password hashes verified by email');
@@ -0,0 +1,95 @@
+/*
+ * Migration 12: summaries of deposits and withdrawals.
+ * Run against an existing bank_system database with the mysql client, e.g. mysql -u root bank_system < V12__posting_summaries.sql
+ *
+ * The text the caller passes to Deposit, Withdraw, DepositOnce and WithdrawOnce was a VARCHAR(10) named transType,
+ * although it is stored as the transaction's summary while transType is always set by the procedure. The parameter is
+ * now named summary and is as wide as the Transactions.summary column, so a longer summary such as "Withdrawal fee" is
+ * no longer refused in strict mode. Existing transactions are unchanged.
+ */
+USE bank_system;
+
+DROP PROCEDURE IF EXISTS Deposit;
+DROP PROCEDURE IF EXISTS Withdraw;
+DROP PROCEDURE IF EXISTS DepositOnce;
+DROP PROCEDURE IF EXISTS WithdrawOnce;
+
+DELIMITER $$
+/* Deposit and Withdraw record the caller's summary, such as "Deposit" or "Paycheck", and set transType themselves.
+   Only transfers record a location, the other account.
+   netBalance is computed from the account row locked by the same statement, so it always matches the trigger's update. */
+CREATE PROCEDURE Deposit (userID BIGINT UNSIGNED, bankName VARCHAR(256), accType VARCHAR(8), summary VARCHAR(256), amount DECIMAL(15, 2))
+BEGIN
+    INSERT INTO Transactions(userID, bankName, accType, transDateTime, summary, transType, amount, netBalance)
+    SELECT a.userID, a.bankName, a.accType, NOW(), summary, "Deposit", amount, a.balance + amount
+    FROM Accounts a WHERE a.userID = userID AND a.bankName = bankName AND a.accType = accType
+    FOR UPDATE;
+END$$
+/* The account row is locked before its balance is compared, so parallel withdrawals are checked one after another. */
+CREATE PROCEDURE Withdraw (userID BIGINT UNSIGNED, bankName VARCHAR(256), accType VARCHAR(8), summary VARCHAR(256), amount DECIMAL(15, 2))
+BEGIN
+    INSERT INTO Transactions(userID, bankName, accType, transDateTime, summary, transType, amount, netBalance)
+    SELECT a.userID, a.bankName, a.accType, NOW(), summary, "Withdrawal", amount, a.balance - amount
+    FROM Accounts a WHERE a.userID = userID AND a.bankName = bankName AND a.accType = accType AND a.balance >= amount
+    FOR UPDATE;
+    IF ROW_COUNT() = 0 THEN
+   	 SIGNAL SQLSTATE '45000' SET MESSAGE_TEXT = "Insufficient funds or no such account; withdrawal failed.";
+    END IF;
+END$$
+/* The Once procedures run Deposit, Withdraw or CreateLoan at most once per idempotency key. The key is claimed in the
+   same transaction as the call, so a call that fails leaves no key behind and may be retried, and a key that exists was
+   committed together with its call. Each returns (applied, replayed). */
+CREATE PROCEDURE DepositOnce (idemKey BINARY(16), userID BIGINT UNSIGNED, bankName VARCHAR(256), accType VARCHAR(8), summary VARCHAR(256), amount DECIMAL(15, 2))
+BEGIN
+    DECLARE outcome BOOLEAN;
+    DECLARE EXIT HANDLER FOR SQLEXCEPTION
+    BEGIN
+        ROLLBACK;
+        RESIGNAL;
+    END;
+    START TRANSACTION;
+    /* Waits for a call still running with the same key, and then finds its row. */
+    INSERT IGNORE INTO IdempotencyKeys(userID, idemKey) VALUES(userID, idemKey);
+    IF ROW_COUNT() = 0 THEN
+        SELECT k.applied INTO outcome FROM IdempotencyKeys k WHERE k.userID = userID AND k.idemKey = idemKey;
+        COMMIT;
+        SELECT outcome AS applied, TRUE AS replayed;
+    ELSE
+        CALL Deposit(userID, bankName, accType, summary, amount);
+        UPDATE IdempotencyKeys k SET k.applied = TRUE WHERE k.userID = userID AND k.idemKey = idemKey;
+        COMMIT;
+        SELECT TRUE AS applied, FALSE AS replayed;
+    END IF;
+END$$
+CREATE PROCEDURE WithdrawOnce (idemKey BINARY(16), userID BIGINT UNSIGNED, bankName VARCHAR(256), accType VARCHAR(8), summary VARCHAR(256), amount DECIMAL(15, 2))
+BEGIN
+    DECLARE outcome BOOLEAN;
+    /* A refused withdrawal or loan is an outcome too: its key is recorded with applied = FALSE, so a retry returns the refusal. */
+    DECLARE EXIT HANDLER FOR SQLSTATE '45000'
+    BEGIN
+        UPDATE IdempotencyKeys k SET k.applied = FALSE WHERE k.userID = userID AND k.idemKey = idemKey;
+        COMMIT;
+        SELECT FALSE AS applied, FALSE AS replayed;
+    END;
+    DECLARE EXIT HANDLER FOR SQLEXCEPTION
+    BEGIN
+        ROLLBACK;
+        RESIGNAL;
+    END;
+    START TRANSACTION;
+    /* Waits for a call still running with the same key, and then finds its row. */
+    INSERT IGNORE INTO IdempotencyKeys(userID, idemKey) VALUES(userID, idemKey);
+    IF ROW_COUNT() = 0 THEN
+        SELECT k.applied INTO outcome FROM IdempotencyKeys k WHERE k.userID = userID AND k.idemKey = idemKey;
+        COMMIT;
+        SELECT outcome AS applied, TRUE AS replayed;
+    ELSE
+        CALL Withdraw(userID, bankName, accType, summary, amount);
+        UPDATE IdempotencyKeys k SET k.applied = TRUE WHERE k.userID = userID AND k.idemKey = idemKey;
+        COMMIT;
+        SELECT TRUE AS applied, FALSE AS replayed;
+    END IF;
+END$$
+DELIMITER ;
+
+INSERT INTO SchemaVersion(version, description) VALUES(12, 'Summaries of deposits and withdrawals');
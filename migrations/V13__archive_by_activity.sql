@@ -0,0 +1,87 @@
+/*
+ * Migration 13: archive users by their last activity.
+ * Run against an existing bank_system database with the mysql client, e.g. mysql -u root bank_system < V13__archive_by_activity.sql
+ *
+ * The archiver takes users whose updatedAt is older than the cutoff, but updatedAt only changed when the Users row
+ * did, so users who log in and post every day were archived a year after they registered. Logins, postings and loans
+ * now refresh it too: the Transactions and Loans triggers touch the user's row, and the app calls MarkUserActive on
+ * each login. Each refreshes it at most hourly. Users who were active recently but not since their row last changed
+ * are stamped from their latest transaction, so the first archiver run after this migration does not take them.
+ */
+USE bank_system;
+
+UPDATE Users u
+JOIN (SELECT t.userID, MAX(t.transDateTime) AS lastActive FROM Transactions t GROUP BY t.userID) t ON t.userID = u.userID
+SET u.updatedAt = t.lastActive
+WHERE u.updatedAt < t.lastActive;
+
+DROP PROCEDURE IF EXISTS MarkUserActive;
+DROP TRIGGER IF EXISTS update_account_on_new_transaction;
+DROP TRIGGER IF EXISTS update_account_on_new_loan;
+DROP TRIGGER IF EXISTS update_account_on_update_loan;
+
+DELIMITER $$
+/* Called on every login. Like the posting and loan triggers, refreshes updatedAt at most hourly. */
+CREATE PROCEDURE MarkUserActive (userID BIGINT UNSIGNED)
+BEGIN
+    UPDATE Users u SET u.updatedAt = CURRENT_TIMESTAMP WHERE u.userID = userID AND u.updatedAt < CURRENT_TIMESTAMP - INTERVAL 1 HOUR;
+END$$
+CREATE TRIGGER update_account_on_new_transaction
+AFTER INSERT ON Transactions
+FOR EACH ROW
+BEGIN
+    DECLARE closing DECIMAL(15, 2);
+    IF new.transType = "Withdrawal" THEN
+   	 /* Conditional on the balance, so no path that inserts a withdrawal can overdraw the account. */
+   	 UPDATE Accounts a SET a.balance = a.balance - new.amount
+   	 WHERE a.userID = new.userID AND a.bankName = new.bankName AND a.accType = new.accType AND a.balance >= new.amount;
+   	 IF ROW_COUNT() = 0 AND new.amount <> 0 THEN
+   		 SIGNAL SQLSTATE '45000' SET MESSAGE_TEXT = "Insufficient funds; withdrawal failed.";
+   	 END IF;
+    ELSE
+   	 UPDATE Accounts a SET a.balance = a.balance + new.amount
+   	 WHERE a.userID = new.userID AND a.bankName = new.bankName AND a.accType = new.accType;
+    END IF;
+    /* Roll the transaction into its month's statement, from the balance just updated. */
+    SELECT a.balance INTO closing FROM Accounts a WHERE a.userID = new.userID AND a.bankName = new.bankName AND a.accType = new.accType;
+    INSERT INTO MonthlyStatements(userID, bankName, accType, month, openingBalance, closingBalance, transCount, depositTotal, withdrawalTotal)
+    VALUES(new.userID, new.bankName, new.accType, DATE_FORMAT(new.transDateTime, "%Y-%m-01"),
+   	 IF(new.transType = "Withdrawal", closing + new.amount, closing - new.amount), closing, 1,
+   	 IF(new.transType = "Withdrawal", 0, new.amount), IF(new.transType = "Withdrawal", new.amount, 0))
+    ON DUPLICATE KEY UPDATE closingBalance = closing, transCount = transCount + 1,
+   	 depositTotal = depositTotal + IF(new.transType = "Withdrawal", 0, new.amount),
+   	 withdrawalTotal = withdrawalTotal + IF(new.transType = "Withdrawal", new.amount, 0);
+    /* A posting is activity, so the user is not archived while they still use the account. Refreshed at most hourly,
+       which is far finer than archiveRetentionDays, to spare the Users row a write per posting. */
+    UPDATE Users u SET u.updatedAt = CURRENT_TIMESTAMP WHERE u.userID = new.userID AND u.updatedAt < CURRENT_TIMESTAMP - INTERVAL 1 HOUR;
+END $$
+CREATE TRIGGER update_account_on_new_loan
+AFTER INSERT ON Loans
+FOR EACH ROW
+BEGIN
+    IF new.accType = "Loans"
+   	 THEN UPDATE Accounts a SET a.balance = a.balance + new.amount
+    	WHERE a.userID = new.userID AND a.bankName = new.bankName AND a.accType = new.accType;
+   	 UPDATE Users u SET u.updatedAt = CURRENT_TIMESTAMP WHERE u.userID = new.userID AND u.updatedAt < CURRENT_TIMESTAMP - INTERVAL 1 HOUR;
+    ELSE
+   	 SIGNAL SQLSTATE '45000' SET MESSAGE_TEXT = "Not a Loans account; insertion failed.";
+    END IF;
+END $$
+CREATE TRIGGER update_account_on_update_loan
+AFTER UPDATE ON Loans
+FOR EACH ROW
+BEGIN
+    IF new.accType = "Loans"
+   	 THEN UPDATE Accounts a SET a.balance = a.balance + new.amount - old.amount
+   	 WHERE a.userID = new.userID AND a.bankName = new.bankName AND a.accType = new.accType;
+   	 IF new.amount = 0
+   		 THEN DELETE FROM Loans WHERE Loans.userID = new.userID AND Loans.bankName = new.bankName AND Loans.accType = new.accType;
+   	 END IF;
+   	 UPDATE Users u SET u.updatedAt = CURRENT_TIMESTAMP WHERE u.userID = new.userID AND u.updatedAt < CURRENT_TIMESTAMP - INTERVAL 1 HOUR;
+    ELSE
+   	 SIGNAL SQLSTATE '45000' SET MESSAGE_TEXT = "Not a Loans account; insertion failed.";
+    END IF;
+END $$
+DELIMITER ;
+
+INSERT INTO SchemaVersion(version, description) VALUES(13, 'Archive users by last activity');
@@ -0,0 +1,28 @@
+/*
+ * Migration 14: refuse deposits to missing accounts.
+ * Run against an existing bank_system database with the mysql client, e.g. mysql -u root bank_system < V14__refused_deposits.sql
+ *
+ * Deposit inserted nothing and reported success when the account did not exist, so callers could not tell a deposit
+ * that was made from one that was lost. It now signals SQLSTATE 45000, as Withdraw does when it refuses a withdrawal.
+ */
+USE bank_system;
+
+DROP PROCEDURE IF EXISTS Deposit;
+
+DELIMITER $$
+/* Deposit and Withdraw record the caller's summary, such as "Deposit" or "Paycheck", and set transType themselves.
+   Only transfers record a location, the other account.
+   netBalance is computed from the account row locked by the same statement, so it always matches the trigger's update. */
+CREATE PROCEDURE Deposit (userID BIGINT UNSIGNED, bankName VARCHAR(256), accType VARCHAR(8), summary VARCHAR(256), amount DECIMAL(15, 2))
+BEGIN
+    INSERT INTO Transactions(userID, bankName, accType, transDateTime, summary, transType, amount, netBalance)
+    SELECT a.userID, a.bankName, a.accType, NOW(), summary, "Deposit", amount, a.balance + amount
+    FROM Accounts a WHERE a.userID = userID AND a.bankName = bankName AND a.accType = accType
+    FOR UPDATE;
+    IF ROW_COUNT() = 0 THEN
+   	 SIGNAL SQLSTATE '45000' SET MESSAGE_TEXT = "No such account; deposit failed.";
+    END IF;
+END$$
+DELIMITER ;
+
+INSERT INTO SchemaVersion(version, description) VALUES(14, 'Refuse deposits to missing accounts');
@@ -0,0 +1,99 @@
+/*
+ * Migration 15: refuse non-positive amounts.
+ * Run against an existing bank_system database with the mysql client, e.g. mysql -u root bank_system < V15__positive_amounts.sql
+ *
+ * Nothing checked the sign of an amount: a negative withdrawal passed the balance check and raised the balance, and a
+ * negative deposit could overdraw the account. Deposit and Withdraw now signal SQLSTATE 45000 for an amount that is
+ * not positive, and so do the Transactions trigger, which covers transfers, batched postings and direct inserts, and
+ * the new loan trigger. Existing rows are left as they are.
+ */
+USE bank_system;
+
+DROP PROCEDURE IF EXISTS Deposit;
+DROP PROCEDURE IF EXISTS Withdraw;
+DROP TRIGGER IF EXISTS update_account_on_new_transaction;
+DROP TRIGGER IF EXISTS update_account_on_new_loan;
+
+DELIMITER $$
+/* Deposit and Withdraw record the caller's summary, such as "Deposit" or "Paycheck", and set transType themselves.
+   Only transfers record a location, the other account.
+   netBalance is computed from the account row locked by the same statement, so it always matches the trigger's update. */
+CREATE PROCEDURE Deposit (userID BIGINT UNSIGNED, bankName VARCHAR(256), accType VARCHAR(8), summary VARCHAR(256), amount DECIMAL(15, 2))
+BEGIN
+    IF amount <= 0 THEN
+   	 SIGNAL SQLSTATE '45000' SET MESSAGE_TEXT = "The amount must be positive; deposit failed.";
+    END IF;
+    INSERT INTO Transactions(userID, bankName, accType, transDateTime, summary, transType, amount, netBalance)
+    SELECT a.userID, a.bankName, a.accType, NOW(), summary, "Deposit", amount, a.balance + amount
+    FROM Accounts a WHERE a.userID = userID AND a.bankName = bankName AND a.accType = accType
+    FOR UPDATE;
+    IF ROW_COUNT() = 0 THEN
+   	 SIGNAL SQLSTATE '45000' SET MESSAGE_TEXT = "No such account; deposit failed.";
+    END IF;
+END$$
+/* The account row is locked before its balance is compared, so parallel withdrawals are checked one after another. */
+CREATE PROCEDURE Withdraw (userID BIGINT UNSIGNED, bankName VARCHAR(256), accType VARCHAR(8), summary VARCHAR(256), amount DECIMAL(15, 2))
+BEGIN
+    /* A negative withdrawal would pass the balance check and raise the balance. */
+    IF amount <= 0 THEN
+   	 SIGNAL SQLSTATE '45000' SET MESSAGE_TEXT = "The amount must be positive; withdrawal failed.";
+    END IF;
+    INSERT INTO Transactions(userID, bankName, accType, transDateTime, summary, transType, amount, netBalance)
+    SELECT a.userID, a.bankName, a.accType, NOW(), summary, "Withdrawal", amount, a.balance - amount
+    FROM Accounts a WHERE a.userID = userID AND a.bankName = bankName AND a.accType = accType AND a.balance >= amount
+    FOR UPDATE;
+    IF ROW_COUNT() = 0 THEN
+   	 SIGNAL SQLSTATE '45000' SET MESSAGE_TEXT = "Insufficient funds or no such account; withdrawal failed.";
+    END IF;
+END$$
+CREATE TRIGGER update_account_on_new_transaction
+AFTER INSERT ON Transactions
+FOR EACH ROW
+BEGIN
+    DECLARE closing DECIMAL(15, 2);
+    /* Every path that inserts a transaction is held to a positive amount, as every withdrawal is to its balance. */
+    IF new.amount IS NULL OR new.amount <= 0 THEN
+   	 SIGNAL SQLSTATE '45000' SET MESSAGE_TEXT = "The amount must be positive; transaction failed.";
+    END IF;
+    IF new.transType = "Withdrawal" THEN
+   	 /* Conditional on the balance, so no path that inserts a withdrawal can overdraw the account. */
+   	 UPDATE Accounts a SET a.balance = a.balance - new.amount
+   	 WHERE a.userID = new.userID AND a.bankName = new.bankName AND a.accType = new.accType AND a.balance >= new.amount;
+   	 IF ROW_COUNT() = 0 THEN
+   		 SIGNAL SQLSTATE '45000' SET MESSAGE_TEXT = "Insufficient funds; withdrawal failed.";
+   	 END IF;
+    ELSE
+   	 UPDATE Accounts a SET a.balance = a.balance + new.amount
+   	 WHERE a.userID = new.userID AND a.bankName = new.bankName AND a.accType = new.accType;
+    END IF;
+    /* Roll the transaction into its month's statement, from the balance just updated. */
+    SELECT a.balance INTO closing FROM Accounts a WHERE a.userID = new.userID AND a.bankName = new.bankName AND a.accType = new.accType;
+    INSERT INTO MonthlyStatements(userID, bankName, accType, month, openingBalance, closingBalance, transCount, depositTotal, withdrawalTotal)
+    VALUES(new.userID, new.bankName, new.accType, DATE_FORMAT(new.transDateTime, "%Y-%m-01"),
+   	 IF(new.transType = "Withdrawal", closing + new.amount, closing - new.amount), closing, 1,
+   	 IF(new.transType = "Withdrawal", 0, new.amount), IF(new.transType = "Withdrawal", new.amount, 0))
+    ON DUPLICATE KEY UPDATE closingBalance = closing, transCount = transCount + 1,
+   	 depositTotal = depositTotal + IF(new.transType = "Withdrawal", 0, new.amount),
+   	 withdrawalTotal = withdrawalTotal + IF(new.transType = "Withdrawal", new.amount, 0);
+    /* A posting is activity, so the user is not archived while they still use the account. Refreshed at most hourly,
+       which is far finer than archiveRetentionDays, to spare the Users row a write per posting. */
+    UPDATE Users u SET u.updatedAt = CURRENT_TIMESTAMP WHERE u.userID = new.userID AND u.updatedAt < CURRENT_TIMESTAMP - INTERVAL 1 HOUR;
+END $$
+CREATE TRIGGER update_account_on_new_loan
+AFTER INSERT ON Loans
+FOR EACH ROW
+BEGIN
+    IF new.amount IS NULL OR new.amount <= 0 THEN
+   	 SIGNAL SQLSTATE '45000' SET MESSAGE_TEXT = "The amount must be positive; loan failed.";
+    END IF;
+    IF new.accType = "Loans"
+   	 THEN UPDATE Accounts a SET a.balance = a.balance + new.amount
+    	WHERE a.userID = new.userID AND a.bankName = new.bankName AND a.accType = new.accType;
+   	 UPDATE Users u SET u.updatedAt = CURRENT_TIMESTAMP WHERE u.userID = new.userID AND u.updatedAt < CURRENT_TIMESTAMP - INTERVAL 1 HOUR;
+    ELSE
+   	 SIGNAL SQLSTATE '45000' SET MESSAGE_TEXT = "Not a Loans account; insertion failed.";
+    END IF;
+END $$
+DELIMITER ;
+
+INSERT INTO SchemaVersion(version, description) VALUES(15, 'Refuse non-positive amounts');
@@ -0,0 +1,46 @@
+/*
+ * Migration 16: record refused keyed deposits.
+ * Run against an existing bank_system database with the mysql client, e.g. mysql -u root bank_system < V16__refused_keyed_deposits.sql
+ *
+ * Since migration 14 Deposit signals SQLSTATE 45000 when it refuses a deposit, and since migration 15 when the amount is
+ * not positive. DepositOnce only had a handler that rolled back and resignalled, so a refused keyed deposit left no key
+ * and its retries were tried again rather than answered. It now records the key with applied = FALSE and returns that
+ * outcome, as WithdrawOnce does.
+ */
+USE bank_system;
+
+DROP PROCEDURE IF EXISTS DepositOnce;
+
+DELIMITER $$
+CREATE PROCEDURE DepositOnce (idemKey BINARY(16), userID BIGINT UNSIGNED, bankName VARCHAR(256), accType VARCHAR(8), summary VARCHAR(256), amount DECIMAL(15, 2))
+BEGIN
+    DECLARE outcome BOOLEAN;
+    /* A refused deposit is an outcome too, and is recorded as not applied rather than as made. */
+    DECLARE EXIT HANDLER FOR SQLSTATE '45000'
+    BEGIN
+        UPDATE IdempotencyKeys k SET k.applied = FALSE WHERE k.userID = userID AND k.idemKey = idemKey;
+        COMMIT;
+        SELECT FALSE AS applied, FALSE AS replayed;
+    END;
+    DECLARE EXIT HANDLER FOR SQLEXCEPTION
+    BEGIN
+        ROLLBACK;
+        RESIGNAL;
+    END;
+    START TRANSACTION;
+    /* Waits for a call still running with the same key, and then finds its row. */
+    INSERT IGNORE INTO IdempotencyKeys(userID, idemKey) VALUES(userID, idemKey);
+    IF ROW_COUNT() = 0 THEN
+        SELECT k.applied INTO outcome FROM IdempotencyKeys k WHERE k.userID = userID AND k.idemKey = idemKey;
+        COMMIT;
+        SELECT outcome AS applied, TRUE AS replayed;
+    ELSE
+        CALL Deposit(userID, bankName, accType, summary, amount);
+        UPDATE IdempotencyKeys k SET k.applied = TRUE WHERE k.userID = userID AND k.idemKey = idemKey;
+        COMMIT;
+        SELECT TRUE AS applied, FALSE AS replayed;
+    END IF;
+END$$
+DELIMITER ;
+
+INSERT INTO SchemaVersion(version, description) VALUES(16, 'Record refused keyed deposits');
@@ -0,0 +1,46 @@
+/*
+ * Migration 17: refuse keyed loans to missing Loans accounts.
+ * Run against an existing bank_system database with the mysql client, e.g. mysql -u root bank_system < V17__refused_keyed_loans.sql
+ *
+ * A keyed loan to a user with no Loans account at the bank failed its foreign key, and CreateLoanOnce rolled back and
+ * resignalled, leaving no key. The caller was told the outcome was unknown and to retry, though every retry would fail
+ * the same way. CreateLoanOnce now records such a loan as refused, as it does a loan CreateLoan refuses.
+ */
+USE bank_system;
+
+DROP PROCEDURE IF EXISTS CreateLoanOnce;
+
+DELIMITER $$
+CREATE PROCEDURE CreateLoanOnce (idemKey BINARY(16), userID BIGINT UNSIGNED, bankName VARCHAR(256), accType VARCHAR(8), amount DECIMAL(15, 2))
+BEGIN
+    DECLARE outcome BOOLEAN;
+    /* A refused withdrawal or loan is an outcome too: its key is recorded with applied = FALSE, so a retry returns the refusal.
+       A loan to a missing Loans account fails its foreign key (SQLSTATE 23000) on every try, so it is a refusal as well. */
+    DECLARE EXIT HANDLER FOR SQLSTATE '45000', SQLSTATE '23000'
+    BEGIN
+        UPDATE IdempotencyKeys k SET k.applied = FALSE WHERE k.userID = userID AND k.idemKey = idemKey;
+        COMMIT;
+        SELECT FALSE AS applied, FALSE AS replayed;
+    END;
+    DECLARE EXIT HANDLER FOR SQLEXCEPTION
+    BEGIN
+        ROLLBACK;
+        RESIGNAL;
+    END;
+    START TRANSACTION;
+    /* Waits for a call still running with the same key, and then finds its row. */
+    INSERT IGNORE INTO IdempotencyKeys(userID, idemKey) VALUES(userID, idemKey);
+    IF ROW_COUNT() = 0 THEN
+        SELECT k.applied INTO outcome FROM IdempotencyKeys k WHERE k.userID = userID AND k.idemKey = idemKey;
+        COMMIT;
+        SELECT outcome AS applied, TRUE AS replayed;
+    ELSE
+        CALL CreateLoan(userID, bankName, accType, amount);
+        UPDATE IdempotencyKeys k SET k.applied = TRUE WHERE k.userID = userID AND k.idemKey = idemKey;
+        COMMIT;
+        SELECT TRUE AS applied, FALSE AS replayed;
+    END IF;
+END$$
+DELIMITER ;
+
+INSERT INTO SchemaVersion(version, description) VALUES(17, 'Refuse keyed loans to missing Loans accounts');
@@ -0,0 +1,54 @@
+/*
+ * Migration 18: count backfilled statements once.
+ * Run against an existing bank_system database with the mysql client, e.g. mysql -u root bank_system < V18__backfill_statement_count.sql
+ *
+ * BackfillMonthlyStatements returned ROW_COUNT() of its INSERT ... ON DUPLICATE KEY UPDATE, which counts a statement
+ * that already existed twice, so re-running --backfill-statements over-reported how many it rebuilt. It now counts the
+ * statements it selects.
+ */
+USE bank_system;
+
+DROP PROCEDURE IF EXISTS BackfillMonthlyStatements;
+
+DELIMITER $$
+/* Rebuilds the monthly statements of the next chunkSize users after afterUserID from their transactions, taking each
+   month's first and last transaction by transID. lastUserID returns the checkpoint to continue from, or null once every
+   user has been backfilled. statements returns how many monthly statements the chunk rebuilt, counted from the groups
+   selected rather than from ROW_COUNT(), which counts an updated statement twice. Safe to run while transactions post,
+   since rows it reads are locked until it commits. */
+CREATE PROCEDURE BackfillMonthlyStatements (afterUserID BIGINT UNSIGNED, chunkSize INT, OUT lastUserID BIGINT UNSIGNED, OUT statements INT)
+BEGIN
+    SELECT MAX(c.userID) INTO lastUserID
+    FROM (SELECT u.userID FROM Users u WHERE u.userID > afterUserID ORDER BY u.userID LIMIT chunkSize) c;
+    SET statements = 0;
+    IF lastUserID IS NOT NULL THEN
+        SELECT COUNT(*) INTO statements
+        FROM (
+            SELECT 1 FROM Transactions t
+            WHERE t.userID > afterUserID AND t.userID <= lastUserID
+            GROUP BY t.userID, t.bankName, t.accType, DATE_FORMAT(t.transDateTime, "%Y-%m-01")
+        ) g;
+        INSERT INTO MonthlyStatements(userID, bankName, accType, month, openingBalance, closingBalance, transCount, depositTotal, withdrawalTotal)
+        SELECT * FROM (
+            SELECT g.userID, g.bankName, g.accType, g.month,
+                IF(f.transType = "Withdrawal", f.netBalance + f.amount, f.netBalance - f.amount) AS openingBalance,
+                l.netBalance AS closingBalance, g.transCount, g.depositTotal, g.withdrawalTotal
+            FROM (
+                SELECT t.userID, t.bankName, t.accType, DATE_FORMAT(t.transDateTime, "%Y-%m-01") AS month, COUNT(*) AS transCount,
+                    SUM(IF(t.transType = "Withdrawal", 0, t.amount)) AS depositTotal,
+                    SUM(IF(t.transType = "Withdrawal", t.amount, 0)) AS withdrawalTotal,
+                    MIN(t.transID) AS firstID, MAX(t.transID) AS lastID
+                FROM Transactions t
+                WHERE t.userID > afterUserID AND t.userID <= lastUserID
+                GROUP BY t.userID, t.bankName, t.accType, month
+            ) g
+            JOIN Transactions f ON f.transID = g.firstID
+            JOIN Transactions l ON l.transID = g.lastID
+        ) s
+        ON DUPLICATE KEY UPDATE openingBalance = s.openingBalance, closingBalance = s.closingBalance, transCount = s.transCount,
+            depositTotal = s.depositTotal, withdrawalTotal = s.withdrawalTotal;
+    END IF;
+END$$
+DELIMITER ;
+
+INSERT INTO SchemaVersion(version, description) VALUES(18, 'Count backfilled statements once');
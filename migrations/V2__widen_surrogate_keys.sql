@@ -0,0 +1,133 @@
+/*
+ * Migration 2: widen surrogate keys from TINYINT UNSIGNED (255 rows) to BIGINT UNSIGNED.
+ * Run against an existing bank_system database with the mysql client, e.g. mysql -u root bank_system < V2__widen_surrogate_keys.sql
+ *
+ * Transactions.transID and Loans.loanID become AUTO_INCREMENT. With innodb_autoinc_lock_mode = 2 (the default since
+ * MySQL 8.0) concurrent inserts take ids from an in-memory counter without holding a table-level AUTO-INC lock, so
+ * parallel deposits do not queue on id allocation. Set it in my.cnf on older servers.
+ *
+ * Every procedure with a userID parameter is recreated, since a TINYINT parameter would truncate wider ids.
+ */
+USE bank_system;
+
+CREATE TABLE IF NOT EXISTS SchemaVersion (
+    version INT UNSIGNED,
+	description VARCHAR(256),
+	appliedAt TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+	PRIMARY KEY(version)
+);
+
+/* Columns referenced by foreign keys can only change type while the checks are off. */
+SET FOREIGN_KEY_CHECKS = 0;
+ALTER TABLE Users MODIFY userID BIGINT UNSIGNED NOT NULL AUTO_INCREMENT;
+ALTER TABLE ArchivedUsers MODIFY userID BIGINT UNSIGNED NOT NULL;
+ALTER TABLE Accounts MODIFY userID BIGINT UNSIGNED NOT NULL;
+ALTER TABLE Transactions
+    MODIFY transID BIGINT UNSIGNED NOT NULL AUTO_INCREMENT,
+    MODIFY userID BIGINT UNSIGNED;
+ALTER TABLE Loans
+    MODIFY loanID BIGINT UNSIGNED NOT NULL AUTO_INCREMENT,
+    MODIFY userID BIGINT UNSIGNED;
+SET FOREIGN_KEY_CHECKS = 1;
+
+DROP PROCEDURE IF EXISTS GetUserID;
+DROP PROCEDURE IF EXISTS DeleteUser;
+DROP PROCEDURE IF EXISTS CreateBankAccount;
+DROP PROCEDURE IF EXISTS DeleteBankAccount;
+DROP PROCEDURE IF EXISTS GetAllUserBankAccountsAtBank;
+DROP PROCEDURE IF EXISTS GetBankAccountBalance;
+DROP PROCEDURE IF EXISTS CalculateNetWorth;
+DROP PROCEDURE IF EXISTS Deposit;
+DROP PROCEDURE IF EXISTS Withdraw;
+DROP PROCEDURE IF EXISTS GetRecentTransactions;
+DROP PROCEDURE IF EXISTS GetMonthlyTransactions;
+DROP PROCEDURE IF EXISTS GetLoans;
+DROP PROCEDURE IF EXISTS CreateLoan;
+DROP PROCEDURE IF EXISTS GetTransactionPage;
+
+DELIMITER $$
+CREATE PROCEDURE GetUserID (email VARCHAR(256), pw BINARY(32), OUT userID BIGINT UNSIGNED)
+BEGIN
+    SELECT Users.userID INTO userID FROM Users WHERE Users.email=email AND Users.pw=pw;
+END$$
+CREATE PROCEDURE DeleteUser (userID BIGINT UNSIGNED)
+BEGIN
+    DELETE FROM Users WHERE Users.userID = userID;
+END$$
+CREATE PROCEDURE CreateBankAccount (bankName VARCHAR(256), accType VARCHAR(8), balance DECIMAL(15, 2), userID BIGINT UNSIGNED)
+BEGIN
+    INSERT INTO Accounts(bankName, accType, balance, userID) VALUES(bankName, accType, balance, userId);
+END$$
+CREATE PROCEDURE DeleteBankAccount (bankName VARCHAR(256), accType VARCHAR(8), userID BIGINT UNSIGNED)
+BEGIN
+    DELETE FROM Accounts WHERE Accounts.userID = userID AND Accounts.bankName = bankName AND Accounts.accType = accType;
+END$$
+CREATE PROCEDURE GetAllUserBankAccountsAtBank (bankName VARCHAR(256), userID BIGINT UNSIGNED)
+BEGIN
+    SELECT u.firstName, a.accType, a.balance FROM Accounts a JOIN Users u ON u.userID = a.userID WHERE a.bankName = bankName AND a.userID = userID;
+END$$
+CREATE PROCEDURE GetBankAccountBalance (bankName VARCHAR(256), accType VARCHAR(8), userID BIGINT UNSIGNED)
+BEGIN
+    SELECT balance FROM Accounts WHERE Accounts.bankName = bankName AND Accounts.accType = accType AND Accounts.userID = userID;
+END$$
+CREATE PROCEDURE CalculateNetWorth (userID BIGINT UNSIGNED)
+BEGIN
+    SELECT SUM(balance) as NetWorth FROM Accounts WHERE Accounts.userID = userID;
+END$$
+CREATE PROCEDURE Deposit (userID BIGINT UNSIGNED, bankName VARCHAR(256), accType VARCHAR(8), transType VARCHAR(10), amount DECIMAL(15, 2))
+BEGIN
+    INSERT INTO Transactions(userID, bankName, accType, transDateTime, summary, transType, amount, netBalance)
+    SELECT a.userID, a.bankName, a.accType, NOW(), transType, "Deposit", amount, a.balance + amount
+    FROM Accounts a WHERE a.userID = userID AND a.bankName = bankName AND a.accType = accType
+    FOR UPDATE;
+END$$
+CREATE PROCEDURE Withdraw (userID BIGINT UNSIGNED, bankName VARCHAR(256), accType VARCHAR(8), transType VARCHAR(10), amount DECIMAL(15, 2))
+BEGIN
+    INSERT INTO Transactions(userID, bankName, accType, transDateTime, summary, transType, amount, netBalance)
+    SELECT a.userID, a.bankName, a.accType, NOW(), transType, "Withdrawal", amount, a.balance - amount
+    FROM Accounts a WHERE a.userID = userID AND a.bankName = bankName AND a.accType = accType
+    FOR UPDATE;
+END$$
+CREATE PROCEDURE GetRecentTransactions (userID BIGINT UNSIGNED, bankName VARCHAR(256), accType VARCHAR(8))
+BEGIN
+    SELECT t.transID, t.userID, t.bankName, t.accType, t.transDateTime, t.location, t.summary, t.transType, t.amount, t.netBalance
+    FROM Transactions t
+    WHERE t.userID = userID AND t.bankName = bankName AND t.accType = accType AND t.transDateTime >= NOW() - INTERVAL 30 DAY
+    ORDER BY t.transDateTime DESC, t.transID DESC;
+END$$
+CREATE PROCEDURE GetMonthlyTransactions (userID BIGINT UNSIGNED, bankName VARCHAR(256), accType VARCHAR(8), filterDate DATE)
+BEGIN
+    SELECT t.transID, t.userID, t.bankName, t.accType, t.transDateTime, t.location, t.summary, t.transType, t.amount, t.netBalance
+    FROM Transactions t
+    WHERE t.userID = userID AND t.bankName = bankName AND t.accType = accType
+        AND t.transDateTime >= filterDate AND t.transDateTime < filterDate + INTERVAL 1 MONTH
+    ORDER BY t.transDateTime DESC, t.transID DESC;
+END$$
+CREATE PROCEDURE GetLoans (userID BIGINT UNSIGNED)
+BEGIN
+    SELECT loanID, bankName, amount FROM Loans WHERE Loans.userID = userID;
+END$$
+CREATE PROCEDURE CreateLoan (userID BIGINT UNSIGNED, bankName VARCHAR(256), accType VARCHAR(8), amount DECIMAL(15, 2))
+BEGIN
+    INSERT INTO Loans(userID, bankName, accType, amount, loanDate, dueDate) VALUES(userID, bankName, accType, amount, NOW(), NOW() + INTERVAL 1 YEAR);
+END$$
+CREATE PROCEDURE GetTransactionPage (userID BIGINT UNSIGNED, bankName VARCHAR(256), accType VARCHAR(8), afterDateTime DATETIME, afterTransID BIGINT UNSIGNED, pageSize INT)
+BEGIN
+    IF afterDateTime IS NULL THEN
+        SELECT t.transID, t.userID, t.bankName, t.accType, t.transDateTime, t.location, t.summary, t.transType, t.amount, t.netBalance
+        FROM Transactions t
+        WHERE t.userID = userID AND t.bankName = bankName AND t.accType = accType
+        ORDER BY t.transDateTime DESC, t.transID DESC
+        LIMIT pageSize;
+    ELSE
+        SELECT t.transID, t.userID, t.bankName, t.accType, t.transDateTime, t.location, t.summary, t.transType, t.amount, t.netBalance
+        FROM Transactions t
+        WHERE t.userID = userID AND t.bankName = bankName AND t.accType = accType
+            AND (t.transDateTime, t.transID) < (afterDateTime, afterTransID)
+        ORDER BY t.transDateTime DESC, t.transID DESC
+        LIMIT pageSize;
+    END IF;
+END$$
+DELIMITER ;
+
+INSERT INTO SchemaVersion(version, description) VALUES(2, 'Widen surrogate keys to BIGINT');
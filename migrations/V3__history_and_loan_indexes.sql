@@ -0,0 +1,43 @@
+/*
+ * Migration 3: indexes for the history, loan and archive lookups.
+ * Run against an existing bank_system database with the mysql client, e.g. mysql -u root bank_system < V3__history_and_loan_indexes.sql
+ *
+ * idx_transactions_account_time lets GetRecentTransactions, GetMonthlyTransactions and GetTransactionPage range scan
+ * one account's rows backwards, already in (transDateTime DESC, transID DESC) order, instead of scanning and sorting.
+ * Both key parts are ascending so a single backward scan serves the descending ORDER BY.
+ * idx_loans_user serves GetLoans by userID. It replaces the index InnoDB created implicitly for the
+ * (userID, bankName, accType) foreign key, so it adds no extra write cost.
+ * idx_users_updated_at lets the archiver find users not modified since a cutoff without scanning Users.
+ * GetTransactionPage is recreated with its keyset condition spelled out, since MySQL does not range scan an index
+ * for a row constructor inequality such as (transDateTime, transID) < (?, ?).
+ */
+USE bank_system;
+
+CREATE INDEX idx_transactions_account_time ON Transactions(userID, bankName, accType, transDateTime, transID);
+CREATE INDEX idx_loans_user ON Loans(userID, bankName, accType);
+CREATE INDEX idx_users_updated_at ON Users(updatedAt);
+
+ANALYZE TABLE Transactions, Loans, Users;
+
+DROP PROCEDURE IF EXISTS GetTransactionPage;
+DELIMITER $$
+CREATE PROCEDURE GetTransactionPage (userID BIGINT UNSIGNED, bankName VARCHAR(256), accType VARCHAR(8), afterDateTime DATETIME, afterTransID BIGINT UNSIGNED, pageSize INT)
+BEGIN
+    IF afterDateTime IS NULL THEN
+        SELECT t.transID, t.userID, t.bankName, t.accType, t.transDateTime, t.location, t.summary, t.transType, t.amount, t.netBalance
+        FROM Transactions t
+        WHERE t.userID = userID AND t.bankName = bankName AND t.accType = accType
+        ORDER BY t.transDateTime DESC, t.transID DESC
+        LIMIT pageSize;
+    ELSE
+        SELECT t.transID, t.userID, t.bankName, t.accType, t.transDateTime, t.location, t.summary, t.transType, t.amount, t.netBalance
+        FROM Transactions t
+        WHERE t.userID = userID AND t.bankName = bankName AND t.accType = accType
+            AND (t.transDateTime < afterDateTime OR (t.transDateTime = afterDateTime AND t.transID < afterTransID))
+        ORDER BY t.transDateTime DESC, t.transID DESC
+        LIMIT pageSize;
+    END IF;
+END$$
+DELIMITER ;
+
+INSERT INTO SchemaVersion(version, description) VALUES(3, 'Indexes for history, loan and archive lookups');
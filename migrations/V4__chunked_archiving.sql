@@ -0,0 +1,96 @@
+/*
+ * Migration 4: chunked archiving of users and their history.
+ * Run against an existing bank_system database with the mysql client, e.g. mysql -u root bank_system < V4__chunked_archiving.sql
+ *
+ * Users.updatedAt now defaults to and is refreshed with the current time, so the archiver sees when a user was last
+ * modified; existing users without one are stamped with the time of the migration.
+ * ArchiveUsers moved every stale user in one statement and left their accounts, transactions and loans behind, which
+ * the foreign keys then refused. ArchiveUserChunk moves a bounded chunk of users together with that history, and
+ * ArchiveUsers now loops over it, committing after each chunk.
+ */
+USE bank_system;
+
+ALTER TABLE Users MODIFY updatedAt TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP;
+UPDATE Users SET updatedAt = CURRENT_TIMESTAMP WHERE updatedAt IS NULL;
+
+/* Archived copies of the accounts, transactions and loans of archived users, with the same columns as the live tables. */
+CREATE TABLE ArchivedAccounts (
+    userID BIGINT UNSIGNED, bankName VARCHAR(256), accType VARCHAR(8),
+	balance DECIMAL(15, 2),
+	PRIMARY KEY(userID, bankName, accType)
+);
+CREATE TABLE ArchivedTransactions (
+    transID BIGINT UNSIGNED,
+	userID BIGINT UNSIGNED, bankName VARCHAR(256), accType VARCHAR(8),
+	transDateTime DATETIME,
+	location VARCHAR(256),
+	summary VARCHAR(256),
+	transType VARCHAR(10),
+	amount DECIMAL(15, 2),
+	netBalance DECIMAL(15, 2),
+	PRIMARY KEY(transID),
+	INDEX idx_archived_transactions_user(userID)
+);
+CREATE TABLE ArchivedLoans (
+    loanID BIGINT UNSIGNED,
+	userID BIGINT UNSIGNED, bankName VARCHAR(256), accType VARCHAR(8),
+	amount DECIMAL(15, 2),
+	loanDate DATETIME, dueDate DATETIME,
+	PRIMARY KEY(loanID),
+	INDEX idx_archived_loans_user(userID)
+);
+DROP PROCEDURE IF EXISTS ArchiveUsers;
+DROP PROCEDURE IF EXISTS ArchiveUserChunk;
+
+DELIMITER $$
+/* Archives one chunk of at most chunkSize users not modified since cutoff, with their accounts, transactions and loans.
+   Users are taken in (updatedAt, userID) order after the checkpoint (afterUpdatedAt, afterUserID); a null afterUpdatedAt
+   starts from the beginning. The OUT parameters return the new checkpoint and how many users and rows in total were moved.
+   Call it inside a transaction and commit after each chunk so locks are only held on one chunk at a time. */
+CREATE PROCEDURE ArchiveUserChunk (cutoff TIMESTAMP, afterUpdatedAt TIMESTAMP, afterUserID BIGINT UNSIGNED, chunkSize INT,
+    OUT lastUpdatedAt TIMESTAMP, OUT lastUserID BIGINT UNSIGNED, OUT usersArchived INT, OUT rowsArchived INT)
+BEGIN
+    SET lastUpdatedAt = afterUpdatedAt, lastUserID = afterUserID, usersArchived = 0, rowsArchived = 0;
+    DROP TEMPORARY TABLE IF EXISTS ArchiveChunk;
+    CREATE TEMPORARY TABLE ArchiveChunk (userID BIGINT UNSIGNED, updatedAt TIMESTAMP NULL, PRIMARY KEY(userID));
+    INSERT INTO ArchiveChunk(userID, updatedAt)
+    SELECT u.userID, u.updatedAt FROM Users u
+    WHERE u.updatedAt < cutoff
+        AND (afterUpdatedAt IS NULL OR u.updatedAt > afterUpdatedAt OR (u.updatedAt = afterUpdatedAt AND u.userID > afterUserID))
+    ORDER BY u.updatedAt, u.userID
+    LIMIT chunkSize;
+    IF ROW_COUNT() > 0 THEN
+        SELECT c.updatedAt, c.userID INTO lastUpdatedAt, lastUserID FROM ArchiveChunk c ORDER BY c.updatedAt DESC, c.userID DESC LIMIT 1;
+        INSERT INTO ArchivedUsers SELECT u.* FROM Users u JOIN ArchiveChunk c ON c.userID = u.userID;
+        INSERT INTO ArchivedAccounts SELECT a.* FROM Accounts a JOIN ArchiveChunk c ON c.userID = a.userID;
+        INSERT INTO ArchivedTransactions SELECT t.* FROM Transactions t JOIN ArchiveChunk c ON c.userID = t.userID;
+        INSERT INTO ArchivedLoans SELECT l.* FROM Loans l JOIN ArchiveChunk c ON c.userID = l.userID;
+        /* Children first, to satisfy the foreign keys. */
+        DELETE t FROM Transactions t JOIN ArchiveChunk c ON c.userID = t.userID;
+        SET rowsArchived = ROW_COUNT();
+        DELETE l FROM Loans l JOIN ArchiveChunk c ON c.userID = l.userID;
+        SET rowsArchived = rowsArchived + ROW_COUNT();
+        DELETE a FROM Accounts a JOIN ArchiveChunk c ON c.userID = a.userID;
+        SET rowsArchived = rowsArchived + ROW_COUNT();
+        DELETE u FROM Users u JOIN ArchiveChunk c ON c.userID = u.userID;
+        SET usersArchived = ROW_COUNT();
+        SET rowsArchived = rowsArchived + usersArchived;
+    END IF;
+    DROP TEMPORARY TABLE ArchiveChunk;
+END$$
+/* Archives every user not modified since cutoff, committing after each chunk of 1000 users. */
+CREATE PROCEDURE ArchiveUsers (cutoff TIMESTAMP)
+BEGIN
+    DECLARE afterUpdatedAt TIMESTAMP DEFAULT NULL;
+    DECLARE afterUserID BIGINT UNSIGNED DEFAULT 0;
+    DECLARE usersArchived INT DEFAULT 0;
+    DECLARE rowsArchived INT DEFAULT 0;
+    REPEAT
+        START TRANSACTION;
+        CALL ArchiveUserChunk(cutoff, afterUpdatedAt, afterUserID, 1000, afterUpdatedAt, afterUserID, usersArchived, rowsArchived);
+        COMMIT;
+    UNTIL usersArchived = 0 END REPEAT;
+END$$
+DELIMITER ;
+
+INSERT INTO SchemaVersion(version, description) VALUES(4, 'Chunked archiving of users and their history');
@@ -0,0 +1,29 @@
+/*
+ * Migration 5: the portfolio screen in one query.
+ * Run against an existing bank_system database with the mysql client, e.g. mysql -u root bank_system < V5__portfolio.sql
+ *
+ * GetPortfolio returns every account of a user with its outstanding loans and the user's net worth in one result set,
+ * replacing a GetAllBanks call, a GetAllUserBankAccountsAtBank call per bank and a GetBankAccountBalance call per account.
+ * Accounts are read by their primary key prefix (userID) and loans through idx_loans_user.
+ */
+USE bank_system;
+
+DROP PROCEDURE IF EXISTS GetPortfolio;
+
+DELIMITER $$
+/* One round trip for the portfolio screen: every account of a user with its outstanding loans and the user's net worth. */
+CREATE PROCEDURE GetPortfolio (userID BIGINT UNSIGNED)
+BEGIN
+    SELECT a.bankName, a.accType, a.balance, COALESCE(l.outstanding, 0) AS outstanding, SUM(a.balance) OVER () AS netWorth
+    FROM Accounts a
+    LEFT JOIN (
+        SELECT Loans.bankName, Loans.accType, SUM(Loans.amount) AS outstanding
+        FROM Loans WHERE Loans.userID = userID
+        GROUP BY Loans.bankName, Loans.accType
+    ) l ON l.bankName = a.bankName AND l.accType = a.accType
+    WHERE a.userID = userID
+    ORDER BY a.bankName, a.accType;
+END$$
+DELIMITER ;
+
+INSERT INTO SchemaVersion(version, description) VALUES(5, 'Portfolio in one query');
@@ -0,0 +1,44 @@
+/*
+ * Migration 6: overdraft checks on withdrawals.
+ * Run against an existing bank_system database with the mysql client, e.g. mysql -u root bank_system < V6__overdraft_checks.sql
+ *
+ * Withdraw now only inserts a withdrawal when the locked account holds at least the amount, and signals SQLSTATE 45000
+ * otherwise. The Transactions trigger only subtracts a withdrawal from a balance that covers it, so batched postings and
+ * direct inserts cannot overdraw an account either. Existing negative balances are left as they are.
+ */
+USE bank_system;
+
+DROP PROCEDURE IF EXISTS Withdraw;
+DROP TRIGGER IF EXISTS update_account_on_new_transaction;
+
+DELIMITER $$
+/* The account row is locked before its balance is compared, so parallel withdrawals are checked one after another. */
+CREATE PROCEDURE Withdraw (userID BIGINT UNSIGNED, bankName VARCHAR(256), accType VARCHAR(8), transType VARCHAR(10), amount DECIMAL(15, 2))
+BEGIN
+    INSERT INTO Transactions(userID, bankName, accType, transDateTime, summary, transType, amount, netBalance)
+    SELECT a.userID, a.bankName, a.accType, NOW(), transType, "Withdrawal", amount, a.balance - amount
+    FROM Accounts a WHERE a.userID = userID AND a.bankName = bankName AND a.accType = accType AND a.balance >= amount
+    FOR UPDATE;
+    IF ROW_COUNT() = 0 THEN
+   	 SIGNAL SQLSTATE '45000' SET MESSAGE_TEXT = "Insufficient funds or no such account; withdrawal failed.";
+    END IF;
+END$$
+CREATE TRIGGER update_account_on_new_transaction
+AFTER INSERT ON Transactions
+FOR EACH ROW
+BEGIN
+    IF new.transType = "Withdrawal" THEN
+   	 /* Conditional on the balance, so no path that inserts a withdrawal can overdraw the account. */
+   	 UPDATE Accounts a SET a.balance = a.balance - new.amount
+   	 WHERE a.userID = new.userID AND a.bankName = new.bankName AND a.accType = new.accType AND a.balance >= new.amount;
+   	 IF ROW_COUNT() = 0 AND new.amount <> 0 THEN
+   		 SIGNAL SQLSTATE '45000' SET MESSAGE_TEXT = "Insufficient funds; withdrawal failed.";
+   	 END IF;
+    ELSE
+   	 UPDATE Accounts a SET a.balance = a.balance + new.amount
+   	 WHERE a.userID = new.userID AND a.bankName = new.bankName AND a.accType = new.accType;
+    END IF;
+END $$
+DELIMITER ;
+
+INSERT INTO SchemaVersion(version, description) VALUES(6, 'Overdraft checks on withdrawals');
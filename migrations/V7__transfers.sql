@@ -0,0 +1,46 @@
+/*
+ * Migration 7: atomic transfers between accounts.
+ * Run against an existing bank_system database with the mysql client, e.g. mysql -u root bank_system < V7__transfers.sql
+ *
+ * Transfer debits one account and credits another in a single transaction, writing a Withdrawal and a Deposit row
+ * that name each other's account as their location. It locks both accounts in primary key order.
+ */
+USE bank_system;
+
+DROP PROCEDURE IF EXISTS Transfer;
+
+DELIMITER $$
+/* Moves money between two accounts in one transaction, recording a withdrawal and a deposit.
+   Both accounts are locked in primary key order, whichever direction the money moves, so concurrent transfers between
+   the same accounts wait for each other instead of deadlocking. */
+CREATE PROCEDURE Transfer (fromUserID BIGINT UNSIGNED, fromBankName VARCHAR(256), fromAccType VARCHAR(8), toUserID BIGINT UNSIGNED, toBankName VARCHAR(256), toAccType VARCHAR(8), amount DECIMAL(15, 2))
+BEGIN
+    DECLARE fromBalance DECIMAL(15, 2);
+    DECLARE toBalance DECIMAL(15, 2);
+    DECLARE EXIT HANDLER FOR SQLEXCEPTION
+    BEGIN
+        ROLLBACK;
+        RESIGNAL;
+    END;
+    START TRANSACTION;
+    IF (fromUserID, fromBankName, fromAccType) < (toUserID, toBankName, toAccType) THEN
+        SELECT a.balance INTO fromBalance FROM Accounts a WHERE a.userID = fromUserID AND a.bankName = fromBankName AND a.accType = fromAccType FOR UPDATE;
+        SELECT a.balance INTO toBalance FROM Accounts a WHERE a.userID = toUserID AND a.bankName = toBankName AND a.accType = toAccType FOR UPDATE;
+    ELSE
+        SELECT a.balance INTO toBalance FROM Accounts a WHERE a.userID = toUserID AND a.bankName = toBankName AND a.accType = toAccType FOR UPDATE;
+        SELECT a.balance INTO fromBalance FROM Accounts a WHERE a.userID = fromUserID AND a.bankName = fromBankName AND a.accType = fromAccType FOR UPDATE;
+    END IF;
+    IF fromBalance IS NULL OR toBalance IS NULL THEN
+   	 SIGNAL SQLSTATE '45000' SET MESSAGE_TEXT = "No such account; transfer failed.";
+    END IF;
+    IF fromBalance < amount THEN
+   	 SIGNAL SQLSTATE '45000' SET MESSAGE_TEXT = "Insufficient funds; transfer failed.";
+    END IF;
+    INSERT INTO Transactions(userID, bankName, accType, transDateTime, location, summary, transType, amount, netBalance) VALUES
+        (fromUserID, fromBankName, fromAccType, NOW(), CONCAT(toBankName, " ", toAccType), "Transfer", "Withdrawal", amount, fromBalance - amount),
+        (toUserID, toBankName, toAccType, NOW(), CONCAT(fromBankName, " ", fromAccType), "Transfer", "Deposit", amount, toBalance + amount);
+    COMMIT;
+END$$
+DELIMITER ;
+
+INSERT INTO SchemaVersion(version, description) VALUES(7, 'Atomic transfers between accounts');
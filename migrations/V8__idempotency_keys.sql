@@ -0,0 +1,113 @@
+/*
+ * Migration 8: idempotency keys for deposits, withdrawals and loans.
+ * Run against an existing bank_system database with the mysql client, e.g. mysql -u root bank_system < V8__idempotency_keys.sql
+ *
+ * A caller whose Deposit, Withdraw or CreateLoan timed out could not tell whether it was applied, and retrying risked
+ * posting it twice. DepositOnce, WithdrawOnce and CreateLoanOnce take a client idempotency key, recorded in
+ * IdempotencyKeys in the same transaction as the call, and answer a repeated key with the original outcome.
+ */
+USE bank_system;
+
+/* Client idempotency keys of deposits, withdrawals and loans, so a retried call is answered with its original outcome
+   instead of being applied twice. idemKey is the first 16 bytes of a SHA-256 of the operation and the client's key;
+   applied is whether the call went through. Rows are purged once older than idempotencyKeyTtlMillis. */
+CREATE TABLE IdempotencyKeys (
+    userID BIGINT UNSIGNED,
+	idemKey BINARY(16),
+	applied BOOLEAN,
+	createdAt TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+	PRIMARY KEY(userID, idemKey),
+	INDEX idx_idempotency_keys_created_at(createdAt)
+);
+
+DROP PROCEDURE IF EXISTS DepositOnce;
+DROP PROCEDURE IF EXISTS WithdrawOnce;
+DROP PROCEDURE IF EXISTS CreateLoanOnce;
+
+DELIMITER $$
+/* The Once procedures run Deposit, Withdraw or CreateLoan at most once per idempotency key. The key is claimed in the
+   same transaction as the call, so a call that fails leaves no key behind and may be retried, and a key that exists was
+   committed together with its call. Each returns (applied, replayed). */
+CREATE PROCEDURE DepositOnce (idemKey BINARY(16), userID BIGINT UNSIGNED, bankName VARCHAR(256), accType VARCHAR(8), transType VARCHAR(10), amount DECIMAL(15, 2))
+BEGIN
+    DECLARE outcome BOOLEAN;
+    DECLARE EXIT HANDLER FOR SQLEXCEPTION
+    BEGIN
+        ROLLBACK;
+        RESIGNAL;
+    END;
+    START TRANSACTION;
+    /* Waits for a call still running with the same key, and then finds its row. */
+    INSERT IGNORE INTO IdempotencyKeys(userID, idemKey) VALUES(userID, idemKey);
+    IF ROW_COUNT() = 0 THEN
+        SELECT k.applied INTO outcome FROM IdempotencyKeys k WHERE k.userID = userID AND k.idemKey = idemKey;
+        COMMIT;
+        SELECT outcome AS applied, TRUE AS replayed;
+    ELSE
+        CALL Deposit(userID, bankName, accType, transType, amount);
+        UPDATE IdempotencyKeys k SET k.applied = TRUE WHERE k.userID = userID AND k.idemKey = idemKey;
+        COMMIT;
+        SELECT TRUE AS applied, FALSE AS replayed;
+    END IF;
+END$$
+CREATE PROCEDURE WithdrawOnce (idemKey BINARY(16), userID BIGINT UNSIGNED, bankName VARCHAR(256), accType VARCHAR(8), transType VARCHAR(10), amount DECIMAL(15, 2))
+BEGIN
+    DECLARE outcome BOOLEAN;
+    /* A refused withdrawal or loan is an outcome too: its key is recorded with applied = FALSE, so a retry returns the refusal. */
+    DECLARE EXIT HANDLER FOR SQLSTATE '45000'
+    BEGIN
+        UPDATE IdempotencyKeys k SET k.applied = FALSE WHERE k.userID = userID AND k.idemKey = idemKey;
+        COMMIT;
+        SELECT FALSE AS applied, FALSE AS replayed;
+    END;
+    DECLARE EXIT HANDLER FOR SQLEXCEPTION
+    BEGIN
+        ROLLBACK;
+        RESIGNAL;
+    END;
+    START TRANSACTION;
+    /* Waits for a call still running with the same key, and then finds its row. */
+    INSERT IGNORE INTO IdempotencyKeys(userID, idemKey) VALUES(userID, idemKey);
+    IF ROW_COUNT() = 0 THEN
+        SELECT k.applied INTO outcome FROM IdempotencyKeys k WHERE k.userID = userID AND k.idemKey = idemKey;
+        COMMIT;
+        SELECT outcome AS applied, TRUE AS replayed;
+    ELSE
+        CALL Withdraw(userID, bankName, accType, transType, amount);
+        UPDATE IdempotencyKeys k SET k.applied = TRUE WHERE k.userID = userID AND k.idemKey = idemKey;
+        COMMIT;
+        SELECT TRUE AS applied, FALSE AS replayed;
+    END IF;
+END$$
+CREATE PROCEDURE CreateLoanOnce (idemKey BINARY(16), userID BIGINT UNSIGNED, bankName VARCHAR(256), accType VARCHAR(8), amount DECIMAL(15, 2))
+BEGIN
+    DECLARE outcome BOOLEAN;
+    /* A refused withdrawal or loan is an outcome too: its key is recorded with applied = FALSE, so a retry returns the refusal. */
+    DECLARE EXIT HANDLER FOR SQLSTATE '45000'
+    BEGIN
+        UPDATE IdempotencyKeys k SET k.applied = FALSE WHERE k.userID = userID AND k.idemKey = idemKey;
+        COMMIT;
+        SELECT FALSE AS applied, FALSE AS replayed;
+    END;
+    DECLARE EXIT HANDLER FOR SQLEXCEPTION
+    BEGIN
+        ROLLBACK;
+        RESIGNAL;
+    END;
+    START TRANSACTION;
+    /* Waits for a call still running with the same key, and then finds its row. */
+    INSERT IGNORE INTO IdempotencyKeys(userID, idemKey) VALUES(userID, idemKey);
+    IF ROW_COUNT() = 0 THEN
+        SELECT k.applied INTO outcome FROM IdempotencyKeys k WHERE k.userID = userID AND k.idemKey = idemKey;
+        COMMIT;
+        SELECT outcome AS applied, TRUE AS replayed;
+    ELSE
+        CALL CreateLoan(userID, bankName, accType, amount);
+        UPDATE IdempotencyKeys k SET k.applied = TRUE WHERE k.userID = userID AND k.idemKey = idemKey;
+        COMMIT;
+        SELECT TRUE AS applied, FALSE AS replayed;
+    END IF;
+END$$
+DELIMITER ;
+
+INSERT INTO SchemaVersion(version, description) VALUES(8, 'Idempotency keys for deposits, withdrawals and loans');
@@ -0,0 +1,98 @@
+/*
+ * Migration 9: monthly statement rollup.
+ * Run against an existing bank_system database with the mysql client, e.g. mysql -u root bank_system < V9__monthly_statements.sql
+ *
+ * MonthlyStatements holds each account's opening and closing balance, transaction count and deposit and withdrawal
+ * totals per month, maintained by the Transactions trigger as rows post. Existing history is not rolled up by this
+ * script; afterwards run the app once with --backfill-statements, which calls BackfillMonthlyStatements a chunk of users
+ * at a time.
+ */
+USE bank_system;
+
+/* Per account per month rollup of Transactions, kept current by update_account_on_new_transaction, so a monthly
+   statement is one primary key lookup. month is the first day of the month. openingBalance is the balance before the
+   month's first transaction and closingBalance the balance after its last; loans are not transactions and move the
+   balance between statements. BackfillMonthlyStatements rebuilds it from existing history. */
+CREATE TABLE MonthlyStatements (
+    userID BIGINT UNSIGNED, bankName VARCHAR(256), accType VARCHAR(8),
+	month DATE,
+	openingBalance DECIMAL(15, 2),
+	closingBalance DECIMAL(15, 2),
+	transCount INT UNSIGNED,
+	depositTotal DECIMAL(15, 2),
+	withdrawalTotal DECIMAL(15, 2),
+	PRIMARY KEY(userID, bankName, accType, month),
+	FOREIGN KEY(userID, bankName, accType) REFERENCES Accounts(userID, bankName, accType) ON DELETE CASCADE
+);
+
+DROP PROCEDURE IF EXISTS GetMonthlyStatement;
+DROP PROCEDURE IF EXISTS BackfillMonthlyStatements;
+DROP TRIGGER IF EXISTS update_account_on_new_transaction;
+
+DELIMITER $$
+CREATE PROCEDURE GetMonthlyStatement (userID BIGINT UNSIGNED, bankName VARCHAR(256), accType VARCHAR(8), filterDate DATE)
+BEGIN
+    SELECT m.month, m.openingBalance, m.closingBalance, m.transCount, m.depositTotal, m.withdrawalTotal
+    FROM MonthlyStatements m
+    WHERE m.userID = userID AND m.bankName = bankName AND m.accType = accType AND m.month = filterDate;
+END$$
+/* Rebuilds the monthly statements of the next chunkSize users after afterUserID from their transactions, taking each
+   month's first and last transaction by transID. lastUserID returns the checkpoint to continue from, or null once every
+   user has been backfilled. Safe to run while transactions post, since rows it reads are locked until it commits. */
+CREATE PROCEDURE BackfillMonthlyStatements (afterUserID BIGINT UNSIGNED, chunkSize INT, OUT lastUserID BIGINT UNSIGNED, OUT statements INT)
+BEGIN
+    SELECT MAX(c.userID) INTO lastUserID
+    FROM (SELECT u.userID FROM Users u WHERE u.userID > afterUserID ORDER BY u.userID LIMIT chunkSize) c;
+    SET statements = 0;
+    IF lastUserID IS NOT NULL THEN
+        INSERT INTO MonthlyStatements(userID, bankName, accType, month, openingBalance, closingBalance, transCount, depositTotal, withdrawalTotal)
+        SELECT * FROM (
+            SELECT g.userID, g.bankName, g.accType, g.month,
+                IF(f.transType = "Withdrawal", f.netBalance + f.amount, f.netBalance - f.amount) AS openingBalance,
+                l.netBalance AS closingBalance, g.transCount, g.depositTotal, g.withdrawalTotal
+            FROM (
+                SELECT t.userID, t.bankName, t.accType, DATE_FORMAT(t.transDateTime, "%Y-%m-01") AS month, COUNT(*) AS transCount,
+                    SUM(IF(t.transType = "Withdrawal", 0, t.amount)) AS depositTotal,
+                    SUM(IF(t.transType = "Withdrawal", t.amount, 0)) AS withdrawalTotal,
+                    MIN(t.transID) AS firstID, MAX(t.transID) AS lastID
+                FROM Transactions t
+                WHERE t.userID > afterUserID AND t.userID <= lastUserID
+                GROUP BY t.userID, t.bankName, t.accType, month
+            ) g
+            JOIN Transactions f ON f.transID = g.firstID
+            JOIN Transactions l ON l.transID = g.lastID
+        ) s
+        ON DUPLICATE KEY UPDATE openingBalance = s.openingBalance, closingBalance = s.closingBalance, transCount = s.transCount,
+            depositTotal = s.depositTotal, withdrawalTotal = s.withdrawalTotal;
+        SET statements = ROW_COUNT();
+    END IF;
+END$$
+CREATE TRIGGER update_account_on_new_transaction
+AFTER INSERT ON Transactions
+FOR EACH ROW
+BEGIN
+    DECLARE closing DECIMAL(15, 2);
+    IF new.transType = "Withdrawal" THEN
+   	 /* Conditional on the balance, so no path that inserts a withdrawal can overdraw the account. */
+   	 UPDATE Accounts a SET a.balance = a.balance - new.amount
+   	 WHERE a.userID = new.userID AND a.bankName = new.bankName AND a.accType = new.accType AND a.balance >= new.amount;
+   	 IF ROW_COUNT() = 0 AND new.amount <> 0 THEN
+   		 SIGNAL SQLSTATE '45000' SET MESSAGE_TEXT = "Insufficient funds; withdrawal failed.";
+   	 END IF;
+    ELSE
+   	 UPDATE Accounts a SET a.balance = a.balance + new.amount
+   	 WHERE a.userID = new.userID AND a.bankName = new.bankName AND a.accType = new.accType;
+    END IF;
+    /* Roll the transaction into its month's statement, from the balance just updated. */
+    SELECT a.balance INTO closing FROM Accounts a WHERE a.userID = new.userID AND a.bankName = new.bankName AND a.accType = new.accType;
+    INSERT INTO MonthlyStatements(userID, bankName, accType, month, openingBalance, closingBalance, transCount, depositTotal, withdrawalTotal)
+    VALUES(new.userID, new.bankName, new.accType, DATE_FORMAT(new.transDateTime, "%Y-%m-01"),
+   	 IF(new.transType = "Withdrawal", closing + new.amount, closing - new.amount), closing, 1,
+   	 IF(new.transType = "Withdrawal", 0, new.amount), IF(new.transType = "Withdrawal", new.amount, 0))
+    ON DUPLICATE KEY UPDATE closingBalance = closing, transCount = transCount + 1,
+   	 depositTotal = depositTotal + IF(new.transType = "Withdrawal", 0, new.amount),
+   	 withdrawalTotal = withdrawalTotal + IF(new.transType = "Withdrawal", new.amount, 0);
+END $$
+DELIMITER ;
+
+INSERT INTO SchemaVersion(version, description) VALUES(9, 'Monthly statement rollup');
@@ -6,9 +6,9 @@ import java.util.List;
 public class Account {
 	private String firstName;
 	private String accType;
-	private float balance;
+	private long balance;
 	
-	public Account(String firstName, String accType, float balance) {
+	public Account(String firstName, String accType, long balance) {
 		this.setFirstName(firstName);
 		this.setAccType(accType);
 		this.setBalance(balance);
@@ -22,11 +22,11 @@ public class Account {
 		this.firstName = firstName;
 	}
 
-	public float getBalance() {
+	public long getBalance() {
 		return balance;
 	}
 
-	public void setBalance(float balance) {
+	public void setBalance(long balance) {
 		this.balance = balance;
 	}
 
@@ -46,7 +46,7 @@ public class Account {
 	 * @param userID The users ID
 	 * @return Return boolean true if the bank account is created
 	 */
-	public static boolean createBankAccount(Connection conn, String bankName, String accType , int userID) {
+	public static boolean createBankAccount(Connection conn, String bankName, String accType , long userID) {
 		return Database.createBankAccount(conn, bankName, accType, userID);
 	}
 	
@@ -56,7 +56,7 @@ public class Account {
 	 * @param userID The users ID
 	 * @return Return list of all user accounts for a particular bank
 	 */
-	public static List<Account> getAllUserBankAccountsAtBank(Connection conn, String bankName, int userID) {
+	public static List<Account> getAllUserBankAccountsAtBank(Connection conn, String bankName, long userID) {
 		return Database.getAllUserBankAccountsAtBank(conn, bankName, userID);
 	}
 	
@@ -65,9 +65,9 @@ public class Account {
 	 * @param bankName The banks name
 	 * @param accType The account type
 	 * @param userID The users ID
-	 * @return Return the balance of a particular bank account
+	 * @return Return the balance in cents of a particular bank account
 	 */
-	public static float getBankAccountBalance(Connection conn, String bankName, String accType, int userID) {
+	public static long getBankAccountBalance(Connection conn, String bankName, String accType, long userID) {
 		return Database.getBankAccountBalance(conn, bankName, accType, userID);
 	}
 
@@ -78,16 +78,25 @@ public class Account {
 	 * @param userID The users ID
 	 * @return Return boolean true if the bank account is deleted
 	 */
-	public static boolean deleteBankAccount(Connection conn, String bankName, String accType, int userID) {
+	public static boolean deleteBankAccount(Connection conn, String bankName, String accType, long userID) {
 		return Database.deleteBankAccount(conn, bankName, accType, userID);
 	}
 
 	/**
 	 * @param conn The MySql connection
 	 * @param userID The users Id
-	 * @return Return the net worth of a particular user across all of their bank accounts
+	 * @return Return the net worth in cents of a particular user across all of their bank accounts
 	 */
-	public static float calculateNetWorth(Connection conn, int userID) {
+	public static long calculateNetWorth(Connection conn, long userID) {
 		return Database.calculateNetWorth(conn, userID);
 	}
+
+	/**
+	 * @param conn The MySql connection
+	 * @param userID The users Id
+	 * @return Return every account of the user at every bank, with balances, outstanding loans and net worth, in one query. Returns null if the query fails.
+	 */
+	public static Portfolio getPortfolio(Connection conn, long userID) {
+		return Database.getPortfolio(conn, userID);
+	}
 }
@@ -0,0 +1,76 @@
+package sjsu.cs157a.bankingsystem;
+
+/**
+ * Identifies a bank account by its primary key in the Accounts table: (userID, bankName, accType).
+ * Keys order by userID, then bankName, then accType.
+ */
+public final class AccountKey implements Comparable<AccountKey> {
+	private final long userID;
+	private final String bankName;
+	private final String accType;
+	private final int hash;
+
+	/**
+	 * @param userID The users ID
+	 * @param bankName The banks name
+	 * @param accType The account type
+	 */
+	public AccountKey(long userID, String bankName, String accType) {
+		this.userID = userID;
+		this.bankName = bankName;
+		this.accType = accType;
+		int h = Long.hashCode(userID);
+		h = 31 * h + (bankName == null ? 0 : bankName.hashCode());
+		h = 31 * h + (accType == null ? 0 : accType.hashCode());
+		this.hash = h;
+	}
+
+	public long getUserID() { return userID; }
+	public String getBankName() { return bankName; }
+	public String getAccType() { return accType; }
+
+	@Override
+	public int compareTo(AccountKey other) {
+		int c = Long.compare(userID, other.userID);
+		if (c == 0) {
+			c = compare(bankName, other.bankName);
+		}
+		if (c == 0) {
+			c = compare(accType, other.accType);
+		}
+		return c;
+	}
+
+	private static int compare(String a, String b) {
+		if (a == null) {
+			return b == null ? 0 : -1;
+		}
+		return b == null ? 1 : a.compareTo(b);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof AccountKey)) {
+			return false;
+		}
+		AccountKey other = (AccountKey) obj;
+		return userID == other.userID && hash == other.hash && equal(bankName, other.bankName) && equal(accType, other.accType);
+	}
+
+	private static boolean equal(String a, String b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return userID + "/" + bankName + "/" + accType;
+	}
+}
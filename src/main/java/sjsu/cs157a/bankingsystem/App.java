@@ -5,8 +5,6 @@ import java.time.LocalDate;
 import java.time.LocalTime;
 import java.util.List;
 import java.util.Scanner;
-import java.util.Timer;
-import java.util.TimerTask;
 
 /**
  * Hello world!
@@ -15,27 +13,47 @@ import java.util.TimerTask;
 public class App {
 	public static void main( String[] args ) throws Exception
     {
-    	// Prepare MySQL connection.
-        final Connection conn = SQLConnector.getInstance().getConnection();
-        if (conn == null) {
-            System.out.println( "No connection to local MySQL server. Please try again later." );
-            throw new SQLException();
+    	// Serve many users over HTTP instead of one on the console.
+    	if (args.length > 0 && args[0].equals("--server")) {
+    		SessionServer.main(args);
+    		return;
+    	}
+    	// Roll the existing transaction history up into monthly statements, once after upgrading to schema version 9.
+    	if (args.length > 0 && args[0].equals("--backfill-statements")) {
+    		try (Connection backfillConn = SQLConnector.getInstance().getConnection()) {
+    			long statements = backfillConn == null ? -1 : Database.backfillMonthlyStatements(backfillConn, Config.getInt("backfillChunkSize", 500));
+    			System.out.println(statements < 0 ? "Backfill failed; run it again to finish." : "Backfilled " + statements + " monthly statements.");
+    		}
+    		SQLConnector.getInstance().shutdown();
+    		return;
+    	}
+    	// Prepare MySQL connection pool.
+        final SQLConnector connector = SQLConnector.getInstance();
+        try (Connection conn = connector.getConnection()) {
+            if (conn == null) {
+                System.out.println( "No connection to local MySQL server. Please try again later." );
+                throw new SQLException();
+            }
+            else {
+            	System.out.println( "Connection to MySQL ready." );	
+            }
         }
-        else {
-        	System.out.println( "Connection to MySQL ready." );	
+        // Every call below borrows a pooled connection only for its own duration, never across a prompt.
+        // With writeBehind set, postings are acknowledged from the local log and flushed to MySQL in the background.
+        boolean writeBehindMode = Config.getBoolean("writeBehind", false);
+        final WriteBehindStorage writeBehind = writeBehindMode ? WriteBehindStorage.start(connector) : null;
+        if (writeBehindMode && writeBehind == null) {
+        	System.out.println( "The write-behind log could not be recovered. Please try again later." );
+        	throw new SQLException();
         }
+        final StorageBackend storage = writeBehind != null ? writeBehind : new MySQLStorage(connector);
         
-        Timer timer = new Timer();
-        timer.schedule(new TimerTask() {
-          @Override
-          public void run() {
-        	  User.archiveUsers(conn);
-          }
-        }, 0, 1000*60);
+        // Archive stale users in the background, in throttled chunks on the archiver's own thread and connection.
+        UserArchiver archiver = UserArchiver.start(connector);
 
         
         // User state.   
-        int userID = -1;
+        long userID = -1;
         String firstName = null;
         String lastName = null;
         String email = null;
@@ -57,8 +75,11 @@ public class App {
                 	email = scanner.nextLine();
                 	System.out.println("Please input your password.");
                 	pw = scanner.nextLine();
-                	userID = User.login(conn, email, pw);
-                	if (userID == -1) {
+                	userID = User.login(storage, email, pw);
+                	if (userID == -4) {
+                		System.out.println("The banking system is busy. Please try again.");
+                	}
+                	else if (userID == -1) {
                 		System.out.println("The given email and password do not match for any user within the banking system. Please try again.");
                 	}
                 	else {
@@ -78,10 +99,13 @@ public class App {
                 	email = scanner.nextLine();
                 	System.out.println("Please input your password.");
                 	pw = scanner.nextLine();
-                	userID = User.register(conn, firstName, lastName, email, pw);
+                	userID = User.register(storage, firstName, lastName, email, pw);
                 	if (userID == -2) {
                 		System.out.println("Given email is already in use.");
                 	}
+                	if (userID == -4) {
+                		System.out.println("The banking system is busy.");
+                	}
                 	if (userID < 0) {
                 		System.out.println("Registration failed. Please try again.");
                 	}
@@ -100,6 +124,10 @@ public class App {
         	}
         }    
         
+        // Sign the user in, so every action below is checked against a session that can expire or be revoked.
+        SessionCache sessions = SessionCache.getInstance();
+        String token = loggedIn ? sessions.open(userID, email).getToken() : null;
+        
         // Logged in message.
         if (loggedIn) {
         	System.out.println("Welcome to your personal banking tracker, " + email + ". Today is " + date + ". It is currently " + time + ".");
@@ -109,7 +137,12 @@ public class App {
         // Banking system usage loop.
         while (loggedIn) {
             System.out.println("Accounts (1) | Transactions (2) | Loans (3) | Banks (4) | Delete User (8) | Sign Out (0)");
-            switch (scanner.nextLine()) {
+            String action = scanner.nextLine();
+            if (sessions.validate(token) == null) {
+            	System.out.println("Your session has expired. Please log in again.");
+            	break;
+            }
+            switch (action) {
             case "1":
             	List<Account> userBankAccounts;
             	List<Transaction> transactions;
@@ -117,12 +150,12 @@ public class App {
             	List<Loan> loans;
             	String bankName;
             	Account account;
-            	float amount;
+            	long amount;
             	System.out.println("Please input a number from 1~4 to select an action.");
-            	System.out.println("Create Bank Account (1) | Delete Bank Account (2) | Show Accounts at a Given Bank (3) | Check Account Balance (4) | Calculate Your Net Worth (5)");
+            	System.out.println("Create Bank Account (1) | Delete Bank Account (2) | Show Accounts at a Given Bank (3) | Check Account Balance (4) | Calculate Your Net Worth (5) | Show All Balances (6)");
             	switch (scanner.nextLine()) {
                 case "1":
-                	banks = Bank.getAllBanks(conn);
+                	banks = storage.getAllBanks();
                 	
                 	if(banks.size() == 0) {
                 		System.out.println("There are no banks in the system. To create an account first create a bank.");
@@ -139,52 +172,52 @@ public class App {
 	                	System.out.println("Please input the number of the account type you would like to open.");
 	                	System.out.println("Checking (1) | Saving (2) | Loan (3)");
 	                	String accType = accountTypes[scanner.nextInt() - 1];
-	                	Account.createBankAccount(conn, bankName, accType, userID); 
+	                	storage.createBankAccount(bankName, accType, userID); 
                 	}
                 	break;
                 case "2":
-                	banks = Bank.getAllBanks(conn);
+                	banks = storage.getAllBanks();
                 	
                 	for(int i = 0; i < banks.size(); i++) {
                 		System.out.println("(" + (i + 1) + ") " + banks.get(i).getBankName());
                 	}
                 	System.out.println("\nPlease input the number of the bank where you would like to delete an account.");
                 	bankName = banks.get(scanner.nextInt() - 1).getBankName();
-                	userBankAccounts = Account.getAllUserBankAccountsAtBank(conn, bankName, userID);
+                	userBankAccounts = storage.getAllUserBankAccountsAtBank(bankName, userID);
                 	
                 	for(int i = 0; i < userBankAccounts.size(); i++) {
-                		System.out.println("(" + (i + 1) + ")" + " " + userBankAccounts.get(i).getAccType() + " $" + userBankAccounts.get(i).getBalance());
+                		System.out.println("(" + (i + 1) + ")" + " " + userBankAccounts.get(i).getAccType() + " $" + Money.format(userBankAccounts.get(i).getBalance()));
                 	}
                 	
                 	System.out.println("\nPlease input the number of the account you would like to delete.");
                 	account = userBankAccounts.get(scanner.nextInt() - 1);
                 	
-                	Account.deleteBankAccount(conn, bankName, account.getAccType(), userID);
+                	storage.deleteBankAccount(bankName, account.getAccType(), userID);
                 	System.out.println("Your " + bankName + " " + account.getAccType() + " account has been deleted.");
                 	break;
                 case "3":
-                	banks = Bank.getAllBanks(conn);
+                	banks = storage.getAllBanks();
                 	
                 	for(int i = 0; i < banks.size(); i++) {
                 		System.out.println("(" + (i + 1) + ") " + banks.get(i).getBankName());
                 	}
                 	System.out.println("\nPlease input the number of the bank where you would like to view your view your accounts.");
                 	bankName = banks.get(scanner.nextInt() - 1).getBankName();
-                	userBankAccounts = Account.getAllUserBankAccountsAtBank(conn, bankName, userID);
+                	userBankAccounts = storage.getAllUserBankAccountsAtBank(bankName, userID);
                 	
                 	for(int i = 0; i < userBankAccounts.size(); i++) {
                 		System.out.println("(" + (i + 1) + ")" + " " + userBankAccounts.get(i).getAccType() + " account under user " + userBankAccounts.get(i).getFirstName());
                 	}
                 	break;
                 case "4":
-                	banks = Bank.getAllBanks(conn);
+                	banks = storage.getAllBanks();
                 	
                 	for(int i = 0; i < banks.size(); i++) {
                 		System.out.println("(" + (i + 1) + ") " + banks.get(i).getBankName());
                 	}
                 	System.out.println("\nPlease input the number of the bank where you would like to check an account balance.");
                 	bankName = banks.get(scanner.nextInt() - 1).getBankName();
-                	userBankAccounts = Account.getAllUserBankAccountsAtBank(conn, bankName, userID);
+                	userBankAccounts = storage.getAllUserBankAccountsAtBank(bankName, userID);
                 	
                 	for(int i = 0; i < userBankAccounts.size(); i++) {
                 		System.out.println("(" + (i + 1) + ")" + " " + userBankAccounts.get(i).getAccType());
@@ -193,27 +226,43 @@ public class App {
                 	System.out.println("\nPlease input the number of the account whos balance you would like to check.");
                 	account = userBankAccounts.get(scanner.nextInt() - 1);
                 	
-                	System.out.println("Balance of " + bankName + " " + account.getAccType() + " account: $" + Account.getBankAccountBalance(conn, bankName, account.getAccType(), userID));
+                	System.out.println("Balance of " + bankName + " " + account.getAccType() + " account: $" + Money.format(storage.getBankAccountBalance(bankName, account.getAccType(), userID)));
                 	
                 	break;
                 case "5":
-                	System.out.println("Your net worth across your accounts: $" + Account.calculateNetWorth(conn, userID));
+                	System.out.println("Your net worth across your accounts: $" + Money.format(storage.calculateNetWorth(userID)));
+                	break;
+                case "6":
+                	Portfolio portfolio = storage.getPortfolio(userID);
+                	if (portfolio == null) {
+                		System.out.println("Your balances could not be retrieved. Please try again.");
+                		break;
+                	}
+                	if (portfolio.getHoldings().isEmpty()) {
+                		System.out.println("You have no accounts.");
+                		break;
+                	}
+                	for (Portfolio.Holding holding : portfolio.getHoldings()) {
+                		String loansTaken = holding.getOutstandingLoans() == 0 ? "" : " | Loans taken: $" + Money.format(holding.getOutstandingLoans());
+                		System.out.println(holding.getBankName() + " " + holding.getAccType() + " $" + Money.format(holding.getBalance()) + loansTaken);
+                	}
+                	System.out.println("Your net worth across your accounts: $" + Money.format(portfolio.getNetWorth()));
                 	break;
             	}
             	break; 
 	        case "2":
-		    	System.out.println("Please input a number from 1~4 to select an action.");
-		    	System.out.println("Deposit (1) | Withdraw (2) | Check Latest Transactions (3) | Check Transactions for a Month (4)");
+		    	System.out.println("Please input a number from 1~5 to select an action.");
+		    	System.out.println("Deposit (1) | Withdraw (2) | Check Latest Transactions (3) | Check Transactions for a Month (4) | Transfer Between Accounts (5)");
             	switch (scanner.nextLine()) {
             	case "1":
-                	banks = Bank.getAllBanks(conn);
+                	banks = storage.getAllBanks();
                 	
                 	for(int i = 0; i < banks.size(); i++) {
                 		System.out.println("(" + (i + 1) + ") " + banks.get(i).getBankName());
                 	}
                 	System.out.println("\nPlease input the number of the bank where you would like to deposit.");
                 	bankName = banks.get(scanner.nextInt() - 1).getBankName();
-                	userBankAccounts = Account.getAllUserBankAccountsAtBank(conn, bankName, userID);
+                	userBankAccounts = storage.getAllUserBankAccountsAtBank(bankName, userID);
                 	
                 	for(int i = 0; i < userBankAccounts.size(); i++) {
                 		System.out.println("(" + (i + 1) + ")" + " " + userBankAccounts.get(i).getAccType());
@@ -222,72 +271,100 @@ public class App {
                 	System.out.println("\nPlease input the number of the account you would like to deposit into.");
                 	account = userBankAccounts.get(scanner.nextInt() - 1);
                 	System.out.println("\nPlease input the amount you would like to deposit.");
-                	amount = scanner.nextFloat();
-                	Transaction.deposit(conn, userID, bankName, account.getAccType(), "Deposit", amount);
-                	System.out.println("Deposit complete");
+                	amount = Money.parse(scanner.next());
+                	if (amount <= 0) {
+                		System.out.println("The amount must be positive.");
+                		break;
+                	}
+                	try {
+	                	if (storage.deposit(userID, bankName, account.getAccType(), "Deposit", amount)) {
+	                		System.out.println("Deposit complete");
+	                	}
+	                	else {
+	                		System.out.println("Deposit failed. Your balance has not changed.");
+	                	}
+                	}
+                	catch (IllegalStateException e) {
+                		// The write-behind log could not make the posting durable.
+                		System.out.println("Deposit failed: " + e.getMessage());
+                	}
             		break;
             	case "2":
-            		banks = Bank.getAllBanks(conn);
+            		banks = storage.getAllBanks();
                 	
                 	for(int i = 0; i < banks.size(); i++) {
                 		System.out.println("(" + (i + 1) + ") " + banks.get(i).getBankName());
                 	}
                 	System.out.println("\nPlease input the number of the bank where you would like to withdraw.");
                 	bankName = banks.get(scanner.nextInt() - 1).getBankName();
-                	userBankAccounts = Account.getAllUserBankAccountsAtBank(conn, bankName, userID);
+                	userBankAccounts = storage.getAllUserBankAccountsAtBank(bankName, userID);
                 	
                 	for(int i = 0; i < userBankAccounts.size(); i++) {
-                		System.out.println("(" + (i + 1) + ")" + " " + userBankAccounts.get(i).getAccType() + " $" + userBankAccounts.get(i).getBalance());
+                		System.out.println("(" + (i + 1) + ")" + " " + userBankAccounts.get(i).getAccType() + " $" + Money.format(userBankAccounts.get(i).getBalance()));
                 	}
                 	
                 	System.out.println("\nPlease input the number of the account you would like to withdraw from.");
                 	account = userBankAccounts.get(scanner.nextInt() - 1);
                 	System.out.println("\nPlease input the amount you would like to withdraw.");
-                	amount = scanner.nextFloat();
-                	Transaction.withdraw(conn, userID, bankName, account.getAccType(), "Withdraw", amount);
-                	System.out.println("Withdraw complete");
+                	amount = Money.parse(scanner.next());
+                	if (amount <= 0) {
+                		System.out.println("The amount must be positive.");
+                		break;
+                	}
+                	try {
+	                	if (storage.withdraw(userID, bankName, account.getAccType(), "Withdraw", amount)) {
+	                		System.out.println("Withdraw complete");
+	                	}
+	                	else {
+	                		System.out.println("Withdraw failed. Your balance has not changed.");
+	                	}
+                	}
+                	catch (IllegalStateException e) {
+                		// The write-behind log could not make the posting durable.
+                		System.out.println("Withdraw failed: " + e.getMessage());
+                	}
             		break;
             	case "3":
-            		banks = Bank.getAllBanks(conn);
+            		banks = storage.getAllBanks();
                 	
                 	for(int i = 0; i < banks.size(); i++) {
                 		System.out.println("(" + (i + 1) + ") " + banks.get(i).getBankName());
                 	}
                 	System.out.println("\nPlease input the number of the bank your account is from.");
                 	bankName = banks.get(scanner.nextInt() - 1).getBankName();
-                	userBankAccounts = Account.getAllUserBankAccountsAtBank(conn, bankName, userID);
+                	userBankAccounts = storage.getAllUserBankAccountsAtBank(bankName, userID);
                 	if (userBankAccounts.size() == 0) {
                 		System.out.println("You have no accounts at this bank.");
                 		break;
                 	}
                 	
                 	for(int i = 0; i < userBankAccounts.size(); i++) {
-                		System.out.println("(" + (i + 1) + ")" + " " + userBankAccounts.get(i).getAccType() + " $" + userBankAccounts.get(i).getBalance());
+                		System.out.println("(" + (i + 1) + ")" + " " + userBankAccounts.get(i).getAccType() + " $" + Money.format(userBankAccounts.get(i).getBalance()));
                 	}
                 	
                 	System.out.println("\nPlease input the number of the account you would like to use.");
                 	account = userBankAccounts.get(scanner.nextInt() - 1);  
             		
-            		transactions = Transaction.getRecentTransactions(conn, userID, bankName, account.getAccType());
+            		transactions = storage.getRecentTransactions(userID, bankName, account.getAccType());
                 	for(Transaction t : transactions) {
-                		System.out.println("ID: " + t.getTransId() + " | Date: " + t.getTransDateTime() + " | Location: " + t.getLocation() + " | Summary: " + t.getSummary() + " | Type: " + t.getAmount() + " | Amount: $" + t.getAmount() + " | Net Balance: $" + t.getNetBalance());
+                		System.out.println("ID: " + t.getTransId() + " | Date: " + t.getTransDateTime() + " | Location: " + t.getLocation() + " | Summary: " + t.getSummary() + " | Type: " + t.getTransType() + " | Amount: $" + Money.format(t.getAmount()) + " | Net Balance: $" + Money.format(t.getNetBalance()));
                 	}
                 	break;
             	case "4":
-            		banks = Bank.getAllBanks(conn);
+            		banks = storage.getAllBanks();
                 	
                 	for(int i = 0; i < banks.size(); i++) {
                 		System.out.println("(" + (i + 1) + ") " + banks.get(i).getBankName());
                 	}
                 	System.out.println("\nPlease input the number of the bank your account is from.");
                 	bankName = banks.get(scanner.nextInt() - 1).getBankName();
-                	userBankAccounts = Account.getAllUserBankAccountsAtBank(conn, bankName, userID);
+                	userBankAccounts = storage.getAllUserBankAccountsAtBank(bankName, userID);
                 	if (userBankAccounts.size() == 0) {
                 		System.out.println("You have no accounts at this bank.");
                 		break;
                 	}
                 	for(int i = 0; i < userBankAccounts.size(); i++) {
-                		System.out.println("(" + (i + 1) + ")" + " " + userBankAccounts.get(i).getAccType() + " $" + userBankAccounts.get(i).getBalance());
+                		System.out.println("(" + (i + 1) + ")" + " " + userBankAccounts.get(i).getAccType() + " $" + Money.format(userBankAccounts.get(i).getBalance()));
                 	}           	
                 	System.out.println("\nPlease input the number of the account you would like to use.");
                 	account = userBankAccounts.get(scanner.nextInt() - 1);
@@ -298,9 +375,52 @@ public class App {
             		int year = scanner.nextInt();
             		LocalDate filterDate = LocalDate.of(year, month, 1);
             		
-            		transactions = Transaction.getMonthlyTransactions(conn, userID, bankName, account.getAccType(), filterDate);
+            		MonthlyStatement statement = storage.getMonthlyStatement(userID, bankName, account.getAccType(), filterDate);
+            		if (statement == null) {
+            			System.out.println("There were no transactions in " + filterDate.getMonth() + " " + year + ".");
+            			break;
+            		}
+            		System.out.println("Opening Balance: $" + Money.format(statement.getOpeningBalance()) + " | Deposits: $" + Money.format(statement.getDepositTotal()) + " | Withdrawals: $" + Money.format(statement.getWithdrawalTotal()) + " | Closing Balance: $" + Money.format(statement.getClosingBalance()) + " | Transactions: " + statement.getTransCount());
+            		System.out.println("\nWould you like to see each transaction? (y/n)");
+            		if (!scanner.next().equalsIgnoreCase("y")) {
+            			break;
+            		}
+            		transactions = storage.getMonthlyTransactions(userID, bankName, account.getAccType(), filterDate);
                 	for(Transaction t : transactions) {
-                		System.out.println("ID: " + t.getTransId() + " | Date: " + t.getTransDateTime() + " | Location: " + t.getLocation() + " | Summary: " + t.getSummary() + " | Type: " + t.getAmount() + " | Amount: $" + t.getAmount() + " | Net Balance: $" + t.getNetBalance());
+                		System.out.println("ID: " + t.getTransId() + " | Date: " + t.getTransDateTime() + " | Location: " + t.getLocation() + " | Summary: " + t.getSummary() + " | Type: " + t.getTransType() + " | Amount: $" + Money.format(t.getAmount()) + " | Net Balance: $" + Money.format(t.getNetBalance()));
+                	}
+            		break;
+            	case "5":
+            		Portfolio holdings = storage.getPortfolio(userID);
+            		if (holdings == null || holdings.getHoldings().size() < 2) {
+            			System.out.println("You need at least two accounts to transfer between.");
+            			break;
+            		}
+            		for(int i = 0; i < holdings.getHoldings().size(); i++) {
+            			Portfolio.Holding holding = holdings.getHoldings().get(i);
+            			System.out.println("(" + (i + 1) + ") " + holding.getBankName() + " " + holding.getAccType() + " $" + Money.format(holding.getBalance()));
+            		}
+            		System.out.println("\nPlease input the number of the account you would like to transfer from.");
+            		Portfolio.Holding from = holdings.getHoldings().get(scanner.nextInt() - 1);
+            		System.out.println("\nPlease input the number of the account you would like to transfer to.");
+            		Portfolio.Holding to = holdings.getHoldings().get(scanner.nextInt() - 1);
+                	System.out.println("\nPlease input the amount you would like to transfer.");
+                	amount = Money.parse(scanner.next());
+                	if (amount <= 0) {
+                		System.out.println("The amount must be positive.");
+                		break;
+                	}
+                	try {
+	                	if (storage.transfer(new AccountKey(userID, from.getBankName(), from.getAccType()), new AccountKey(userID, to.getBankName(), to.getAccType()), amount)) {
+	                		System.out.println("Transfer complete");
+	                	}
+	                	else {
+	                		System.out.println("Transfer failed. Your balances have not changed.");
+	                	}
+                	}
+                	catch (IllegalStateException e) {
+                		// The write-behind log could not make the posting durable.
+                		System.out.println("Transfer failed: " + e.getMessage());
                 	}
             		break;
             	}
@@ -310,19 +430,19 @@ public class App {
 		    	System.out.println("Show Loans (1) | Open New Loan (2)");
             	switch (scanner.nextLine()) {
             	case "1":
-                	loans = Loan.getLoans(conn, userID);
+                	loans = storage.getLoans(userID);
                 	
                 	if(loans.size() == 0) {
                 		System.out.println("You do not have any loans.");
                 	}
                 	else {
                 		for(int i = 0; i < loans.size(); i++) {
-                			System.out.println("(" + (i + 1) + ")" + " " + loans.get(i).getBankName() + " $" +loans.get(i).getAmount());
+                			System.out.println("(" + (i + 1) + ")" + " " + loans.get(i).getBankName() + " $" + Money.format(loans.get(i).getAmount()));
                 		}
                 	}
             		break;
             	case "2":
-            		banks = Bank.getAllBanks(conn);
+            		banks = storage.getAllBanks();
                 	
                 	if(banks.size() == 0) {
                 		System.out.println("There are no banks in the system. To create an account first create a bank.");
@@ -335,9 +455,17 @@ public class App {
 	                	System.out.println("\nPlease input the number of the bank where you would like to open a loan.");
 	                	bankName = banks.get(scanner.nextInt() - 1).getBankName();
 	                	System.out.println("\nPlease input the amount of the loan.");
-	                	amount = scanner.nextFloat();
-	                	Loan.createLoan(conn, userID, bankName, amount);
-	                	System.out.println("Loan successfully taken out from " + bankName + " for $" + amount);
+	                	amount = Money.parse(scanner.next());
+	                	if (amount <= 0) {
+	                		System.out.println("The amount must be positive.");
+	                		break;
+	                	}
+	                	if (storage.createLoan(userID, bankName, amount)) {
+	                		System.out.println("Loan successfully taken out from " + bankName + " for $" + Money.format(amount));
+	                	}
+	                	else {
+	                		System.out.println("The loan could not be taken out.");
+	                	}
                 	}
             		break;
             	}
@@ -347,7 +475,7 @@ public class App {
 		    	System.out.println("Check Bank Balance (1) | Create Bank (2)");
             	switch (scanner.nextLine()) {
                 case "1":
-			    	banks = Bank.getAllBanks(conn);
+			    	banks = storage.getAllBanks();
 			    	
 	            	for(int i = 0; i < banks.size(); i++) {
 	            		System.out.println("(" + (i + 1) + ") " + banks.get(i).getBankName());
@@ -355,13 +483,13 @@ public class App {
 	            	System.out.println("\nPlease input the number of the bank whos balance you would like to check.");
 	            	bankName = banks.get(scanner.nextInt() - 1).getBankName();
 	            	
-	            	System.out.println("The balance of " + bankName + " is $" + Bank.getBanksBalance(conn, bankName));
+	            	System.out.println("The balance of " + bankName + " is $" + Money.format(storage.getBanksBalance(bankName)));
 	            	break;
                 case "2":
 			    	
                 	System.out.println("\nPlease input the name of the bank where you would like to open an account.");
                 	bankName = scanner.nextLine().toUpperCase();
-                	Bank.createBank(conn, bankName);
+                	storage.createBank(bankName);
 	            	break;
             	}
 		    	break;
@@ -370,7 +498,7 @@ public class App {
 		    	String confirmation = scanner.nextLine();
 		    	if (confirmation.toUpperCase().equals("Y")) {
 		    		System.out.println("User '" + email + "' has been deleted.");
-		    		User.deleteUser(conn, userID);
+		    		User.deleteUser(storage, userID);
 		    		loggedIn = false;
 		    	}
 		    	else {
@@ -379,6 +507,7 @@ public class App {
 		    	break;
 		    case "0":
 		    	System.out.println("Signing out.");
+		    	sessions.revoke(token);
 		    	loggedIn = false;
             }
             System.out.println();
@@ -386,5 +515,9 @@ public class App {
         
         // Close scanner on end.
         scanner.close();
+        archiver.shutdown();
+        if (writeBehind != null) {
+        	writeBehind.close();
+        }
 	}
 }
@@ -0,0 +1,271 @@
+package sjsu.cs157a.bankingsystem;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * An asynchronous facade over Database, so that a screen needing several round trips can issue them in parallel.
+ * Every call runs on its own virtual thread where the JVM supports them (see VirtualThreads), borrowing a pooled
+ * connection only for its duration. At most asyncMaxConcurrency calls (by default the pool size) run at once; the rest
+ * wait for a permit rather than for a connection, so they never time out against the pool.
+ * Results and error sentinels are those of the matching Database method; a future only completes exceptionally if no
+ * connection could be borrowed.
+ */
+public class AsyncDatabase {
+	private static AsyncDatabase asyncDatabase;
+
+	private final SQLConnector connector;
+	private final Semaphore permits;
+	private final ExecutorService executor;
+
+	AsyncDatabase(SQLConnector connector, int maxConcurrency) {
+		this.connector = connector;
+		this.permits = new Semaphore(Math.max(1, maxConcurrency), true);
+		this.executor = VirtualThreads.newExecutor("async-db", maxConcurrency);
+	}
+
+	/**
+	 * @return Returns the facade over the shared connection pool.
+	 */
+	public static synchronized AsyncDatabase getInstance() {
+		if (asyncDatabase == null) {
+			SQLConnector connector = SQLConnector.getInstance();
+			asyncDatabase = new AsyncDatabase(connector, Config.getInt("asyncMaxConcurrency", connector.getMaxPoolSize()));
+		}
+		return asyncDatabase;
+	}
+
+	/**
+	 * A blocking database call to run on a borrowed connection.
+	 */
+	public interface Call<T> {
+		T call(Connection conn) throws SQLException;
+	}
+
+	/**
+	 * Runs a call asynchronously on its own connection, once a permit is free.
+	 * @param call The call.
+	 * @return Returns a future of the call's result.
+	 */
+	public <T> CompletableFuture<T> submit(final Call<T> call) {
+		return CompletableFuture.supplyAsync(new Supplier<T>() {
+			@Override
+			public T get() {
+				permits.acquireUninterruptibly();
+				try (Connection conn = connector.getConnection()) {
+					if (conn == null) {
+						throw new SQLException("No connection to local MySQL server.", "08001");
+					}
+					return call.call(conn);
+				} catch (SQLException e) {
+					throw new CompletionException(e);
+				} finally {
+					permits.release();
+				}
+			}
+		}, executor);
+	}
+
+	public CompletableFuture<Long> balanceAsync(final long userID, final String bankName, final String accType) {
+		return submit(new Call<Long>() {
+			@Override
+			public Long call(Connection conn) {
+				return Database.getBankAccountBalance(conn, bankName, accType, userID);
+			}
+		});
+	}
+
+	public CompletableFuture<Long> netWorthAsync(final long userID) {
+		return submit(new Call<Long>() {
+			@Override
+			public Long call(Connection conn) {
+				return Database.calculateNetWorth(conn, userID);
+			}
+		});
+	}
+
+	public CompletableFuture<List<Account>> accountsAsync(final long userID, final String bankName) {
+		return submit(new Call<List<Account>>() {
+			@Override
+			public List<Account> call(Connection conn) {
+				return Database.getAllUserBankAccountsAtBank(conn, bankName, userID);
+			}
+		});
+	}
+
+	public CompletableFuture<List<Bank>> banksAsync() {
+		return submit(new Call<List<Bank>>() {
+			@Override
+			public List<Bank> call(Connection conn) {
+				return Bank.getAllBanks(conn);
+			}
+		});
+	}
+
+	public CompletableFuture<List<Loan>> loansAsync(final long userID) {
+		return submit(new Call<List<Loan>>() {
+			@Override
+			public List<Loan> call(Connection conn) {
+				return Database.getLoans(conn, userID);
+			}
+		});
+	}
+
+	public CompletableFuture<List<Transaction>> recentTransactionsAsync(final long userID, final String bankName, final String accType) {
+		return submit(new Call<List<Transaction>>() {
+			@Override
+			public List<Transaction> call(Connection conn) {
+				return Database.getRecentTransactions(conn, userID, bankName, accType);
+			}
+		});
+	}
+
+	public CompletableFuture<List<Transaction>> monthlyTransactionsAsync(final long userID, final String bankName, final String accType, final LocalDate month) {
+		return submit(new Call<List<Transaction>>() {
+			@Override
+			public List<Transaction> call(Connection conn) {
+				return Database.getMonthlyTransactions(conn, userID, bankName, accType, month);
+			}
+		});
+	}
+
+	public CompletableFuture<Boolean> depositAsync(final long userID, final String bankName, final String accType, final long amount) {
+		return submit(new Call<Boolean>() {
+			@Override
+			public Boolean call(Connection conn) {
+				return Database.deposit(conn, userID, bankName, accType, "Deposit", amount);
+			}
+		});
+	}
+
+	public CompletableFuture<Boolean> withdrawAsync(final long userID, final String bankName, final String accType, final long amount) {
+		return submit(new Call<Boolean>() {
+			@Override
+			public Boolean call(Connection conn) {
+				return Database.withdraw(conn, userID, bankName, accType, "Withdraw", amount);
+			}
+		});
+	}
+
+	public CompletableFuture<Boolean> transferAsync(final AccountKey from, final AccountKey to, final long amount) {
+		return submit(new Call<Boolean>() {
+			@Override
+			public Boolean call(Connection conn) {
+				return Database.transfer(conn, from, to, amount);
+			}
+		});
+	}
+
+	/**
+	 * Fetches a user's accounts at every bank, querying all banks in parallel.
+	 * @param userID The user's ID.
+	 * @return Returns a future of the user's accounts keyed by bank name, in bank order, leaving out banks with none.
+	 */
+	public CompletableFuture<Map<String, List<Account>>> accountsByBankAsync(final long userID) {
+		return banksAsync().thenCompose(new Function<List<Bank>, CompletableFuture<Map<String, List<Account>>>>() {
+			@Override
+			public CompletableFuture<Map<String, List<Account>>> apply(final List<Bank> banks) {
+				final List<CompletableFuture<List<Account>>> futures = new ArrayList<CompletableFuture<List<Account>>>(banks.size());
+				for (Bank bank : banks) {
+					futures.add(accountsAsync(userID, bank.getBankName()));
+				}
+				return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(new Function<Void, Map<String, List<Account>>>() {
+					@Override
+					public Map<String, List<Account>> apply(Void ignored) {
+						Map<String, List<Account>> accounts = new LinkedHashMap<String, List<Account>>();
+						for (int i = 0; i < banks.size(); i++) {
+							List<Account> atBank = futures.get(i).join();
+							if (!atBank.isEmpty()) {
+								accounts.put(banks.get(i).getBankName(), atBank);
+							}
+						}
+						return accounts;
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Fetches a user's net worth, loans and accounts at every bank in parallel, instead of one round trip after another.
+	 * @param userID The user's ID.
+	 * @return Returns a future of the user's overview.
+	 */
+	public CompletableFuture<Overview> overviewAsync(long userID) {
+		CompletableFuture<Long> netWorth = netWorthAsync(userID);
+		CompletableFuture<List<Loan>> loans = loansAsync(userID);
+		CompletableFuture<Map<String, List<Account>>> accounts = accountsByBankAsync(userID);
+		return netWorth.thenCombine(loans, new BiFunction<Long, List<Loan>, Overview>() {
+			@Override
+			public Overview apply(Long worth, List<Loan> loanList) {
+				return new Overview(worth, loanList, Collections.<String, List<Account>>emptyMap());
+			}
+		}).thenCombine(accounts, new BiFunction<Overview, Map<String, List<Account>>, Overview>() {
+			@Override
+			public Overview apply(Overview partial, Map<String, List<Account>> accountsByBank) {
+				return new Overview(partial.getNetWorth(), partial.getLoans(), accountsByBank);
+			}
+		});
+	}
+
+	/**
+	 * Stops the executor once the calls already submitted have finished.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	/**
+	 * A user's net worth, loans and accounts, gathered by overviewAsync.
+	 */
+	public static class Overview {
+		private final long netWorth;
+		private final List<Loan> loans;
+		private final Map<String, List<Account>> accountsByBank;
+
+		Overview(long netWorth, List<Loan> loans, Map<String, List<Account>> accountsByBank) {
+			this.netWorth = netWorth;
+			this.loans = loans;
+			this.accountsByBank = accountsByBank;
+		}
+
+		/**
+		 * @return Returns the sum of every account balance in cents, or -1 if it could not be calculated.
+		 */
+		public long getNetWorth() {
+			return netWorth;
+		}
+
+		public List<Loan> getLoans() {
+			return loans;
+		}
+
+		/**
+		 * @return Returns the total owed across every loan, in cents.
+		 */
+		public long getLoanTotal() {
+			long total = 0;
+			for (Loan loan : loans) {
+				total = Money.add(total, loan.getAmount());
+			}
+			return total;
+		}
+
+		public Map<String, List<Account>> getAccountsByBank() {
+			return accountsByBank;
+		}
+	}
+}
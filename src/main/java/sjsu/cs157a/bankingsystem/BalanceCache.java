@@ -0,0 +1,266 @@
+package sjsu.cs157a.bankingsystem;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-process read-through cache of account balances and of each user's account list per bank.
+ * Entries are evicted least recently used once balanceCacheSize is reached, and expire after balanceCacheTtlMillis so
+ * that changes made by other processes are eventually seen. Database invalidates the affected entries after every
+ * deposit, withdrawal, loan and account change, so reads in this process agree with the trigger-maintained
+ * Accounts.balance. Setting balanceCacheSize to 0 disables the cache.
+ * The cache is split into segments by userID, each with its own lock, its own share of balanceCacheSize and its own
+ * least recently used order, so reads for different users do not wait on one another. Bank names and account types
+ * are compared ignoring case, as the database's collation compares them.
+ */
+public class BalanceCache {
+	private static BalanceCache balanceCache = new BalanceCache(Config.getInt("balanceCacheSize", 10000), Config.getLong("balanceCacheTtlMillis", 30000));
+
+	private static final int MAX_SEGMENTS = 16;
+
+	private final int maxSize;
+	private final long ttlNanos;
+	private final Segment[] segments;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	BalanceCache(int maxSize, long ttlMillis) {
+		this.maxSize = maxSize;
+		this.ttlNanos = ttlMillis * 1000000L;
+		// A power of two no larger than the cache, so that every segment can hold at least one entry.
+		int count = 1;
+		while (count < MAX_SEGMENTS && count * 2 <= maxSize) {
+			count <<= 1;
+		}
+		this.segments = new Segment[count];
+		for (int i = 0; i < count; i++) {
+			segments[i] = new Segment((maxSize + count - 1) / count);
+		}
+	}
+
+	/**
+	 * @return Returns the cache shared by every connection in this process.
+	 */
+	public static BalanceCache getInstance() {
+		return balanceCache;
+	}
+
+	/**
+	 * Marks the start of a database read whose result will be cached.
+	 * @param userID The users ID whose balance or accounts will be read
+	 * @return Returns a stamp to pass to putBalance() or putAccounts().
+	 */
+	public long stamp(long userID) {
+		Segment segment = segmentFor(userID);
+		synchronized (segment) {
+			return segment.invalidations;
+		}
+	}
+
+	/**
+	 * @param key The account
+	 * @return Returns the cached balance in cents, or null if it is not cached.
+	 */
+	public Long getBalance(AccountKey key) {
+		Segment segment = segmentFor(key.getUserID());
+		synchronized (segment) {
+			Entry entry = lookup(segment, normalize(key));
+			return entry == null ? null : entry.balance;
+		}
+	}
+
+	/**
+	 * Caches a balance read from the database, unless an invalidation of the user's segment happened since the read began.
+	 * @param key The account
+	 * @param balance The balance in cents
+	 * @param stamp The stamp taken before the read
+	 */
+	public void putBalance(AccountKey key, long balance, long stamp) {
+		Segment segment = segmentFor(key.getUserID());
+		synchronized (segment) {
+			if (maxSize > 0 && stamp == segment.invalidations) {
+				segment.entries.put(normalize(key), new Entry(balance, null, System.nanoTime() + ttlNanos));
+			}
+		}
+	}
+
+	/**
+	 * @param userID The users ID
+	 * @param bankName The banks name
+	 * @return Returns a copy of the cached accounts of the user at the bank, or null if they are not cached.
+	 */
+	public List<Account> getAccounts(long userID, String bankName) {
+		Segment segment = segmentFor(userID);
+		Entry entry;
+		synchronized (segment) {
+			entry = lookup(segment, normalize(new AccountKey(userID, bankName, null)));
+		}
+		// Entries are never changed once cached, so the copy can be made outside the lock.
+		return entry == null ? null : copy(entry.accounts);
+	}
+
+	/**
+	 * Caches the accounts of a user at a bank, and the balance of each, unless an invalidation happened since the read began.
+	 * @param userID The users ID
+	 * @param bankName The banks name
+	 * @param accounts The accounts read from the database
+	 * @param stamp The stamp taken before the read
+	 */
+	public void putAccounts(long userID, String bankName, List<Account> accounts, long stamp) {
+		if (maxSize <= 0) {
+			return;
+		}
+		List<Account> copy = copy(accounts);
+		Segment segment = segmentFor(userID);
+		synchronized (segment) {
+			if (stamp != segment.invalidations) {
+				return;
+			}
+			long expiresAt = System.nanoTime() + ttlNanos;
+			segment.entries.put(normalize(new AccountKey(userID, bankName, null)), new Entry(0, copy, expiresAt));
+			for (Account account : copy) {
+				segment.entries.put(normalize(new AccountKey(userID, bankName, account.getAccType())), new Entry(account.getBalance(), null, expiresAt));
+			}
+		}
+	}
+
+	/**
+	 * Forgets the balance of an account and the account list of its bank.
+	 * @param key The account that changed
+	 */
+	public void invalidate(AccountKey key) {
+		AccountKey normalized = normalize(key);
+		Segment segment = segmentFor(key.getUserID());
+		synchronized (segment) {
+			segment.invalidations++;
+			segment.entries.remove(normalized);
+			segment.entries.remove(new AccountKey(normalized.getUserID(), normalized.getBankName(), null));
+		}
+	}
+
+	/**
+	 * Forgets every balance and account list of a user.
+	 * @param userID The users ID
+	 */
+	public void invalidateUser(long userID) {
+		Segment segment = segmentFor(userID);
+		synchronized (segment) {
+			segment.invalidations++;
+			Iterator<AccountKey> it = segment.entries.keySet().iterator();
+			while (it.hasNext()) {
+				if (it.next().getUserID() == userID) {
+					it.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Forgets everything.
+	 */
+	public void clear() {
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				segment.invalidations++;
+				segment.entries.clear();
+			}
+		}
+	}
+
+	/**
+	 * @return Returns the number of reads served from the cache.
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * @return Returns the number of reads that went to the database.
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	private Segment segmentFor(long userID) {
+		long h = userID * 0x9E3779B97F4A7C15L;
+		return segments[(int) (h >>> 32) & (segments.length - 1)];
+	}
+
+	/**
+	 * @return Returns the key with its bank name and account type in lower case, so keys equal in the database are equal here.
+	 */
+	private static AccountKey normalize(AccountKey key) {
+		return new AccountKey(key.getUserID(), lower(key.getBankName()), lower(key.getAccType()));
+	}
+
+	private static String lower(String s) {
+		return s == null ? null : s.toLowerCase(Locale.ROOT);
+	}
+
+	private Entry lookup(Segment segment, AccountKey key) {
+		if (maxSize <= 0) {
+			return null;
+		}
+		Entry entry = segment.entries.get(key);
+		if (entry != null && entry.expiresAt - System.nanoTime() < 0) {
+			segment.entries.remove(key);
+			entry = null;
+		}
+		if (entry == null) {
+			misses.incrementAndGet();
+		}
+		else {
+			hits.incrementAndGet();
+		}
+		return entry;
+	}
+
+	private static List<Account> copy(List<Account> accounts) {
+		List<Account> copy = new ArrayList<Account>(accounts.size());
+		for (Account account : accounts) {
+			copy.add(new Account(account.getFirstName(), account.getAccType(), account.getBalance()));
+		}
+		return copy;
+	}
+
+	/**
+	 * One lock's share of the cache, least recently used first.
+	 */
+	private static class Segment {
+		final LinkedHashMap<AccountKey, Entry> entries;
+		// Incremented by every invalidation in the segment, so that a read which raced a write does not cache what it read.
+		long invalidations;
+
+		Segment(final int maxSize) {
+			this.entries = new LinkedHashMap<AccountKey, Entry>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<AccountKey, Entry> eldest) {
+					return size() > maxSize;
+				}
+			};
+		}
+	}
+
+	/**
+	 * A cached balance, or a cached account list when accounts is set.
+	 */
+	private static class Entry {
+		final long balance;
+		final List<Account> accounts;
+		final long expiresAt;
+
+		Entry(long balance, List<Account> accounts, long expiresAt) {
+			this.balance = balance;
+			this.accounts = accounts;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
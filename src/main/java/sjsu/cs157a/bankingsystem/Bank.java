@@ -3,36 +3,54 @@ package sjsu.cs157a.bankingsystem;
 import java.sql.*;
 import java.util.List;
 
+/**
+ * A bank and its balance as read from the Banks table. Read-only, since the bank directory shares one instance per bank
+ * between every caller.
+ */
 public class Bank {
-	private String bankName;
-	private float balance;
+	private final String bankName;
+	private final long balance;
 	
-	Bank(String bankName, float balance) {
-		this.setBankName(bankName);
-		this.setBalance(balance);
+	Bank(String bankName, long balance) {
+		this.bankName = bankName;
+		this.balance = balance;
 	}
 
 	public String getBankName() {
 		return bankName;
 	}
 
-	public void setBankName(String bankName) {
-		this.bankName = bankName;
-	}
-
-	public float getBalance() {
+	public long getBalance() {
 		return balance;
 	}
-
-	public void setBalance(float balance) {
-		this.balance = balance;
-	}
 	
+	/**
+	 * @param conn The MySql connection
+	 * @return Return every bank, from the cached bank directory. The list cannot be modified.
+	 */
 	public static List<Bank> getAllBanks(Connection conn) {
-		return Database.getAllBanks(conn);
+		return BankDirectory.getInstance().get(conn).getBanks();
+	}
+
+	/**
+	 * @param conn The MySql connection
+	 * @param index The 0-based position of the bank in getAllBanks()
+	 * @return Return the bank at the position, or null if there is none
+	 */
+	public static Bank getBank(Connection conn, int index) {
+		return BankDirectory.getInstance().get(conn).getBank(index);
+	}
+
+	/**
+	 * @param conn The MySql connection
+	 * @param bankName The banks name
+	 * @return Return the bank with the name, or null if there is none
+	 */
+	public static Bank findBank(Connection conn, String bankName) {
+		return BankDirectory.getInstance().get(conn).findBank(bankName);
 	}
 	
-	public static float getBanksBalance(Connection conn, String bankName) {
+	public static long getBanksBalance(Connection conn, String bankName) {
 		return Database.getBanksBalance(conn, bankName);
 	}
 
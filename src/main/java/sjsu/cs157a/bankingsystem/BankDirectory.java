@@ -0,0 +1,138 @@
+package sjsu.cs157a.bankingsystem;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A cached, read-only copy of the Banks table.
+ * The bank list rarely changes, so menus read it from an immutable snapshot instead of calling GetAllBanks each time.
+ * A new snapshot is loaded once bankDirectoryRefreshMillis have passed, or after Database.createBank adds a bank.
+ * Every snapshot carries a version that increases with each reload, and serves lookups by index and by name in O(1).
+ * Names are looked up without regard to case, as the database compares them.
+ * Bank balances in a snapshot may be as old as the snapshot; use Bank.getBanksBalance for a live balance.
+ */
+public class BankDirectory {
+	private static BankDirectory bankDirectory = new BankDirectory(Config.getLong("bankDirectoryRefreshMillis", 60000));
+
+	private final long refreshNanos;
+	private volatile Snapshot current = new Snapshot(0, new ArrayList<Bank>(), System.nanoTime());
+	private volatile boolean stale = true;
+
+	BankDirectory(long refreshMillis) {
+		this.refreshNanos = refreshMillis * 1000000L;
+	}
+
+	/**
+	 * @return Returns the directory shared by every connection in this process.
+	 */
+	public static BankDirectory getInstance() {
+		return bankDirectory;
+	}
+
+	/**
+	 * Retrieves the current snapshot, reloading it first if it is stale or older than the refresh interval.
+	 * @param conn The MySQL connection, used only if a reload is needed.
+	 * @return Returns the latest snapshot of the Banks table.
+	 */
+	public Snapshot get(Connection conn) {
+		Snapshot snapshot = current;
+		if (stale || System.nanoTime() - snapshot.loadedAt > refreshNanos) {
+			snapshot = refresh(conn);
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Reloads the Banks table. If the reload fails, the previous snapshot is kept.
+	 * @param conn The MySQL connection.
+	 * @return Returns the latest snapshot of the Banks table.
+	 */
+	public synchronized Snapshot refresh(Connection conn) {
+		Snapshot snapshot = current;
+		// Another caller may have reloaded while this one waited.
+		if (!stale && System.nanoTime() - snapshot.loadedAt <= refreshNanos) {
+			return snapshot;
+		}
+		try {
+			stale = false;
+			snapshot = new Snapshot(snapshot.version + 1, Database.queryAllBanks(conn), System.nanoTime());
+			current = snapshot;
+		} catch (SQLException e) {
+			stale = true;
+			e.printStackTrace();
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Marks the current snapshot as stale so the next read reloads it.
+	 */
+	public void invalidate() {
+		stale = true;
+	}
+
+	/**
+	 * An immutable copy of the Banks table.
+	 */
+	public static class Snapshot {
+		private final long version;
+		private final List<Bank> banks;
+		private final Map<String, Bank> banksByName;
+		private final long loadedAt;
+
+		Snapshot(long version, List<Bank> banks, long loadedAt) {
+			this.version = version;
+			this.banks = Collections.unmodifiableList(new ArrayList<Bank>(banks));
+			Map<String, Bank> byName = new HashMap<String, Bank>();
+			for (Bank bank : banks) {
+				byName.put(nameKey(bank.getBankName()), bank);
+			}
+			this.banksByName = Collections.unmodifiableMap(byName);
+			this.loadedAt = loadedAt;
+		}
+
+		/**
+		 * @return Returns the number of times the directory has been loaded when this snapshot was taken.
+		 */
+		public long getVersion() {
+			return version;
+		}
+
+		/**
+		 * @return Returns every bank, in the order GetAllBanks returned them. The list cannot be modified.
+		 */
+		public List<Bank> getBanks() {
+			return banks;
+		}
+
+		/**
+		 * @param index The 0-based position of the bank in getBanks().
+		 * @return Returns the bank at the position, or null if there is none.
+		 */
+		public Bank getBank(int index) {
+			return index >= 0 && index < banks.size() ? banks.get(index) : null;
+		}
+
+		/**
+		 * @param bankName The banks name, in any case.
+		 * @return Returns the bank with the name, or null if there is none.
+		 */
+		public Bank findBank(String bankName) {
+			return banksByName.get(nameKey(bankName));
+		}
+
+		public int size() {
+			return banks.size();
+		}
+
+		private static String nameKey(String bankName) {
+			return bankName == null ? null : bankName.toLowerCase(Locale.ROOT);
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package sjsu.cs157a.bankingsystem;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The outcome of posting a batch of deposits and withdrawals: how many rows were committed, which rows failed and why,
+ * and how fast the batch was ingested.
+ */
+public class BatchResult {
+	private final int submitted;
+	private int posted;
+	private final List<Failure> failures = new ArrayList<Failure>();
+	private long elapsedNanos;
+
+	BatchResult(int submitted) {
+		this.submitted = submitted;
+	}
+
+	void addPosted(int rows) {
+		posted += rows;
+	}
+
+	void addFailure(int index, Posting posting, String reason) {
+		failures.add(new Failure(index, posting, reason));
+	}
+
+	void finish(long elapsedNanos) {
+		this.elapsedNanos = elapsedNanos;
+		Collections.sort(failures, new Comparator<Failure>() {
+			@Override
+			public int compare(Failure a, Failure b) {
+				return Integer.compare(a.index, b.index);
+			}
+		});
+	}
+
+	/**
+	 * @return Returns the number of postings handed to the batch.
+	 */
+	public int getSubmitted() {
+		return submitted;
+	}
+
+	/**
+	 * @return Returns the number of postings committed to the database.
+	 */
+	public int getPosted() {
+		return posted;
+	}
+
+	/**
+	 * @return Returns every posting that was not committed, in input order.
+	 */
+	public List<Failure> getFailures() {
+		return Collections.unmodifiableList(failures);
+	}
+
+	/**
+	 * @return Returns the wall clock time spent posting the batch, in milliseconds.
+	 */
+	public double getElapsedMillis() {
+		return elapsedNanos / 1000000.0;
+	}
+
+	/**
+	 * @return Returns the ingest throughput as committed rows per second.
+	 */
+	public double getRowsPerSecond() {
+		return elapsedNanos == 0 ? 0 : posted * 1000000000.0 / elapsedNanos;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Posted %d of %d rows (%d failed) in %.1fms, %.0f rows/s", posted, submitted, failures.size(), getElapsedMillis(), getRowsPerSecond());
+	}
+
+	/**
+	 * A posting that was rejected, along with its position in the submitted list.
+	 */
+	public static class Failure {
+		private final int index;
+		private final Posting posting;
+		private final String reason;
+
+		Failure(int index, Posting posting, String reason) {
+			this.index = index;
+			this.posting = posting;
+			this.reason = reason;
+		}
+
+		public int getIndex() { return index; }
+		public Posting getPosting() { return posting; }
+		public String getReason() { return reason; }
+	}
+}
@@ -0,0 +1,83 @@
+package sjsu.cs157a.bankingsystem;
+
+import java.io.FileReader;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+
+/**
+ * Settings read once from config.json.
+ * Only url, username and password are required; every other key falls back to the default given by the caller.
+ */
+public class Config {
+	public static final String CONFIG_FILE = "config.json";
+	private static JSONObject settings = load();
+
+	private Config() {
+	}
+
+	/**
+	 * Retrieves a string setting.
+	 * @param key The key within config.json.
+	 * @param defaultValue The value used when the key is missing.
+	 * @return Returns the configured value, or defaultValue if none is set.
+	 */
+	public static String getString(String key, String defaultValue) {
+		Object value = settings.get(key);
+		if (value == null) {
+			return defaultValue;
+		}
+		return value.toString();
+	}
+
+	/**
+	 * Retrieves a numeric setting.
+	 * @param key The key within config.json.
+	 * @param defaultValue The value used when the key is missing or not a number.
+	 * @return Returns the configured value, or defaultValue if none is set.
+	 */
+	public static long getLong(String key, long defaultValue) {
+		Object value = settings.get(key);
+		if (value instanceof Number) {
+			return ((Number) value).longValue();
+		}
+		return defaultValue;
+	}
+
+	/**
+	 * Retrieves a numeric setting that fits in an int.
+	 * @param key The key within config.json.
+	 * @param defaultValue The value used when the key is missing or not a number.
+	 * @return Returns the configured value, or defaultValue if none is set.
+	 */
+	public static int getInt(String key, int defaultValue) {
+		return (int) getLong(key, defaultValue);
+	}
+
+	/**
+	 * Retrieves a boolean setting.
+	 * @param key The key within config.json.
+	 * @param defaultValue The value used when the key is missing or not a boolean.
+	 * @return Returns the configured value, or defaultValue if none is set.
+	 */
+	public static boolean getBoolean(String key, boolean defaultValue) {
+		Object value = settings.get(key);
+		if (value instanceof Boolean) {
+			return (Boolean) value;
+		}
+		return defaultValue;
+	}
+
+	/**
+	 * Parses config.json. A missing or malformed file leaves every setting at its default.
+	 * @return Returns the parsed settings.
+	 */
+	private static JSONObject load() {
+		JSONParser parser = new JSONParser();
+		try (FileReader reader = new FileReader(CONFIG_FILE)) {
+			return (JSONObject) parser.parse(reader);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		return new JSONObject();
+	}
+}
@@ -0,0 +1,21 @@
+package sjsu.cs157a.bankingsystem;
+
+/**
+ * A user's id and stored password hash, looked up by email so that the password can be verified in Java.
+ */
+public final class Credentials {
+	private final long userID;
+	private final byte[] pw;
+
+	/**
+	 * @param userID The users ID
+	 * @param pw The stored password hash, see PasswordHasher
+	 */
+	public Credentials(long userID, byte[] pw) {
+		this.userID = userID;
+		this.pw = pw;
+	}
+
+	public long getUserID() { return userID; }
+	public byte[] getPw() { return pw; }
+}
@@ -1,5 +1,6 @@
 package sjsu.cs157a.bankingsystem;
 
+import java.sql.BatchUpdateException;
 import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.Date;
@@ -7,6 +8,8 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.SQLTransactionRollbackException;
+import java.sql.Savepoint;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.sql.Types;
@@ -14,8 +17,46 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
 
 public class Database {
+	/**
+	 * The SQLState signalled by the procedures and triggers when they refuse a call, such as a deposit to an account
+	 * that does not exist.
+	 */
+	public static final String REFUSED = "45000";
+	/**
+	 * The SQLState signalled by Withdraw and the Transactions trigger when a balance does not cover a withdrawal.
+	 */
+	public static final String INSUFFICIENT_FUNDS = REFUSED;
+	private static final int ER_LOCK_WAIT_TIMEOUT = 1205;
+	private static final int ER_LOCK_DEADLOCK = 1213;
+
+	/**
+	 * Retrieves the cached prepared statement for the given SQL on a connection, preparing it on first use.
+	 * Statements returned here are owned by the connection's StatementCache and must not be closed.
+	 * 
+	 * @param conn The MySQL connection.
+	 * @param sql  The SQL to prepare.
+	 * @return Returns a reusable prepared statement.
+	 * @throws SQLException Thrown if the statement could not be prepared.
+	 */
+	private static PreparedStatement prepare(Connection conn, String sql) throws SQLException {
+		return StatementCache.of(conn).prepare(sql);
+	}
+
+	/**
+	 * Retrieves the cached callable statement for the given SQL on a connection, preparing it on first use.
+	 * 
+	 * @param conn The MySQL connection.
+	 * @param sql  The SQL to prepare.
+	 * @return Returns a reusable callable statement.
+	 * @throws SQLException Thrown if the statement could not be prepared.
+	 */
+	private static CallableStatement prepareCall(Connection conn, String sql) throws SQLException {
+		return StatementCache.of(conn).prepareCall(sql);
+	}
 
 	/**
 	 * Creates a new database if it doesn't exist.
@@ -28,8 +69,9 @@ public class Database {
 	public static boolean createDatabase(Connection conn, String dbName) {
 		try {
 			String sql = "CREATE DATABASE IF NOT EXISTS " + dbName;
-			Statement stmt = conn.createStatement();
-			stmt.execute(sql);
+			try (Statement stmt = conn.createStatement()) {
+				stmt.execute(sql);
+			}
 			return true;
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -53,11 +95,12 @@ public class Database {
 			String dropSql = "DROP TABLE IF EXISTS " + tableName;
 			String createSql = "CREATE TABLE IF NOT EXISTS " + tableName + "(uid INT PRIMARY KEY AUTO_INCREMENT, "
 					+ "sampleText VARCHAR(255)";
-			Statement stmt = conn.createStatement();
-			if (dropTable) {
-				stmt.execute(dropSql);
+			try (Statement stmt = conn.createStatement()) {
+				if (dropTable) {
+					stmt.execute(dropSql);
+				}
+				stmt.execute(createSql);
 			}
-			stmt.execute(createSql);
 			return true;
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -72,15 +115,15 @@ public class Database {
 	 * @param firstName The user's first name.
 	 * @param lastName  The user's last name.
 	 * @param email     The user's email. Must be unique.
-	 * @param pw        The user's password.
+	 * @param pw        The user's password hash, see PasswordHasher.
 	 * @return Returns the new users unique userID. If unique key 'email' is already
 	 *         in use, returns -2. If creation fails for any other reason, returns
 	 *         -1.
 	 */
-	public static int createUser(Connection conn, String firstName, String lastName, String email, byte[] pw) {
+	public static long createUser(Connection conn, String firstName, String lastName, String email, byte[] pw) {
 		try {
 			String sql = "CALL CreateUser(?, ?, ?, ?);";
-			PreparedStatement pstmt = conn.prepareStatement(sql);
+			PreparedStatement pstmt = prepare(conn, sql);
 			pstmt.setString(1, firstName);
 			pstmt.setString(2, lastName);
 			pstmt.setString(3, email);
@@ -91,11 +134,12 @@ public class Database {
 				throw new SQLException("No rows affected: user was not created.");
 			}
 			// Return new userID.
-			ResultSet rs = pstmt.executeQuery("SELECT LAST_INSERT_ID()");
-			if (rs.next()) {
-				return rs.getInt(1);
-			} else {
-				throw new SQLException("No rows affected: user was not created.");
+			try (ResultSet rs = prepare(conn, "SELECT LAST_INSERT_ID()").executeQuery()) {
+				if (rs.next()) {
+					return rs.getLong(1);
+				} else {
+					throw new SQLException("No rows affected: user was not created.");
+				}
 			}
 		} catch (SQLIntegrityConstraintViolationException emailException) {
 			return -2;
@@ -112,16 +156,17 @@ public class Database {
 	 * @param userID The user's unique user id.
 	 * @return Returns true on successful deletion.
 	 */
-	public static boolean deleteUser(Connection conn, int userID) {
+	public static boolean deleteUser(Connection conn, long userID) {
 		try {
 			String sql = "CALL DeleteUser(?);";
-			PreparedStatement pstmt = conn.prepareStatement(sql);
-			pstmt.setInt(1, userID);
+			PreparedStatement pstmt = prepare(conn, sql);
+			pstmt.setLong(1, userID);
 			int rowsUpdated = pstmt.executeUpdate();
 			// Success check.
 			if (rowsUpdated == 0) {
 				throw new SQLException("No rows affected: user was not deleted.");
 			}
+			BalanceCache.getInstance().invalidateUser(userID);
 			return true;
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -130,31 +175,67 @@ public class Database {
 	}
 
 	/**
-	 * Retrieves a given user's userID.
+	 * Retrieves a user's userID and stored password hash by email, through the unique index on Users.email. The
+	 * password is verified by the caller, see PasswordHasher.
 	 * 
 	 * @param conn  The MySQL connection.
 	 * @param email The user's email.
-	 * @param pw    The user's password.
-	 * @return Returns the given user's userID. If query fails or user DNE, returns
-	 *         -1.
+	 * @return Returns the user's credentials. If no user has the email, or the query fails, returns null.
 	 */
-	public static int getUserID(Connection conn, String email, byte[] pw) {
+	public static Credentials getUserCredentials(Connection conn, String email) {
 		try {
-			String sql = "CALL GetUserID(?, ?, ?);";
-			CallableStatement cstmt = conn.prepareCall(sql);
-			cstmt.setString(1, email);
-			cstmt.setBytes(2, pw);
-			cstmt.registerOutParameter(3, Types.INTEGER);
-			cstmt.executeUpdate();
-			int userID = cstmt.getInt(3);
-			if (userID == 0) {
-				throw new SQLException("UserID does not exist for given email and password.");
+			String sql = "CALL GetUserCredentials(?)";
+			PreparedStatement pstmt = prepare(conn, sql);
+			pstmt.setString(1, email);
+			try (ResultSet rs = pstmt.executeQuery()) {
+				if (rs.next()) {
+					DatabaseMetrics.recordRowsRead(pstmt, 1);
+					return new Credentials(rs.getLong(1), rs.getBytes(2));
+				}
 			}
-			return userID;
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
-		return -1;
+		return null;
+	}
+
+	/**
+	 * Replaces a user's stored password hash, e.g. to upgrade it to the current cost after a successful login.
+	 * 
+	 * @param conn   The MySQL connection.
+	 * @param userID The user's unique user id.
+	 * @param pw     The new password hash.
+	 * @return Returns true if the user's hash was replaced.
+	 */
+	public static boolean updatePassword(Connection conn, long userID, byte[] pw) {
+		try {
+			String sql = "CALL UpdatePassword(?, ?);";
+			PreparedStatement pstmt = prepare(conn, sql);
+			pstmt.setLong(1, userID);
+			pstmt.setBytes(2, pw);
+			return pstmt.executeUpdate() > 0;
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		return false;
+	}
+
+	/**
+	 * Refreshes a user's updatedAt on login, so that the archiver only takes users who have stopped using the bank.
+	 * Postings and loans refresh it through the Transactions and Loans triggers.
+	 * 
+	 * @param conn   The MySQL connection.
+	 * @param userID The user's unique user id.
+	 */
+	public static void markUserActive(Connection conn, long userID) {
+		try {
+			String sql = "CALL MarkUserActive(?);";
+			PreparedStatement pstmt = prepare(conn, sql);
+			pstmt.setLong(1, userID);
+			pstmt.executeUpdate();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
 	}
 
 	/**
@@ -164,15 +245,16 @@ public class Database {
 	 * @param userID The users ID
 	 * @return Returns true if the account is created
 	 */
-	public static boolean createBankAccount(Connection conn, String bankName, String accType, int userID) {
+	public static boolean createBankAccount(Connection conn, String bankName, String accType, long userID) {
 		try {
 			String sql = "CALL CreateBankAccount(?, ?, ?, ?);";
-			PreparedStatement pstmt = conn.prepareStatement(sql);
+			PreparedStatement pstmt = prepare(conn, sql);
 			pstmt.setString(1, bankName);
 			pstmt.setString(2, accType);
-			pstmt.setFloat(3, 0);
-			pstmt.setInt(4, userID);
+			Money.bind(pstmt, 3, 0);
+			pstmt.setLong(4, userID);
 			pstmt.executeUpdate();
+			BalanceCache.getInstance().invalidate(new AccountKey(userID, bankName, accType));
 			return true;
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -185,19 +267,30 @@ public class Database {
 	 * @return Returns all banks in the database
 	 */
 	public static List<Bank> getAllBanks(Connection conn) {
-		ResultSet rset = null;
-		List<Bank> banks = new ArrayList<Bank>();
 		try {
-			String sql = "CALL GetAllBanks()";
-			PreparedStatement pstmt = conn.prepareStatement(sql);
-			rset = pstmt.executeQuery();
+			return queryAllBanks(conn);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		return new ArrayList<Bank>();
+	}
+
+	/**
+	 * @param conn The MySql connection
+	 * @return Returns all banks in the database
+	 * @throws SQLException Thrown if the banks could not be read
+	 */
+	static List<Bank> queryAllBanks(Connection conn) throws SQLException {
+		List<Bank> banks = new ArrayList<Bank>();
+		String sql = "CALL GetAllBanks()";
+		PreparedStatement pstmt = prepare(conn, sql);
+		try (ResultSet rset = pstmt.executeQuery()) {
 
 			while (rset.next()) {
-				banks.add(new Bank(rset.getString(1), rset.getFloat(2)));
+				banks.add(new Bank(rset.getString(1), Money.read(rset, 2)));
 			}
-		} catch (Exception e) {
-			e.printStackTrace();
 		}
+		DatabaseMetrics.recordRowsRead(pstmt, banks.size());
 		return banks;
 	}
 
@@ -206,19 +299,27 @@ public class Database {
 	 * @param userID The users ID
 	 * @return Returns the account type and balance of all accounts at a given bank
 	 */
-	public static List<Account> getAllUserBankAccountsAtBank(Connection conn, String bankName, int userID) {
-		ResultSet rset = null;
-		List<Account> userBankAccounts = new ArrayList<Account>();
+	public static List<Account> getAllUserBankAccountsAtBank(Connection conn, String bankName, long userID) {
+		BalanceCache cache = BalanceCache.getInstance();
+		List<Account> userBankAccounts = cache.getAccounts(userID, bankName);
+		if (userBankAccounts != null) {
+			return userBankAccounts;
+		}
+		userBankAccounts = new ArrayList<Account>();
+		long stamp = cache.stamp(userID);
 		try {
 			String sql = "CALL GetAllUserBankAccountsAtBank(?, ?)";
-			PreparedStatement pstmt = conn.prepareStatement(sql);
+			PreparedStatement pstmt = prepare(conn, sql);
 			pstmt.setString(1, bankName);
-			pstmt.setInt(2, userID);
-			rset = pstmt.executeQuery();
+			pstmt.setLong(2, userID);
+			try (ResultSet rset = pstmt.executeQuery()) {
 
-			while (rset.next()) {
-				userBankAccounts.add(new Account(rset.getString("firstName"), rset.getString("accType"), rset.getFloat("balance")));
+				while (rset.next()) {
+					userBankAccounts.add(new Account(rset.getString("firstName"), rset.getString("accType"), Money.read(rset, "balance")));
+				}
 			}
+			DatabaseMetrics.recordRowsRead(pstmt, userBankAccounts.size());
+			cache.putAccounts(userID, bankName, userBankAccounts, stamp);
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
@@ -232,14 +333,15 @@ public class Database {
 	 * @param userID   The users ID
 	 * @return
 	 */
-	public static boolean deleteBankAccount(Connection conn, String bankName, String accType, int userID) {
+	public static boolean deleteBankAccount(Connection conn, String bankName, String accType, long userID) {
 		try {
 			String sql = "CALL DeleteBankAccount(?, ?, ?);";
-			PreparedStatement pstmt = conn.prepareStatement(sql);
+			PreparedStatement pstmt = prepare(conn, sql);
 			pstmt.setString(1, bankName);
 			pstmt.setString(2, accType);
-			pstmt.setInt(3, userID);
+			pstmt.setLong(3, userID);
 			int rowsUpdated = pstmt.executeUpdate();
+			BalanceCache.getInstance().invalidate(new AccountKey(userID, bankName, accType));
 			// Success check.
 			if (rowsUpdated == 0) {
 				throw new SQLException("No rows affected: user was not deleted.");
@@ -258,19 +360,28 @@ public class Database {
 	 * @param userID   The users ID
 	 * @return Returns the balance of a users account
 	 */
-	public static float getBankAccountBalance(Connection conn, String bankName, String accType, int userID) {
-		ResultSet rset = null;
-		float balance = -1;
+	public static long getBankAccountBalance(Connection conn, String bankName, String accType, long userID) {
+		BalanceCache cache = BalanceCache.getInstance();
+		AccountKey key = new AccountKey(userID, bankName, accType);
+		Long cached = cache.getBalance(key);
+		if (cached != null) {
+			return cached;
+		}
+		long stamp = cache.stamp(userID);
+		long balance = -1;
 		try {
 			String sql = "CALL GetBankAccountBalance(?, ?, ?)";
-			PreparedStatement pstmt = conn.prepareStatement(sql);
+			PreparedStatement pstmt = prepare(conn, sql);
 			pstmt.setString(1, bankName);
 			pstmt.setString(2, accType);
-			pstmt.setInt(3, userID);
-			rset = pstmt.executeQuery();
-			rset.next();
+			pstmt.setLong(3, userID);
+			try (ResultSet rset = pstmt.executeQuery()) {
+				rset.next();
 
-			balance = rset.getFloat(1);
+				balance = Money.read(rset, 1);
+			}
+			DatabaseMetrics.recordRowsRead(pstmt, 1);
+			cache.putBalance(key, balance, stamp);
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
@@ -282,44 +393,66 @@ public class Database {
 	 * @param userID The users ID
 	 * @return Return a users net worth
 	 */
-	public static float calculateNetWorth(Connection conn, int userID) {
-		ResultSet rset = null;
-		float netWorth = -1;
+	public static long calculateNetWorth(Connection conn, long userID) {
+		long netWorth = -1;
 		try {
 			String sql = "CALL CalculateNetWorth(?)";
-			PreparedStatement pstmt = conn.prepareStatement(sql);
-			pstmt.setInt(1, userID);
-			rset = pstmt.executeQuery();
-			rset.next();
+			PreparedStatement pstmt = prepare(conn, sql);
+			pstmt.setLong(1, userID);
+			try (ResultSet rset = pstmt.executeQuery()) {
+				rset.next();
 
-			netWorth = rset.getFloat(1);
+				netWorth = Money.read(rset, 1);
+			}
+			DatabaseMetrics.recordRowsRead(pstmt, 1);
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
 		return netWorth;
 	}
 
-	public static List<Transaction> getRecentTransactions(Connection conn, int userId, String bankName, String accType) {
-		ResultSet rs = null;
+	/**
+	 * Retrieves every account a user holds, with outstanding loans and net worth, in one round trip.
+	 * 
+	 * @param conn   The MySql connection
+	 * @param userID The users ID
+	 * @return Returns the user's portfolio. If the query fails, returns null.
+	 */
+	public static Portfolio getPortfolio(Connection conn, long userID) {
+		try {
+			String sql = "CALL GetPortfolio(?)";
+			PreparedStatement pstmt = prepare(conn, sql);
+			pstmt.setLong(1, userID);
+			List<Portfolio.Holding> holdings = new ArrayList<Portfolio.Holding>();
+			long netWorth = 0;
+			try (ResultSet rs = pstmt.executeQuery()) {
+				while (rs.next()) {
+					holdings.add(new Portfolio.Holding(rs.getString("bankName"), rs.getString("accType"), Money.read(rs, "balance"), Money.read(rs, "outstanding")));
+					netWorth = Money.read(rs, "netWorth");
+				}
+			}
+			DatabaseMetrics.recordRowsRead(pstmt, holdings.size());
+			return new Portfolio(userID, holdings, netWorth);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+
+	public static List<Transaction> getRecentTransactions(Connection conn, long userId, String bankName, String accType) {
 		List<Transaction> transactions = new ArrayList<Transaction>();
 		try {
 			String sql = "CALL GetRecentTransactions(?, ?, ?)";
-			PreparedStatement pstmt = conn.prepareStatement(sql);
-			pstmt.setInt(1, userId);
+			PreparedStatement pstmt = prepare(conn, sql);
+			pstmt.setLong(1, userId);
 			pstmt.setString(2, bankName);
 			pstmt.setString(3, accType);
-			rs = pstmt.executeQuery();
-			while (rs.next()) {
-				int uid = rs.getInt("userID");
-				String bn = rs.getString("bankName");
-				String at = rs.getString("accType");
-				String l = rs.getString("location");
-				String s = rs.getString("summary");
-				String tt = rs.getString("transType");
-				float a = rs.getFloat("amount");
-				float nb = rs.getFloat("netBalance");
-				transactions.add(new Transaction(rs.getInt("userID"), rs.getString("bankName"), rs.getString("accType"), rs.getTimestamp("transDateTime").toLocalDateTime(), rs.getString("location"), rs.getString("summary"), rs.getString("transType"), rs.getFloat("amount"), rs.getFloat("netBalance")));
+			try (ResultSet rs = pstmt.executeQuery()) {
+				while (rs.next()) {
+					transactions.add(readTransaction(rs, false));
+				}
 			}
+			DatabaseMetrics.recordRowsRead(pstmt, transactions.size());
 		}
 		catch (Exception e) {
 			e.printStackTrace();
@@ -327,20 +460,21 @@ public class Database {
 		return transactions;
 	}
 	
-	public static List<Transaction> getMonthlyTransactions(Connection conn, int userId, String bankName, String accType, LocalDate filterDate) {
-		ResultSet rs = null;
+	public static List<Transaction> getMonthlyTransactions(Connection conn, long userId, String bankName, String accType, LocalDate filterDate) {
 		List<Transaction> transactions = new ArrayList<Transaction>();
 		try {
 			String sql = "CALL GetMonthlyTransactions(?, ?, ?, ?)";
-			PreparedStatement pstmt = conn.prepareStatement(sql);
-			pstmt.setInt(1, userId);
+			PreparedStatement pstmt = prepare(conn, sql);
+			pstmt.setLong(1, userId);
 			pstmt.setString(2, bankName);
 			pstmt.setString(3, accType);
 			pstmt.setDate(4, Date.valueOf(filterDate));
-			rs = pstmt.executeQuery();
-			while (rs.next()) {
-				transactions.add(new Transaction(rs.getInt("userID"), rs.getString("bankName"), rs.getString("accType"), rs.getTimestamp("transDateTime").toLocalDateTime(), rs.getString("location"), rs.getString("summary"), rs.getString("transType"), rs.getFloat("amount"), rs.getFloat("netBalance")));
+			try (ResultSet rs = pstmt.executeQuery()) {
+				while (rs.next()) {
+					transactions.add(readTransaction(rs, false));
+				}
 			}
+			DatabaseMetrics.recordRowsRead(pstmt, transactions.size());
 		}
 		catch (Exception e) {
 			e.printStackTrace();
@@ -348,30 +482,262 @@ public class Database {
 		return transactions;
 	}
 
-	public static void archiveUsers(Connection conn) {
-        String sql = "CALL ArchiveUsers(?);";
-        PreparedStatement pstmt;
-        try {
-            pstmt = conn.prepareStatement(sql);
-            LocalDate today = LocalDate.now().minusYears(1);
-            pstmt.setTimestamp(1, Timestamp.valueOf(today.atStartOfDay()));
-        }
-        catch (SQLException e){
-        	e.printStackTrace();
-        }
-    }
+	/**
+	 * Retrieves the summary of an account's month from the MonthlyStatements rollup, without reading its transactions.
+	 * 
+	 * @param conn       The MySQL connection.
+	 * @param userId     The users ID.
+	 * @param bankName   The name of the bank.
+	 * @param accType    The type of account.
+	 * @param filterDate Any day of the month.
+	 * @return Returns the month's statement. If the account had no transactions that month or the query fails, returns null.
+	 */
+	public static MonthlyStatement getMonthlyStatement(Connection conn, long userId, String bankName, String accType, LocalDate filterDate) {
+		try {
+			String sql = "CALL GetMonthlyStatement(?, ?, ?, ?)";
+			PreparedStatement pstmt = prepare(conn, sql);
+			pstmt.setLong(1, userId);
+			pstmt.setString(2, bankName);
+			pstmt.setString(3, accType);
+			pstmt.setDate(4, Date.valueOf(filterDate.withDayOfMonth(1)));
+			try (ResultSet rs = pstmt.executeQuery()) {
+				if (rs.next()) {
+					DatabaseMetrics.recordRowsRead(pstmt, 1);
+					return new MonthlyStatement(rs.getDate("month").toLocalDate(), Money.read(rs, "openingBalance"), Money.read(rs, "closingBalance"),
+							rs.getInt("transCount"), Money.read(rs, "depositTotal"), Money.read(rs, "withdrawalTotal"));
+				}
+			}
+		}
+		catch (Exception e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+
+	/**
+	 * Rebuilds the monthly statements of every user from their existing transactions, committing after each chunk of users.
+	 * 
+	 * @param conn      The MySQL connection, in autocommit mode.
+	 * @param chunkSize The most users backfilled per transaction.
+	 * @return Returns the number of statements rebuilt, each counted once whether it was inserted or updated. If a chunk fails, returns -1; the chunks before it are kept.
+	 */
+	public static long backfillMonthlyStatements(Connection conn, int chunkSize) {
+		long statements = 0;
+		try {
+			String sql = "CALL BackfillMonthlyStatements(?, ?, ?, ?);";
+			CallableStatement cstmt = prepareCall(conn, sql);
+			long afterUserID = 0;
+			while (true) {
+				cstmt.setLong(1, afterUserID);
+				cstmt.setInt(2, chunkSize);
+				cstmt.registerOutParameter(3, Types.BIGINT);
+				cstmt.registerOutParameter(4, Types.INTEGER);
+				cstmt.execute();
+				afterUserID = cstmt.getLong(3);
+				if (cstmt.wasNull()) {
+					return statements;
+				}
+				statements += cstmt.getInt(4);
+			}
+		}
+		catch (Exception e) {
+			e.printStackTrace();
+		}
+		return -1;
+	}
+
+	/**
+	 * Retrieves one page of an account's transactions, newest first, continuing after the position of a cursor.
+	 * Backed by GetTransactionPage, which seeks on (transDateTime, transID) instead of skipping rows with OFFSET.
+	 * 
+	 * @param conn     The MySQL connection.
+	 * @param userId   The users ID.
+	 * @param bankName The name of the bank.
+	 * @param accType  The type of account.
+	 * @param pageSize The maximum number of transactions on the page.
+	 * @param cursor   The cursor returned with the previous page, or null for the newest page.
+	 * @return Returns the page, or null if the query fails.
+	 * @throws IllegalArgumentException Thrown if the cursor is malformed.
+	 */
+	public static TransactionPage getTransactionPage(Connection conn, long userId, String bankName, String accType, int pageSize, String cursor) {
+		List<Transaction> transactions = new ArrayList<Transaction>(pageSize);
+		String nextCursor = null;
+		// Decoded before the query, so that a bad cursor is the caller's error rather than a failed read.
+		Timestamp afterDateTime = cursor == null ? null : Timestamp.valueOf(TransactionPage.cursorDateTime(cursor));
+		long afterTransId = cursor == null ? 0 : TransactionPage.cursorTransId(cursor);
+		try {
+			String sql = "CALL GetTransactionPage(?, ?, ?, ?, ?, ?)";
+			PreparedStatement pstmt = prepare(conn, sql);
+			pstmt.setLong(1, userId);
+			pstmt.setString(2, bankName);
+			pstmt.setString(3, accType);
+			if (cursor == null) {
+				pstmt.setNull(4, Types.TIMESTAMP);
+				pstmt.setNull(5, Types.BIGINT);
+			}
+			else {
+				pstmt.setTimestamp(4, afterDateTime);
+				pstmt.setLong(5, afterTransId);
+			}
+			// Ask for one extra row to learn whether another page follows.
+			pstmt.setInt(6, pageSize + 1);
+			try (ResultSet rs = pstmt.executeQuery()) {
+				while (rs.next()) {
+					if (transactions.size() == pageSize) {
+						nextCursor = TransactionPage.cursorAfter(transactions.get(pageSize - 1));
+						break;
+					}
+					transactions.add(readTransaction(rs, true));
+				}
+			}
+			DatabaseMetrics.recordRowsRead(pstmt, nextCursor == null ? transactions.size() : transactions.size() + 1);
+		}
+		catch (Exception e) {
+			e.printStackTrace();
+			return null;
+		}
+		return new TransactionPage(transactions, nextCursor);
+	}
+
+	/**
+	 * Streams every transaction of an account, newest first, to a consumer as rows arrive from the server.
+	 * The driver fetches rows one at a time over a forward-only cursor instead of buffering the whole history, so the
+	 * first rows can be handled before the query finishes. The connection cannot run other statements until this returns.
+	 * 
+	 * @param conn     The MySQL connection.
+	 * @param userId   The users ID.
+	 * @param bankName The name of the bank.
+	 * @param accType  The type of account.
+	 * @param consumer Receives each transaction in order.
+	 * @return Returns the number of transactions streamed, or -1 if the query fails.
+	 */
+	public static long streamTransactions(Connection conn, long userId, String bankName, String accType, Consumer<Transaction> consumer) {
+		long count = 0;
+		try {
+			String sql = "SELECT transID, userID, bankName, accType, transDateTime, location, summary, transType, amount, netBalance "
+					+ "FROM Transactions WHERE userID = ? AND bankName = ? AND accType = ? ORDER BY transDateTime DESC, transID DESC";
+			PreparedStatement pstmt = prepare(conn, sql);
+			// Integer.MIN_VALUE makes Connector/J stream rows instead of reading the full result into memory.
+			pstmt.setFetchSize(Integer.MIN_VALUE);
+			pstmt.setLong(1, userId);
+			pstmt.setString(2, bankName);
+			pstmt.setString(3, accType);
+			try (ResultSet rs = pstmt.executeQuery()) {
+				while (rs.next()) {
+					consumer.accept(readTransaction(rs, true));
+					count++;
+				}
+			}
+			DatabaseMetrics.recordRowsRead(pstmt, count);
+			return count;
+		}
+		catch (Exception e) {
+			e.printStackTrace();
+		}
+		return -1;
+	}
+
+	/**
+	 * Reads the current row of a Transactions result set, reading each column once.
+	 * 
+	 * @param rs         The result set, positioned on a row.
+	 * @param hasTransID Whether the result set includes the transID column.
+	 * @return Returns the transaction in the row.
+	 * @throws SQLException Thrown if a column cannot be read.
+	 */
+	private static Transaction readTransaction(ResultSet rs, boolean hasTransID) throws SQLException {
+		long transId = hasTransID ? rs.getLong("transID") : 0;
+		return new Transaction(transId, rs.getLong("userID"), rs.getString("bankName"), rs.getString("accType"), rs.getTimestamp("transDateTime").toLocalDateTime(), rs.getString("location"), rs.getString("summary"), rs.getString("transType"), Money.read(rs, "amount"), Money.read(rs, "netBalance"));
+	}
 
-	public static float getBanksBalance(Connection conn, String bankName) {
-		ResultSet rset = null;
-		float balance = -1;
+	/**
+	 * Archives every user not modified since the cutoff, along with their accounts, transactions and loans.
+	 * The stored procedure commits after each chunk of users; prefer UserArchiver, which also throttles and checkpoints.
+	 * 
+	 * @param conn   The MySQL connection.
+	 * @param cutoff Users last modified before this time are archived.
+	 * @return Returns true if the archive ran to completion.
+	 */
+	public static boolean archiveUsers(Connection conn, LocalDateTime cutoff) {
+		try {
+			String sql = "CALL ArchiveUsers(?);";
+			PreparedStatement pstmt = prepare(conn, sql);
+			pstmt.setTimestamp(1, Timestamp.valueOf(cutoff));
+			pstmt.execute();
+			BalanceCache.getInstance().clear();
+			return true;
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		return false;
+	}
+
+	/**
+	 * Archives one chunk of users not modified since the cutoff, along with their accounts, transactions and loans, in its own transaction.
+	 * 
+	 * @param conn      The MySQL connection.
+	 * @param cutoff    Users last modified before this time are archived.
+	 * @param after     The checkpoint returned by the previous chunk, or null to start from the least recently modified user.
+	 * @param chunkSize The most users to archive in this chunk.
+	 * @return Returns the chunk archived, with the checkpoint to continue from. If the chunk failed and was rolled back, returns null.
+	 */
+	public static UserArchiver.Chunk archiveUserChunk(Connection conn, LocalDateTime cutoff, UserArchiver.Chunk after, int chunkSize) {
+		boolean autoCommit = true;
+		try {
+			autoCommit = conn.getAutoCommit();
+			conn.setAutoCommit(false);
+			String sql = "CALL ArchiveUserChunk(?, ?, ?, ?, ?, ?, ?, ?);";
+			CallableStatement cstmt = prepareCall(conn, sql);
+			cstmt.setTimestamp(1, Timestamp.valueOf(cutoff));
+			if (after == null) {
+				cstmt.setNull(2, Types.TIMESTAMP);
+				cstmt.setLong(3, 0);
+			} else {
+				cstmt.setTimestamp(2, after.getLastUpdatedAt());
+				cstmt.setLong(3, after.getLastUserID());
+			}
+			cstmt.setInt(4, chunkSize);
+			cstmt.registerOutParameter(5, Types.TIMESTAMP);
+			cstmt.registerOutParameter(6, Types.BIGINT);
+			cstmt.registerOutParameter(7, Types.INTEGER);
+			cstmt.registerOutParameter(8, Types.INTEGER);
+			cstmt.execute();
+			UserArchiver.Chunk chunk = new UserArchiver.Chunk(cstmt.getTimestamp(5), cstmt.getLong(6), cstmt.getInt(7), cstmt.getInt(8));
+			conn.commit();
+			if (chunk.getUsersArchived() > 0) {
+				// The archived users' ids are not returned, so drop every cached balance rather than serve a removed account.
+				BalanceCache.getInstance().clear();
+			}
+			return chunk;
+		} catch (SQLException e) {
+			e.printStackTrace();
+			try {
+				conn.rollback();
+			} catch (SQLException rollbackException) {
+				rollbackException.printStackTrace();
+			}
+		} finally {
+			try {
+				conn.setAutoCommit(autoCommit);
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+		}
+		return null;
+	}
+
+	public static long getBanksBalance(Connection conn, String bankName) {
+		long balance = -1;
 		try {
 			String sql = "CALL GetBanksBalance(?)";
-			PreparedStatement pstmt = conn.prepareStatement(sql);
+			PreparedStatement pstmt = prepare(conn, sql);
 			pstmt.setString(1, bankName);
-			rset = pstmt.executeQuery();
-			rset.next();
+			try (ResultSet rset = pstmt.executeQuery()) {
+				rset.next();
 			
-			balance = rset.getFloat(1);
+				balance = Money.read(rset, 1);
+			}
+			DatabaseMetrics.recordRowsRead(pstmt, 1);
 		}
 		catch (Exception e) {
 			e.printStackTrace();
@@ -382,10 +748,11 @@ public class Database {
 	public static boolean createBank(Connection conn, String bankName) {
 		try {
 			String sql = "CALL CreateBank(?, ?);";
-			PreparedStatement pstmt = conn.prepareStatement(sql);
+			PreparedStatement pstmt = prepare(conn, sql);
 			pstmt.setString(1, bankName);
-			pstmt.setFloat(2, 0);
+			Money.bind(pstmt, 2, 0);
 			pstmt.executeUpdate();
+			BankDirectory.getInstance().invalidate();
 			return true;
 		}
 		catch(SQLIntegrityConstraintViolationException e) {
@@ -398,47 +765,500 @@ public class Database {
 		return false;
 	}
 	
-	public static void deposit(Connection conn, int userID, String bankName, String accType, String transType, float amount) {
+	/**
+	 * Deposits into an account.
+	 * 
+	 * @param conn     The MySQL connection.
+	 * @param userID   The user's ID.
+	 * @param bankName The bank's name.
+	 * @param accType  The account type.
+	 * @param summary  The summary recorded with the transaction, such as "Deposit" or "Paycheck".
+	 * @param amount   The amount in cents.
+	 * @return Returns true if the deposit was made, false if the account does not exist or the call failed.
+	 */
+	public static boolean deposit(Connection conn, long userID, String bankName, String accType, String summary, long amount) {
 		try {
 			String sql = "CALL Deposit(?, ?, ?, ?, ?);";
-			PreparedStatement pstmt = conn.prepareStatement(sql);
-			pstmt.setInt(1, userID);
+			PreparedStatement pstmt = prepare(conn, sql);
+			pstmt.setLong(1, userID);
 			pstmt.setString(2, bankName);
 			pstmt.setString(3, accType);
-			pstmt.setString(4, transType);
-			pstmt.setFloat(5, amount);
+			pstmt.setString(4, summary);
+			Money.bind(pstmt, 5, amount);
 			pstmt.executeUpdate();
+			return true;
+		} catch (SQLException e) {
+			// A deposit to no such account is refused, and reported by the return value alone.
+			if (!REFUSED.equals(e.getSQLState())) {
+				e.printStackTrace();
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		} finally {
+			// Invalidate even on failure, since a timed out call may still have been applied.
+			BalanceCache.getInstance().invalidate(new AccountKey(userID, bankName, accType));
+		}
+		return false;
+	}
+
+	/**
+	 * Deposits into an account at most once per idempotency key. A retry with the key of a call that was already
+	 * committed returns that call's outcome, including a refusal, without depositing again; a call that failed left no
+	 * key behind.
+	 * 
+	 * @param conn           The MySQL connection.
+	 * @param userID         The user's ID.
+	 * @param bankName       The bank's name.
+	 * @param accType        The account type.
+	 * @param summary        The summary recorded with the transaction, such as "Deposit" or "Paycheck".
+	 * @param amount         The amount in cents.
+	 * @param idempotencyKey The caller's key for this deposit, such as a UUID, reused unchanged on every retry.
+	 * @return Returns true if the deposit was made and false if it was refused, as to a missing account, now or by an
+	 *         earlier call with the key. Returns null if the outcome is unknown, as when the call failed or timed out, in
+	 *         which case it is safe to retry with the same key.
+	 */
+	public static Boolean deposit(Connection conn, long userID, String bankName, String accType, String summary, long amount, String idempotencyKey) {
+		byte[] key = IdempotencyKeys.hash("Deposit", idempotencyKey);
+		Boolean applied = IdempotencyKeys.getInstance().get(userID, key);
+		if (applied != null) {
+			return applied;
+		}
+		try {
+			String sql = "CALL DepositOnce(?, ?, ?, ?, ?, ?);";
+			PreparedStatement pstmt = prepare(conn, sql);
+			pstmt.setBytes(1, key);
+			pstmt.setLong(2, userID);
+			pstmt.setString(3, bankName);
+			pstmt.setString(4, accType);
+			pstmt.setString(5, summary);
+			Money.bind(pstmt, 6, amount);
+			return runOnce(pstmt, userID, key);
 		} catch (Exception e) {
 			e.printStackTrace();
+		} finally {
+			BalanceCache.getInstance().invalidate(new AccountKey(userID, bankName, accType));
 		}
+		return null;
 	}
 
-	public static void withdraw(Connection conn, int userID, String bankName, String accType, String transType, float amount) {
+	/**
+	 * Withdraws from an account, provided its balance covers the amount. The account row is locked while the balance is
+	 * checked, so parallel withdrawals can never overdraw it together.
+	 * 
+	 * @param conn      The MySQL connection.
+	 * @param userID    The user's ID.
+	 * @param bankName  The bank's name.
+	 * @param accType   The account type.
+	 * @param summary   The summary recorded with the transaction, such as "Withdraw" or "Rent".
+	 * @param amount    The amount in cents.
+	 * @return Returns true if the withdrawal was made, false if the funds were insufficient, the account does not exist,
+	 *         or the call failed.
+	 */
+	public static boolean withdraw(Connection conn, long userID, String bankName, String accType, String summary, long amount) {
 		try {
 			String sql = "CALL Withdraw(?, ?, ?, ?, ?);";
-			PreparedStatement pstmt = conn.prepareStatement(sql);
-			pstmt.setInt(1, userID);
+			PreparedStatement pstmt = prepare(conn, sql);
+			pstmt.setLong(1, userID);
 			pstmt.setString(2, bankName);
 			pstmt.setString(3, accType);
-			pstmt.setString(4, transType);
-			pstmt.setFloat(5, amount);
+			pstmt.setString(4, summary);
+			Money.bind(pstmt, 5, amount);
 			pstmt.executeUpdate();
+			return true;
+		} catch (SQLException e) {
+			// A refused overdraft is an expected outcome, reported by the return value alone.
+			if (!INSUFFICIENT_FUNDS.equals(e.getSQLState())) {
+				e.printStackTrace();
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		} finally {
+			// Invalidate even on failure, since a timed out call may still have been applied.
+			BalanceCache.getInstance().invalidate(new AccountKey(userID, bankName, accType));
+		}
+		return false;
+	}
+
+	/**
+	 * Withdraws from an account at most once per idempotency key, provided its balance covers the amount. A retry with
+	 * the key of a call that was already committed returns that call's outcome, including a refusal, without touching
+	 * the account again; a call that failed left no key behind.
+	 * 
+	 * @param conn           The MySQL connection.
+	 * @param userID         The user's ID.
+	 * @param bankName       The bank's name.
+	 * @param accType        The account type.
+	 * @param summary        The summary recorded with the transaction, such as "Withdraw" or "Rent".
+	 * @param amount         The amount in cents.
+	 * @param idempotencyKey The caller's key for this withdrawal, such as a UUID, reused unchanged on every retry.
+	 * @return Returns true if the withdrawal was made and false if it was refused, now or by an earlier call with the
+	 *         key. Returns null if the outcome is unknown, in which case it is safe to retry with the same key.
+	 */
+	public static Boolean withdraw(Connection conn, long userID, String bankName, String accType, String summary, long amount, String idempotencyKey) {
+		byte[] key = IdempotencyKeys.hash("Withdraw", idempotencyKey);
+		Boolean applied = IdempotencyKeys.getInstance().get(userID, key);
+		if (applied != null) {
+			return applied;
+		}
+		try {
+			String sql = "CALL WithdrawOnce(?, ?, ?, ?, ?, ?);";
+			PreparedStatement pstmt = prepare(conn, sql);
+			pstmt.setBytes(1, key);
+			pstmt.setLong(2, userID);
+			pstmt.setString(3, bankName);
+			pstmt.setString(4, accType);
+			pstmt.setString(5, summary);
+			Money.bind(pstmt, 6, amount);
+			return runOnce(pstmt, userID, key);
+		} catch (Exception e) {
+			e.printStackTrace();
+		} finally {
+			BalanceCache.getInstance().invalidate(new AccountKey(userID, bankName, accType));
+		}
+		return null;
+	}
+
+	/**
+	 * Runs one of the Once procedures and remembers the outcome it committed.
+	 * 
+	 * @param pstmt  The bound CALL.
+	 * @param userID The user's ID.
+	 * @param key    The hashed idempotency key.
+	 * @return Returns whether the call was applied, now or originally.
+	 * @throws SQLException Thrown if the call failed, in which case nothing was committed.
+	 */
+	private static boolean runOnce(PreparedStatement pstmt, long userID, byte[] key) throws SQLException {
+		try (ResultSet rs = pstmt.executeQuery()) {
+			if (!rs.next()) {
+				throw new SQLException("No outcome returned for an idempotent call.");
+			}
+			boolean applied = rs.getBoolean("applied");
+			DatabaseMetrics.recordRowsRead(pstmt, 1);
+			IdempotencyKeys.getInstance().put(userID, key, applied);
+			return applied;
+		}
+	}
+
+	/**
+	 * Deletes idempotency keys created before a cutoff, a chunk at a time so that no delete holds its locks for long.
+	 * 
+	 * @param conn   The MySQL connection, in autocommit mode.
+	 * @param cutoff Keys created before this time are deleted.
+	 * @return Returns the number of keys deleted, or -1 if the delete failed.
+	 */
+	public static long purgeIdempotencyKeys(Connection conn, LocalDateTime cutoff) {
+		long purged = 0;
+		try {
+			String sql = "DELETE FROM IdempotencyKeys WHERE createdAt < ? LIMIT 5000";
+			PreparedStatement pstmt = prepare(conn, sql);
+			pstmt.setTimestamp(1, Timestamp.valueOf(cutoff));
+			int deleted;
+			do {
+				deleted = pstmt.executeUpdate();
+				purged += deleted;
+			} while (deleted == 5000);
+			return purged;
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		return -1;
+	}
+
+	/**
+	 * Moves money from one account to another in a single database transaction, recording a withdrawal from the first
+	 * and a deposit into the second. Transfer locks both accounts in primary key order, so transfers between overlapping
+	 * accounts never deadlock each other; should the server still roll the transaction back for a deadlock or a lock wait
+	 * timeout, the transfer is retried up to transferRetries times after a short randomized backoff.
+	 * 
+	 * @param conn   The MySQL connection, which must be in autocommit mode.
+	 * @param from   The account to debit.
+	 * @param to     The account to credit.
+	 * @param amount The amount in cents.
+	 * @return Returns true if the transfer was made, false if the accounts are the same or do not exist, the funds were
+	 *         insufficient, or the call failed.
+	 */
+	public static boolean transfer(Connection conn, AccountKey from, AccountKey to, long amount) {
+		if (from.equals(to) || amount <= 0) {
+			return false;
+		}
+		int retries = Config.getInt("transferRetries", 3);
+		long backoff = Config.getLong("transferRetryBackoffMillis", 20);
+		try {
+			for (int attempt = 0; ; attempt++) {
+				try {
+					String sql = "CALL Transfer(?, ?, ?, ?, ?, ?, ?);";
+					PreparedStatement pstmt = prepare(conn, sql);
+					pstmt.setLong(1, from.getUserID());
+					pstmt.setString(2, from.getBankName());
+					pstmt.setString(3, from.getAccType());
+					pstmt.setLong(4, to.getUserID());
+					pstmt.setString(5, to.getBankName());
+					pstmt.setString(6, to.getAccType());
+					Money.bind(pstmt, 7, amount);
+					pstmt.executeUpdate();
+					return true;
+				} catch (SQLException e) {
+					if (attempt >= retries || !isTransient(e)) {
+						throw e;
+					}
+				}
+				// Randomized so that transfers which collided do not collide again in step.
+				Thread.sleep(backoff + ThreadLocalRandom.current().nextLong(backoff + 1));
+				backoff *= 2;
+			}
+		} catch (SQLException e) {
+			// A refused overdraft is an expected outcome, reported by the return value alone.
+			if (!INSUFFICIENT_FUNDS.equals(e.getSQLState())) {
+				e.printStackTrace();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (Exception e) {
+			e.printStackTrace();
+		} finally {
+			BalanceCache cache = BalanceCache.getInstance();
+			cache.invalidate(from);
+			cache.invalidate(to);
+		}
+		return false;
+	}
+
+	/**
+	 * @return Returns true if the server rolled the statement's transaction back for a deadlock or a lock wait timeout,
+	 *         so that running it again may succeed.
+	 */
+	private static boolean isTransient(SQLException e) {
+		return e instanceof SQLTransactionRollbackException || e.getErrorCode() == ER_LOCK_DEADLOCK || e.getErrorCode() == ER_LOCK_WAIT_TIMEOUT;
+	}
+
+	/**
+	 * Posts deposits and withdrawals as JDBC batches, committing once per commit window rather than once per row.
+	 * Consecutive postings of the same type share a batch, and a batch is flushed whenever the type changes, so rows
+	 * reach the Transactions trigger in the order given and every row's netBalance matches posting them one at a time.
+	 * A row rejected by the database is reported and skipped without affecting the rows around it: the driver sends a
+	 * batch of CALLs as multi-statements and reports every row of a rejected one as failed, including rows it applied, so
+	 * a batch with a rejected row is undone to a savepoint and run again row by row. Every row is reported as posted or
+	 * failed exactly as it was committed. If a commit fails, every row of its window is reported as failed.
+	 * 
+	 * @param conn         The MySQL connection.
+	 * @param postings     The postings, in the order they should be applied.
+	 * @param batchSize    The maximum number of rows sent to the server at once.
+	 * @param commitWindow The number of rows committed together.
+	 * @return Returns the number of rows posted, the rows that failed, and the ingest throughput.
+	 */
+	public static BatchResult postBatch(Connection conn, List<Posting> postings, int batchSize, int commitWindow) {
+		BatchResult result = new BatchResult(postings.size());
+		long start = System.nanoTime();
+		// Rows executed since the last commit.
+		List<Integer> uncommitted = new ArrayList<Integer>();
+		// Every row before this index has been executed or has failed.
+		int settled = 0;
+		PreparedStatement pstmt = null;
+		int batchStart = 0;
+		int batched = 0;
+		boolean autoCommit = true;
+		try {
+			autoCommit = conn.getAutoCommit();
+			conn.setAutoCommit(false);
+			for (int i = 0; i < postings.size(); i++) {
+				Posting posting = postings.get(i);
+				String sql = posting.isWithdrawal() ? "CALL Withdraw(?, ?, ?, ?, ?);" : "CALL Deposit(?, ?, ?, ?, ?);";
+				PreparedStatement next = prepare(conn, sql);
+				if (batched > 0 && (next != pstmt || batched == batchSize)) {
+					executeBatch(conn, pstmt, postings, batchStart, batched, uncommitted, result);
+					settled = batchStart + batched;
+					batched = 0;
+					if (uncommitted.size() >= commitWindow) {
+						conn.commit();
+						result.addPosted(uncommitted.size());
+						uncommitted.clear();
+					}
+				}
+				if (batched == 0) {
+					pstmt = next;
+					batchStart = i;
+				}
+				bindPosting(pstmt, posting);
+				pstmt.addBatch();
+				batched++;
+			}
+			if (batched > 0) {
+				executeBatch(conn, pstmt, postings, batchStart, batched, uncommitted, result);
+				settled = batchStart + batched;
+				batched = 0;
+			}
+			conn.commit();
+			result.addPosted(uncommitted.size());
+			uncommitted.clear();
 		} catch (Exception e) {
 			e.printStackTrace();
+			try {
+				if (batched > 0) {
+					pstmt.clearBatch();
+				}
+				conn.rollback();
+			} catch (SQLException rollbackException) {
+				rollbackException.printStackTrace();
+			}
+			for (int index : uncommitted) {
+				result.addFailure(index, postings.get(index), "Rolled back: " + e.getMessage());
+			}
+			for (int index = settled; index < postings.size(); index++) {
+				result.addFailure(index, postings.get(index), "Not posted: " + e.getMessage());
+			}
+		} finally {
+			try {
+				conn.setAutoCommit(autoCommit);
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+			BalanceCache cache = BalanceCache.getInstance();
+			AccountKey last = null;
+			for (Posting posting : postings) {
+				AccountKey key = new AccountKey(posting.getUserID(), posting.getBankName(), posting.getAccType());
+				if (!key.equals(last)) {
+					cache.invalidate(key);
+					last = key;
+				}
+			}
+		}
+		result.finish(System.nanoTime() - start);
+		return result;
+	}
+
+	/**
+	 * Executes one JDBC batch of postings, recording which rows were applied and which were rejected. If the batch is
+	 * rejected, it is rolled back to a savepoint taken before it and each of its rows is executed on its own, so that a
+	 * row is recorded as applied exactly when it was.
+	 * 
+	 * @param conn        The MySQL connection, in a transaction.
+	 * @param pstmt       The statement holding the batch.
+	 * @param postings    Every posting of the ingest.
+	 * @param batchStart  The index of the first posting in the batch.
+	 * @param batched     The number of postings in the batch.
+	 * @param uncommitted The indexes of applied rows awaiting commit.
+	 * @param result      The result that rejected rows are recorded in.
+	 * @throws SQLException Thrown if the batch could not be executed at all.
+	 */
+	private static void executeBatch(Connection conn, PreparedStatement pstmt, List<Posting> postings, int batchStart, int batched, List<Integer> uncommitted, BatchResult result) throws SQLException {
+		Savepoint savepoint = conn.setSavepoint();
+		try {
+			pstmt.executeBatch();
+			for (int j = 0; j < batched; j++) {
+				uncommitted.add(batchStart + j);
+			}
+			return;
+		} catch (BatchUpdateException e) {
+			// The update counts cannot tell the rows of a rewritten batch that were applied from those that were not.
+			conn.rollback(savepoint);
+		}
+		for (int j = 0; j < batched; j++) {
+			int index = batchStart + j;
+			Posting posting = postings.get(index);
+			bindPosting(pstmt, posting);
+			try {
+				pstmt.executeUpdate();
+				uncommitted.add(index);
+			} catch (SQLException e) {
+				if (DatabaseMetrics.isConnectionError(e)) {
+					throw e;
+				}
+				result.addFailure(index, posting, e.getMessage());
+			}
+		}
+	}
+
+	private static void bindPosting(PreparedStatement pstmt, Posting posting) throws SQLException {
+		pstmt.setLong(1, posting.getUserID());
+		pstmt.setString(2, posting.getBankName());
+		pstmt.setString(3, posting.getAccType());
+		pstmt.setString(4, posting.getTransType());
+		Money.bind(pstmt, 5, posting.getAmount());
+	}
+
+	/**
+	 * Reads how far a write-behind writer has flushed its log into Transactions.
+	 * 
+	 * @param conn   The MySQL connection.
+	 * @param writer The writer's name.
+	 * @return Returns the sequence number of the last posting flushed, or 0 if the writer has flushed none.
+	 * @throws SQLException Thrown if the checkpoint could not be read.
+	 */
+	static long getWriteBehindCheckpoint(Connection conn, String writer) throws SQLException {
+		CallableStatement cstmt = prepareCall(conn, "CALL GetWriteBehindCheckpoint(?, ?);");
+		cstmt.setString(1, writer);
+		cstmt.registerOutParameter(2, Types.BIGINT);
+		cstmt.execute();
+		return cstmt.getLong(2);
+	}
+
+	/**
+	 * Inserts transactions flushed from a write-behind log and advances the writer's checkpoint past them, in one
+	 * transaction. The rows go out as one JDBC batch, which the driver rewrites into multi-row INSERTs, and the
+	 * Transactions trigger applies them to their accounts in the order given. netBalance is stored as given, since the
+	 * writer computed it when the posting was acknowledged.
+	 * 
+	 * @param conn         The MySQL connection.
+	 * @param transactions The rows, in the order they were posted; empty to move the checkpoint alone.
+	 * @param writer       The writer's name.
+	 * @param flushedSeq   The sequence number of the last posting among the rows.
+	 * @throws SQLException Thrown if a row or the checkpoint failed, in which case nothing was committed.
+	 */
+	static void appendTransactions(Connection conn, List<Transaction> transactions, String writer, long flushedSeq) throws SQLException {
+		boolean autoCommit = conn.getAutoCommit();
+		PreparedStatement pstmt = null;
+		try {
+			conn.setAutoCommit(false);
+			if (!transactions.isEmpty()) {
+				String sql = "INSERT INTO Transactions(userID, bankName, accType, transDateTime, location, summary, transType, amount, netBalance) "
+						+ "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+				pstmt = prepare(conn, sql);
+				for (Transaction transaction : transactions) {
+					pstmt.setLong(1, transaction.getUserId());
+					pstmt.setString(2, transaction.getBankName());
+					pstmt.setString(3, transaction.getAccType());
+					pstmt.setTimestamp(4, Timestamp.valueOf(transaction.getTransDateTime()));
+					pstmt.setString(5, transaction.getLocation());
+					pstmt.setString(6, transaction.getSummary());
+					pstmt.setString(7, transaction.getTransType());
+					Money.bind(pstmt, 8, transaction.getAmount());
+					Money.bind(pstmt, 9, transaction.getNetBalance());
+					pstmt.addBatch();
+				}
+				pstmt.executeBatch();
+			}
+			CallableStatement cstmt = prepareCall(conn, "CALL SetWriteBehindCheckpoint(?, ?);");
+			cstmt.setString(1, writer);
+			cstmt.setLong(2, flushedSeq);
+			cstmt.execute();
+			conn.commit();
+		} catch (SQLException e) {
+			if (pstmt != null) {
+				pstmt.clearBatch();
+			}
+			conn.rollback();
+			throw e;
+		} finally {
+			conn.setAutoCommit(autoCommit);
+			BalanceCache cache = BalanceCache.getInstance();
+			for (Transaction transaction : transactions) {
+				cache.invalidate(new AccountKey(transaction.getUserId(), transaction.getBankName(), transaction.getAccType()));
+			}
 		}
 	}
 
-	public static List<Loan> getLoans(Connection conn, int userID) {
-		ResultSet rs = null;
+	public static List<Loan> getLoans(Connection conn, long userID) {
 		List<Loan> loans = new ArrayList<Loan>();
 		try {
 			String sql = "CALL GetLoans(?)";
-			PreparedStatement pstmt = conn.prepareStatement(sql);
-			pstmt.setInt(1, userID);
-			rs = pstmt.executeQuery();
-			while (rs.next()) {
-				loans.add(new Loan(rs.getString("bankName"), rs.getFloat("amount")));
+			PreparedStatement pstmt = prepare(conn, sql);
+			pstmt.setLong(1, userID);
+			try (ResultSet rs = pstmt.executeQuery()) {
+				while (rs.next()) {
+					loans.add(new Loan(rs.getLong("loanID"), rs.getString("bankName"), Money.read(rs, "amount")));
+				}
 			}
+			DatabaseMetrics.recordRowsRead(pstmt, loans.size());
 		}
 		catch (Exception e) {
 			e.printStackTrace();
@@ -446,21 +1266,78 @@ public class Database {
 		return loans;
 	}
 
-	public static void createLoan(Connection conn, int userID, String bankName, float amount) {
+	/**
+	 * Lends to a user through their Loans account at a bank, which the loan is added to.
+	 * 
+	 * @param conn     The MySQL connection.
+	 * @param userID   The user's ID.
+	 * @param bankName The bank's name.
+	 * @param amount   The amount in cents.
+	 * @return Returns true if the loan was made, false if the user has no Loans account at the bank or the call failed.
+	 */
+	public static boolean createLoan(Connection conn, long userID, String bankName, long amount) {
 		try {
 			String sql = "CALL CreateLoan(?, ?, ?, ?);";
-			PreparedStatement pstmt = conn.prepareStatement(sql);
-			pstmt.setInt(1, userID);
+			PreparedStatement pstmt = prepare(conn, sql);
+			pstmt.setLong(1, userID);
 			pstmt.setString(2, bankName);
 			pstmt.setString(3, "Loans");
-			pstmt.setFloat(4, amount);
+			Money.bind(pstmt, 4, amount);
 			pstmt.executeUpdate();
+			return true;
+		}
+		catch(SQLIntegrityConstraintViolationException e) {
+			System.out.println("You do not have a loan account open with this bank. Please first create one.");
+		}
+		catch (Exception e) {
+			e.printStackTrace();
+		}
+		finally {
+			BalanceCache.getInstance().invalidate(new AccountKey(userID, bankName, "Loans"));
+		}
+		return false;
+	}
+
+	/**
+	 * Takes out a loan at most once per idempotency key. A retry with the key of a call that was already committed
+	 * returns that call's outcome, including a refusal, without lending again; a call that failed left no key behind.
+	 * 
+	 * @param conn           The MySQL connection.
+	 * @param userID         The user's ID.
+	 * @param bankName       The bank's name.
+	 * @param amount         The amount in cents.
+	 * @param idempotencyKey The caller's key for this loan, such as a UUID, reused unchanged on every retry.
+	 * @return Returns true if the loan was made and false if it was refused, as when the user has no Loans account at the
+	 *         bank, now or by an earlier call with the key. Returns null if the outcome is unknown, in which case it is
+	 *         safe to retry with the same key.
+	 */
+	public static Boolean createLoan(Connection conn, long userID, String bankName, long amount, String idempotencyKey) {
+		byte[] key = IdempotencyKeys.hash("CreateLoan", idempotencyKey);
+		Boolean applied = IdempotencyKeys.getInstance().get(userID, key);
+		if (applied != null) {
+			return applied;
+		}
+		try {
+			String sql = "CALL CreateLoanOnce(?, ?, ?, ?, ?);";
+			PreparedStatement pstmt = prepare(conn, sql);
+			pstmt.setBytes(1, key);
+			pstmt.setLong(2, userID);
+			pstmt.setString(3, bankName);
+			pstmt.setString(4, "Loans");
+			Money.bind(pstmt, 5, amount);
+			return runOnce(pstmt, userID, key);
 		}
 		catch(SQLIntegrityConstraintViolationException e) {
+			// Only before migration 17, which records this refusal under the key; it fails the same way on every retry.
 			System.out.println("You do not have a loan account open with this bank. Please first create one.");
+			return false;
 		}
 		catch (Exception e) {
 			e.printStackTrace();
 		}
+		finally {
+			BalanceCache.getInstance().invalidate(new AccountKey(userID, bankName, "Loans"));
+		}
+		return null;
 	}
 }
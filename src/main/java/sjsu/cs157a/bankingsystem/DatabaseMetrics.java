@@ -0,0 +1,319 @@
+package sjsu.cs157a.bankingsystem;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Latency, call, error and row metrics for every statement Database runs, grouped by operation.
+ * StatementCache instruments each statement it prepares, so every stored procedure call is timed without changes to the
+ * callers: an operation is named after its procedure (Deposit, GetUserCredentials, ...), or after the verb and table of
+ * plain SQL. Failures are counted by SQLState. Rows are counted as reported by an update, and for a query by the
+ * Database method that reads its result, through recordRowsRead; results are returned unwrapped.
+ * Each operation is registered with the platform MBean server as sjsu.cs157a.bankingsystem:type=DatabaseMetrics,operation=NAME.
+ * Setting metricsDumpIntervalMillis in config.json also writes every metric in the Prometheus text format on that
+ * interval, to metricsDumpFile if set, else to standard output.
+ */
+public class DatabaseMetrics {
+	static final String JMX_DOMAIN = "sjsu.cs157a.bankingsystem";
+
+	private static final ConcurrentHashMap<String, OperationMetrics> operations = new ConcurrentHashMap<String, OperationMetrics>();
+	// Held so the dump thread's executor stays reachable; null when dumping is off.
+	private static final ScheduledExecutorService dumper = startDump(Config.getLong("metricsDumpIntervalMillis", 0), Config.getString("metricsDumpFile", null));
+
+	private DatabaseMetrics() {
+	}
+
+	/**
+	 * Retrieves the metrics of an operation, creating and registering them on first use.
+	 * @param operation The operation name.
+	 * @return Returns the operation's metrics.
+	 */
+	public static OperationMetrics getOperation(String operation) {
+		OperationMetrics metrics = operations.get(operation);
+		if (metrics != null) {
+			return metrics;
+		}
+		OperationMetrics created = new OperationMetrics(operation);
+		metrics = operations.putIfAbsent(operation, created);
+		if (metrics != null) {
+			return metrics;
+		}
+		register(created);
+		return created;
+	}
+
+	/**
+	 * @return Returns the metrics of every operation seen so far, sorted by operation name.
+	 */
+	public static List<OperationMetrics> getOperations() {
+		List<OperationMetrics> list = new ArrayList<OperationMetrics>(operations.values());
+		Collections.sort(list, new Comparator<OperationMetrics>() {
+			@Override
+			public int compare(OperationMetrics a, OperationMetrics b) {
+				return a.getOperation().compareTo(b.getOperation());
+			}
+		});
+		return list;
+	}
+
+	/**
+	 * Names the operation a SQL statement performs.
+	 * @param sql The SQL, such as "CALL Deposit(?, ?, ?, ?, ?);" or "SELECT ... FROM Transactions WHERE ...".
+	 * @return Returns the procedure name for a CALL, else the statement's verb and table, such as "SELECT Transactions".
+	 */
+	static String operationName(String sql) {
+		String[] words = sql.trim().split("[\\s(;]+");
+		if (words.length == 0 || words[0].isEmpty()) {
+			return "UNKNOWN";
+		}
+		String verb = words[0].toUpperCase(Locale.ROOT);
+		if (verb.equals("CALL") && words.length > 1) {
+			return words[1];
+		}
+		if (verb.equals("UPDATE") && words.length > 1) {
+			return verb + " " + words[1];
+		}
+		for (int i = 1; i < words.length - 1; i++) {
+			String word = words[i].toUpperCase(Locale.ROOT);
+			if (word.equals("FROM") || word.equals("INTO")) {
+				return verb + " " + words[i + 1];
+			}
+		}
+		return verb;
+	}
+
+	/**
+	 * Wraps a statement so that every execution is recorded under the operation the SQL performs.
+	 * @param pstmt The statement, prepared or callable.
+	 * @param sql The SQL it was prepared with.
+	 * @param onConnectionError Run when the statement fails with a connection exception (SQLState class 08), or null.
+	 * @return Returns the instrumented statement, of the same kind as the one given.
+	 */
+	static PreparedStatement instrument(PreparedStatement pstmt, String sql, Runnable onConnectionError) {
+		Class<?> type = pstmt instanceof CallableStatement ? CallableStatement.class : PreparedStatement.class;
+		return (PreparedStatement) Proxy.newProxyInstance(DatabaseMetrics.class.getClassLoader(), new Class<?>[] { type },
+				new InstrumentedStatement(pstmt, getOperation(operationName(sql)), onConnectionError));
+	}
+
+	/**
+	 * Records the rows read from a query's result under the statement's operation.
+	 * @param pstmt The statement the result came from. One not made by instrument is ignored.
+	 * @param rows The number of rows read.
+	 */
+	static void recordRowsRead(PreparedStatement pstmt, long rows) {
+		if (!Proxy.isProxyClass(pstmt.getClass())) {
+			return;
+		}
+		InvocationHandler handler = Proxy.getInvocationHandler(pstmt);
+		if (handler instanceof InstrumentedStatement) {
+			((InstrumentedStatement) handler).metrics.recordRows(rows);
+		}
+	}
+
+	/**
+	 * @return Returns true if the exception is a connection exception, SQLState class 08, after which the connection
+	 * cannot be trusted again.
+	 */
+	static boolean isConnectionError(Throwable e) {
+		if (!(e instanceof SQLException)) {
+			return false;
+		}
+		String state = ((SQLException) e).getSQLState();
+		return state != null && state.startsWith("08");
+	}
+
+	/**
+	 * Formats every operation's metrics in the Prometheus text exposition format, followed by the statement cache counters.
+	 * @return Returns the metrics text.
+	 */
+	public static String toPrometheus() {
+		StringBuilder sb = new StringBuilder(4096);
+		List<OperationMetrics> list = getOperations();
+		sb.append("# HELP bank_db_call_duration_seconds Latency of database calls.\n");
+		sb.append("# TYPE bank_db_call_duration_seconds summary\n");
+		for (OperationMetrics metrics : list) {
+			String op = label(metrics.getOperation());
+			LatencyHistogram latencies = metrics.getLatencies();
+			quantile(sb, op, "0.5", latencies.getValueAtPercentile(50));
+			quantile(sb, op, "0.99", latencies.getValueAtPercentile(99));
+			quantile(sb, op, "0.999", latencies.getValueAtPercentile(99.9));
+			sb.append("bank_db_call_duration_seconds_sum{operation=\"").append(op).append("\"} ").append(metrics.getTotalMicros() / 1e6).append('\n');
+			sb.append("bank_db_call_duration_seconds_count{operation=\"").append(op).append("\"} ").append(metrics.getCallCount()).append('\n');
+		}
+		sb.append("# HELP bank_db_errors_total Failed database calls by SQLState.\n");
+		sb.append("# TYPE bank_db_errors_total counter\n");
+		for (OperationMetrics metrics : list) {
+			for (Map.Entry<String, Long> entry : metrics.getErrorCounts().entrySet()) {
+				sb.append("bank_db_errors_total{operation=\"").append(label(metrics.getOperation())).append("\",sqlstate=\"")
+						.append(label(entry.getKey())).append("\"} ").append(entry.getValue()).append('\n');
+			}
+		}
+		sb.append("# HELP bank_db_rows_total Rows read from results or affected by updates.\n");
+		sb.append("# TYPE bank_db_rows_total counter\n");
+		for (OperationMetrics metrics : list) {
+			sb.append("bank_db_rows_total{operation=\"").append(label(metrics.getOperation())).append("\"} ").append(metrics.getRowCount()).append('\n');
+		}
+		sb.append("# TYPE bank_db_statement_cache_hits_total counter\n");
+		sb.append("bank_db_statement_cache_hits_total ").append(StatementCache.getHitCount()).append('\n');
+		sb.append("# TYPE bank_db_statement_cache_misses_total counter\n");
+		sb.append("bank_db_statement_cache_misses_total ").append(StatementCache.getMissCount()).append('\n');
+		return sb.toString();
+	}
+
+	/**
+	 * Clears every operation's metrics.
+	 */
+	public static void reset() {
+		for (OperationMetrics metrics : operations.values()) {
+			metrics.reset();
+		}
+	}
+
+	private static void quantile(StringBuilder sb, String op, String quantile, long micros) {
+		sb.append("bank_db_call_duration_seconds{operation=\"").append(op).append("\",quantile=\"").append(quantile).append("\"} ")
+				.append(micros / 1e6).append('\n');
+	}
+
+	private static String label(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+
+	private static void register(OperationMetrics metrics) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(JMX_DOMAIN + ":type=DatabaseMetrics,operation=" + ObjectName.quote(metrics.getOperation()));
+			if (!server.isRegistered(name)) {
+				server.registerMBean(metrics, name);
+			}
+		} catch (Exception e) {
+			// Metrics are still recorded and dumped without JMX.
+			e.printStackTrace();
+		}
+	}
+
+	private static ScheduledExecutorService startDump(long intervalMillis, final String file) {
+		if (intervalMillis <= 0) {
+			return null;
+		}
+		ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "db-metrics-dump");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		executor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				dump(file);
+			}
+		}, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+		return executor;
+	}
+
+	/**
+	 * Writes the Prometheus text to a file, replacing it atomically so a scraper never reads half a dump.
+	 * @param file The file to write, or null to print to standard output.
+	 */
+	static void dump(String file) {
+		String text = toPrometheus();
+		if (file == null) {
+			System.out.print(text);
+			return;
+		}
+		File target = new File(file);
+		File temp = new File(file + ".tmp");
+		try (Writer writer = new FileWriter(temp)) {
+			writer.write(text);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		if (!temp.renameTo(target)) {
+			target.delete();
+			temp.renameTo(target);
+		}
+	}
+
+	/**
+	 * Times every execution of a statement and counts the rows its updates affect.
+	 */
+	private static class InstrumentedStatement implements InvocationHandler {
+		private final PreparedStatement pstmt;
+		private final OperationMetrics metrics;
+		private final Runnable onConnectionError;
+
+		InstrumentedStatement(PreparedStatement pstmt, OperationMetrics metrics, Runnable onConnectionError) {
+			this.pstmt = pstmt;
+			this.metrics = metrics;
+			this.onConnectionError = onConnectionError;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (name.equals("equals")) {
+				return proxy == args[0];
+			}
+			if (name.equals("hashCode")) {
+				return System.identityHashCode(proxy);
+			}
+			boolean execute = name.startsWith("execute");
+			long start = execute ? System.nanoTime() : 0;
+			Object result;
+			try {
+				result = method.invoke(pstmt, args);
+			} catch (InvocationTargetException e) {
+				Throwable cause = e.getCause();
+				if (execute) {
+					String state = cause instanceof SQLException ? ((SQLException) cause).getSQLState() : null;
+					metrics.recordError(elapsedMicros(start), state == null ? "unknown" : state);
+				}
+				if (onConnectionError != null && isConnectionError(cause)) {
+					onConnectionError.run();
+				}
+				throw cause;
+			}
+			if (execute) {
+				metrics.recordCall(elapsedMicros(start));
+				if (result instanceof Integer || result instanceof Long) {
+					metrics.recordRows(Math.max(0, ((Number) result).longValue()));
+				} else if (result instanceof int[]) {
+					for (int count : (int[]) result) {
+						metrics.recordRows(Math.max(0, count));
+					}
+				}
+			}
+			return result;
+		}
+
+		private static long elapsedMicros(long start) {
+			return (System.nanoTime() - start) / 1000;
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package sjsu.cs157a.bankingsystem;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The client side of idempotent deposits, withdrawals and loans: hashes a caller's idempotency key into the 16 bytes
+ * stored in the IdempotencyKeys table, and remembers the outcome of recent keys so that a retry already answered in
+ * this process returns without a round trip. Entries are evicted least recently used once idempotencyCacheSize is
+ * reached, and expire after idempotencyKeyTtlMillis, the same time after which the database purges its keys.
+ * Setting idempotencyCacheSize to 0 sends every retry to the database.
+ */
+public class IdempotencyKeys {
+	private static IdempotencyKeys idempotencyKeys = new IdempotencyKeys(Config.getInt("idempotencyCacheSize", 10000), Config.getLong("idempotencyKeyTtlMillis", 86400000));
+
+	private final int maxSize;
+	private final long ttlMillis;
+	private final LinkedHashMap<Key, Entry> entries;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	IdempotencyKeys(final int maxSize, long ttlMillis) {
+		this.maxSize = maxSize;
+		this.ttlMillis = ttlMillis;
+		this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * @return Returns the recent keys shared by every connection in this process.
+	 */
+	public static IdempotencyKeys getInstance() {
+		return idempotencyKeys;
+	}
+
+	/**
+	 * Hashes a client's idempotency key together with the operation it was given for, so reusing a key for another
+	 * operation is not mistaken for a retry.
+	 * @param operation The operation, such as "Deposit".
+	 * @param idempotencyKey The client's key, such as a UUID.
+	 * @return Returns the first 16 bytes of the SHA-256 of the operation and key.
+	 */
+	public static byte[] hash(String operation, String idempotencyKey) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			md.update(operation.getBytes(StandardCharsets.UTF_8));
+			md.update((byte) 0);
+			md.update(idempotencyKey.getBytes(StandardCharsets.UTF_8));
+			byte[] key = new byte[16];
+			System.arraycopy(md.digest(), 0, key, 0, key.length);
+			return key;
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform provides SHA-256.
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return Returns how long a key is remembered, here and in the database.
+	 */
+	public long getTtlMillis() {
+		return ttlMillis;
+	}
+
+	/**
+	 * @param userID The users ID
+	 * @param key The hashed key
+	 * @return Returns whether the call with this key was applied, or null if the key is not remembered.
+	 */
+	public synchronized Boolean get(long userID, byte[] key) {
+		if (maxSize <= 0) {
+			return null;
+		}
+		Key k = new Key(userID, key);
+		Entry entry = entries.get(k);
+		if (entry != null && entry.expiresAt - System.currentTimeMillis() < 0) {
+			entries.remove(k);
+			entry = null;
+		}
+		if (entry == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return entry.applied;
+	}
+
+	/**
+	 * Remembers the outcome of a call the database has committed.
+	 * @param userID The users ID
+	 * @param key The hashed key
+	 * @param applied Whether the call was applied
+	 */
+	public synchronized void put(long userID, byte[] key, boolean applied) {
+		if (maxSize > 0) {
+			entries.put(new Key(userID, key), new Entry(applied, System.currentTimeMillis() + ttlMillis));
+		}
+	}
+
+	/**
+	 * @return Returns the number of retries answered without a round trip.
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * @return Returns the number of keys that had to be checked with the database.
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * A user's hashed key, held as two longs rather than an array so it can be compared and hashed by value.
+	 */
+	private static final class Key {
+		final long userID;
+		final long high;
+		final long low;
+
+		Key(long userID, byte[] key) {
+			ByteBuffer buffer = ByteBuffer.wrap(key);
+			this.userID = userID;
+			this.high = buffer.getLong();
+			this.low = buffer.getLong();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return userID == other.userID && high == other.high && low == other.low;
+		}
+
+		@Override
+		public int hashCode() {
+			// The key is already a hash, so its low bits are as good as any.
+			return (int) low ^ Long.hashCode(userID);
+		}
+	}
+
+	private static class Entry {
+		final boolean applied;
+		final long expiresAt;
+
+		Entry(boolean applied, long expiresAt) {
+			this.applied = applied;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
@@ -0,0 +1,1003 @@
+package sjsu.cs157a.bankingsystem;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A storage backend that keeps the whole ledger in process, for simulations and as a fast test double.
+ * Users are held in a map keyed by the primitive userID, each account's transactions in append-only parallel arrays,
+ * and every account is guarded by one of a fixed set of striped locks, so postings to different accounts run in
+ * parallel and a posting allocates nothing beyond the row it appends.
+ * Postings reproduce the MySQL procedures and triggers: a transaction moves its account's balance, a withdrawal only
+ * when the balance covers it, records the resulting net balance and rolls into the month's statement; a loan is only
+ * accepted into a Loans account and adds to its balance; and changing a loan adjusts the balance by the difference,
+ * removing the loan once it is repaid to zero. Users, accounts and loans are refused where a foreign key would refuse them.
+ * Given a PostingLog, every change is logged before it is acknowledged, and the ledger is rebuilt from the log's snapshot
+ * and the records since it when constructed. Snapshots hold users, balances, loans and monthly statements but not the
+ * transactions themselves, so the history read back after a restart starts at the latest snapshot. Without a log nothing
+ * is persisted.
+ */
+public class InMemoryLedger implements StorageBackend {
+	private static final int STRIPES = 64;
+	private static final String LOANS = "Loans";
+	private static final byte DEPOSIT = 0;
+	private static final byte WITHDRAWAL = 1;
+
+	private final Clock clock;
+	private final PostingLog log;
+	// Read locked by postings and queries, write locked to add or remove users, banks and accounts, and to take a snapshot.
+	private final ReentrantReadWriteLock structure = new ReentrantReadWriteLock();
+	private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+	private final LongMap<UserRecord> users = new LongMap<UserRecord>();
+	private final Map<String, Long> userIDsByEmail = new HashMap<String, Long>();
+	private final TreeMap<String, Long> banks = new TreeMap<String, Long>();
+	private final AtomicLong nextUserID = new AtomicLong(1);
+	private final AtomicLong nextTransID = new AtomicLong(1);
+	private final AtomicLong nextLoanID = new AtomicLong(1);
+	private ScheduledExecutorService snapshotter;
+
+	public InMemoryLedger() {
+		this(Clock.systemDefaultZone());
+	}
+
+	/**
+	 * @param clock The clock transactions and loans are stamped with, and recent history is measured against.
+	 */
+	public InMemoryLedger(Clock clock) {
+		this.clock = clock;
+		this.log = null;
+		for (int i = 0; i < STRIPES; i++) {
+			stripes[i] = new ReentrantLock();
+		}
+	}
+
+	/**
+	 * Rebuilds the ledger from a log, which every later change is written to.
+	 * @param clock The clock transactions and loans are stamped with, and recent history is measured against.
+	 * @param log The log, not yet recovered.
+	 */
+	public InMemoryLedger(Clock clock, PostingLog log) throws IOException {
+		this.clock = clock;
+		this.log = log;
+		for (int i = 0; i < STRIPES; i++) {
+			stripes[i] = new ReentrantLock();
+		}
+		log.recover(new PostingLog.Replay() {
+			@Override
+			public void snapshot(DataInputStream in) throws IOException {
+				restore(in);
+			}
+
+			@Override
+			public void record(PostingLog.Record record) {
+				replay(record);
+			}
+		});
+	}
+
+	/**
+	 * Opens the ledger kept in ledgerLogDir, with the settings in config.json, and takes a snapshot every
+	 * snapshotIntervalMillis.
+	 * @return Returns the recovered ledger, or null if its log could not be read.
+	 */
+	public static InMemoryLedger open() {
+		try {
+			InMemoryLedger ledger = new InMemoryLedger(Clock.systemDefaultZone(), PostingLog.open());
+			ledger.scheduleSnapshots(Config.getLong("snapshotIntervalMillis", 60000));
+			return ledger;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	private void scheduleSnapshots(long intervalMillis) {
+		if (intervalMillis <= 0) {
+			return;
+		}
+		snapshotter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "ledger-snapshot");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		snapshotter.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				snapshot();
+			}
+		}, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Writes the ledger's state to its log as of the last change, so recovery starts from here. Postings wait only while
+	 * the state is copied, not while it is written.
+	 * @return Returns true if the snapshot was written.
+	 */
+	public boolean snapshot() {
+		if (log == null) {
+			return false;
+		}
+		long seq;
+		byte[] state;
+		structure.writeLock().lock();
+		try {
+			// Every change is logged under the structure lock, so no record can land between these two lines.
+			seq = log.getLastSeq();
+			state = save();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		} finally {
+			structure.writeLock().unlock();
+		}
+		if (seq <= log.getSnapshotSeq()) {
+			return true;
+		}
+		try {
+			log.writeSnapshot(seq, state);
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * Stops taking snapshots and closes the log, once everything logged is durable.
+	 */
+	public void close() {
+		if (snapshotter != null) {
+			snapshotter.shutdown();
+		}
+		if (log != null) {
+			log.close();
+		}
+	}
+
+	@Override
+	public long createUser(String firstName, String lastName, String email, byte[] pw) {
+		long userID;
+		long seq;
+		structure.writeLock().lock();
+		try {
+			if (userIDsByEmail.containsKey(email)) {
+				return -2;
+			}
+			userID = nextUserID.getAndIncrement();
+			addUser(userID, firstName, lastName, email, pw.clone());
+			seq = record(PostingLog.CREATE_USER, now(), new long[] { userID }, pw, firstName, lastName, email);
+		} finally {
+			structure.writeLock().unlock();
+		}
+		durable(seq);
+		return userID;
+	}
+
+	@Override
+	public boolean deleteUser(long userID) {
+		long seq;
+		structure.writeLock().lock();
+		try {
+			UserRecord user = users.get(userID);
+			if (user == null || !user.accounts.isEmpty()) {
+				return false;
+			}
+			users.remove(userID);
+			userIDsByEmail.remove(user.email);
+			seq = record(PostingLog.DELETE_USER, now(), new long[] { userID }, null);
+		} finally {
+			structure.writeLock().unlock();
+		}
+		durable(seq);
+		return true;
+	}
+
+	@Override
+	public Credentials getUserCredentials(String email) {
+		structure.readLock().lock();
+		try {
+			Long userID = userIDsByEmail.get(email);
+			if (userID == null) {
+				return null;
+			}
+			return new Credentials(userID, users.get(userID).pw.clone());
+		} finally {
+			structure.readLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean updatePassword(long userID, byte[] pw) {
+		long seq;
+		structure.writeLock().lock();
+		try {
+			UserRecord user = users.get(userID);
+			if (user == null) {
+				return false;
+			}
+			user.pw = pw.clone();
+			seq = record(PostingLog.UPDATE_PASSWORD, now(), new long[] { userID }, pw);
+		} finally {
+			structure.writeLock().unlock();
+		}
+		durable(seq);
+		return true;
+	}
+
+	@Override
+	public void markUserActive(long userID) {
+		// Nothing is archived from the in-process ledger.
+	}
+
+	@Override
+	public boolean createBank(String bankName) {
+		long seq;
+		structure.writeLock().lock();
+		try {
+			if (banks.containsKey(bankName)) {
+				return false;
+			}
+			banks.put(bankName, 0L);
+			seq = record(PostingLog.CREATE_BANK, now(), new long[0], null, bankName);
+		} finally {
+			structure.writeLock().unlock();
+		}
+		durable(seq);
+		return true;
+	}
+
+	@Override
+	public List<Bank> getAllBanks() {
+		structure.readLock().lock();
+		try {
+			List<Bank> list = new ArrayList<Bank>(banks.size());
+			for (Map.Entry<String, Long> entry : banks.entrySet()) {
+				list.add(new Bank(entry.getKey(), entry.getValue()));
+			}
+			return list;
+		} finally {
+			structure.readLock().unlock();
+		}
+	}
+
+	@Override
+	public long getBanksBalance(String bankName) {
+		structure.readLock().lock();
+		try {
+			Long balance = banks.get(bankName);
+			return balance == null ? -1 : balance;
+		} finally {
+			structure.readLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean createBankAccount(String bankName, String accType, long userID) {
+		long seq;
+		structure.writeLock().lock();
+		try {
+			UserRecord user = users.get(userID);
+			if (user == null || !banks.containsKey(bankName) || find(userID, bankName, accType) != null) {
+				return false;
+			}
+			openAccount(user, userID, bankName, accType);
+			seq = record(PostingLog.OPEN_ACCOUNT, now(), new long[] { userID }, null, bankName, accType);
+		} finally {
+			structure.writeLock().unlock();
+		}
+		durable(seq);
+		return true;
+	}
+
+	@Override
+	public boolean deleteBankAccount(String bankName, String accType, long userID) {
+		long seq;
+		structure.writeLock().lock();
+		try {
+			AccountState account = find(userID, bankName, accType);
+			// No posting runs under the write lock, so the account can be read without its stripe.
+			if (account == null || account.count > 0 || account.loanCount > 0) {
+				return false;
+			}
+			users.get(userID).accounts.remove(account);
+			seq = record(PostingLog.CLOSE_ACCOUNT, now(), new long[] { userID }, null, bankName, accType);
+		} finally {
+			structure.writeLock().unlock();
+		}
+		durable(seq);
+		return true;
+	}
+
+	@Override
+	public List<Account> getAllUserBankAccountsAtBank(String bankName, long userID) {
+		List<Account> accounts = new ArrayList<Account>();
+		structure.readLock().lock();
+		try {
+			UserRecord user = users.get(userID);
+			if (user != null) {
+				for (AccountState account : user.accounts) {
+					if (account.bankName.equals(bankName)) {
+						accounts.add(new Account(user.firstName, account.accType, balanceOf(account)));
+					}
+				}
+			}
+		} finally {
+			structure.readLock().unlock();
+		}
+		return accounts;
+	}
+
+	@Override
+	public long getBankAccountBalance(String bankName, String accType, long userID) {
+		structure.readLock().lock();
+		try {
+			AccountState account = find(userID, bankName, accType);
+			return account == null ? -1 : balanceOf(account);
+		} finally {
+			structure.readLock().unlock();
+		}
+	}
+
+	@Override
+	public long calculateNetWorth(long userID) {
+		long netWorth = 0;
+		structure.readLock().lock();
+		try {
+			UserRecord user = users.get(userID);
+			if (user != null) {
+				for (AccountState account : user.accounts) {
+					netWorth += balanceOf(account);
+				}
+			}
+		} finally {
+			structure.readLock().unlock();
+		}
+		return netWorth;
+	}
+
+	@Override
+	public Portfolio getPortfolio(long userID) {
+		List<Portfolio.Holding> holdings = new ArrayList<Portfolio.Holding>();
+		long netWorth = 0;
+		structure.readLock().lock();
+		try {
+			UserRecord user = users.get(userID);
+			if (user != null) {
+				for (AccountState account : user.accounts) {
+					long balance;
+					long outstanding = 0;
+					ReentrantLock lock = stripes[account.stripe];
+					lock.lock();
+					try {
+						balance = account.balance;
+						for (int i = 0; i < account.loanCount; i++) {
+							outstanding += account.loanAmounts[i];
+						}
+					} finally {
+						lock.unlock();
+					}
+					holdings.add(new Portfolio.Holding(account.bankName, account.accType, balance, outstanding));
+					netWorth += balance;
+				}
+			}
+		} finally {
+			structure.readLock().unlock();
+		}
+		Collections.sort(holdings, new Comparator<Portfolio.Holding>() {
+			@Override
+			public int compare(Portfolio.Holding a, Portfolio.Holding b) {
+				int c = a.getBankName().compareTo(b.getBankName());
+				return c != 0 ? c : a.getAccType().compareTo(b.getAccType());
+			}
+		});
+		return new Portfolio(userID, holdings, netWorth);
+	}
+
+	@Override
+	public boolean deposit(long userID, String bankName, String accType, String summary, long amount) {
+		return post(userID, bankName, accType, DEPOSIT, summary, amount);
+	}
+
+	@Override
+	public boolean withdraw(long userID, String bankName, String accType, String summary, long amount) {
+		return post(userID, bankName, accType, WITHDRAWAL, summary, amount);
+	}
+
+	private boolean post(long userID, String bankName, String accType, byte type, String summary, long amount) {
+		// Refused as the Transactions trigger refuses it: a negative withdrawal would otherwise raise the balance.
+		if (amount <= 0) {
+			return false;
+		}
+		long seq;
+		structure.readLock().lock();
+		try {
+			AccountState account = find(userID, bankName, accType);
+			if (account == null) {
+				return false;
+			}
+			ReentrantLock lock = stripes[account.stripe];
+			lock.lock();
+			try {
+				if (type == WITHDRAWAL && account.balance < amount) {
+					return false;
+				}
+				long time = now();
+				long transID = nextTransID.getAndIncrement();
+				apply(account, transID, type, amount, summary, null, time);
+				// Logged under the stripe, so each account's records are in the order they were applied.
+				seq = record(type == WITHDRAWAL ? PostingLog.WITHDRAWAL : PostingLog.DEPOSIT, time, new long[] { userID, amount, transID }, null,
+						bankName, accType, summary);
+			} finally {
+				lock.unlock();
+			}
+		} finally {
+			structure.readLock().unlock();
+		}
+		durable(seq);
+		return true;
+	}
+
+	@Override
+	public boolean transfer(AccountKey from, AccountKey to, long amount) {
+		if (from.equals(to) || amount <= 0) {
+			return false;
+		}
+		long seq;
+		structure.readLock().lock();
+		try {
+			AccountState source = find(from.getUserID(), from.getBankName(), from.getAccType());
+			AccountState target = find(to.getUserID(), to.getBankName(), to.getAccType());
+			if (source == null || target == null) {
+				return false;
+			}
+			// Stripes are always taken in index order, so transfers in opposite directions cannot deadlock.
+			ReentrantLock first = stripes[Math.min(source.stripe, target.stripe)];
+			ReentrantLock second = stripes[Math.max(source.stripe, target.stripe)];
+			first.lock();
+			second.lock();
+			try {
+				if (source.balance < amount) {
+					return false;
+				}
+				long time = now();
+				long withdrawalID = nextTransID.getAndIncrement();
+				long depositID = nextTransID.getAndIncrement();
+				apply(source, withdrawalID, WITHDRAWAL, amount, "Transfer", target.bankName + " " + target.accType, time);
+				apply(target, depositID, DEPOSIT, amount, "Transfer", source.bankName + " " + source.accType, time);
+				seq = record(PostingLog.TRANSFER, time, new long[] { from.getUserID(), to.getUserID(), amount, withdrawalID, depositID }, null,
+						source.bankName, source.accType, target.bankName, target.accType);
+			} finally {
+				second.unlock();
+				first.unlock();
+			}
+		} finally {
+			structure.readLock().unlock();
+		}
+		durable(seq);
+		return true;
+	}
+
+	/**
+	 * Appends a transaction to an account as the Transactions trigger applies it, with the account's stripe held.
+	 * A withdrawal must already have been checked against the balance.
+	 */
+	private static void apply(AccountState account, long transID, byte type, long amount, String summary, String location, long time) {
+		account.balance += type == WITHDRAWAL ? -amount : amount;
+		account.append(transID, time, type, amount, summary, location);
+		long[] statement = account.statements.get(month(time));
+		if (statement == null) {
+			// {opening, closing, count, deposits, withdrawals}, as in MonthlyStatements.
+			statement = new long[] { type == WITHDRAWAL ? account.balance + amount : account.balance - amount, 0, 0, 0, 0 };
+			account.statements.put(month(time), statement);
+		}
+		statement[1] = account.balance;
+		statement[2]++;
+		statement[type == WITHDRAWAL ? 4 : 3] += amount;
+	}
+
+	@Override
+	public List<Transaction> getRecentTransactions(long userID, String bankName, String accType) {
+		long cutoff = now() - 30L * 24 * 60 * 60;
+		return history(userID, bankName, accType, cutoff, Long.MAX_VALUE);
+	}
+
+	@Override
+	public List<Transaction> getMonthlyTransactions(long userID, String bankName, String accType, LocalDate filterDate) {
+		long start = filterDate.atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+		long end = filterDate.plusMonths(1).atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+		return history(userID, bankName, accType, start, end);
+	}
+
+	/**
+	 * @return Returns the account's transactions stamped from start up to but excluding end, newest first.
+	 */
+	private List<Transaction> history(long userID, String bankName, String accType, long start, long end) {
+		List<Transaction> transactions = new ArrayList<Transaction>();
+		structure.readLock().lock();
+		try {
+			AccountState account = find(userID, bankName, accType);
+			if (account == null) {
+				return transactions;
+			}
+			ReentrantLock lock = stripes[account.stripe];
+			lock.lock();
+			try {
+				// Times only grow along the history, so the scan stops at the first row older than the range.
+				for (int i = account.count - 1; i >= 0 && account.times[i] >= start; i--) {
+					if (account.times[i] < end) {
+						transactions.add(new Transaction(account.transIDs[i], userID, bankName, accType,
+								LocalDateTime.ofEpochSecond(account.times[i], 0, ZoneOffset.UTC), account.locations[i], account.summaries[i],
+								account.types[i] == WITHDRAWAL ? "Withdrawal" : "Deposit", account.amounts[i], account.netBalances[i]));
+					}
+				}
+			} finally {
+				lock.unlock();
+			}
+		} finally {
+			structure.readLock().unlock();
+		}
+		return transactions;
+	}
+
+	@Override
+	public MonthlyStatement getMonthlyStatement(long userID, String bankName, String accType, LocalDate filterDate) {
+		structure.readLock().lock();
+		try {
+			AccountState account = find(userID, bankName, accType);
+			if (account == null) {
+				return null;
+			}
+			ReentrantLock lock = stripes[account.stripe];
+			lock.lock();
+			try {
+				long[] statement = account.statements.get(filterDate.getYear() * 100L + filterDate.getMonthValue());
+				if (statement == null) {
+					return null;
+				}
+				return new MonthlyStatement(filterDate.withDayOfMonth(1), statement[0], statement[1], (int) statement[2], statement[3], statement[4]);
+			} finally {
+				lock.unlock();
+			}
+		} finally {
+			structure.readLock().unlock();
+		}
+	}
+
+	@Override
+	public List<Loan> getLoans(long userID) {
+		List<Loan> loans = new ArrayList<Loan>();
+		structure.readLock().lock();
+		try {
+			UserRecord user = users.get(userID);
+			if (user != null) {
+				for (AccountState account : user.accounts) {
+					ReentrantLock lock = stripes[account.stripe];
+					lock.lock();
+					try {
+						for (int i = 0; i < account.loanCount; i++) {
+							loans.add(new Loan(account.loanIDs[i], account.bankName, account.loanAmounts[i]));
+						}
+					} finally {
+						lock.unlock();
+					}
+				}
+			}
+		} finally {
+			structure.readLock().unlock();
+		}
+		Collections.sort(loans, new Comparator<Loan>() {
+			@Override
+			public int compare(Loan a, Loan b) {
+				return Long.compare(a.getLoanId(), b.getLoanId());
+			}
+		});
+		return loans;
+	}
+
+	@Override
+	public boolean createLoan(long userID, String bankName, long amount) {
+		if (amount <= 0) {
+			return false;
+		}
+		long seq;
+		structure.readLock().lock();
+		try {
+			AccountState account = find(userID, bankName, LOANS);
+			if (account == null) {
+				return false;
+			}
+			ReentrantLock lock = stripes[account.stripe];
+			lock.lock();
+			try {
+				long loanID = nextLoanID.getAndIncrement();
+				account.addLoan(loanID, amount);
+				account.balance += amount;
+				seq = record(PostingLog.CREATE_LOAN, now(), new long[] { userID, loanID, amount }, null, bankName);
+			} finally {
+				lock.unlock();
+			}
+		} finally {
+			structure.readLock().unlock();
+		}
+		durable(seq);
+		return true;
+	}
+
+	/**
+	 * Changes the amount of a loan, as an UPDATE of Loans does: the account's balance moves by the difference, and a
+	 * loan repaid to zero is removed.
+	 * @param userID The users ID
+	 * @param loanID The loan's ID
+	 * @param amount The new amount owed, in cents
+	 * @return Returns true if the user has the loan.
+	 */
+	public boolean updateLoan(long userID, long loanID, long amount) {
+		long seq;
+		structure.readLock().lock();
+		try {
+			UserRecord user = users.get(userID);
+			AccountState account = user == null ? null : changeLoan(user, loanID, amount);
+			if (account == null) {
+				return false;
+			}
+			// changeLoan returns with the account's stripe held, so the record follows the change it describes.
+			try {
+				seq = record(PostingLog.UPDATE_LOAN, now(), new long[] { userID, loanID, amount }, null);
+			} finally {
+				stripes[account.stripe].unlock();
+			}
+		} finally {
+			structure.readLock().unlock();
+		}
+		durable(seq);
+		return true;
+	}
+
+	/**
+	 * Changes a loan of the user's.
+	 * @return Returns the account holding the loan with its stripe still locked, or null, unlocked, if the user has no such loan.
+	 */
+	private AccountState changeLoan(UserRecord user, long loanID, long amount) {
+		for (AccountState account : user.accounts) {
+			ReentrantLock lock = stripes[account.stripe];
+			lock.lock();
+			for (int i = 0; i < account.loanCount; i++) {
+				if (account.loanIDs[i] == loanID) {
+					account.balance += amount - account.loanAmounts[i];
+					if (amount == 0) {
+						account.removeLoan(i);
+					} else {
+						account.loanAmounts[i] = amount;
+					}
+					return account;
+				}
+			}
+			lock.unlock();
+		}
+		return null;
+	}
+
+	private void addUser(long userID, String firstName, String lastName, String email, byte[] pw) {
+		users.put(userID, new UserRecord(firstName, lastName, email, pw));
+		userIDsByEmail.put(email, userID);
+	}
+
+	private AccountState openAccount(UserRecord user, long userID, String bankName, String accType) {
+		int stripe = spread(new AccountKey(userID, bankName, accType).hashCode()) & (STRIPES - 1);
+		AccountState account = new AccountState(bankName, accType, stripe);
+		user.accounts.add(account);
+		return account;
+	}
+
+	/**
+	 * Appends a change to the log, if there is one.
+	 * @return Returns the record's sequence number, or 0 without a log.
+	 */
+	private long record(byte op, long time, long[] longs, byte[] data, String... strings) {
+		return log == null ? 0 : log.append(op, time, longs, data, strings);
+	}
+
+	/**
+	 * Waits for a logged change to be durable before it is acknowledged. The change is already visible in memory, so a log
+	 * that can no longer be written is fatal.
+	 */
+	private void durable(long seq) {
+		if (seq > 0 && !log.awaitDurable(seq)) {
+			throw new IllegalStateException("Change " + seq + " could not be made durable");
+		}
+	}
+
+	/**
+	 * Applies a record read back from the log, before the ledger is shared.
+	 */
+	private void replay(PostingLog.Record record) {
+		long[] l = record.longs;
+		String[] s = record.strings;
+		switch (record.op) {
+		case PostingLog.CREATE_USER:
+			addUser(l[0], s[0], s[1], s[2], record.data);
+			advance(nextUserID, l[0]);
+			break;
+		case PostingLog.DELETE_USER:
+			userIDsByEmail.remove(users.remove(l[0]).email);
+			break;
+		case PostingLog.CREATE_BANK:
+			banks.put(s[0], 0L);
+			break;
+		case PostingLog.OPEN_ACCOUNT:
+			openAccount(users.get(l[0]), l[0], s[0], s[1]);
+			break;
+		case PostingLog.CLOSE_ACCOUNT:
+			users.get(l[0]).accounts.remove(find(l[0], s[0], s[1]));
+			break;
+		case PostingLog.DEPOSIT:
+		case PostingLog.WITHDRAWAL:
+			apply(find(l[0], s[0], s[1]), l[2], record.op == PostingLog.WITHDRAWAL ? WITHDRAWAL : DEPOSIT, l[1], s[2], null, record.time);
+			advance(nextTransID, l[2]);
+			break;
+		case PostingLog.TRANSFER:
+			apply(find(l[0], s[0], s[1]), l[3], WITHDRAWAL, l[2], "Transfer", s[2] + " " + s[3], record.time);
+			apply(find(l[1], s[2], s[3]), l[4], DEPOSIT, l[2], "Transfer", s[0] + " " + s[1], record.time);
+			advance(nextTransID, l[4]);
+			break;
+		case PostingLog.CREATE_LOAN:
+			AccountState account = find(l[0], s[0], LOANS);
+			account.addLoan(l[1], l[2]);
+			account.balance += l[2];
+			advance(nextLoanID, l[1]);
+			break;
+		case PostingLog.UPDATE_LOAN:
+			stripes[changeLoan(users.get(l[0]), l[1], l[2]).stripe].unlock();
+			break;
+		case PostingLog.UPDATE_PASSWORD:
+			users.get(l[0]).pw = record.data;
+			break;
+		default:
+			throw new IllegalStateException("Unknown posting log record " + record.op);
+		}
+	}
+
+	private static void advance(AtomicLong next, long used) {
+		if (next.get() <= used) {
+			next.set(used + 1);
+		}
+	}
+
+	/**
+	 * Serializes everything but the transactions themselves, with the structure write lock held.
+	 */
+	private byte[] save() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeLong(nextUserID.get());
+		out.writeLong(nextTransID.get());
+		out.writeLong(nextLoanID.get());
+		out.writeInt(banks.size());
+		for (Map.Entry<String, Long> entry : banks.entrySet()) {
+			out.writeUTF(entry.getKey());
+			out.writeLong(entry.getValue());
+		}
+		long[] userIDs = users.keys();
+		out.writeInt(userIDs.length);
+		for (long userID : userIDs) {
+			UserRecord user = users.get(userID);
+			out.writeLong(userID);
+			out.writeUTF(user.firstName);
+			out.writeUTF(user.lastName);
+			out.writeUTF(user.email);
+			out.writeInt(user.pw.length);
+			out.write(user.pw);
+			out.writeInt(user.accounts.size());
+			for (AccountState account : user.accounts) {
+				out.writeUTF(account.bankName);
+				out.writeUTF(account.accType);
+				out.writeLong(account.balance);
+				out.writeInt(account.loanCount);
+				for (int i = 0; i < account.loanCount; i++) {
+					out.writeLong(account.loanIDs[i]);
+					out.writeLong(account.loanAmounts[i]);
+				}
+				long[] months = account.statements.keys();
+				out.writeInt(months.length);
+				for (long month : months) {
+					out.writeLong(month);
+					for (long value : account.statements.get(month)) {
+						out.writeLong(value);
+					}
+				}
+			}
+		}
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Reads back what save wrote, before the ledger is shared.
+	 */
+	private void restore(DataInputStream in) throws IOException {
+		nextUserID.set(in.readLong());
+		nextTransID.set(in.readLong());
+		nextLoanID.set(in.readLong());
+		for (int b = in.readInt(); b > 0; b--) {
+			banks.put(in.readUTF(), in.readLong());
+		}
+		for (int u = in.readInt(); u > 0; u--) {
+			long userID = in.readLong();
+			String firstName = in.readUTF();
+			String lastName = in.readUTF();
+			String email = in.readUTF();
+			byte[] pw = new byte[in.readInt()];
+			in.readFully(pw);
+			addUser(userID, firstName, lastName, email, pw);
+			UserRecord user = users.get(userID);
+			for (int a = in.readInt(); a > 0; a--) {
+				AccountState account = openAccount(user, userID, in.readUTF(), in.readUTF());
+				account.balance = in.readLong();
+				for (int l = in.readInt(); l > 0; l--) {
+					account.addLoan(in.readLong(), in.readLong());
+				}
+				for (int m = in.readInt(); m > 0; m--) {
+					long month = in.readLong();
+					long[] statement = new long[5];
+					for (int i = 0; i < statement.length; i++) {
+						statement[i] = in.readLong();
+					}
+					account.statements.put(month, statement);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Looks an account up, with the structure lock held.
+	 */
+	private AccountState find(long userID, String bankName, String accType) {
+		UserRecord user = users.get(userID);
+		if (user == null) {
+			return null;
+		}
+		// Users hold a handful of accounts, so a scan beats a second map.
+		for (AccountState account : user.accounts) {
+			if (account.accType.equals(accType) && account.bankName.equals(bankName)) {
+				return account;
+			}
+		}
+		return null;
+	}
+
+	private long balanceOf(AccountState account) {
+		ReentrantLock lock = stripes[account.stripe];
+		lock.lock();
+		try {
+			return account.balance;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return Returns the current time in whole seconds, as a DATETIME column holds it.
+	 */
+	private long now() {
+		return LocalDateTime.now(clock).toEpochSecond(ZoneOffset.UTC);
+	}
+
+	private static long month(long time) {
+		LocalDate date = LocalDateTime.ofEpochSecond(time, 0, ZoneOffset.UTC).toLocalDate();
+		return date.getYear() * 100L + date.getMonthValue();
+	}
+
+	private static int spread(int h) {
+		return h ^ (h >>> 16);
+	}
+
+	private static class UserRecord {
+		final String firstName;
+		final String lastName;
+		final String email;
+		// pw and accounts are changed only under the structure write lock.
+		byte[] pw;
+		final List<AccountState> accounts = new ArrayList<AccountState>(4);
+
+		UserRecord(String firstName, String lastName, String email, byte[] pw) {
+			this.firstName = firstName;
+			this.lastName = lastName;
+			this.email = email;
+			this.pw = pw;
+		}
+	}
+
+	/**
+	 * One account, its append-only history and its loans. Every field below the key is guarded by the account's stripe.
+	 */
+	private static final class AccountState {
+		final String bankName;
+		final String accType;
+		final int stripe;
+
+		long balance;
+
+		int count;
+		long[] transIDs = new long[8];
+		long[] times = new long[8];
+		byte[] types = new byte[8];
+		long[] amounts = new long[8];
+		long[] netBalances = new long[8];
+		String[] summaries = new String[8];
+		String[] locations = new String[8];
+
+		int loanCount;
+		long[] loanIDs = new long[2];
+		long[] loanAmounts = new long[2];
+
+		// Keyed by year * 100 + month.
+		final LongMap<long[]> statements = new LongMap<long[]>();
+
+		AccountState(String bankName, String accType, int stripe) {
+			this.bankName = bankName;
+			this.accType = accType;
+			this.stripe = stripe;
+		}
+
+		void append(long transID, long time, byte type, long amount, String summary, String location) {
+			if (count == transIDs.length) {
+				int capacity = count * 2;
+				transIDs = Arrays.copyOf(transIDs, capacity);
+				times = Arrays.copyOf(times, capacity);
+				types = Arrays.copyOf(types, capacity);
+				amounts = Arrays.copyOf(amounts, capacity);
+				netBalances = Arrays.copyOf(netBalances, capacity);
+				summaries = Arrays.copyOf(summaries, capacity);
+				locations = Arrays.copyOf(locations, capacity);
+			}
+			transIDs[count] = transID;
+			times[count] = time;
+			types[count] = type;
+			amounts[count] = amount;
+			netBalances[count] = balance;
+			summaries[count] = summary;
+			locations[count] = location;
+			count++;
+		}
+
+		void addLoan(long loanID, long amount) {
+			if (loanCount == loanIDs.length) {
+				loanIDs = Arrays.copyOf(loanIDs, loanCount * 2);
+				loanAmounts = Arrays.copyOf(loanAmounts, loanCount * 2);
+			}
+			loanIDs[loanCount] = loanID;
+			loanAmounts[loanCount] = amount;
+			loanCount++;
+		}
+
+		void removeLoan(int index) {
+			loanCount--;
+			System.arraycopy(loanIDs, index + 1, loanIDs, index, loanCount - index);
+			System.arraycopy(loanAmounts, index + 1, loanAmounts, index, loanCount - index);
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package sjsu.cs157a.bankingsystem;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size, lock-free histogram of latencies in microseconds.
+ * Values are counted into log-linear buckets: each power of two is split into SUB_BUCKETS equal buckets, so any value
+ * read back is within 1/SUB_BUCKETS (12.5%) of what was recorded, from 1us up to about twelve days.
+ * Recording is a single atomic increment, so any number of threads can record at once without contending on a lock.
+ * Reads are not a consistent snapshot of concurrent writes, which is fine for monitoring.
+ */
+public class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 3;
+	static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_EXPONENT = 40;
+	static final long MAX_VALUE = (1L << MAX_EXPONENT) - 1;
+
+	private final AtomicLongArray counts = new AtomicLongArray((MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS);
+
+	/**
+	 * Records one value.
+	 * @param micros The latency in microseconds. Negative values are recorded as 0 and values above MAX_VALUE as MAX_VALUE.
+	 */
+	public void record(long micros) {
+		counts.incrementAndGet(bucketOf(Math.max(0, Math.min(micros, MAX_VALUE))));
+	}
+
+	/**
+	 * @return Returns the number of values recorded.
+	 */
+	public long getCount() {
+		long total = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			total += counts.get(i);
+		}
+		return total;
+	}
+
+	/**
+	 * Estimates a percentile of the recorded values.
+	 * @param percentile The percentile, 0~100.
+	 * @return Returns the upper bound of the bucket holding the percentile, in microseconds, or 0 if nothing was recorded.
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long[] snapshot = new long[counts.length()];
+		long total = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+		long seen = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return upperBoundOf(i);
+			}
+		}
+		return upperBoundOf(snapshot.length - 1);
+	}
+
+	/**
+	 * @return Returns the upper bound of the highest non-empty bucket, in microseconds, or 0 if nothing was recorded.
+	 */
+	public long getMaxValue() {
+		for (int i = counts.length() - 1; i >= 0; i--) {
+			if (counts.get(i) > 0) {
+				return upperBoundOf(i);
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Clears every bucket. Values recorded during a reset may or may not be kept.
+	 */
+	public void reset() {
+		for (int i = 0; i < counts.length(); i++) {
+			counts.set(i, 0);
+		}
+	}
+
+	static int bucketOf(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	static long upperBoundOf(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long subBucket = bucket % SUB_BUCKETS;
+		long width = 1L << (exponent - SUB_BUCKET_BITS);
+		return (1L << exponent) + (subBucket + 1) * width - 1;
+	}
+}
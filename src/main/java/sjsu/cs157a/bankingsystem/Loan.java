@@ -4,14 +4,24 @@ import java.sql.Connection;
 import java.util.List;
 
 public class Loan {
+	private long loanId;
 	private String bankName;
-	private float amount;
+	private long amount;
 	
-	public Loan(String bankName, float amount) {
+	public Loan(String bankName, long amount) {
+		this(0, bankName, amount);
+	}
+	
+	public Loan(long loanId, String bankName, long amount) {
+		this.loanId = loanId;
 		this.setBankName(bankName);
 		this.setAmount(amount);
 	}
 
+	public long getLoanId() {
+		return loanId;
+	}
+
 	public String getBankName() {
 		return bankName;
 	}
@@ -20,20 +30,35 @@ public class Loan {
 		this.bankName = bankName;
 	}
 
-	public float getAmount() {
+	public long getAmount() {
 		return amount;
 	}
 
-	public void setAmount(float amount) {
+	public void setAmount(long amount) {
 		this.amount = amount;
 	}
 
-	public static List<Loan> getLoans(Connection conn, int userID) {
+	public static List<Loan> getLoans(Connection conn, long userID) {
 		return Database.getLoans(conn, userID);
 	}
 	
-	public static void createLoan(Connection conn, int userID, String bankName, float amount) {
-		Database.createLoan(conn, userID, bankName, amount);
+	/**
+	 * @return Returns true if the loan was made, false if there is no Loans account at the bank or the call failed.
+	 */
+	public static boolean createLoan(Connection conn, long userID, String bankName, long amount) {
+		return Database.createLoan(conn, userID, bankName, amount);
+	}
+
+	/**
+	 * @param conn The MySQL connection
+	 * @param userID The users ID
+	 * @param bankName The banks name
+	 * @param amount The amount in cents
+	 * @param idempotencyKey The callers key for this loan, reused unchanged on every retry
+	 * @return Return true if the loan was made or false if it was refused, now or by an earlier call with the key; null if the outcome is unknown and the call may be retried with the same key
+	 */
+	public static Boolean createLoan(Connection conn, long userID, String bankName, long amount, String idempotencyKey) {
+		return Database.createLoan(conn, userID, bankName, amount, idempotencyKey);
 	}
 
 }
@@ -0,0 +1,182 @@
+package sjsu.cs157a.bankingsystem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A hash map from primitive long keys to values, with open addressing and linear probing, so that lookups by id neither
+ * box the key nor allocate an entry. Not thread safe; InMemoryLedger guards every instance with its own locks.
+ */
+class LongMap<V> {
+	private static final int MIN_CAPACITY = 8;
+
+	private long[] keys;
+	private Object[] values;
+	private boolean[] used;
+	private int size;
+
+	LongMap() {
+		this(MIN_CAPACITY);
+	}
+
+	LongMap(int expectedSize) {
+		int capacity = MIN_CAPACITY;
+		while (capacity * 3 < expectedSize * 4) {
+			capacity <<= 1;
+		}
+		allocate(capacity);
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new Object[capacity];
+		used = new boolean[capacity];
+	}
+
+	/**
+	 * @param key The key.
+	 * @return Returns the value mapped to the key, or null if there is none.
+	 */
+	@SuppressWarnings("unchecked")
+	V get(long key) {
+		int mask = keys.length - 1;
+		for (int i = slot(key, mask); used[i]; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				return (V) values[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param key The key.
+	 * @param value The value, not null.
+	 * @return Returns the value previously mapped to the key, or null if there was none.
+	 */
+	@SuppressWarnings("unchecked")
+	V put(long key, V value) {
+		int mask = keys.length - 1;
+		int i = slot(key, mask);
+		for (; used[i]; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				V previous = (V) values[i];
+				values[i] = value;
+				return previous;
+			}
+		}
+		used[i] = true;
+		keys[i] = key;
+		values[i] = value;
+		// Keep the table at most three quarters full, so probe sequences stay short.
+		if (++size * 4 > keys.length * 3) {
+			rehash(keys.length << 1);
+		}
+		return null;
+	}
+
+	/**
+	 * @param key The key.
+	 * @return Returns the value that was mapped to the key, or null if there was none.
+	 */
+	@SuppressWarnings("unchecked")
+	V remove(long key) {
+		int mask = keys.length - 1;
+		int i = slot(key, mask);
+		for (; used[i]; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				V previous = (V) values[i];
+				closeGap(i, mask);
+				size--;
+				return previous;
+			}
+		}
+		return null;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return Returns a copy of every value, in no particular order.
+	 */
+	@SuppressWarnings("unchecked")
+	List<V> values() {
+		List<V> list = new ArrayList<V>(size);
+		for (int i = 0; i < keys.length; i++) {
+			if (used[i]) {
+				list.add((V) values[i]);
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * @return Returns a copy of every key, in no particular order.
+	 */
+	long[] keys() {
+		long[] list = new long[size];
+		int n = 0;
+		for (int i = 0; i < keys.length; i++) {
+			if (used[i]) {
+				list[n++] = keys[i];
+			}
+		}
+		return list;
+	}
+
+	void clear() {
+		Arrays.fill(used, false);
+		Arrays.fill(values, null);
+		size = 0;
+	}
+
+	/**
+	 * Removes the entry at a slot and shifts later entries of its probe sequence back, so no tombstones are needed.
+	 */
+	private void closeGap(int gap, int mask) {
+		int i = gap;
+		while (true) {
+			i = (i + 1) & mask;
+			if (!used[i]) {
+				break;
+			}
+			int home = slot(keys[i], mask);
+			// Move the entry into the gap unless its home slot lies cyclically between the gap and its current slot.
+			boolean between = gap <= i ? gap < home && home <= i : gap < home || home <= i;
+			if (!between) {
+				keys[gap] = keys[i];
+				values[gap] = values[i];
+				gap = i;
+			}
+		}
+		used[gap] = false;
+		values[gap] = null;
+	}
+
+	private void rehash(int capacity) {
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		boolean[] oldUsed = used;
+		allocate(capacity);
+		int mask = capacity - 1;
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldUsed[j]) {
+				int i = slot(oldKeys[j], mask);
+				while (used[i]) {
+					i = (i + 1) & mask;
+				}
+				used[i] = true;
+				keys[i] = oldKeys[j];
+				values[i] = oldValues[j];
+			}
+		}
+	}
+
+	private static int slot(long key, int mask) {
+		// Ids are sequential, so spread them with Fibonacci hashing before masking.
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+}
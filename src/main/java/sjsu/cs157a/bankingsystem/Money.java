@@ -0,0 +1,179 @@
+package sjsu.cs157a.bankingsystem;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Exact money arithmetic on long minor units (cents).
+ * Every balance and amount in the system is a long number of cents in CURRENCY, matching the DECIMAL(15, 2) columns
+ * of the database exactly, so sums and differences are plain long arithmetic with no rounding and no allocation.
+ * BigDecimal is only used where JDBC requires it, when reading or binding a column.
+ */
+public final class Money {
+	public static final String CURRENCY = "USD";
+	public static final int SCALE = 2;
+	private static final long MINOR_PER_MAJOR = 100;
+
+	private Money() {
+	}
+
+	/**
+	 * Converts whole dollars and cents to minor units.
+	 * @param dollars The whole dollars.
+	 * @param cents The cents, 0~99.
+	 * @return Returns the amount in cents.
+	 */
+	public static long of(long dollars, int cents) {
+		return Math.addExact(Math.multiplyExact(dollars, MINOR_PER_MAJOR), dollars < 0 ? -cents : cents);
+	}
+
+	/**
+	 * Adds two amounts, failing rather than silently overflowing.
+	 * @param a An amount in cents.
+	 * @param b An amount in cents.
+	 * @return Returns a + b in cents.
+	 */
+	public static long add(long a, long b) {
+		return Math.addExact(a, b);
+	}
+
+	/**
+	 * Subtracts two amounts, failing rather than silently overflowing.
+	 * @param a An amount in cents.
+	 * @param b An amount in cents.
+	 * @return Returns a - b in cents.
+	 */
+	public static long subtract(long a, long b) {
+		return Math.subtractExact(a, b);
+	}
+
+	/**
+	 * Converts a DECIMAL value to cents, rounding half-even past the second decimal place.
+	 * @param value The decimal value. Null is treated as zero, as SQL SUM() of no rows returns null.
+	 * @return Returns the value in cents.
+	 */
+	public static long fromDecimal(BigDecimal value) {
+		if (value == null) {
+			return 0;
+		}
+		return value.setScale(SCALE, RoundingMode.HALF_EVEN).unscaledValue().longValueExact();
+	}
+
+	/**
+	 * Converts cents to a DECIMAL value with a scale of two.
+	 * @param cents The amount in cents.
+	 * @return Returns the amount as a decimal.
+	 */
+	public static BigDecimal toDecimal(long cents) {
+		return BigDecimal.valueOf(cents, SCALE);
+	}
+
+	/**
+	 * Reads a DECIMAL column as cents.
+	 * @param rs The result set, positioned on a row.
+	 * @param column The column label.
+	 * @return Returns the column value in cents. Null is read as zero.
+	 * @throws SQLException Thrown if the column cannot be read.
+	 */
+	public static long read(ResultSet rs, String column) throws SQLException {
+		return fromDecimal(rs.getBigDecimal(column));
+	}
+
+	/**
+	 * Reads a DECIMAL column as cents.
+	 * @param rs The result set, positioned on a row.
+	 * @param column The 1-based column index.
+	 * @return Returns the column value in cents. Null is read as zero.
+	 * @throws SQLException Thrown if the column cannot be read.
+	 */
+	public static long read(ResultSet rs, int column) throws SQLException {
+		return fromDecimal(rs.getBigDecimal(column));
+	}
+
+	/**
+	 * Binds cents to a DECIMAL parameter.
+	 * @param pstmt The statement.
+	 * @param index The 1-based parameter index.
+	 * @param cents The amount in cents.
+	 * @throws SQLException Thrown if the parameter cannot be set.
+	 */
+	public static void bind(PreparedStatement pstmt, int index, long cents) throws SQLException {
+		pstmt.setBigDecimal(index, toDecimal(cents));
+	}
+
+	/**
+	 * Parses an amount typed by a user, such as "12", "12.5", "$1,250.05" or "-3.10".
+	 * @param text The amount to parse.
+	 * @return Returns the amount in cents.
+	 * @throws NumberFormatException Thrown if the text is not an amount with at most two decimal places.
+	 */
+	public static long parse(String text) {
+		String trimmed = text.trim();
+		int i = 0;
+		int length = trimmed.length();
+		boolean negative = false;
+		if (i < length && (trimmed.charAt(i) == '-' || trimmed.charAt(i) == '+')) {
+			negative = trimmed.charAt(i) == '-';
+			i++;
+		}
+		if (i < length && trimmed.charAt(i) == '$') {
+			i++;
+		}
+		long dollars = 0;
+		int digits = 0;
+		for (; i < length && trimmed.charAt(i) != '.'; i++) {
+			char c = trimmed.charAt(i);
+			if (c == ',') {
+				continue;
+			}
+			if (c < '0' || c > '9') {
+				throw new NumberFormatException("Not an amount: " + text);
+			}
+			dollars = Math.addExact(Math.multiplyExact(dollars, 10), c - '0');
+			digits++;
+		}
+		long cents = 0;
+		int decimals = 0;
+		if (i < length) {
+			// Skip the decimal point.
+			for (i++; i < length; i++) {
+				char c = trimmed.charAt(i);
+				if (c < '0' || c > '9' || decimals == SCALE) {
+					throw new NumberFormatException("Not an amount with at most " + SCALE + " decimal places: " + text);
+				}
+				cents = cents * 10 + (c - '0');
+				decimals++;
+			}
+		}
+		if (digits == 0 && decimals == 0) {
+			throw new NumberFormatException("Not an amount: " + text);
+		}
+		for (; decimals < SCALE; decimals++) {
+			cents *= 10;
+		}
+		long total = Math.addExact(Math.multiplyExact(dollars, MINOR_PER_MAJOR), cents);
+		return negative ? -total : total;
+	}
+
+	/**
+	 * Formats cents as a plain decimal amount with two decimal places, such as "1250.05" or "-3.10".
+	 * @param cents The amount in cents.
+	 * @return Returns the formatted amount, without a currency symbol.
+	 */
+	public static String format(long cents) {
+		StringBuilder sb = new StringBuilder(24);
+		if (cents < 0) {
+			sb.append('-');
+		}
+		long dollars = Math.abs(cents / MINOR_PER_MAJOR);
+		long remainder = Math.abs(cents % MINOR_PER_MAJOR);
+		sb.append(dollars).append('.');
+		if (remainder < 10) {
+			sb.append('0');
+		}
+		return sb.append(remainder).toString();
+	}
+}
@@ -0,0 +1,58 @@
+package sjsu.cs157a.bankingsystem;
+
+import java.time.LocalDate;
+
+/**
+ * The summary of one account's month, read from the MonthlyStatements rollup rather than added up from its transactions.
+ * Amounts are in cents.
+ */
+public class MonthlyStatement {
+	private final LocalDate month;
+	private final long openingBalance;
+	private final long closingBalance;
+	private final int transCount;
+	private final long depositTotal;
+	private final long withdrawalTotal;
+
+	public MonthlyStatement(LocalDate month, long openingBalance, long closingBalance, int transCount, long depositTotal, long withdrawalTotal) {
+		this.month = month;
+		this.openingBalance = openingBalance;
+		this.closingBalance = closingBalance;
+		this.transCount = transCount;
+		this.depositTotal = depositTotal;
+		this.withdrawalTotal = withdrawalTotal;
+	}
+
+	/**
+	 * @return Returns the first day of the month.
+	 */
+	public LocalDate getMonth() {
+		return month;
+	}
+
+	/**
+	 * @return Returns the balance before the month's first transaction.
+	 */
+	public long getOpeningBalance() {
+		return openingBalance;
+	}
+
+	/**
+	 * @return Returns the balance after the month's last transaction.
+	 */
+	public long getClosingBalance() {
+		return closingBalance;
+	}
+
+	public int getTransCount() {
+		return transCount;
+	}
+
+	public long getDepositTotal() {
+		return depositTotal;
+	}
+
+	public long getWithdrawalTotal() {
+		return withdrawalTotal;
+	}
+}
@@ -0,0 +1,283 @@
+package sjsu.cs157a.bankingsystem;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The MySQL storage backend: runs each operation through the matching Database method, on a connection borrowed from
+ * the pool for the duration of the call. When no connection can be borrowed, the operation returns its error sentinel.
+ */
+public class MySQLStorage implements StorageBackend {
+	private final SQLConnector connector;
+
+	public MySQLStorage(SQLConnector connector) {
+		this.connector = connector;
+	}
+
+	@Override
+	public long createUser(String firstName, String lastName, String email, byte[] pw) {
+		try (Connection conn = connector.getConnection()) {
+			if (conn != null) {
+				return Database.createUser(conn, firstName, lastName, email, pw);
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		return -1;
+	}
+
+	@Override
+	public boolean deleteUser(long userID) {
+		try (Connection conn = connector.getConnection()) {
+			if (conn != null) {
+				return Database.deleteUser(conn, userID);
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		return false;
+	}
+
+	@Override
+	public Credentials getUserCredentials(String email) {
+		try (Connection conn = connector.getConnection()) {
+			if (conn != null) {
+				return Database.getUserCredentials(conn, email);
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+
+	@Override
+	public boolean updatePassword(long userID, byte[] pw) {
+		try (Connection conn = connector.getConnection()) {
+			if (conn != null) {
+				return Database.updatePassword(conn, userID, pw);
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		return false;
+	}
+
+	@Override
+	public void markUserActive(long userID) {
+		try (Connection conn = connector.getConnection()) {
+			if (conn != null) {
+				Database.markUserActive(conn, userID);
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	public boolean createBank(String bankName) {
+		try (Connection conn = connector.getConnection()) {
+			if (conn != null) {
+				return Database.createBank(conn, bankName);
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		return false;
+	}
+
+	@Override
+	public List<Bank> getAllBanks() {
+		try (Connection conn = connector.getConnection()) {
+			if (conn != null) {
+				// Served from the cached bank directory, like the console menus.
+				return Bank.getAllBanks(conn);
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		return new ArrayList<Bank>();
+	}
+
+	@Override
+	public long getBanksBalance(String bankName) {
+		try (Connection conn = connector.getConnection()) {
+			if (conn != null) {
+				return Database.getBanksBalance(conn, bankName);
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		return -1;
+	}
+
+	@Override
+	public boolean createBankAccount(String bankName, String accType, long userID) {
+		try (Connection conn = connector.getConnection()) {
+			if (conn != null) {
+				return Database.createBankAccount(conn, bankName, accType, userID);
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		return false;
+	}
+
+	@Override
+	public boolean deleteBankAccount(String bankName, String accType, long userID) {
+		try (Connection conn = connector.getConnection()) {
+			if (conn != null) {
+				return Database.deleteBankAccount(conn, bankName, accType, userID);
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		return false;
+	}
+
+	@Override
+	public List<Account> getAllUserBankAccountsAtBank(String bankName, long userID) {
+		try (Connection conn = connector.getConnection()) {
+			if (conn != null) {
+				return Database.getAllUserBankAccountsAtBank(conn, bankName, userID);
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		return new ArrayList<Account>();
+	}
+
+	@Override
+	public long getBankAccountBalance(String bankName, String accType, long userID) {
+		try (Connection conn = connector.getConnection()) {
+			if (conn != null) {
+				return Database.getBankAccountBalance(conn, bankName, accType, userID);
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		return -1;
+	}
+
+	@Override
+	public long calculateNetWorth(long userID) {
+		try (Connection conn = connector.getConnection()) {
+			if (conn != null) {
+				return Database.calculateNetWorth(conn, userID);
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		return -1;
+	}
+
+	@Override
+	public Portfolio getPortfolio(long userID) {
+		try (Connection conn = connector.getConnection()) {
+			if (conn != null) {
+				return Database.getPortfolio(conn, userID);
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+
+	@Override
+	public boolean deposit(long userID, String bankName, String accType, String summary, long amount) {
+		try (Connection conn = connector.getConnection()) {
+			if (conn != null) {
+				return Database.deposit(conn, userID, bankName, accType, summary, amount);
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		return false;
+	}
+
+	@Override
+	public boolean withdraw(long userID, String bankName, String accType, String summary, long amount) {
+		try (Connection conn = connector.getConnection()) {
+			if (conn != null) {
+				return Database.withdraw(conn, userID, bankName, accType, summary, amount);
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		return false;
+	}
+
+	@Override
+	public boolean transfer(AccountKey from, AccountKey to, long amount) {
+		try (Connection conn = connector.getConnection()) {
+			if (conn != null) {
+				return Database.transfer(conn, from, to, amount);
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		return false;
+	}
+
+	@Override
+	public List<Transaction> getRecentTransactions(long userID, String bankName, String accType) {
+		try (Connection conn = connector.getConnection()) {
+			if (conn != null) {
+				return Database.getRecentTransactions(conn, userID, bankName, accType);
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		return new ArrayList<Transaction>();
+	}
+
+	@Override
+	public List<Transaction> getMonthlyTransactions(long userID, String bankName, String accType, LocalDate filterDate) {
+		try (Connection conn = connector.getConnection()) {
+			if (conn != null) {
+				return Database.getMonthlyTransactions(conn, userID, bankName, accType, filterDate);
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		return new ArrayList<Transaction>();
+	}
+
+	@Override
+	public MonthlyStatement getMonthlyStatement(long userID, String bankName, String accType, LocalDate filterDate) {
+		try (Connection conn = connector.getConnection()) {
+			if (conn != null) {
+				return Database.getMonthlyStatement(conn, userID, bankName, accType, filterDate);
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+
+	@Override
+	public List<Loan> getLoans(long userID) {
+		try (Connection conn = connector.getConnection()) {
+			if (conn != null) {
+				return Database.getLoans(conn, userID);
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		return new ArrayList<Loan>();
+	}
+
+	@Override
+	public boolean createLoan(long userID, String bankName, long amount) {
+		try (Connection conn = connector.getConnection()) {
+			if (conn != null) {
+				return Database.createLoan(conn, userID, bankName, amount);
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		return false;
+	}
+}
@@ -0,0 +1,143 @@
+package sjsu.cs157a.bankingsystem;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Call counts, errors by SQLState, rows and latencies of one database operation, such as one stored procedure.
+ * Every counter is a LongAdder and the latencies a LatencyHistogram, so recording never takes a lock.
+ */
+public class OperationMetrics implements OperationMetricsMBean {
+	private final String operation;
+	private final LongAdder calls = new LongAdder();
+	private final LongAdder errors = new LongAdder();
+	private final LongAdder rows = new LongAdder();
+	private final LongAdder totalMicros = new LongAdder();
+	private final LatencyHistogram latencies = new LatencyHistogram();
+	private final ConcurrentHashMap<String, LongAdder> errorsBySqlState = new ConcurrentHashMap<String, LongAdder>();
+
+	OperationMetrics(String operation) {
+		this.operation = operation;
+	}
+
+	/**
+	 * Records a call that completed.
+	 * @param micros How long the call took.
+	 */
+	void recordCall(long micros) {
+		calls.increment();
+		totalMicros.add(micros);
+		latencies.record(micros);
+	}
+
+	/**
+	 * Records a call that failed.
+	 * @param micros How long the call took to fail.
+	 * @param sqlState The SQLState of the failure.
+	 */
+	void recordError(long micros, String sqlState) {
+		recordCall(micros);
+		errors.increment();
+		LongAdder count = errorsBySqlState.get(sqlState);
+		if (count == null) {
+			LongAdder created = new LongAdder();
+			count = errorsBySqlState.putIfAbsent(sqlState, created);
+			if (count == null) {
+				count = created;
+			}
+		}
+		count.increment();
+	}
+
+	/**
+	 * Records rows read from a result or affected by an update.
+	 */
+	void recordRows(long count) {
+		rows.add(count);
+	}
+
+	@Override
+	public String getOperation() {
+		return operation;
+	}
+
+	@Override
+	public long getCallCount() {
+		return calls.sum();
+	}
+
+	@Override
+	public long getErrorCount() {
+		return errors.sum();
+	}
+
+	/**
+	 * @return Returns the error counts keyed by SQLState, sorted by SQLState.
+	 */
+	public Map<String, Long> getErrorCounts() {
+		Map<String, Long> counts = new TreeMap<String, Long>();
+		for (Map.Entry<String, LongAdder> entry : errorsBySqlState.entrySet()) {
+			counts.put(entry.getKey(), entry.getValue().sum());
+		}
+		return counts;
+	}
+
+	@Override
+	public String getErrorsBySqlState() {
+		return getErrorCounts().toString();
+	}
+
+	@Override
+	public long getRowCount() {
+		return rows.sum();
+	}
+
+	/**
+	 * @return Returns the sum of every call's latency, in microseconds.
+	 */
+	public long getTotalMicros() {
+		return totalMicros.sum();
+	}
+
+	@Override
+	public double getMeanMillis() {
+		long count = calls.sum();
+		return count == 0 ? 0 : totalMicros.sum() / 1000.0 / count;
+	}
+
+	@Override
+	public double getP50Millis() {
+		return latencies.getValueAtPercentile(50) / 1000.0;
+	}
+
+	@Override
+	public double getP99Millis() {
+		return latencies.getValueAtPercentile(99) / 1000.0;
+	}
+
+	@Override
+	public double getP999Millis() {
+		return latencies.getValueAtPercentile(99.9) / 1000.0;
+	}
+
+	@Override
+	public double getMaxMillis() {
+		return latencies.getMaxValue() / 1000.0;
+	}
+
+	LatencyHistogram getLatencies() {
+		return latencies;
+	}
+
+	@Override
+	public void reset() {
+		calls.reset();
+		errors.reset();
+		rows.reset();
+		totalMicros.reset();
+		latencies.reset();
+		errorsBySqlState.clear();
+	}
+}
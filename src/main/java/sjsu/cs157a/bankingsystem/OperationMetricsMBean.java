@@ -0,0 +1,28 @@
+package sjsu.cs157a.bankingsystem;
+
+/**
+ * The JMX view of one database operation's metrics. Latencies are in milliseconds.
+ */
+public interface OperationMetricsMBean {
+	String getOperation();
+
+	long getCallCount();
+
+	long getErrorCount();
+
+	String getErrorsBySqlState();
+
+	long getRowCount();
+
+	double getMeanMillis();
+
+	double getP50Millis();
+
+	double getP99Millis();
+
+	double getP999Millis();
+
+	double getMaxMillis();
+
+	void reset();
+}
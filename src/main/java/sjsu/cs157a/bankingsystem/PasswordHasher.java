@@ -0,0 +1,259 @@
+package sjsu.cs157a.bankingsystem;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bouncycastle.crypto.generators.Argon2BytesGenerator;
+import org.bouncycastle.crypto.params.Argon2Parameters;
+
+/**
+ * Hashes and verifies passwords with Argon2id, a salted, memory-hard function whose cost is set by
+ * passwordMemoryKiB, passwordIterations and passwordParallelism. Hashes are stored as PHC strings,
+ * "$argon2id$v=19$m=19456,t=2,p=1$salt$hash", so each carries its own salt and cost and the cost can be raised
+ * without invalidating existing hashes; needsRehash() tells the caller when to upgrade one after a successful login.
+ * Unsalted SHA-256 hashes written before Argon2id are still verified, and always need a rehash.
+ * Hashing and verifying run on a pool of passwordVerifyThreads daemon threads, by default half the cores, with at
+ * most passwordVerifyQueue waiting. When the queue is full they fail fast instead, so a burst of logins cannot take
+ * every core from transaction processing.
+ */
+public class PasswordHasher {
+	private static PasswordHasher passwordHasher;
+
+	private static final String PREFIX = "$argon2id$v=19$";
+	private static final int SALT_BYTES = 16;
+	private static final int HASH_BYTES = 32;
+	private static final int LEGACY_BYTES = 32;
+
+	private final int memoryKiB;
+	private final int iterations;
+	private final int parallelism;
+	private final SecureRandom random = new SecureRandom();
+	private final ThreadPoolExecutor executor;
+	private final AtomicLong rejected = new AtomicLong();
+	// Verified against when an email is unknown, so that the response takes as long as for a wrong password.
+	private volatile byte[] dummyHash;
+
+	PasswordHasher(int memoryKiB, int iterations, int parallelism, int threads, int queueSize) {
+		this.memoryKiB = memoryKiB;
+		this.iterations = iterations;
+		this.parallelism = parallelism;
+		final AtomicInteger count = new AtomicInteger();
+		threads = Math.max(1, threads);
+		this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(Math.max(1, queueSize)), new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "password-hasher-" + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+	/**
+	 * @return Returns the hasher shared by every login in this process.
+	 */
+	public static synchronized PasswordHasher getInstance() {
+		if (passwordHasher == null) {
+			passwordHasher = new PasswordHasher(Config.getInt("passwordMemoryKiB", 19456), Config.getInt("passwordIterations", 2),
+					Config.getInt("passwordParallelism", 1),
+					Config.getInt("passwordVerifyThreads", Math.max(1, Runtime.getRuntime().availableProcessors() / 2)),
+					Config.getInt("passwordVerifyQueue", 64));
+		}
+		return passwordHasher;
+	}
+
+	/**
+	 * Hashes a password with a fresh salt, on the calling thread.
+	 * @param pw The password.
+	 * @return Returns the PHC string of the hash, as UTF-8 bytes.
+	 */
+	public byte[] hash(String pw) {
+		byte[] salt = new byte[SALT_BYTES];
+		random.nextBytes(salt);
+		byte[] hash = argon2(pw, salt, memoryKiB, iterations, parallelism, HASH_BYTES);
+		Base64.Encoder encoder = Base64.getEncoder().withoutPadding();
+		String phc = PREFIX + "m=" + memoryKiB + ",t=" + iterations + ",p=" + parallelism + "$" + encoder.encodeToString(salt) + "$"
+				+ encoder.encodeToString(hash);
+		return phc.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Checks a password against a stored hash, on the calling thread, in time independent of where they differ.
+	 * @param pw The password.
+	 * @param stored The stored hash: a PHC string from hash(), or a legacy unsalted SHA-256.
+	 * @return Returns true if the password matches.
+	 */
+	public boolean verify(String pw, byte[] stored) {
+		if (stored == null) {
+			return false;
+		}
+		if (isLegacy(stored)) {
+			return MessageDigest.isEqual(sha256(pw), stored);
+		}
+		String[] fields = new String(stored, StandardCharsets.UTF_8).split("\\$");
+		// "", "argon2id", "v=19", "m=..,t=..,p=..", salt, hash
+		if (fields.length != 6 || !fields[1].equals("argon2id") || !fields[2].equals("v=19")) {
+			return false;
+		}
+		int[] cost = parseCost(fields[3]);
+		if (cost == null) {
+			return false;
+		}
+		try {
+			byte[] salt = Base64.getDecoder().decode(fields[4]);
+			byte[] expected = Base64.getDecoder().decode(fields[5]);
+			return MessageDigest.isEqual(argon2(pw, salt, cost[0], cost[1], cost[2], expected.length), expected);
+		} catch (IllegalArgumentException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * @param stored A stored hash.
+	 * @return Returns true if the hash is a legacy SHA-256 or was made at a different cost than the configured one.
+	 */
+	public boolean needsRehash(byte[] stored) {
+		if (stored == null || isLegacy(stored)) {
+			return true;
+		}
+		String[] fields = new String(stored, StandardCharsets.UTF_8).split("\\$");
+		if (fields.length != 6) {
+			return true;
+		}
+		int[] cost = parseCost(fields[3]);
+		return cost == null || cost[0] != memoryKiB || cost[1] != iterations || cost[2] != parallelism;
+	}
+
+	/**
+	 * Hashes a password on the pool.
+	 * @param pw The password.
+	 * @return Returns the hash, or null if the pool is saturated.
+	 */
+	public byte[] hashBounded(final String pw) {
+		return run(new Callable<byte[]>() {
+			@Override
+			public byte[] call() {
+				return hash(pw);
+			}
+		});
+	}
+
+	/**
+	 * Checks a password on the pool. A null stored hash, for an unknown user, is checked against a dummy hash so that
+	 * the call costs the same as for a known one.
+	 * @param pw The password.
+	 * @param stored The stored hash, or null.
+	 * @return Returns whether the password matches, or null if the pool is saturated.
+	 */
+	public Boolean verifyBounded(final String pw, final byte[] stored) {
+		return run(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				if (stored == null) {
+					verify(pw, dummyHash());
+					return false;
+				}
+				return verify(pw, stored);
+			}
+		});
+	}
+
+	/**
+	 * @return Returns the number of hashes and verifications refused because the pool was saturated.
+	 */
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	private <T> T run(Callable<T> task) {
+		Future<T> future;
+		try {
+			future = executor.submit(task);
+		} catch (RejectedExecutionException e) {
+			rejected.incrementAndGet();
+			return null;
+		}
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			future.cancel(false);
+		} catch (ExecutionException e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+
+	private byte[] dummyHash() {
+		byte[] hash = dummyHash;
+		if (hash == null) {
+			hash = hash("not a password");
+			dummyHash = hash;
+		}
+		return hash;
+	}
+
+	private static boolean isLegacy(byte[] stored) {
+		return stored.length == LEGACY_BYTES && stored[0] != '$';
+	}
+
+	/**
+	 * @return Returns {m, t, p}, or null if the field is malformed.
+	 */
+	private static int[] parseCost(String field) {
+		String[] parts = field.split(",");
+		if (parts.length != 3 || !parts[0].startsWith("m=") || !parts[1].startsWith("t=") || !parts[2].startsWith("p=")) {
+			return null;
+		}
+		try {
+			int[] cost = new int[3];
+			for (int i = 0; i < 3; i++) {
+				cost[i] = Integer.parseInt(parts[i].substring(2));
+				if (cost[i] <= 0) {
+					return null;
+				}
+			}
+			return cost;
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private static byte[] argon2(String pw, byte[] salt, int memoryKiB, int iterations, int parallelism, int length) {
+		Argon2Parameters params = new Argon2Parameters.Builder(Argon2Parameters.ARGON2_id).withVersion(Argon2Parameters.ARGON2_VERSION_13)
+				.withSalt(salt).withMemoryAsKB(memoryKiB).withIterations(iterations).withParallelism(parallelism).build();
+		Argon2BytesGenerator generator = new Argon2BytesGenerator();
+		generator.init(params);
+		byte[] out = new byte[length];
+		generator.generateBytes(pw.getBytes(StandardCharsets.UTF_8), out);
+		return out;
+	}
+
+	/**
+	 * Hashes a password the way users registered before Argon2id were, with a single unsalted SHA-256.
+	 * @param pw The password.
+	 * @return Returns the 32 byte digest.
+	 */
+	static byte[] sha256(String pw) {
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(pw.getBytes(StandardCharsets.UTF_8));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
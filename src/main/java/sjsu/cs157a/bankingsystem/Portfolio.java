@@ -0,0 +1,102 @@
+package sjsu.cs157a.bankingsystem;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Every account a user holds at every bank, with balances, outstanding loans and net worth, read in one round trip by
+ * Account.getPortfolio. Amounts are in cents.
+ */
+public class Portfolio {
+	private final long userID;
+	private final List<Holding> holdings;
+	private final long netWorth;
+	private final long loanTotal;
+
+	Portfolio(long userID, List<Holding> holdings, long netWorth) {
+		this.userID = userID;
+		this.holdings = Collections.unmodifiableList(holdings);
+		this.netWorth = netWorth;
+		long loans = 0;
+		for (Holding holding : holdings) {
+			loans = Money.add(loans, holding.getOutstandingLoans());
+		}
+		this.loanTotal = loans;
+	}
+
+	public long getUserID() {
+		return userID;
+	}
+
+	/**
+	 * @return Returns every account, ordered by bank name and then account type.
+	 */
+	public List<Holding> getHoldings() {
+		return holdings;
+	}
+
+	/**
+	 * @param bankName The bank's name.
+	 * @return Returns the accounts held at the bank.
+	 */
+	public List<Holding> getHoldingsAtBank(String bankName) {
+		List<Holding> atBank = new ArrayList<Holding>();
+		for (Holding holding : holdings) {
+			if (holding.getBankName().equals(bankName)) {
+				atBank.add(holding);
+			}
+		}
+		return atBank;
+	}
+
+	/**
+	 * @return Returns the sum of every account balance, as CalculateNetWorth does.
+	 */
+	public long getNetWorth() {
+		return netWorth;
+	}
+
+	/**
+	 * @return Returns the sum of every loan taken out against the user's Loans accounts.
+	 */
+	public long getLoanTotal() {
+		return loanTotal;
+	}
+
+	/**
+	 * One account in a portfolio.
+	 */
+	public static class Holding {
+		private final String bankName;
+		private final String accType;
+		private final long balance;
+		private final long outstandingLoans;
+
+		Holding(String bankName, String accType, long balance, long outstandingLoans) {
+			this.bankName = bankName;
+			this.accType = accType;
+			this.balance = balance;
+			this.outstandingLoans = outstandingLoans;
+		}
+
+		public String getBankName() {
+			return bankName;
+		}
+
+		public String getAccType() {
+			return accType;
+		}
+
+		public long getBalance() {
+			return balance;
+		}
+
+		/**
+		 * @return Returns the sum of the loans taken out against this account; only Loans accounts have any.
+		 */
+		public long getOutstandingLoans() {
+			return outstandingLoans;
+		}
+	}
+}
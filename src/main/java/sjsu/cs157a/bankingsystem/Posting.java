@@ -0,0 +1,43 @@
+package sjsu.cs157a.bankingsystem;
+
+/**
+ * A single deposit or withdrawal waiting to be posted to an account, as read from a settlement file.
+ */
+public class Posting {
+	public static final String DEPOSIT = "Deposit";
+	public static final String WITHDRAW = "Withdraw";
+
+	private long userID;
+	private String bankName;
+	private String accType;
+	private String transType;
+	private long amount;
+
+	/**
+	 * @param userID The users ID
+	 * @param bankName The banks name
+	 * @param accType The account type
+	 * @param transType Either Posting.DEPOSIT or Posting.WITHDRAW
+	 * @param amount The amount to post, in cents
+	 */
+	public Posting(long userID, String bankName, String accType, String transType, long amount) {
+		this.userID = userID;
+		this.bankName = bankName;
+		this.accType = accType;
+		this.transType = transType;
+		this.amount = amount;
+	}
+
+	public long getUserID() { return userID; }
+	public String getBankName() { return bankName; }
+	public String getAccType() { return accType; }
+	public String getTransType() { return transType; }
+	public long getAmount() { return amount; }
+
+	/**
+	 * @return Returns true if the posting withdraws from the account rather than depositing into it.
+	 */
+	public boolean isWithdrawal() {
+		return WITHDRAW.equals(transType);
+	}
+}
@@ -0,0 +1,524 @@
+package sjsu.cs157a.bankingsystem;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only write-ahead log of ledger changes, written to memory-mapped segment files of segmentBytes each.
+ * Appends only copy the record into the mapping; a dedicated thread makes them durable with group commit, forcing the
+ * segment once per batch of groupCommitMaxBatch records or every groupCommitMicros, whichever comes first, and waking
+ * every caller whose record that covered. Each record is framed by its length and a CRC32, so a record torn by a crash
+ * ends replay instead of being applied.
+ * Alongside the records the log keeps a snapshot of its owner's state as of some record. Writing a snapshot deletes the
+ * segments it covers, so recovery reads one snapshot and at most the records appended since it, and restart time is
+ * bounded by how often snapshots are taken rather than by the length of the history.
+ * Buffer positions are set through java.nio.Buffer: Java 9 added covariant overrides of position, limit and flip to
+ * ByteBuffer and MappedByteBuffer, and calls compiled against those fail on Java 8.
+ */
+public class PostingLog implements Closeable {
+	static final byte CREATE_USER = 1;
+	static final byte DELETE_USER = 2;
+	static final byte CREATE_BANK = 3;
+	static final byte OPEN_ACCOUNT = 4;
+	static final byte CLOSE_ACCOUNT = 5;
+	static final byte DEPOSIT = 6;
+	static final byte WITHDRAWAL = 7;
+	static final byte TRANSFER = 8;
+	static final byte CREATE_LOAN = 9;
+	static final byte UPDATE_LOAN = 10;
+	static final byte UPDATE_PASSWORD = 11;
+
+	private static final String SEGMENT_PREFIX = "postings-";
+	private static final String SEGMENT_SUFFIX = ".log";
+	private static final String SNAPSHOT_PREFIX = "snapshot-";
+	private static final String SNAPSHOT_SUFFIX = ".bin";
+	// Length and CRC32 of each record.
+	private static final int FRAME_BYTES = 8;
+
+	private final Path dir;
+	private final int segmentBytes;
+	private final long groupCommitNanos;
+	private final int groupCommitMaxBatch;
+	private final Object durableLock = new Object();
+	private final CRC32 crc = new CRC32();
+
+	// Guarded by this.
+	private MappedByteBuffer segment;
+	private long lastSeq;
+	private long snapshotSeq;
+	private int pending;
+	private long pendingSince;
+	private boolean closed;
+	private Thread syncer;
+
+	// Guarded by durableLock.
+	private long durableSeq;
+	private IOException failure;
+
+	/**
+	 * @param dir The directory holding the segments and snapshot, created if missing.
+	 * @param segmentBytes The size of each segment file; no record may be larger.
+	 * @param groupCommitMicros The longest a record waits for others to share its force, or 0 to force as soon as the previous force is done.
+	 * @param groupCommitMaxBatch The number of records that forces a segment without waiting any longer.
+	 */
+	public PostingLog(Path dir, int segmentBytes, long groupCommitMicros, int groupCommitMaxBatch) throws IOException {
+		this.dir = dir;
+		this.segmentBytes = segmentBytes;
+		this.groupCommitNanos = groupCommitMicros * 1000;
+		this.groupCommitMaxBatch = Math.max(1, groupCommitMaxBatch);
+		Files.createDirectories(dir);
+	}
+
+	/**
+	 * Opens the log in ledgerLogDir with the settings in config.json. It must be recovered before it is appended to.
+	 */
+	public static PostingLog open() throws IOException {
+		return new PostingLog(Paths.get(Config.getString("ledgerLogDir", "ledger")),
+				Config.getInt("postingLogSegmentBytes", 64 * 1024 * 1024),
+				Config.getLong("groupCommitMicros", 1000),
+				Config.getInt("groupCommitMaxBatch", 256));
+	}
+
+	/**
+	 * One change to the ledger. Which longs and strings a record holds depends on its op, and is up to the owner of the log.
+	 */
+	static final class Record {
+		final long seq;
+		final byte op;
+		final long time;
+		final long[] longs;
+		final String[] strings;
+		final byte[] data;
+
+		Record(long seq, byte op, long time, long[] longs, String[] strings, byte[] data) {
+			this.seq = seq;
+			this.op = op;
+			this.time = time;
+			this.longs = longs;
+			this.strings = strings;
+			this.data = data;
+		}
+	}
+
+	/**
+	 * Receives the state the log recovers: the snapshot, if there is one, then every record after it in order.
+	 */
+	interface Replay {
+		void snapshot(DataInputStream in) throws IOException;
+
+		void record(Record record);
+	}
+
+	/**
+	 * Replays the latest snapshot and the records since it, truncates any torn record at the tail, and readies the log for
+	 * appending after the last good record.
+	 * @param replay Receives the recovered snapshot and records.
+	 */
+	synchronized void recover(Replay replay) throws IOException {
+		List<Path> snapshots = list(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+		for (int i = snapshots.size() - 1; i >= 0; i--) {
+			byte[] state = readSnapshot(snapshots.get(i));
+			if (state != null) {
+				snapshotSeq = sequenceOf(snapshots.get(i), SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+				replay.snapshot(new DataInputStream(new ByteArrayInputStream(state)));
+				break;
+			}
+		}
+		List<Path> segments = list(SEGMENT_PREFIX, SEGMENT_SUFFIX);
+		// Segments are named for their first record, and those before it may have been discarded.
+		lastSeq = segments.isEmpty() ? snapshotSeq : Math.max(snapshotSeq, sequenceOf(segments.get(0), SEGMENT_PREFIX, SEGMENT_SUFFIX) - 1);
+		boolean torn = false;
+		for (Path path : segments) {
+			if (torn) {
+				// Anything after a torn record was never acknowledged.
+				Files.delete(path);
+				continue;
+			}
+			MappedByteBuffer buffer = map(path);
+			while (true) {
+				int start = buffer.position();
+				Record record = read(buffer);
+				if (record == null || (record.seq > snapshotSeq && record.seq != lastSeq + 1)) {
+					// A clean segment ends in zeros; anything else, or a record out of sequence, is torn.
+					torn = record != null || (start + 4 <= segmentBytes && buffer.getInt(start) != 0);
+					((Buffer) buffer).position(start);
+					break;
+				}
+				if (record.seq > snapshotSeq) {
+					replay.record(record);
+					lastSeq = record.seq;
+				}
+			}
+			if (torn) {
+				// Clear the torn record and whatever follows it, so later appends are never followed by stale frames.
+				for (int i = buffer.position(); i < segmentBytes; i++) {
+					buffer.put(i, (byte) 0);
+				}
+				buffer.force();
+			}
+			segment = buffer;
+		}
+		if (segment == null || segment.remaining() < FRAME_BYTES) {
+			segment = map(dir.resolve(name(SEGMENT_PREFIX, lastSeq + 1, SEGMENT_SUFFIX)));
+		}
+		synchronized (durableLock) {
+			durableSeq = lastSeq;
+		}
+		syncer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				sync();
+			}
+		}, "posting-log-sync");
+		syncer.setDaemon(true);
+		syncer.start();
+	}
+
+	/**
+	 * Appends a record. It is not durable until awaitDurable returns for its sequence number.
+	 * @return Returns the record's sequence number.
+	 */
+	synchronized long append(byte op, long time, long[] longs, byte[] data, String... strings) {
+		if (closed || syncer == null) {
+			throw new IllegalStateException("Posting log is not open");
+		}
+		byte[][] encoded = new byte[strings.length][];
+		int size = 8 + 1 + 8 + 1 + 8 * longs.length + 1 + 4 + (data == null ? 0 : data.length);
+		for (int i = 0; i < strings.length; i++) {
+			encoded[i] = strings[i] == null ? null : strings[i].getBytes(StandardCharsets.UTF_8);
+			size += 2 + (encoded[i] == null ? 0 : encoded[i].length);
+		}
+		if (FRAME_BYTES + size > segmentBytes - FRAME_BYTES) {
+			throw new IllegalArgumentException("Record of " + size + " bytes does not fit a segment");
+		}
+		if (segment.remaining() < FRAME_BYTES + size + FRAME_BYTES) {
+			roll();
+		}
+		long seq = ++lastSeq;
+		int start = segment.position();
+		((Buffer) segment).position(start + FRAME_BYTES);
+		segment.putLong(seq).put(op).putLong(time);
+		segment.put((byte) longs.length);
+		for (long value : longs) {
+			segment.putLong(value);
+		}
+		segment.put((byte) encoded.length);
+		for (byte[] string : encoded) {
+			if (string == null) {
+				segment.putShort((short) -1);
+			} else {
+				segment.putShort((short) string.length).put(string);
+			}
+		}
+		if (data == null) {
+			segment.putInt(-1);
+		} else {
+			segment.putInt(data.length).put(data);
+		}
+		segment.putInt(start + 4, checksum(segment, start + FRAME_BYTES, size));
+		segment.putInt(start, size);
+		if (pending++ == 0) {
+			pendingSince = System.nanoTime();
+			notifyAll();
+		} else if (pending >= groupCommitMaxBatch) {
+			notifyAll();
+		}
+		return seq;
+	}
+
+	/**
+	 * Blocks until the record with the sequence number, and every record before it, has been forced to disk.
+	 * @return Returns false if the log failed or was closed first, or the caller was interrupted.
+	 */
+	boolean awaitDurable(long seq) {
+		synchronized (durableLock) {
+			while (durableSeq < seq) {
+				if (failure != null) {
+					return false;
+				}
+				try {
+					durableLock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * @return Returns the sequence number of the last record appended.
+	 */
+	public synchronized long getLastSeq() {
+		return lastSeq;
+	}
+
+	/**
+	 * @return Returns the sequence number of the last record forced to disk.
+	 */
+	public long getDurableSeq() {
+		synchronized (durableLock) {
+			return durableSeq;
+		}
+	}
+
+	/**
+	 * @return Returns the sequence number of the last record the snapshot covers, or 0 if there is no snapshot.
+	 */
+	public synchronized long getSnapshotSeq() {
+		return snapshotSeq;
+	}
+
+	/**
+	 * Stores the owner's state as of a record, replacing the previous snapshot, and deletes the segments whose records it
+	 * covers. The file is written beside the old one and renamed over it only once it is on disk.
+	 * @param seq The last record reflected in the state.
+	 * @param state The serialized state.
+	 */
+	void writeSnapshot(long seq, byte[] state) throws IOException {
+		Path tmp = dir.resolve(SNAPSHOT_PREFIX + "tmp");
+		ByteBuffer header = ByteBuffer.allocate(16);
+		header.putInt(state.length).putInt(checksum(ByteBuffer.wrap(state), 0, state.length)).putLong(seq);
+		((Buffer) header).flip();
+		try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			channel.write(new ByteBuffer[] { header, ByteBuffer.wrap(state) });
+			channel.force(true);
+		}
+		Files.move(tmp, dir.resolve(name(SNAPSHOT_PREFIX, seq, SNAPSHOT_SUFFIX)), StandardCopyOption.ATOMIC_MOVE);
+		synchronized (this) {
+			snapshotSeq = Math.max(snapshotSeq, seq);
+		}
+		for (Path path : list(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+			if (sequenceOf(path, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX) < seq) {
+				Files.deleteIfExists(path);
+			}
+		}
+		discard(seq);
+	}
+
+	/**
+	 * Deletes the segments holding only records up to a sequence number, once they are no longer needed for recovery.
+	 * The segment being written is always kept.
+	 * @param seq The last record that may be discarded.
+	 */
+	void discard(long seq) throws IOException {
+		// A segment is covered once the segment after it starts no later than the record after seq.
+		List<Path> segments = list(SEGMENT_PREFIX, SEGMENT_SUFFIX);
+		for (int i = 0; i + 1 < segments.size(); i++) {
+			if (sequenceOf(segments.get(i + 1), SEGMENT_PREFIX, SEGMENT_SUFFIX) <= seq + 1) {
+				Files.deleteIfExists(segments.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Forces what has been appended and stops the sync thread. Records appended but not yet durable are forced first.
+	 */
+	@Override
+	public void close() {
+		Thread thread;
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+			thread = syncer;
+		}
+		if (thread != null) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * The sync thread: waits for a batch to fill or its window to pass, then forces it outside the lock so appends carry on.
+	 */
+	private void sync() {
+		while (true) {
+			MappedByteBuffer target;
+			long seq;
+			synchronized (this) {
+				while (pending == 0 && !closed) {
+					waitQuietly(0);
+				}
+				if (pending == 0) {
+					break;
+				}
+				long deadline = pendingSince + groupCommitNanos;
+				while (pending < groupCommitMaxBatch && !closed) {
+					long left = deadline - System.nanoTime();
+					if (left <= 0) {
+						break;
+					}
+					waitQuietly(left);
+				}
+				target = segment;
+				seq = lastSeq;
+				pending = 0;
+			}
+			try {
+				target.force();
+			} catch (RuntimeException e) {
+				synchronized (durableLock) {
+					failure = new IOException("Could not force the posting log", e);
+					durableLock.notifyAll();
+				}
+				e.printStackTrace();
+				return;
+			}
+			synchronized (durableLock) {
+				durableSeq = seq;
+				durableLock.notifyAll();
+			}
+		}
+		synchronized (durableLock) {
+			if (failure == null) {
+				failure = new IOException("Posting log closed");
+			}
+			durableLock.notifyAll();
+		}
+	}
+
+	private void waitQuietly(long nanos) {
+		try {
+			if (nanos == 0) {
+				wait();
+			} else {
+				wait(nanos / 1000000, (int) (nanos % 1000000));
+			}
+		} catch (InterruptedException e) {
+			// Only close stops the sync thread.
+		}
+	}
+
+	/**
+	 * Seals the current segment and starts the next, with the lock held. The sealed segment is forced here, since the sync
+	 * thread only forces the segment being written.
+	 */
+	private void roll() {
+		segment.force();
+		try {
+			segment = map(dir.resolve(name(SEGMENT_PREFIX, lastSeq + 1, SEGMENT_SUFFIX)));
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not start a posting log segment", e);
+		}
+	}
+
+	/**
+	 * Reads the record at the buffer's position, advancing past it.
+	 * @return Returns the record, or null at the end of the segment or at a torn record.
+	 */
+	private Record read(ByteBuffer buffer) {
+		int start = buffer.position();
+		if (start + FRAME_BYTES > buffer.limit()) {
+			return null;
+		}
+		int size = buffer.getInt(start);
+		if (size <= 0 || start + FRAME_BYTES + size > buffer.limit() || checksum(buffer, start + FRAME_BYTES, size) != buffer.getInt(start + 4)) {
+			return null;
+		}
+		((Buffer) buffer).position(start + FRAME_BYTES);
+		long seq = buffer.getLong();
+		byte op = buffer.get();
+		long time = buffer.getLong();
+		long[] longs = new long[buffer.get()];
+		for (int i = 0; i < longs.length; i++) {
+			longs[i] = buffer.getLong();
+		}
+		String[] strings = new String[buffer.get()];
+		for (int i = 0; i < strings.length; i++) {
+			short length = buffer.getShort();
+			if (length != -1) {
+				byte[] bytes = new byte[length & 0xFFFF];
+				buffer.get(bytes);
+				strings[i] = new String(bytes, StandardCharsets.UTF_8);
+			}
+		}
+		int length = buffer.getInt();
+		byte[] data = null;
+		if (length >= 0) {
+			data = new byte[length];
+			buffer.get(data);
+		}
+		return new Record(seq, op, time, longs, strings, data);
+	}
+
+	private int checksum(ByteBuffer buffer, int offset, int length) {
+		ByteBuffer slice = buffer.duplicate();
+		((Buffer) slice).limit(offset + length).position(offset);
+		synchronized (crc) {
+			crc.reset();
+			crc.update(slice);
+			return (int) crc.getValue();
+		}
+	}
+
+	/**
+	 * @return Returns the state stored in a snapshot file, or null if it is incomplete.
+	 */
+	private byte[] readSnapshot(Path path) throws IOException {
+		byte[] file = Files.readAllBytes(path);
+		if (file.length < 16) {
+			return null;
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(file);
+		int length = buffer.getInt();
+		int checksum = buffer.getInt();
+		if (length != file.length - 16 || checksum(buffer, 16, length) != checksum) {
+			return null;
+		}
+		byte[] state = new byte[length];
+		System.arraycopy(file, 16, state, 0, length);
+		return state;
+	}
+
+	private MappedByteBuffer map(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			// The mapping stays valid after the channel is closed.
+			return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+		}
+	}
+
+	/**
+	 * @return Returns the files with the prefix and suffix, in order of the sequence number in their names.
+	 */
+	private List<Path> list(String prefix, String suffix) throws IOException {
+		List<Path> paths = new ArrayList<Path>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, prefix + "*" + suffix)) {
+			for (Path path : stream) {
+				paths.add(path);
+			}
+		}
+		// Sequence numbers are zero padded, so names sort in sequence order.
+		Collections.sort(paths);
+		return paths;
+	}
+
+	private static String name(String prefix, long seq, String suffix) {
+		return prefix + String.format("%020d", seq) + suffix;
+	}
+
+	private static long sequenceOf(Path path, String prefix, String suffix) {
+		String name = path.getFileName().toString();
+		return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+	}
+}
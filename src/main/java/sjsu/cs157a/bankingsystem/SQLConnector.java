@@ -1,31 +1,91 @@
 package sjsu.cs157a.bankingsystem;
 
-import java.io.FileReader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.*;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * A connector containing a maintained, singular connection to the database.
- * To retrieve an instance of the class, use getInstance(). To retrieve a connection, use getConnection() on said instance.
- * Singleton, so NOT thread safe. Do note that connection pooling would be best practice. However, such won't be necessary considering that we (probably) won't be using concurrency and/or cloud-shared databases.
+ * A bounded, thread safe pool of connections to the database.
+ * To retrieve an instance of the class, use getInstance(). To borrow a connection, use getConnection() on said instance,
+ * and call close() on the borrowed connection to return it to the pool.
+ * Idle connections are validated before reuse, broken connections are discarded and reopened, and connections held
+ * longer than the leak threshold are reported along with the stack trace of whoever borrowed them.
+ * Pool sizing and timeouts are read from config.json (see the pool* keys).
  * @author Hoai-Nam Phung
  *
  */
 public class SQLConnector {
 	public static final String DB_NAME = "bank_system";
-	private static Connection conn;
 	private static SQLConnector sqlConnector = new SQLConnector();
-	
+
+	private final int maxPoolSize = Config.getInt("poolMaxSize", 10);
+	private final long borrowTimeoutMillis = Config.getLong("poolBorrowTimeoutMillis", 30000);
+	private final long leakThresholdMillis = Config.getLong("poolLeakThresholdMillis", 300000);
+	private final long validationIntervalMillis = Config.getLong("poolValidationIntervalMillis", 30000);
+	private final int connectRetries = Config.getInt("poolConnectRetries", 3);
+	private final long retryBackoffMillis = Config.getLong("poolRetryBackoffMillis", 500);
+
+	// Idle connections are reused LIFO so the warmest connection is handed out first.
+	private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<PooledConnection>();
+	private final Set<PooledConnection> active = ConcurrentHashMap.<PooledConnection>newKeySet();
+	// One permit per connection that may be checked out at once.
+	private final Semaphore permits = new Semaphore(maxPoolSize, true);
+	private final ScheduledExecutorService housekeeper;
+	// Set by shutdown; connections are no longer lent, and those returned are closed.
+	private volatile boolean closed;
+
+	// Pool metrics.
+	private final AtomicLong borrowCount = new AtomicLong();
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+	private final AtomicLong timeoutCount = new AtomicLong();
+	private final AtomicLong leakCount = new AtomicLong();
+	private final AtomicLong discardCount = new AtomicLong();
+
 	// Initialized at start of JVM.
 	private SQLConnector() {
-		getConnection();
+		housekeeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "sql-pool-housekeeper");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		long period = Math.max(1000, Math.min(validationIntervalMillis, leakThresholdMillis));
+		housekeeper.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				validateIdleConnections();
+				detectLeaks();
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+
+		// Open the first connection eagerly so that a missing database is created on startup.
+		Connection warmup = getConnection();
+		if (warmup != null) {
+			try {
+				warmup.close();
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+		}
 	}
 
 	/**
-	 * Retrieves singleton instance of the SQLConnector, which contains a maintained connection to the MySQL database.
-	 * Note that Singleton based connections ARE NOT thread safe.
-	 * Connection pooling is the best method, but I don't think we will need concurrency + MySQL is locally stored, so whatever.
+	 * Retrieves the singleton instance of the SQLConnector, which maintains the pool of connections to the MySQL database.
 	 * @return Returns the singleton instance of the class.
 	 */
 	public static synchronized SQLConnector getInstance() {
@@ -34,36 +94,315 @@ public class SQLConnector {
 		}
 		return sqlConnector;
 	}
-	
+
 	/**
-	 * Retrieves a connection to the MySQL database.
-	 * @return Returns a connection object used for querying the database.
+	 * Borrows a connection to the MySQL database, waiting up to poolBorrowTimeoutMillis for one to be returned if the pool is exhausted.
+	 * The connection must be closed once finished with, which returns it to the pool rather than closing the socket.
+	 * @return Returns a connection object used for querying the database. If none could be borrowed or opened, returns null.
 	 */
 	public Connection getConnection() {
-		String[] login = null;
-		if (conn == null) {
+		long start = System.nanoTime();
+		try {
+			if (closed) {
+				throw new SQLException("The connection pool has been shut down.");
+			}
+			if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+				timeoutCount.incrementAndGet();
+				throw new SQLTimeoutException("Timed out after " + borrowTimeoutMillis + "ms waiting for a pooled connection. " + getPoolStats());
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			return null;
+		}
+
+		PooledConnection pooled = null;
+		try {
+			pooled = takeIdleConnection();
+			if (pooled == null) {
+				pooled = new PooledConnection(openConnection());
+			}
+		} catch (Exception e) {
+			permits.release();
+			e.printStackTrace();
+			return null;
+		}
+		recordWait(System.nanoTime() - start);
+
+		pooled.borrowedAt = System.currentTimeMillis();
+		pooled.borrowTrace = new Throwable("Connection borrowed by " + Thread.currentThread().getName());
+		pooled.leakReported = false;
+		active.add(pooled);
+		return (Connection) Proxy.newProxyInstance(SQLConnector.class.getClassLoader(), new Class<?>[] { Connection.class }, new Lease(pooled));
+	}
+
+	/**
+	 * @return Returns the number of connections currently borrowed.
+	 */
+	public int getActiveCount() {
+		return active.size();
+	}
+
+	/**
+	 * @return Returns the number of open connections waiting in the pool.
+	 */
+	public int getIdleCount() {
+		return idle.size();
+	}
+
+	/**
+	 * @return Returns the maximum number of connections the pool will open.
+	 */
+	public int getMaxPoolSize() {
+		return maxPoolSize;
+	}
+
+	/**
+	 * @return Returns the number of successful borrows since startup.
+	 */
+	public long getBorrowCount() {
+		return borrowCount.get();
+	}
+
+	/**
+	 * @return Returns the average time spent waiting for a connection, in milliseconds.
+	 */
+	public double getAverageWaitMillis() {
+		long borrows = borrowCount.get();
+		return borrows == 0 ? 0 : totalWaitNanos.get() / (double) borrows / 1000000.0;
+	}
+
+	/**
+	 * @return Returns the longest time spent waiting for a connection, in milliseconds.
+	 */
+	public double getMaxWaitMillis() {
+		return maxWaitNanos.get() / 1000000.0;
+	}
+
+	/**
+	 * @return Returns the number of borrows that gave up after poolBorrowTimeoutMillis.
+	 */
+	public long getTimeoutCount() {
+		return timeoutCount.get();
+	}
+
+	/**
+	 * @return Returns the number of connections reported as held past the leak threshold.
+	 */
+	public long getLeakCount() {
+		return leakCount.get();
+	}
+
+	/**
+	 * @return Returns the number of connections discarded because they were broken.
+	 */
+	public long getDiscardCount() {
+		return discardCount.get();
+	}
+
+	/**
+	 * @return Returns a one line summary of the pool metrics.
+	 */
+	public String getPoolStats() {
+		return String.format("[pool active=%d idle=%d max=%d borrows=%d avgWait=%.3fms maxWait=%.3fms timeouts=%d leaks=%d discarded=%d]",
+				getActiveCount(), getIdleCount(), maxPoolSize, getBorrowCount(), getAverageWaitMillis(), getMaxWaitMillis(),
+				getTimeoutCount(), getLeakCount(), getDiscardCount());
+	}
+
+	/**
+	 * Closes every idle connection and stops background validation. Borrowed connections are closed as they are returned,
+	 * and getConnection returns null from then on.
+	 */
+	public void shutdown() {
+		closed = true;
+		housekeeper.shutdownNow();
+		PooledConnection pooled;
+		while ((pooled = idle.pollFirst()) != null) {
+			discard(pooled, false);
+		}
+	}
+
+	/**
+	 * Retrieves an idle connection, validating it first if it has sat unused longer than the validation interval.
+	 * @return Returns a usable idle connection, or null if none are available.
+	 */
+	private PooledConnection takeIdleConnection() {
+		PooledConnection pooled;
+		while ((pooled = idle.pollFirst()) != null) {
+			if (System.currentTimeMillis() - pooled.returnedAt < validationIntervalMillis || isValid(pooled)) {
+				return pooled;
+			}
+			discard(pooled, true);
+		}
+		return null;
+	}
+
+	/**
+	 * Opens a new physical connection, retrying with exponential backoff when the server cannot be reached.
+	 * @return Returns a new connection to the banking database.
+	 * @throws SQLException Thrown once every retry has failed.
+	 */
+	private Connection openConnection() throws SQLException {
+		String[] login = getCredentials();
+		if (login == null) {
+			throw new SQLException("Database credentials could not be read from " + Config.CONFIG_FILE + ".");
+		}
+		Properties props = new Properties();
+		if (login[1] != null) {
+			props.setProperty("user", login[1]);
+		}
+		if (login[2] != null) {
+			props.setProperty("password", login[2]);
+		}
+		// Lets executeBatch() send a batch in a single round-trip. A rejected batch of CALLs reports every row as failed,
+		// so Database.postBatch runs such a batch again row by row.
+		props.setProperty("rewriteBatchedStatements", "true");
+		SQLException lastFailure = null;
+		long backoff = retryBackoffMillis;
+		for (int attempt = 0; attempt <= connectRetries; attempt++) {
 			try {
-				login = getCredentials();
-				conn = DriverManager.getConnection(login[0] + DB_NAME, login[1], login[2]);
-	        }
+				return DriverManager.getConnection(login[0] + DB_NAME, props);
+			}
 			// Database might not yet exist.
 			catch (SQLSyntaxErrorException dbDNE) {
-				try
-				{
-					Connection tempConn = DriverManager.getConnection(login[0], login[1], login[2]);
-					Database.createDatabase(tempConn, DB_NAME);
-					tempConn.close();
-					conn = DriverManager.getConnection(login[0] + DB_NAME, login[1], login[2]);
+				Connection tempConn = DriverManager.getConnection(login[0], login[1], login[2]);
+				Database.createDatabase(tempConn, DB_NAME);
+				tempConn.close();
+				return DriverManager.getConnection(login[0] + DB_NAME, props);
+			}
+			catch (SQLException e) {
+				lastFailure = e;
+			}
+			if (attempt < connectRetries) {
+				try {
+					Thread.sleep(backoff);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
 				}
-				catch (Exception e) {
-					e.printStackTrace();
+				backoff *= 2;
+			}
+		}
+		throw lastFailure;
+	}
+
+	/**
+	 * Returns a borrowed connection to the pool, or discards it if it has broken while in use.
+	 * @param pooled The connection being returned.
+	 */
+	private void release(PooledConnection pooled) {
+		active.remove(pooled);
+		try {
+			if (pooled.broken || pooled.conn.isClosed()) {
+				discard(pooled, true);
+			}
+			else {
+				// Leave the connection as a fresh one would be found.
+				if (!pooled.conn.getAutoCommit()) {
+					pooled.conn.rollback();
+					pooled.conn.setAutoCommit(true);
+				}
+				pooled.returnedAt = System.currentTimeMillis();
+				idle.offerFirst(pooled);
+				// A shutdown that drained the pool before the offer would miss the connection.
+				if (closed && idle.remove(pooled)) {
+					discard(pooled, false);
 				}
 			}
-			catch (Exception e) {
-	            e.printStackTrace();
-	        }
+		} catch (SQLException e) {
+			discard(pooled, true);
+		} finally {
+			permits.release();
+		}
+	}
+
+	private boolean isValid(PooledConnection pooled) {
+		try {
+			return pooled.conn.isValid(2);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private void discard(PooledConnection pooled, boolean broken) {
+		if (broken) {
+			discardCount.incrementAndGet();
+		}
+		pooled.statements.clear();
+		try {
+			pooled.conn.close();
+		} catch (SQLException e) {
+			// Already unusable; nothing left to release.
+		}
+	}
+
+	private void recordWait(long waitNanos) {
+		borrowCount.incrementAndGet();
+		totalWaitNanos.addAndGet(waitNanos);
+		long max;
+		while (waitNanos > (max = maxWaitNanos.get()) && !maxWaitNanos.compareAndSet(max, waitNanos)) {
+			// Retry until the larger wait is recorded.
+		}
+	}
+
+	/**
+	 * Evicts idle connections that the server has dropped, so that borrowers do not pay for the discovery.
+	 * Each connection is validated under a permit, like a borrow, so that a borrower who finds the pool empty meanwhile
+	 * cannot open a connection beyond maxPoolSize. Validation is skipped while every permit is taken.
+	 */
+	private void validateIdleConnections() {
+		long now = System.currentTimeMillis();
+		for (PooledConnection pooled : idle) {
+			if (now - pooled.returnedAt < validationIntervalMillis) {
+				continue;
+			}
+			if (!permits.tryAcquire()) {
+				return;
+			}
+			try {
+				if (!idle.remove(pooled)) {
+					continue;
+				}
+				if (isValid(pooled) && !closed) {
+					pooled.returnedAt = now;
+					idle.offerLast(pooled);
+				}
+				else {
+					discard(pooled, !closed);
+				}
+			} finally {
+				permits.release();
+			}
+		}
+	}
+
+	/**
+	 * Reports connections that have been borrowed for longer than the leak threshold.
+	 */
+	private void detectLeaks() {
+		long now = System.currentTimeMillis();
+		for (PooledConnection pooled : active) {
+			if (!pooled.leakReported && now - pooled.borrowedAt > leakThresholdMillis) {
+				pooled.leakReported = true;
+				leakCount.incrementAndGet();
+				System.err.println("Possible connection leak: held for " + (now - pooled.borrowedAt) + "ms. " + getPoolStats());
+				pooled.borrowTrace.printStackTrace();
+			}
 		}
-		return conn;
+	}
+
+	/**
+	 * Retrieves the statement cache of the physical connection behind a borrowed connection.
+	 * @param conn A connection, possibly borrowed from the pool.
+	 * @return Returns the statement cache, or null if the connection was not borrowed from a SQLConnector.
+	 */
+	static StatementCache getStatementCache(Connection conn) {
+		if (conn != null && Proxy.isProxyClass(conn.getClass())) {
+			InvocationHandler handler = Proxy.getInvocationHandler(conn);
+			if (handler instanceof Lease) {
+				return ((Lease) handler).pooled.statements;
+			}
+		}
+		return null;
 	}
 
 	/**
@@ -71,19 +410,97 @@ public class SQLConnector {
 	 * @return Returns a string array containing database login parameters. [0] = url, [1] = user, [2] = password.
 	 */
 	private static String[] getCredentials() {
-		JSONParser parser = new JSONParser();
-		try {
-			Object obj = parser.parse(new FileReader("config.json"));
-			JSONObject jsonObj = (JSONObject) obj;
-			
-			// Get DB parameters from config file.
-			String url = (String) jsonObj.get("url");
-			String username = (String) jsonObj.get("username");
-			String password = (String) jsonObj.get("password");
-			return new String[]{url, username, password};
-		} catch (Exception e) {
-			e.printStackTrace();
+		// Get DB parameters from config file.
+		String url = Config.getString("url", null);
+		String username = Config.getString("username", null);
+		String password = Config.getString("password", null);
+		if (url == null) {
+			return null;
+		}
+		return new String[]{url, username, password};
+	}
+
+	/**
+	 * A physical connection owned by the pool.
+	 */
+	static class PooledConnection {
+		final Connection conn;
+		final StatementCache statements;
+		volatile long borrowedAt;
+		volatile long returnedAt = System.currentTimeMillis();
+		volatile boolean leakReported;
+		volatile boolean broken;
+		volatile Throwable borrowTrace;
+
+		PooledConnection(Connection conn) {
+			this.conn = conn;
+			this.statements = new StatementCache(conn, new Runnable() {
+				@Override
+				public void run() {
+					broken = true;
+				}
+			});
+		}
+	}
+
+	/**
+	 * The handle given to a borrower. Closing it returns the physical connection to the pool; any use afterwards fails.
+	 */
+	private class Lease implements InvocationHandler {
+		private final PooledConnection pooled;
+		// Read by whichever thread uses the lease, which need not be the one that closed it.
+		private volatile boolean returned;
+
+		Lease(PooledConnection pooled) {
+			this.pooled = pooled;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (name.equals("close")) {
+				if (markReturned()) {
+					release(pooled);
+				}
+				return null;
+			}
+			if (name.equals("isClosed")) {
+				return returned || pooled.conn.isClosed();
+			}
+			if (name.equals("equals")) {
+				return proxy == args[0];
+			}
+			if (name.equals("hashCode")) {
+				return System.identityHashCode(proxy);
+			}
+			if (name.equals("toString")) {
+				return "Pooled" + pooled.conn;
+			}
+			if (returned) {
+				throw new SQLException("Connection has already been returned to the pool.", "08003");
+			}
+			try {
+				return method.invoke(pooled.conn, args);
+			} catch (InvocationTargetException e) {
+				Throwable cause = e.getCause();
+				// SQLState class 08 is a connection exception; the socket cannot be trusted again. Statements from the
+				// StatementCache report theirs through the cache, since they run on the physical connection.
+				if (DatabaseMetrics.isConnectionError(cause)) {
+					pooled.broken = true;
+				}
+				throw cause;
+			}
+		}
+
+		/**
+		 * @return Returns true the first time it is called, so that closing from two threads returns the connection once.
+		 */
+		private synchronized boolean markReturned() {
+			if (returned) {
+				return false;
+			}
+			returned = true;
+			return true;
 		}
-		return null;
 	}
 }
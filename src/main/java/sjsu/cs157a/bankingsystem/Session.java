@@ -0,0 +1,61 @@
+package sjsu.cs157a.bankingsystem;
+
+/**
+ * The state of one signed in user, issued and looked up by SessionCache.
+ */
+public class Session {
+	private final String token;
+	private final long userID;
+	private final String email;
+	private final long createdAt;
+	private volatile long lastAccessedAt;
+
+	public Session(String token, long userID, String email) {
+		this(token, userID, email, System.currentTimeMillis());
+	}
+
+	/**
+	 * @param createdAt When the session was signed in, in milliseconds since the epoch.
+	 */
+	public Session(String token, long userID, String email, long createdAt) {
+		this.token = token;
+		this.userID = userID;
+		this.email = email;
+		this.createdAt = createdAt;
+		this.lastAccessedAt = createdAt;
+	}
+
+	public String getToken() {
+		return token;
+	}
+
+	public long getUserID() {
+		return userID;
+	}
+
+	public String getEmail() {
+		return email;
+	}
+
+	public long getCreatedAt() {
+		return createdAt;
+	}
+
+	public long getLastAccessedAt() {
+		return lastAccessedAt;
+	}
+
+	/**
+	 * Records that the session was just used.
+	 */
+	public void touch() {
+		touch(System.currentTimeMillis());
+	}
+
+	/**
+	 * Records that the session was used at the given time, in milliseconds since the epoch.
+	 */
+	public void touch(long now) {
+		lastAccessedAt = now;
+	}
+}
@@ -0,0 +1,236 @@
+package sjsu.cs157a.bankingsystem;
+
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+
+/**
+ * The signed in sessions of this process, keyed by opaque bearer tokens, so that a request carrying a token is
+ * authenticated without checking the password or touching the database again.
+ * Tokens are 256 random bits. A session expires once it has gone unused for sessionTtlMillis, each use sliding the
+ * expiry forward; validating a token is one hash lookup and one write of the session's last use, with no lock.
+ * At most sessionCacheSize sessions are kept: signing in beyond that evicts an idle session, chosen approximately least
+ * recently used by a second-chance scan of the sessions in sign-in order. Expired sessions are swept out while
+ * signing in, at most once a minute. All of a user's sessions are revoked when the user is deleted, see User.deleteUser.
+ */
+public class SessionCache {
+	private static SessionCache sessionCache;
+
+	private static final int TOKEN_BYTES = 32;
+	private static final long MAX_SWEEP_INTERVAL_MILLIS = 60000;
+	// Sessions looked at before giving up on finding an idle one and evicting the last looked at.
+	private static final int EVICTION_SCAN = 64;
+
+	private final Clock clock;
+	private final int maxSize;
+	private final long ttlMillis;
+	private final long sweepIntervalMillis;
+	private final SecureRandom random = new SecureRandom();
+	private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<String, Session>();
+	// Each user's tokens. Changed only inside compute() on the user's key, which also adds and removes the sessions.
+	private final ConcurrentHashMap<Long, Set<String>> tokensByUser = new ConcurrentHashMap<Long, Set<String>>();
+	// Every session in sign-in order, for eviction; entries of sessions already removed are skipped.
+	private final ConcurrentLinkedQueue<Entry> order = new ConcurrentLinkedQueue<Entry>();
+	private final AtomicLong nextSweepAt = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	SessionCache(Clock clock, int maxSize, long ttlMillis) {
+		this.clock = clock;
+		this.maxSize = Math.max(1, maxSize);
+		this.ttlMillis = ttlMillis;
+		this.sweepIntervalMillis = Math.max(1, Math.min(ttlMillis, MAX_SWEEP_INTERVAL_MILLIS));
+	}
+
+	/**
+	 * @return Returns the sessions of this process.
+	 */
+	public static synchronized SessionCache getInstance() {
+		if (sessionCache == null) {
+			sessionCache = new SessionCache(Clock.systemUTC(), Config.getInt("sessionCacheSize", 100000), Config.getLong("sessionTtlMillis", 1800000));
+		}
+		return sessionCache;
+	}
+
+	/**
+	 * Signs a user in, evicting an idle session first if the cache is full.
+	 * @param userID The users ID, already authenticated.
+	 * @param email The users email.
+	 * @return Returns the new session, whose token the client presents from then on.
+	 */
+	public Session open(final long userID, String email) {
+		long now = clock.millis();
+		sweep(now);
+		while (sessions.size() >= maxSize) {
+			if (!evict()) {
+				break;
+			}
+		}
+		final Session session = new Session(newToken(), userID, email, now);
+		tokensByUser.compute(userID, new BiFunction<Long, Set<String>, Set<String>>() {
+			@Override
+			public Set<String> apply(Long key, Set<String> tokens) {
+				if (tokens == null) {
+					tokens = new HashSet<String>(4);
+				}
+				tokens.add(session.getToken());
+				sessions.put(session.getToken(), session);
+				return tokens;
+			}
+		});
+		order.add(new Entry(session, now));
+		return session;
+	}
+
+	/**
+	 * Looks a token up and, if its session is live, marks it used.
+	 * @param token The token, or null.
+	 * @return Returns the token's session, or null if it is unknown, expired or revoked.
+	 */
+	public Session validate(String token) {
+		if (token == null) {
+			return null;
+		}
+		Session session = sessions.get(token);
+		if (session == null) {
+			return null;
+		}
+		long now = clock.millis();
+		if (now - session.getLastAccessedAt() >= ttlMillis) {
+			remove(session);
+			return null;
+		}
+		session.touch(now);
+		return session;
+	}
+
+	/**
+	 * Signs one session out.
+	 * @param token The session's token.
+	 * @return Returns true if the session was live.
+	 */
+	public boolean revoke(String token) {
+		Session session = token == null ? null : sessions.get(token);
+		return session != null && remove(session);
+	}
+
+	/**
+	 * Signs every session of a user out.
+	 * @param userID The users ID
+	 * @return Returns the number of sessions revoked.
+	 */
+	public int revokeUser(long userID) {
+		final int[] revoked = new int[1];
+		tokensByUser.computeIfPresent(userID, new BiFunction<Long, Set<String>, Set<String>>() {
+			@Override
+			public Set<String> apply(Long key, Set<String> tokens) {
+				for (String token : tokens) {
+					if (sessions.remove(token) != null) {
+						revoked[0]++;
+					}
+				}
+				return null;
+			}
+		});
+		return revoked[0];
+	}
+
+	/**
+	 * @return Returns the number of sessions held, including expired ones not yet swept out.
+	 */
+	public int size() {
+		return sessions.size();
+	}
+
+	/**
+	 * @return Returns the number of idle sessions evicted to stay within sessionCacheSize.
+	 */
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	private boolean remove(final Session session) {
+		final boolean[] removed = new boolean[1];
+		tokensByUser.computeIfPresent(session.getUserID(), new BiFunction<Long, Set<String>, Set<String>>() {
+			@Override
+			public Set<String> apply(Long key, Set<String> tokens) {
+				removed[0] = sessions.remove(session.getToken(), session);
+				tokens.remove(session.getToken());
+				return tokens.isEmpty() ? null : tokens;
+			}
+		});
+		return removed[0];
+	}
+
+	/**
+	 * Evicts the first session in sign-in order that has not been used since it was last looked at, giving each used
+	 * one a second chance at the back of the queue.
+	 * @return Returns false if there was nothing to evict.
+	 */
+	private boolean evict() {
+		Entry entry;
+		Session candidate = null;
+		for (int i = 0; i < EVICTION_SCAN && (entry = order.poll()) != null; i++) {
+			Session session = entry.session;
+			if (sessions.get(session.getToken()) != session) {
+				continue;
+			}
+			long lastAccessedAt = session.getLastAccessedAt();
+			if (lastAccessedAt <= entry.seenAt) {
+				candidate = session;
+				break;
+			}
+			order.add(new Entry(session, lastAccessedAt));
+			candidate = session;
+		}
+		if (candidate == null || !remove(candidate)) {
+			return candidate != null;
+		}
+		evictions.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Removes expired sessions, and the eviction queue's entries of removed ones, once per sweep interval.
+	 */
+	private void sweep(final long now) {
+		long due = nextSweepAt.get();
+		if (now < due || !nextSweepAt.compareAndSet(due, now + sweepIntervalMillis)) {
+			return;
+		}
+		for (Session session : sessions.values()) {
+			if (now - session.getLastAccessedAt() >= ttlMillis) {
+				remove(session);
+			}
+		}
+		order.removeIf(new Predicate<Entry>() {
+			@Override
+			public boolean test(Entry entry) {
+				return sessions.get(entry.session.getToken()) != entry.session;
+			}
+		});
+	}
+
+	private String newToken() {
+		byte[] bytes = new byte[TOKEN_BYTES];
+		random.nextBytes(bytes);
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+	}
+
+	private static final class Entry {
+		final Session session;
+		// The session's last use when it was queued; a later use earns it a second chance.
+		final long seenAt;
+
+		Entry(Session session, long seenAt) {
+			this.session = session;
+			this.seenAt = seenAt;
+		}
+	}
+}
@@ -0,0 +1,558 @@
+package sjsu.cs157a.bankingsystem;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PushbackReader;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An HTTP front-end exposing the operations of the console App to many concurrent users.
+ * Requests and responses are JSON; parameters may be given in the query string or as a JSON object body. Amounts are
+ * decimal strings such as "12.50". After /login or /register, requests carry the returned token in an
+ * "Authorization: Bearer TOKEN" header, which selects that user's Session from the SessionCache without another
+ * password check or any database access. A token expires after sessionTtlMillis unused, and a 401 means log in again.
+ * Each request runs on its own virtual thread when the JVM provides them, and otherwise on a pool of serverThreads
+ * platform threads; either way it borrows a pooled connection only while it runs, so throughput is bounded by the
+ * connection pool and the database rather than by a single console.
+ * <pre>
+ * POST   /register      firstName, lastName, email, password
+ * POST   /login         email, password
+ * POST   /logout
+ * DELETE /user
+ * GET    /banks
+ * POST   /banks         bankName
+ * GET    /accounts      bankName
+ * POST   /accounts      bankName, accType
+ * DELETE /accounts      bankName, accType
+ * GET    /balance       bankName, accType
+ * GET    /networth
+ * GET    /portfolio     every account at every bank with its balance and loans, and net worth, in one query
+ * GET    /overview      net worth, loans and accounts at every bank, fetched in parallel
+ * POST   /deposit       bankName, accType, amount, and optionally idempotencyKey
+ * POST   /withdraw      bankName, accType, amount, and optionally idempotencyKey
+ * POST   /transfer      fromBankName, fromAccType, toBankName, toAccType, amount, between the user's own accounts
+ * GET    /transactions  bankName, accType, and optionally month (yyyy-mm), or cursor and pageSize
+ * GET    /statement     bankName, accType, month (yyyy-mm): opening and closing balance, count and totals
+ * GET    /loans
+ * POST   /loans         bankName, amount, and optionally idempotencyKey
+ * </pre>
+ * A deposit, withdrawal or loan given an idempotencyKey is applied at most once for that key; retrying it with the
+ * same key after a timeout or a 503 returns the original outcome.
+ */
+public class SessionServer {
+	private static final int MAX_PAGE_SIZE = 500;
+	private static final String IDEMPOTENCY_KEY = "idempotencyKey";
+	private static final int OVERVIEW_TIMEOUT_SECONDS = 30;
+
+	private final SQLConnector connector;
+	private final MySQLStorage storage;
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final SessionCache sessions;
+
+	public SessionServer(SQLConnector connector, int port, int threads) throws IOException {
+		this.connector = connector;
+		this.storage = new MySQLStorage(connector);
+		this.sessions = SessionCache.getInstance();
+		this.server = HttpServer.create(new InetSocketAddress(port), 0);
+		this.executor = VirtualThreads.newExecutor("session-server", threads);
+		server.createContext("/", new Router());
+		server.setExecutor(executor);
+	}
+
+	public static void main(String[] args) throws IOException {
+		SQLConnector connector = SQLConnector.getInstance();
+		SessionServer sessionServer = new SessionServer(connector, Config.getInt("serverPort", 8080), Config.getInt("serverThreads", 64));
+		UserArchiver.start(connector);
+		sessionServer.start();
+		System.out.println("Listening on port " + sessionServer.getPort() + ".");
+	}
+
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Stops accepting requests, waiting up to the given number of seconds for those in progress.
+	 */
+	public void stop(int delaySeconds) {
+		server.stop(delaySeconds);
+		executor.shutdown();
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * @return Returns the number of signed in sessions.
+	 */
+	public int getSessionCount() {
+		return sessions.size();
+	}
+
+	/**
+	 * Thrown to end a request with a given HTTP status.
+	 */
+	static class HttpError extends Exception {
+		private static final long serialVersionUID = 1L;
+		final int status;
+
+		HttpError(int status, String message) {
+			super(message);
+			this.status = status;
+		}
+	}
+
+	private class Router implements HttpHandler {
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			int status = 200;
+			Object body;
+			try {
+				Map<String, String> params = readParams(exchange);
+				String route = exchange.getRequestMethod().toUpperCase() + " " + exchange.getRequestURI().getPath();
+				// Sessions are checked before borrowing a connection, so unauthenticated requests cost the pool nothing.
+				Session session = route.equals("POST /register") || route.equals("POST /login") ? null : authenticate(exchange);
+				if (session == null) {
+					// Passwords are hashed and verified without a connection held, borrowing one only to read or write the user.
+					body = route.equals("POST /register") ? register(params) : login(params);
+				} else if (route.equals("GET /overview")) {
+					// Fans out over several pooled connections, so it must not hold one of its own while it waits.
+					body = overview(session.getUserID());
+				} else {
+					try (Connection conn = connector.getConnection()) {
+						if (conn == null) {
+							throw new HttpError(503, "No database connection is available.");
+						}
+						body = route(route, session, params, conn);
+					}
+				}
+			} catch (HttpError e) {
+				status = e.status;
+				body = error(e.getMessage());
+			} catch (NumberFormatException e) {
+				status = 400;
+				body = error(e.getMessage());
+			} catch (Exception e) {
+				e.printStackTrace();
+				status = 500;
+				body = error("Internal error.");
+			}
+			byte[] bytes = toJson(body).getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+			exchange.sendResponseHeaders(status, bytes.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(bytes);
+			}
+		}
+	}
+
+	private Object route(String route, Session session, Map<String, String> params, Connection conn) throws HttpError {
+		long userID = session.getUserID();
+		switch (route) {
+		case "POST /logout":
+			sessions.revoke(session.getToken());
+			return ok();
+		case "DELETE /user":
+			// Revokes every session of the user, not only this one.
+			if (!User.deleteUser(conn, userID)) {
+				throw new HttpError(409, "The user could not be deleted.");
+			}
+			return ok();
+		case "GET /banks":
+			return banks(Bank.getAllBanks(conn));
+		case "POST /banks":
+			if (!Bank.createBank(conn, require(params, "bankName").toUpperCase())) {
+				throw new HttpError(409, "The bank could not be created.");
+			}
+			return ok();
+		case "GET /accounts":
+			return accounts(Account.getAllUserBankAccountsAtBank(conn, require(params, "bankName"), userID));
+		case "POST /accounts":
+			if (!Account.createBankAccount(conn, require(params, "bankName"), require(params, "accType"), userID)) {
+				throw new HttpError(409, "The account could not be created.");
+			}
+			return ok();
+		case "DELETE /accounts":
+			if (!Account.deleteBankAccount(conn, require(params, "bankName"), require(params, "accType"), userID)) {
+				throw new HttpError(409, "The account could not be deleted.");
+			}
+			return ok();
+		case "GET /balance":
+			return amount("balance", Account.getBankAccountBalance(conn, require(params, "bankName"), require(params, "accType"), userID));
+		case "GET /networth":
+			return amount("netWorth", Account.calculateNetWorth(conn, userID));
+		case "GET /portfolio":
+			return portfolio(Account.getPortfolio(conn, userID));
+		case "POST /deposit":
+			if (params.containsKey(IDEMPOTENCY_KEY)) {
+				return outcome(Transaction.deposit(conn, userID, require(params, "bankName"), require(params, "accType"), "Deposit", positiveAmount(params),
+						params.get(IDEMPOTENCY_KEY)), "The deposit could not be made.");
+			}
+			if (!Transaction.deposit(conn, userID, require(params, "bankName"), require(params, "accType"), "Deposit", positiveAmount(params))) {
+				throw new HttpError(409, "The deposit could not be made.");
+			}
+			return ok();
+		case "POST /withdraw":
+			if (params.containsKey(IDEMPOTENCY_KEY)) {
+				return outcome(Transaction.withdraw(conn, userID, require(params, "bankName"), require(params, "accType"), "Withdraw", positiveAmount(params),
+						params.get(IDEMPOTENCY_KEY)), "The withdrawal could not be made; the balance may not cover it.");
+			}
+			if (!Transaction.withdraw(conn, userID, require(params, "bankName"), require(params, "accType"), "Withdraw", positiveAmount(params))) {
+				throw new HttpError(409, "The withdrawal could not be made; the balance may not cover it.");
+			}
+			return ok();
+		case "POST /transfer":
+			if (!Transaction.transfer(conn, new AccountKey(userID, require(params, "fromBankName"), require(params, "fromAccType")),
+					new AccountKey(userID, require(params, "toBankName"), require(params, "toAccType")), positiveAmount(params))) {
+				throw new HttpError(409, "The transfer could not be made; the balance may not cover it.");
+			}
+			return ok();
+		case "GET /transactions":
+			return transactions(conn, userID, params);
+		case "GET /statement":
+			return statement(Transaction.getMonthlyStatement(conn, userID, require(params, "bankName"), require(params, "accType"), month(params)));
+		case "GET /loans":
+			return loans(Loan.getLoans(conn, userID));
+		case "POST /loans":
+			if (params.containsKey(IDEMPOTENCY_KEY)) {
+				return outcome(Loan.createLoan(conn, userID, require(params, "bankName"), positiveAmount(params), params.get(IDEMPOTENCY_KEY)),
+						"The loan could not be made.");
+			}
+			if (!Loan.createLoan(conn, userID, require(params, "bankName"), positiveAmount(params))) {
+				throw new HttpError(409, "The loan could not be made.");
+			}
+			return ok();
+		default:
+			throw new HttpError(404, "No such operation: " + route);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private JSONObject register(Map<String, String> params) throws HttpError {
+		String email = require(params, "email");
+		long userID = User.register(storage, require(params, "firstName"), require(params, "lastName"), email, require(params, "password"));
+		if (userID == -3) {
+			throw new HttpError(400, "A name, email or password is too long, or the password is shorter than 8 characters.");
+		}
+		if (userID == -2) {
+			throw new HttpError(409, "The email is already in use.");
+		}
+		if (userID == -4) {
+			throw new HttpError(503, "Too many passwords are being checked; retry shortly.");
+		}
+		if (userID < 0) {
+			throw new HttpError(500, "Registration failed.");
+		}
+		JSONObject result = openSession(userID, email);
+		result.put("userID", userID);
+		return result;
+	}
+
+	private JSONObject login(Map<String, String> params) throws HttpError {
+		String email = require(params, "email");
+		long userID = User.login(storage, email, require(params, "password"));
+		if (userID == -4) {
+			throw new HttpError(503, "Too many passwords are being checked; retry shortly.");
+		}
+		if (userID < 0) {
+			throw new HttpError(401, "The given email and password do not match any user.");
+		}
+		return openSession(userID, email);
+	}
+
+	@SuppressWarnings("unchecked")
+	private JSONObject openSession(long userID, String email) {
+		JSONObject result = new JSONObject();
+		result.put("token", sessions.open(userID, email).getToken());
+		return result;
+	}
+
+	private Session authenticate(HttpExchange exchange) throws HttpError {
+		String header = exchange.getRequestHeaders().getFirst("Authorization");
+		String prefix = "Bearer ";
+		Session session = null;
+		if (header != null && header.startsWith(prefix)) {
+			session = sessions.validate(header.substring(prefix.length()).trim());
+		}
+		if (session == null) {
+			throw new HttpError(401, "Please log in.");
+		}
+		return session;
+	}
+
+	@SuppressWarnings("unchecked")
+	private JSONObject overview(long userID) throws HttpError, InterruptedException {
+		AsyncDatabase.Overview overview;
+		try {
+			overview = AsyncDatabase.getInstance().overviewAsync(userID).get(OVERVIEW_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		} catch (ExecutionException e) {
+			throw new HttpError(503, "No database connection is available.");
+		} catch (TimeoutException e) {
+			throw new HttpError(503, "The overview took too long.");
+		}
+		JSONObject result = new JSONObject();
+		result.put("netWorth", Money.format(overview.getNetWorth()));
+		result.put("loanTotal", Money.format(overview.getLoanTotal()));
+		result.put("loans", loans(overview.getLoans()));
+		JSONObject accountsByBank = new JSONObject();
+		for (Map.Entry<String, List<Account>> entry : overview.getAccountsByBank().entrySet()) {
+			accountsByBank.put(entry.getKey(), accounts(entry.getValue()));
+		}
+		result.put("accounts", accountsByBank);
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	private JSONObject portfolio(Portfolio portfolio) throws HttpError {
+		if (portfolio == null) {
+			throw new HttpError(500, "The portfolio could not be read.");
+		}
+		JSONArray holdings = new JSONArray();
+		for (Portfolio.Holding holding : portfolio.getHoldings()) {
+			JSONObject item = new JSONObject();
+			item.put("bankName", holding.getBankName());
+			item.put("accType", holding.getAccType());
+			item.put("balance", Money.format(holding.getBalance()));
+			item.put("outstandingLoans", Money.format(holding.getOutstandingLoans()));
+			holdings.add(item);
+		}
+		JSONObject result = new JSONObject();
+		result.put("netWorth", Money.format(portfolio.getNetWorth()));
+		result.put("loanTotal", Money.format(portfolio.getLoanTotal()));
+		result.put("accounts", holdings);
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	private JSONObject statement(MonthlyStatement statement) throws HttpError {
+		if (statement == null) {
+			throw new HttpError(404, "There were no transactions that month.");
+		}
+		JSONObject result = new JSONObject();
+		result.put("month", statement.getMonth().toString());
+		result.put("openingBalance", Money.format(statement.getOpeningBalance()));
+		result.put("closingBalance", Money.format(statement.getClosingBalance()));
+		result.put("transCount", statement.getTransCount());
+		result.put("depositTotal", Money.format(statement.getDepositTotal()));
+		result.put("withdrawalTotal", Money.format(statement.getWithdrawalTotal()));
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	private JSONObject transactions(Connection conn, long userID, Map<String, String> params) throws HttpError {
+		String bankName = require(params, "bankName");
+		String accType = require(params, "accType");
+		JSONObject result = new JSONObject();
+		List<Transaction> list;
+		if (params.containsKey("month")) {
+			list = Transaction.getMonthlyTransactions(conn, userID, bankName, accType, month(params));
+		} else if (params.containsKey("cursor") || params.containsKey("pageSize")) {
+			int pageSize = params.containsKey("pageSize") ? Integer.parseInt(params.get("pageSize")) : 50;
+			if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+				throw new HttpError(400, "pageSize must be between 1 and " + MAX_PAGE_SIZE + ".");
+			}
+			TransactionPage page;
+			try {
+				page = Transaction.getTransactionPage(conn, userID, bankName, accType, pageSize, params.get("cursor"));
+			} catch (IllegalArgumentException e) {
+				throw new HttpError(400, "Invalid cursor.");
+			}
+			if (page == null) {
+				throw new HttpError(500, "The transactions could not be read.");
+			}
+			list = page.getTransactions();
+			result.put("nextCursor", page.getNextCursor());
+		} else {
+			list = Transaction.getRecentTransactions(conn, userID, bankName, accType);
+		}
+		JSONArray array = new JSONArray();
+		for (Transaction t : list) {
+			JSONObject item = new JSONObject();
+			item.put("transID", t.getTransId());
+			item.put("transDateTime", t.getTransDateTime().toString());
+			item.put("location", t.getLocation());
+			item.put("summary", t.getSummary());
+			item.put("transType", t.getTransType());
+			item.put("amount", Money.format(t.getAmount()));
+			item.put("netBalance", Money.format(t.getNetBalance()));
+			array.add(item);
+		}
+		result.put("transactions", array);
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static JSONArray banks(List<Bank> banks) {
+		JSONArray array = new JSONArray();
+		for (Bank bank : banks) {
+			JSONObject item = new JSONObject();
+			item.put("bankName", bank.getBankName());
+			item.put("balance", Money.format(bank.getBalance()));
+			array.add(item);
+		}
+		return array;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static JSONArray accounts(List<Account> accounts) {
+		JSONArray array = new JSONArray();
+		for (Account account : accounts) {
+			JSONObject item = new JSONObject();
+			item.put("accType", account.getAccType());
+			item.put("balance", Money.format(account.getBalance()));
+			array.add(item);
+		}
+		return array;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static JSONArray loans(List<Loan> loans) {
+		JSONArray array = new JSONArray();
+		for (Loan loan : loans) {
+			JSONObject item = new JSONObject();
+			item.put("loanID", loan.getLoanId());
+			item.put("bankName", loan.getBankName());
+			item.put("amount", Money.format(loan.getAmount()));
+			array.add(item);
+		}
+		return array;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static JSONObject amount(String name, long cents) throws HttpError {
+		if (cents == -1) {
+			throw new HttpError(404, "No such account.");
+		}
+		JSONObject result = new JSONObject();
+		result.put(name, Money.format(cents));
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static JSONObject ok() {
+		JSONObject result = new JSONObject();
+		result.put("ok", Boolean.TRUE);
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static JSONObject error(String message) {
+		JSONObject result = new JSONObject();
+		result.put("error", message);
+		return result;
+	}
+
+	private static String toJson(Object body) {
+		return body instanceof JSONArray ? ((JSONArray) body).toJSONString() : ((JSONObject) body).toJSONString();
+	}
+
+	private static String require(Map<String, String> params, String name) throws HttpError {
+		String value = params.get(name);
+		if (value == null || value.isEmpty()) {
+			throw new HttpError(400, "Missing parameter: " + name);
+		}
+		return value;
+	}
+
+	/**
+	 * Answers an idempotent call: a refusal is a conflict, and an unknown outcome asks the client to retry with the same key.
+	 */
+	private static JSONObject outcome(Boolean applied, String refused) throws HttpError {
+		if (applied == null) {
+			throw new HttpError(503, "The outcome is unknown; retry with the same " + IDEMPOTENCY_KEY + ".");
+		}
+		if (!applied) {
+			throw new HttpError(409, refused);
+		}
+		return ok();
+	}
+
+	private static LocalDate month(Map<String, String> params) throws HttpError {
+		try {
+			return LocalDate.parse(require(params, "month") + "-01");
+		} catch (RuntimeException e) {
+			throw new HttpError(400, "month must be given as yyyy-mm.");
+		}
+	}
+
+	private static long positiveAmount(Map<String, String> params) throws HttpError {
+		long amount = Money.parse(require(params, "amount"));
+		if (amount <= 0) {
+			throw new HttpError(400, "amount must be positive.");
+		}
+		return amount;
+	}
+
+	/**
+	 * Reads the query string and, unless blank, a JSON object body into one map of parameters. Body values win.
+	 */
+	static Map<String, String> readParams(HttpExchange exchange) throws IOException, HttpError {
+		Map<String, String> params = new HashMap<String, String>();
+		String query = exchange.getRequestURI().getRawQuery();
+		if (query != null) {
+			for (String pair : query.split("&")) {
+				int eq = pair.indexOf('=');
+				if (eq > 0) {
+					params.put(decode(pair.substring(0, eq)), decode(pair.substring(eq + 1)));
+				}
+			}
+		}
+		try (PushbackReader reader = new PushbackReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
+			// An empty or all-whitespace body carries no parameters.
+			int c = reader.read();
+			while (c != -1 && Character.isWhitespace(c)) {
+				c = reader.read();
+			}
+			if (c == -1) {
+				return params;
+			}
+			reader.unread(c);
+			Object body = new JSONParser().parse(reader);
+			if (body instanceof JSONObject) {
+				for (Object entry : ((JSONObject) body).entrySet()) {
+					Map.Entry<?, ?> e = (Map.Entry<?, ?>) entry;
+					if (e.getValue() != null) {
+						params.put(e.getKey().toString(), e.getValue().toString());
+					}
+				}
+			} else if (body != null) {
+				throw new HttpError(400, "The request body must be a JSON object.");
+			}
+		} catch (ParseException e) {
+			throw new HttpError(400, "The request body is not valid JSON.");
+		}
+		return params;
+	}
+
+	private static String decode(String value) {
+		try {
+			return URLDecoder.decode(value, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,189 @@
+package sjsu.cs157a.bankingsystem;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A per-connection cache of prepared and callable statements, keyed by their SQL.
+ * Statements are prepared once per connection and reused across calls instead of being prepared and leaked on every call.
+ * The least recently used statement is closed once the cache holds more than statementCacheSize entries.
+ * Callers must not close statements handed out by the cache, but should still close any ResultSet they produce.
+ * Every statement is instrumented by DatabaseMetrics. Statements run on the physical connection rather than through the
+ * pool's handle, so a connection exception raised by one is reported to the pool here, and the connection is discarded
+ * instead of being returned as healthy.
+ */
+public class StatementCache {
+	private static final int MAX_STATEMENTS = Config.getInt("statementCacheSize", 64);
+	// Caches for connections that were not borrowed from the pool, released once the connection is unreachable.
+	private static final Map<Connection, StatementCache> unpooledCaches = Collections.synchronizedMap(new WeakHashMap<Connection, StatementCache>());
+
+	// Counters across every connection.
+	private static final AtomicLong hits = new AtomicLong();
+	private static final AtomicLong misses = new AtomicLong();
+	private static final AtomicLong evictions = new AtomicLong();
+
+	private final Connection conn;
+	private final Runnable onConnectionError;
+	private final LinkedHashMap<String, PreparedStatement> statements;
+
+	/**
+	 * @param conn The physical connection.
+	 * @param onConnectionError Run when preparing or running a statement fails with a connection exception, or null.
+	 */
+	StatementCache(Connection conn, Runnable onConnectionError) {
+		this.conn = conn;
+		this.onConnectionError = onConnectionError;
+		this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+				if (size() > MAX_STATEMENTS) {
+					evictions.incrementAndGet();
+					closeQuietly(eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Retrieves the statement cache belonging to a connection.
+	 * @param conn The MySQL connection, either borrowed from SQLConnector or opened directly.
+	 * @return Returns the cache of statements prepared on the connection.
+	 */
+	public static StatementCache of(Connection conn) {
+		StatementCache cache = SQLConnector.getStatementCache(conn);
+		if (cache != null) {
+			return cache;
+		}
+		synchronized (unpooledCaches) {
+			cache = unpooledCaches.get(conn);
+			if (cache == null) {
+				cache = new StatementCache(conn, null);
+				unpooledCaches.put(conn, cache);
+			}
+			return cache;
+		}
+	}
+
+	/**
+	 * Retrieves a cached prepared statement, preparing it on a miss.
+	 * @param sql The SQL to prepare.
+	 * @return Returns a prepared statement for the SQL. Do not close it.
+	 * @throws SQLException Thrown if the statement could not be prepared.
+	 */
+	public synchronized PreparedStatement prepare(String sql) throws SQLException {
+		PreparedStatement pstmt = statements.get(sql);
+		if (pstmt != null && !pstmt.isClosed()) {
+			hits.incrementAndGet();
+			return pstmt;
+		}
+		misses.incrementAndGet();
+		try {
+			pstmt = DatabaseMetrics.instrument(conn.prepareStatement(sql), sql, onConnectionError);
+		} catch (SQLException e) {
+			reportConnectionError(e);
+			throw e;
+		}
+		statements.put(sql, pstmt);
+		return pstmt;
+	}
+
+	/**
+	 * Retrieves a cached callable statement, preparing it on a miss.
+	 * Needed for procedures with OUT parameters.
+	 * @param sql The SQL to prepare.
+	 * @return Returns a callable statement for the SQL. Do not close it.
+	 * @throws SQLException Thrown if the statement could not be prepared.
+	 */
+	public synchronized CallableStatement prepareCall(String sql) throws SQLException {
+		PreparedStatement pstmt = statements.get(sql);
+		if (pstmt instanceof CallableStatement && !pstmt.isClosed()) {
+			hits.incrementAndGet();
+			return (CallableStatement) pstmt;
+		}
+		misses.incrementAndGet();
+		CallableStatement cstmt;
+		try {
+			cstmt = (CallableStatement) DatabaseMetrics.instrument(conn.prepareCall(sql), sql, onConnectionError);
+		} catch (SQLException e) {
+			reportConnectionError(e);
+			throw e;
+		}
+		statements.put(sql, cstmt);
+		return cstmt;
+	}
+
+	/**
+	 * @return Returns the number of statements currently cached on this connection.
+	 */
+	public synchronized int size() {
+		return statements.size();
+	}
+
+	/**
+	 * Closes and forgets every statement cached on this connection.
+	 */
+	public synchronized void clear() {
+		Iterator<PreparedStatement> it = statements.values().iterator();
+		while (it.hasNext()) {
+			closeQuietly(it.next());
+			it.remove();
+		}
+	}
+
+	/**
+	 * @return Returns the number of lookups served from a cache, across all connections.
+	 */
+	public static long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * @return Returns the number of lookups that had to prepare a statement, across all connections.
+	 */
+	public static long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * @return Returns the number of statements closed to keep caches within statementCacheSize.
+	 */
+	public static long getEvictionCount() {
+		return evictions.get();
+	}
+
+	/**
+	 * @return Returns a one line summary of the cache counters.
+	 */
+	public static String getCacheStats() {
+		long h = hits.get();
+		long m = misses.get();
+		double ratio = h + m == 0 ? 0 : 100.0 * h / (h + m);
+		return String.format("[statements hits=%d misses=%d evictions=%d hitRatio=%.1f%%]", h, m, evictions.get(), ratio);
+	}
+
+	private void reportConnectionError(SQLException e) {
+		if (onConnectionError != null && DatabaseMetrics.isConnectionError(e)) {
+			onConnectionError.run();
+		}
+	}
+
+	private static void closeQuietly(PreparedStatement pstmt) {
+		try {
+			pstmt.close();
+		} catch (SQLException e) {
+			// The connection is likely gone, which releases the statement anyway.
+		}
+	}
+}
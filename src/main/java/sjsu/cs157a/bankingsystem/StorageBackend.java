@@ -0,0 +1,113 @@
+package sjsu.cs157a.bankingsystem;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * The ledger operations of Database, without the connection: users, banks, accounts, transactions and loans.
+ * MySQLStorage runs them against the database through the connection pool; InMemoryLedger keeps the whole ledger in
+ * process, for simulations and as a fast test double. Both return the same results and error sentinels as the matching
+ * Database method. Amounts are in cents.
+ */
+public interface StorageBackend {
+
+	/**
+	 * @return Returns the new user's ID, -2 if the email is already in use, or -1 if creation fails.
+	 */
+	long createUser(String firstName, String lastName, String email, byte[] pw);
+
+	/**
+	 * @return Returns true if the user was deleted; a user who still has accounts cannot be.
+	 */
+	boolean deleteUser(long userID);
+
+	/**
+	 * @return Returns the ID and stored password hash of the user with the email, or null if there is none. The
+	 * password is verified by the caller, see PasswordHasher.
+	 */
+	Credentials getUserCredentials(String email);
+
+	/**
+	 * @return Returns true if the user's stored password hash was replaced.
+	 */
+	boolean updatePassword(long userID, byte[] pw);
+
+	/**
+	 * Records that the user is active, on each login, so that the archiver keeps them.
+	 */
+	void markUserActive(long userID);
+
+	boolean createBank(String bankName);
+
+	List<Bank> getAllBanks();
+
+	/**
+	 * @return Returns the bank's balance, or -1 if there is no such bank.
+	 */
+	long getBanksBalance(String bankName);
+
+	/**
+	 * @return Returns true if the account was opened with a zero balance.
+	 */
+	boolean createBankAccount(String bankName, String accType, long userID);
+
+	/**
+	 * @return Returns true if the account was deleted; an account with transactions or loans cannot be.
+	 */
+	boolean deleteBankAccount(String bankName, String accType, long userID);
+
+	List<Account> getAllUserBankAccountsAtBank(String bankName, long userID);
+
+	/**
+	 * @return Returns the account's balance, or -1 if there is no such account.
+	 */
+	long getBankAccountBalance(String bankName, String accType, long userID);
+
+	long calculateNetWorth(long userID);
+
+	/**
+	 * @return Returns the user's accounts with their loans and net worth, or null if they could not be read.
+	 */
+	Portfolio getPortfolio(long userID);
+
+	/**
+	 * Records a deposit whose type is Deposit and whose summary is the caller's, such as "Deposit" or "Paycheck".
+	 * Deposits and withdrawals have no location; only transfers record one, the other account.
+	 * @return Returns true if the deposit was made, false if there is no such account or it failed.
+	 */
+	boolean deposit(long userID, String bankName, String accType, String summary, long amount);
+
+	/**
+	 * Records a withdrawal whose type is Withdrawal and whose summary is the caller's, such as "Withdraw" or "Rent".
+	 * @return Returns true if the withdrawal was made, false if the balance did not cover it or it failed.
+	 */
+	boolean withdraw(long userID, String bankName, String accType, String summary, long amount);
+
+	/**
+	 * @return Returns true if the amount was moved as one withdrawal and one deposit together.
+	 */
+	boolean transfer(AccountKey from, AccountKey to, long amount);
+
+	/**
+	 * @return Returns the account's transactions of the last 30 days, newest first.
+	 */
+	List<Transaction> getRecentTransactions(long userID, String bankName, String accType);
+
+	/**
+	 * @return Returns the account's transactions in the month of filterDate, newest first.
+	 */
+	List<Transaction> getMonthlyTransactions(long userID, String bankName, String accType, LocalDate filterDate);
+
+	/**
+	 * @return Returns the summary of the account's month, or null if it had no transactions that month.
+	 */
+	MonthlyStatement getMonthlyStatement(long userID, String bankName, String accType, LocalDate filterDate);
+
+	List<Loan> getLoans(long userID);
+
+	/**
+	 * Lends to the user through their Loans account at the bank, which the loan is added to.
+	 * @return Returns true if the loan was made, false if the user has no Loans account at the bank or it failed.
+	 */
+	boolean createLoan(long userID, String bankName, long amount);
+}
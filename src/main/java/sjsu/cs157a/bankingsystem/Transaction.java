@@ -4,20 +4,26 @@ import java.sql.Connection;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.function.Consumer;
 
 public class Transaction {
-	private int transId;
-	private int userId;
+	private long transId;
+	private long userId;
 	private String bankName;
 	private String accType;
 	private LocalDateTime transDateTime;
 	private String location;
 	private String summary;
 	private String transType;
-	private float amount;
-	private float netBalance;
+	private long amount;
+	private long netBalance;
 	
-	public Transaction(int userId, String bankName, String accType, LocalDateTime transDateTime, String location, String summary, String transType, float amount, float netBalance) {
+	public Transaction(long userId, String bankName, String accType, LocalDateTime transDateTime, String location, String summary, String transType, long amount, long netBalance) {
+		this(0, userId, bankName, accType, transDateTime, location, summary, transType, amount, netBalance);
+	}
+	
+	public Transaction(long transId, long userId, String bankName, String accType, LocalDateTime transDateTime, String location, String summary, String transType, long amount, long netBalance) {
+		this.transId = transId;
 		this.userId = userId;
 		this.bankName = bankName;
 		this.accType = accType;
@@ -29,27 +35,135 @@ public class Transaction {
 		this.netBalance = netBalance;
 	}
 	
-	public int getTransId() { return transId; }
+	public long getTransId() { return transId; }
+	public long getUserId() { return userId; }
+	public String getBankName() { return bankName; }
+	public String getAccType() { return accType; }
 	public LocalDateTime getTransDateTime() { return transDateTime; }
 	public String getLocation() { return location; }
 	public String getSummary() { return summary; }
 	public String getTransType() { return transType; }
-	public float getAmount() { return amount; }
-	public float getNetBalance() { return netBalance; }
+	public long getAmount() { return amount; }
+	public long getNetBalance() { return netBalance; }
 	
-	public static List<Transaction> getRecentTransactions(Connection conn, int userId, String bankName, String accType) {
+	public static List<Transaction> getRecentTransactions(Connection conn, long userId, String bankName, String accType) {
 		return Database.getRecentTransactions(conn, userId, bankName, accType);
 	}
 	
-	public static List<Transaction> getMonthlyTransactions(Connection conn, int userId, String bankName, String accType, LocalDate filterDate) {
+	/**
+	 * @param conn The MySQL connection
+	 * @param userId The users ID
+	 * @param bankName The banks name
+	 * @param accType The account type
+	 * @param pageSize The maximum number of transactions on the page
+	 * @param cursor The cursor from the previous page's getNextCursor(), or null for the newest page
+	 * @return Return a page of the account's transactions, newest first, or null if the query fails
+	 * @throws IllegalArgumentException Thrown if the cursor is malformed
+	 */
+	public static TransactionPage getTransactionPage(Connection conn, long userId, String bankName, String accType, int pageSize, String cursor) {
+		return Database.getTransactionPage(conn, userId, bankName, accType, pageSize, cursor);
+	}
+	
+	/**
+	 * @param conn The MySQL connection, which is busy until streaming finishes
+	 * @param userId The users ID
+	 * @param bankName The banks name
+	 * @param accType The account type
+	 * @param consumer Receives each transaction, newest first, as it arrives from the server
+	 * @return Return the number of transactions streamed, or -1 if the query fails
+	 */
+	public static long streamTransactions(Connection conn, long userId, String bankName, String accType, Consumer<Transaction> consumer) {
+		return Database.streamTransactions(conn, userId, bankName, accType, consumer);
+	}
+	
+	/**
+	 * @param conn The MySQL connection
+	 * @param userId The users ID
+	 * @param bankName The banks name
+	 * @param accType The account type
+	 * @param filterDate Any day of the month
+	 * @return Return the month's opening and closing balance, transaction count and totals, or null if there were no transactions that month
+	 */
+	public static MonthlyStatement getMonthlyStatement(Connection conn, long userId, String bankName, String accType, LocalDate filterDate) {
+		return Database.getMonthlyStatement(conn, userId, bankName, accType, filterDate);
+	}
+
+	public static List<Transaction> getMonthlyTransactions(Connection conn, long userId, String bankName, String accType, LocalDate filterDate) {
 		return Database.getMonthlyTransactions(conn, userId, bankName, accType, filterDate);
 	}
 	
-	public static void deposit(Connection conn, int userID, String bankName, String accType, String transType, float amount) {
-		Database.deposit(conn, userID, bankName, accType, transType, amount);
+	/**
+	 * @return Returns true if the deposit was made, false if there is no such account or the call failed.
+	 */
+	public static boolean deposit(Connection conn, long userID, String bankName, String accType, String summary, long amount) {
+		return Database.deposit(conn, userID, bankName, accType, summary, amount);
+	}
+
+	/**
+	 * @return Returns true if the withdrawal was made, false if the balance did not cover it or the call failed.
+	 */
+	public static boolean withdraw(Connection conn, long userID, String bankName, String accType, String summary, long amount) {
+		return Database.withdraw(conn, userID, bankName, accType, summary, amount);
+	}
+
+	/**
+	 * @param conn The MySQL connection
+	 * @param userID The users ID
+	 * @param bankName The banks name
+	 * @param accType The account type
+	 * @param summary The summary recorded with the transaction
+	 * @param amount The amount in cents
+	 * @param idempotencyKey The callers key for this deposit, reused unchanged on every retry
+	 * @return Return true if the deposit was made and false if it was refused, now or by an earlier call with the key; null if the outcome is unknown and the call may be retried with the same key
+	 */
+	public static Boolean deposit(Connection conn, long userID, String bankName, String accType, String summary, long amount, String idempotencyKey) {
+		return Database.deposit(conn, userID, bankName, accType, summary, amount, idempotencyKey);
+	}
+
+	/**
+	 * @param conn The MySQL connection
+	 * @param userID The users ID
+	 * @param bankName The banks name
+	 * @param accType The account type
+	 * @param summary The summary recorded with the transaction
+	 * @param amount The amount in cents
+	 * @param idempotencyKey The callers key for this withdrawal, reused unchanged on every retry
+	 * @return Return true if the withdrawal was made or false if it was refused, now or by an earlier call with the key; null if the outcome is unknown and the call may be retried with the same key
+	 */
+	public static Boolean withdraw(Connection conn, long userID, String bankName, String accType, String summary, long amount, String idempotencyKey) {
+		return Database.withdraw(conn, userID, bankName, accType, summary, amount, idempotencyKey);
+	}
+
+	/**
+	 * @param conn The MySQL connection
+	 * @param from The account to debit
+	 * @param to The account to credit
+	 * @param amount The amount in cents
+	 * @return Return true if the amount was moved, as one withdrawal and one deposit committed together; false if the accounts are the same or missing, the balance did not cover it, or the call failed
+	 */
+	public static boolean transfer(Connection conn, AccountKey from, AccountKey to, long amount) {
+		return Database.transfer(conn, from, to, amount);
+	}
+
+	/**
+	 * Posts many deposits and withdrawals in JDBC batches, using the batchSize and batchCommitWindow settings from config.json.
+	 * @param conn The MySQL connection
+	 * @param postings The postings, in the order they should be applied
+	 * @return Return the rows posted, the rows that failed, and the rows per second achieved
+	 */
+	public static BatchResult postBatch(Connection conn, List<Posting> postings) {
+		return postBatch(conn, postings, Config.getInt("batchSize", 500), Config.getInt("batchCommitWindow", 5000));
 	}
 
-	public static void withdraw(Connection conn, int userID, String bankName, String accType, String transType, float amount) {
-		Database.withdraw(conn, userID, bankName, accType, transType, amount);
+	/**
+	 * Posts many deposits and withdrawals in JDBC batches.
+	 * @param conn The MySQL connection
+	 * @param postings The postings, in the order they should be applied
+	 * @param batchSize The maximum number of rows sent to the server at once
+	 * @param commitWindow The number of rows committed together
+	 * @return Return the rows posted, the rows that failed, and the rows per second achieved
+	 */
+	public static BatchResult postBatch(Connection conn, List<Posting> postings, int batchSize, int commitWindow) {
+		return Database.postBatch(conn, postings, batchSize, commitWindow);
 	}
 }
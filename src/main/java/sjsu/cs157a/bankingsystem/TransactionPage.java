@@ -0,0 +1,73 @@
+package sjsu.cs157a.bankingsystem;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of an account's transaction history, newest first, along with the cursor that continues after it.
+ * Cursors mark a position by (transDateTime, transID) rather than by offset, so fetching page N costs the same as
+ * fetching page 1 and postings made while paging do not shift rows between pages.
+ */
+public class TransactionPage {
+	private final List<Transaction> transactions;
+	private final String nextCursor;
+
+	TransactionPage(List<Transaction> transactions, String nextCursor) {
+		this.transactions = Collections.unmodifiableList(transactions);
+		this.nextCursor = nextCursor;
+	}
+
+	/**
+	 * @return Returns the transactions on this page, newest first.
+	 */
+	public List<Transaction> getTransactions() {
+		return transactions;
+	}
+
+	/**
+	 * @return Returns the cursor to pass for the following page, or null if this is the last page.
+	 */
+	public String getNextCursor() {
+		return nextCursor;
+	}
+
+	public boolean hasMore() {
+		return nextCursor != null;
+	}
+
+	/**
+	 * Encodes the position of a transaction as a cursor.
+	 * @param transaction The last transaction of a page.
+	 * @return Returns an opaque cursor string.
+	 */
+	static String cursorAfter(Transaction transaction) {
+		return transaction.getTransDateTime() + "/" + transaction.getTransId();
+	}
+
+	/**
+	 * @param cursor A cursor returned by getNextCursor().
+	 * @return Returns the transDateTime encoded in the cursor.
+	 * @throws IllegalArgumentException Thrown if the cursor was not produced by a TransactionPage.
+	 */
+	static LocalDateTime cursorDateTime(String cursor) {
+		try {
+			return LocalDateTime.parse(cursor.substring(0, cursor.lastIndexOf('/')));
+		} catch (RuntimeException e) {
+			throw new IllegalArgumentException("Invalid transaction cursor: " + cursor, e);
+		}
+	}
+
+	/**
+	 * @param cursor A cursor returned by getNextCursor().
+	 * @return Returns the transID encoded in the cursor.
+	 * @throws IllegalArgumentException Thrown if the cursor was not produced by a TransactionPage.
+	 */
+	static long cursorTransId(String cursor) {
+		try {
+			return Long.parseLong(cursor.substring(cursor.lastIndexOf('/') + 1));
+		} catch (RuntimeException e) {
+			throw new IllegalArgumentException("Invalid transaction cursor: " + cursor, e);
+		}
+	}
+}
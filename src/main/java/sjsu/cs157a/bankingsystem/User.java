@@ -2,14 +2,16 @@ package sjsu.cs157a.bankingsystem;
 
 import java.sql.Connection;
 import java.time.LocalDate;
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 
 public class User {
 	
-	public static void archiveUsers(Connection conn) {
-		Database.archiveUsers(conn);
+	/**
+	 * Archives every user not modified within the past year, along with their accounts and history.
+	 * @param conn The MySQL connection.
+	 * @return Returns true if the archive ran to completion.
+	 */
+	public static boolean archiveUsers(Connection conn) {
+		return Database.archiveUsers(conn, LocalDate.now().minusYears(1).atStartOfDay());
 	}
 	/**
 	 * Registers a user to be part of the banking system.
@@ -22,35 +24,122 @@ public class User {
 	 * If given fields have invalid length or character, returns -3.
 	 * If email is already in use, returns -2.
 	 * If query to database fails to insert a new user for an unspecified reason, returns -1.
+	 * If too many passwords are being hashed at once to take another, returns -4.
 	 */
-	public static int register(Connection conn, String firstName, String lastName, String email, String pw) {
+	public static long register(Connection conn, String firstName, String lastName, String email, String pw) {
 		if (!validateFields(firstName, lastName, email, pw)) {
 			return -3;
 		}
-		byte[] encodedPassword = encode(pw);
+		byte[] encodedPassword = PasswordHasher.getInstance().hashBounded(pw);
+		if (encodedPassword == null) {
+			return -4;
+		}
 		return Database.createUser(conn, firstName, lastName, email, encodedPassword);
 	}
 	
+	/**
+	 * Registers a user through a storage backend, which borrows a connection only for the insert rather than while the
+	 * password is hashed. Returns the same values as register(Connection, ...).
+	 */
+	public static long register(StorageBackend storage, String firstName, String lastName, String email, String pw) {
+		if (!validateFields(firstName, lastName, email, pw)) {
+			return -3;
+		}
+		byte[] encodedPassword = PasswordHasher.getInstance().hashBounded(pw);
+		if (encodedPassword == null) {
+			return -4;
+		}
+		return storage.createUser(firstName, lastName, email, encodedPassword);
+	}
+	
 	/**
 	 * Retrieves a userID of the user with the given credentials from the banking system.
+	 * The user is looked up by email alone and the password verified against their salted hash in Java, see
+	 * PasswordHasher. A hash made at an older cost, or with the unsalted SHA-256 used before, is replaced by one at
+	 * the current cost once the password has been verified. A login marks the user active, see Database.markUserActive.
 	 * @param conn The MySQL connection.
 	 * @param email The user's email.
 	 * @param pw The user's password.
 	 * @return Returns a userID. If email and password are do not match an existing user, returns -1.
+	 * If too many passwords are being verified at once to take another, returns -4.
 	 */
-	public static int login(Connection conn, String email, String pw) {
-		byte[] encodedPassword = encode(pw);
-		return Database.getUserID(conn, email, encodedPassword);
+	public static long login(Connection conn, String email, String pw) {
+		Credentials credentials = Database.getUserCredentials(conn, email);
+		long userID = verify(credentials, pw);
+		byte[] upgraded = userID > 0 ? upgrade(credentials, pw) : null;
+		if (upgraded != null) {
+			Database.updatePassword(conn, userID, upgraded);
+		}
+		if (userID > 0) {
+			Database.markUserActive(conn, userID);
+		}
+		return userID;
 	}
 	
 	/**
-	 * Deletes a user from the banking system.
+	 * Logs in through a storage backend, which borrows a connection only for the lookup and any upgrade rather than
+	 * while the password is verified. Returns the same values as login(Connection, ...).
+	 */
+	public static long login(StorageBackend storage, String email, String pw) {
+		Credentials credentials = storage.getUserCredentials(email);
+		long userID = verify(credentials, pw);
+		byte[] upgraded = userID > 0 ? upgrade(credentials, pw) : null;
+		if (upgraded != null) {
+			storage.updatePassword(userID, upgraded);
+		}
+		if (userID > 0) {
+			storage.markUserActive(userID);
+		}
+		return userID;
+	}
+	
+	/**
+	 * @return Returns the userID if the password matches, -1 if it does not or there is no such user, or -4 if the
+	 * password hasher is saturated.
+	 */
+	private static long verify(Credentials credentials, String pw) {
+		Boolean verified = PasswordHasher.getInstance().verifyBounded(pw, credentials == null ? null : credentials.getPw());
+		if (verified == null) {
+			return -4;
+		}
+		return verified ? credentials.getUserID() : -1;
+	}
+	
+	/**
+	 * @return Returns a hash at the current cost if the verified password's stored hash needs one, or null. Best
+	 * effort: if the hasher is saturated the old hash keeps working and is upgraded at a later login.
+	 */
+	private static byte[] upgrade(Credentials credentials, String pw) {
+		PasswordHasher hasher = PasswordHasher.getInstance();
+		return hasher.needsRehash(credentials.getPw()) ? hasher.hashBounded(pw) : null;
+	}
+	
+	/**
+	 * Deletes a user from the banking system, and revokes every session they have signed in.
 	 * @param conn The MySQL connection.
 	 * @param userID The user's userID.
 	 * @return Returns true if user is successfully deleted from the banking system.
 	 */
-	public static boolean deleteUser(Connection conn, int userID) {
-		return Database.deleteUser(conn, userID);
+	public static boolean deleteUser(Connection conn, long userID) {
+		if (!Database.deleteUser(conn, userID)) {
+			return false;
+		}
+		SessionCache.getInstance().revokeUser(userID);
+		return true;
+	}
+	
+	/**
+	 * Deletes a user through a storage backend, and revokes every session they have signed in.
+	 * @param storage The storage backend.
+	 * @param userID The user's userID.
+	 * @return Returns true if user is successfully deleted from the banking system.
+	 */
+	public static boolean deleteUser(StorageBackend storage, long userID) {
+		if (!storage.deleteUser(userID)) {
+			return false;
+		}
+		SessionCache.getInstance().revokeUser(userID);
+		return true;
 	}
 	
 	/**
@@ -89,21 +178,4 @@ public class User {
 		}
 		return true;
 	}
-	
-	/**
-	 * Encodes a password into a byte array using SHA-256.
-	 * @param pw The password to encode.
-	 * @return Returns the encoded password as a byte array.
-	 */
-	private static byte[] encode(String pw) {
-		MessageDigest md;
-		try {
-			md = MessageDigest.getInstance("SHA-256");
-			return md.digest(pw.getBytes(StandardCharsets.UTF_8));
-			
-		} catch (NoSuchAlgorithmException e) {
-			e.printStackTrace();
-		}
-		return null;
-	}
 }
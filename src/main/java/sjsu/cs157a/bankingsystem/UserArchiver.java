@@ -0,0 +1,203 @@
+package sjsu.cs157a.bankingsystem;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves users inactive for archiveRetentionDays, with their accounts, transactions and loans, into the archive tables.
+ * A user is active when they log in, post a transaction or take a loan, each of which refreshes Users.updatedAt.
+ * Users are archived in chunks of at most archiveChunkSize, each in its own short transaction, so locks on the live tables
+ * are only held for one chunk at a time. Between chunks the archiver sleeps as needed to stay within archiveRowsPerSecond.
+ * Progress is checkpointed by (updatedAt, userID): every user before the checkpoint has been archived, so each run resumes
+ * from it instead of rescanning. Runs happen every archiveIntervalMillis on a dedicated thread, with a connection borrowed
+ * from the pool only for the duration of a run. Each run also purges idempotency keys older than idempotencyKeyTtlMillis.
+ */
+public class UserArchiver {
+	private final SQLConnector connector;
+	private final long retentionDays;
+	private final int chunkSize;
+	private final long rowsPerSecond;
+	private final long intervalMillis;
+	private final ScheduledExecutorService executor;
+
+	// Only touched by the archiver thread.
+	private Chunk checkpoint;
+
+	private volatile long usersArchived;
+	private volatile long rowsArchived;
+	private volatile long runCount;
+
+	UserArchiver(SQLConnector connector, long retentionDays, int chunkSize, long rowsPerSecond, long intervalMillis) {
+		this.connector = connector;
+		this.retentionDays = retentionDays;
+		this.chunkSize = Math.max(1, chunkSize);
+		this.rowsPerSecond = rowsPerSecond;
+		this.intervalMillis = Math.max(1000, intervalMillis);
+		this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "user-archiver");
+				thread.setDaemon(true);
+				thread.setPriority(Thread.MIN_PRIORITY);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Starts archiving on a schedule, using the settings in config.json.
+	 * @param connector The pool to borrow connections from.
+	 * @return Returns the running archiver.
+	 */
+	public static UserArchiver start(SQLConnector connector) {
+		UserArchiver archiver = new UserArchiver(connector,
+				Config.getLong("archiveRetentionDays", 365),
+				Config.getInt("archiveChunkSize", 500),
+				Config.getLong("archiveRowsPerSecond", 5000),
+				Config.getLong("archiveIntervalMillis", 60000));
+		archiver.schedule();
+		return archiver;
+	}
+
+	private void schedule() {
+		// A fixed delay means a slow run is never overlapped by the next one.
+		executor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try (Connection conn = connector.getConnection()) {
+					if (conn != null) {
+						archive(conn, LocalDateTime.now().minusDays(retentionDays));
+						Database.purgeIdempotencyKeys(conn, LocalDateTime.now().minus(IdempotencyKeys.getInstance().getTtlMillis(), ChronoUnit.MILLIS));
+					}
+				} catch (SQLException e) {
+					e.printStackTrace();
+				} catch (RuntimeException e) {
+					// Keep the schedule alive; an uncaught exception would cancel every later run.
+					e.printStackTrace();
+				}
+			}
+		}, 0, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Archives chunks until no user older than the cutoff is left after the checkpoint, or the archiver is stopped.
+	 * A failed chunk is rolled back and ends the run; the next run retries it from the same checkpoint.
+	 * @param conn The MySQL connection.
+	 * @param cutoff Users last modified before this time are archived.
+	 * @return Returns the number of users archived by this run.
+	 */
+	long archive(Connection conn, LocalDateTime cutoff) {
+		long users = 0;
+		while (!Thread.currentThread().isInterrupted()) {
+			long start = System.nanoTime();
+			Chunk chunk = Database.archiveUserChunk(conn, cutoff, checkpoint, chunkSize);
+			if (chunk == null) {
+				break;
+			}
+			if (chunk.getLastUpdatedAt() != null) {
+				checkpoint = chunk;
+			}
+			users += chunk.getUsersArchived();
+			usersArchived += chunk.getUsersArchived();
+			rowsArchived += chunk.getRowsArchived();
+			if (chunk.getUsersArchived() < chunkSize) {
+				break;
+			}
+			throttle(chunk.getRowsArchived(), System.nanoTime() - start);
+		}
+		runCount++;
+		return users;
+	}
+
+	/**
+	 * Sleeps long enough that moving the given rows took at least as long as archiveRowsPerSecond allows.
+	 */
+	private void throttle(long rows, long elapsedNanos) {
+		if (rowsPerSecond <= 0) {
+			return;
+		}
+		long budgetNanos = rows * 1000000000L / rowsPerSecond;
+		long sleepMillis = TimeUnit.NANOSECONDS.toMillis(budgetNanos - elapsedNanos);
+		if (sleepMillis > 0) {
+			try {
+				Thread.sleep(sleepMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Stops scheduling runs and interrupts a run in progress between chunks. A chunk already executing is allowed to commit.
+	 */
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * @return Returns the number of users archived since the archiver started.
+	 */
+	public long getUsersArchived() {
+		return usersArchived;
+	}
+
+	/**
+	 * @return Returns the number of rows, users and their history, archived since the archiver started.
+	 */
+	public long getRowsArchived() {
+		return rowsArchived;
+	}
+
+	/**
+	 * @return Returns the number of runs completed since the archiver started.
+	 */
+	public long getRunCount() {
+		return runCount;
+	}
+
+	/**
+	 * The outcome of archiving one chunk, which is also the checkpoint the next chunk continues from.
+	 */
+	public static class Chunk {
+		private final Timestamp lastUpdatedAt;
+		private final long lastUserID;
+		private final int usersArchived;
+		private final int rowsArchived;
+
+		public Chunk(Timestamp lastUpdatedAt, long lastUserID, int usersArchived, int rowsArchived) {
+			this.lastUpdatedAt = lastUpdatedAt;
+			this.lastUserID = lastUserID;
+			this.usersArchived = usersArchived;
+			this.rowsArchived = rowsArchived;
+		}
+
+		/**
+		 * @return Returns the updatedAt of the last user archived so far, or null if none has been.
+		 */
+		public Timestamp getLastUpdatedAt() {
+			return lastUpdatedAt;
+		}
+
+		public long getLastUserID() {
+			return lastUserID;
+		}
+
+		public int getUsersArchived() {
+			return usersArchived;
+		}
+
+		/**
+		 * @return Returns the number of rows moved, counting the users and their accounts, transactions and loans.
+		 */
+		public int getRowsArchived() {
+			return rowsArchived;
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package sjsu.cs157a.bankingsystem;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates executors that run each task on its own virtual thread where the JVM supports them (Java 21 and later).
+ * The factory method is looked up reflectively so that the project still builds and runs on Java 8, where a fixed pool
+ * of daemon platform threads is used instead.
+ */
+public class VirtualThreads {
+	private VirtualThreads() {
+	}
+
+	/**
+	 * @return Returns true if this JVM can run virtual threads.
+	 */
+	public static boolean isAvailable() {
+		try {
+			Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Creates a virtual thread per task executor, or a fixed pool where virtual threads are unavailable.
+	 * @param name The name prefix of the fallback pool's threads.
+	 * @param fallbackThreads The size of the fallback pool.
+	 * @return Returns the executor.
+	 */
+	public static ExecutorService newExecutor(final String name, int fallbackThreads) {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (Exception e) {
+			// Virtual threads are unavailable before Java 21.
+		}
+		final AtomicInteger count = new AtomicInteger();
+		return Executors.newFixedThreadPool(Math.max(1, fallbackThreads), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+}
@@ -0,0 +1,731 @@
+package sjsu.cs157a.bankingsystem;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The MySQL storage backend in write-behind mode: deposits, withdrawals and transfers are acknowledged once they are
+ * durable in a local PostingLog, and a background writer flushes them into Transactions in log order, as batched
+ * multi-row INSERTs of up to writeBehindBatchSize rows whose trigger applies them to Accounts. Each batch advances the
+ * writer's checkpoint in WriteBehindCheckpoints in the same transaction, so after a crash the writer resumes from the last
+ * posting flushed, neither skipping nor repeating any.
+ * Withdrawals are checked against balances held here, loaded from the database on an account's first posting and kept
+ * ahead of it by every posting since, so this must be the only process posting to the accounts it serves. Postings to
+ * one account are logged, and therefore flushed, in the order they were checked. Once writeBehindMaxPending postings
+ * await flushing, further postings wait for the writer to catch up. Every other operation goes straight to MySQL; those
+ * that change a balance outside the log, such as loans, first wait for the writer to catch up. History, net worth and
+ * portfolio reads may trail acknowledged postings by the lag reported by getLagMillis.
+ * Only postings already durable in the log are flushed, so one that could not be made durable is taken back before it
+ * reaches the database.
+ * A posting the database refuses, as when another process overdrew the account, means the balances held here no longer
+ * match it. The writer then stops with the refused posting and every one after it still in the log, further postings
+ * are refused, and getRefusal reports why; the next start flushes the log again once the account can take them. The
+ * writer stops the same way if the log fails.
+ */
+public class WriteBehindStorage implements StorageBackend {
+	private static final long MAX_RETRY_BACKOFF_MILLIS = 5000;
+
+	private final SQLConnector connector;
+	private final MySQLStorage storage;
+	private final PostingLog log;
+	private final String writer;
+	private final int batchSize;
+	private final int maxPending;
+	// Read locked by postings, write locked by operations that change balances in the database directly.
+	private final ReentrantReadWriteLock postings = new ReentrantReadWriteLock();
+	private final ConcurrentHashMap<AccountKey, Balance> balances = new ConcurrentHashMap<AccountKey, Balance>();
+	// Logged postings not yet flushed, in log order. Guarded by itself.
+	private final ArrayDeque<Pending> pending = new ArrayDeque<Pending>();
+	private final Thread flusher;
+	private volatile boolean closed;
+	private volatile long flushedSeq;
+	// Set once by the writer when the database refuses a posting, after which it stops.
+	private volatile SQLException refusal;
+	// Set when the writer stops for a refusal or a failed log; postings are refused from then on.
+	private volatile boolean stopped;
+	// Set when a write failed, which may have been after its commit; only touched by the writer.
+	private boolean checkpointUncertain;
+
+	/**
+	 * Recovers the log, flushes whatever it holds past the writer's checkpoint, and starts the background writer.
+	 * @param connector The pool to flush through.
+	 * @param log The log, not yet recovered.
+	 * @param writer The name the writer's checkpoint is kept under; one per log.
+	 * @param batchSize The most rows flushed in one transaction.
+	 * @param maxPending The most postings awaiting flushing before postings wait.
+	 */
+	WriteBehindStorage(SQLConnector connector, PostingLog log, String writer, int batchSize, int maxPending) throws IOException, SQLException {
+		this.connector = connector;
+		this.storage = new MySQLStorage(connector);
+		this.log = log;
+		this.writer = writer;
+		this.batchSize = Math.max(1, batchSize);
+		this.maxPending = Math.max(1, maxPending);
+		try (Connection conn = connector.getConnection()) {
+			if (conn == null) {
+				throw new SQLException("No connection to read the write-behind checkpoint");
+			}
+			flushedSeq = Database.getWriteBehindCheckpoint(conn, writer);
+		}
+		log.recover(new PostingLog.Replay() {
+			@Override
+			public void snapshot(DataInputStream in) {
+				// The database holds the state; the log only holds what it has not flushed.
+			}
+
+			@Override
+			public void record(PostingLog.Record record) {
+				if (record.seq > flushedSeq) {
+					pending.add(new Pending(record.seq, System.currentTimeMillis(), rows(record)));
+				}
+			}
+		});
+		if (log.getLastSeq() < flushedSeq) {
+			log.close();
+			throw new IllegalStateException("The log of writer " + writer + " ends at " + log.getLastSeq() + ", before its checkpoint at " + flushedSeq);
+		}
+		// Balances are loaded from the database, so it must hold every posting before any new one is checked.
+		while (!pending.isEmpty()) {
+			if (flushNext() == 0 || refusal != null) {
+				log.close();
+				throw new SQLException("Could not flush the log of writer " + writer + " past " + flushedSeq, refusal);
+			}
+		}
+		flusher = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				flush();
+			}
+		}, "write-behind-" + writer);
+		flusher.setDaemon(true);
+		flusher.start();
+	}
+
+	/**
+	 * Starts write-behind storage with the settings in config.json, logging to writeBehindLogDir.
+	 * @param connector The pool to flush through.
+	 * @return Returns the running storage, or null if its log or checkpoint could not be read.
+	 */
+	public static WriteBehindStorage start(SQLConnector connector) {
+		String dir = Config.getString("writeBehindLogDir", "write-behind");
+		try {
+			PostingLog log = new PostingLog(Paths.get(dir),
+					Config.getInt("postingLogSegmentBytes", 64 * 1024 * 1024),
+					Config.getLong("groupCommitMicros", 1000),
+					Config.getInt("groupCommitMaxBatch", 256));
+			return new WriteBehindStorage(connector, log, dir,
+					Config.getInt("writeBehindBatchSize", 500),
+					Config.getInt("writeBehindMaxPending", 10000));
+		} catch (IOException | SQLException | IllegalStateException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * @return Returns the number of acknowledged postings not yet in the database.
+	 */
+	public long getLag() {
+		return log.getLastSeq() - flushedSeq;
+	}
+
+	/**
+	 * @return Returns how long ago the oldest posting not yet in the database was acknowledged, or 0 if there is none.
+	 */
+	public long getLagMillis() {
+		synchronized (pending) {
+			Pending oldest = pending.peekFirst();
+			return oldest == null ? 0 : System.currentTimeMillis() - oldest.queuedAt;
+		}
+	}
+
+	/**
+	 * @return Returns the error with which the database refused a posting, after which the writer stopped and postings
+	 * are refused, or null if it has not.
+	 */
+	public SQLException getRefusal() {
+		return refusal;
+	}
+
+	/**
+	 * Blocks until every posting acknowledged so far is in the database.
+	 * @return Returns false if the writer stopped first or the caller was interrupted.
+	 */
+	public boolean awaitFlushed() {
+		long seq = log.getLastSeq();
+		synchronized (pending) {
+			while (flushedSeq < seq) {
+				if (!flusher.isAlive()) {
+					return false;
+				}
+				try {
+					pending.wait(100);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Stops accepting postings and flushes what is pending, unless the database is unreachable, in which case the rest
+	 * stays in the log for the next start.
+	 */
+	public void close() {
+		synchronized (pending) {
+			closed = true;
+			pending.notifyAll();
+		}
+		try {
+			flusher.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		log.close();
+	}
+
+	@Override
+	public boolean deposit(long userID, String bankName, String accType, String summary, long amount) {
+		return post(userID, bankName, accType, false, summary, amount);
+	}
+
+	@Override
+	public boolean withdraw(long userID, String bankName, String accType, String summary, long amount) {
+		return post(userID, bankName, accType, true, summary, amount);
+	}
+
+	private boolean post(long userID, String bankName, String accType, boolean withdrawal, String summary, long amount) {
+		// Refused here rather than by the Transactions trigger at flush time, after it was acknowledged.
+		if (amount <= 0) {
+			return false;
+		}
+		long seq;
+		Balance balance;
+		postings.readLock().lock();
+		try {
+			balance = balanceOf(new AccountKey(userID, bankName, accType));
+			if (balance == null) {
+				return false;
+			}
+			synchronized (balance) {
+				if (withdrawal && balance.cents < amount) {
+					return false;
+				}
+				long netBalance = withdrawal ? balance.cents - amount : balance.cents + amount;
+				LocalDateTime now = LocalDateTime.now().withNano(0);
+				seq = enqueue(withdrawal ? PostingLog.WITHDRAWAL : PostingLog.DEPOSIT, now, new long[] { userID, amount, netBalance },
+						new String[] { bankName, accType, summary });
+				if (seq < 0) {
+					return false;
+				}
+				balance.cents = netBalance;
+			}
+		} finally {
+			postings.readLock().unlock();
+		}
+		durable(seq, withdrawal ? balance : null, withdrawal ? null : balance, amount);
+		return true;
+	}
+
+	@Override
+	public boolean transfer(AccountKey from, AccountKey to, long amount) {
+		if (from.equals(to) || amount <= 0) {
+			return false;
+		}
+		long seq;
+		Balance source;
+		Balance target;
+		postings.readLock().lock();
+		try {
+			source = balanceOf(from);
+			target = balanceOf(to);
+			if (source == null || target == null) {
+				return false;
+			}
+			// Locked in key order, as Transfer locks rows, so transfers in opposite directions cannot deadlock.
+			boolean fromFirst = from.compareTo(to) < 0;
+			synchronized (fromFirst ? source : target) {
+				synchronized (fromFirst ? target : source) {
+					if (source.cents < amount) {
+						return false;
+					}
+					seq = enqueue(PostingLog.TRANSFER, LocalDateTime.now().withNano(0),
+							new long[] { from.getUserID(), to.getUserID(), amount, source.cents - amount, target.cents + amount },
+							new String[] { from.getBankName(), from.getAccType(), to.getBankName(), to.getAccType() });
+					if (seq < 0) {
+						return false;
+					}
+					source.cents -= amount;
+					target.cents += amount;
+				}
+			}
+		} finally {
+			postings.readLock().unlock();
+		}
+		durable(seq, source, target, amount);
+		return true;
+	}
+
+	/**
+	 * Logs a posting and queues it for the writer, waiting while writeBehindMaxPending postings are already queued.
+	 * Both happen under one lock, so the queue is always in log order.
+	 * @return Returns the posting's sequence number, or -1 if the storage closed or the caller was interrupted while waiting.
+	 */
+	private long enqueue(byte op, LocalDateTime time, long[] longs, String[] strings) {
+		synchronized (pending) {
+			while (pending.size() >= maxPending && !closed && !stopped) {
+				try {
+					pending.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return -1;
+				}
+			}
+			if (closed || stopped) {
+				return -1;
+			}
+			long seq = log.append(op, time.toEpochSecond(ZoneOffset.UTC), longs, null, strings);
+			pending.add(new Pending(seq, System.currentTimeMillis(), rows(new PostingLog.Record(seq, op, time.toEpochSecond(ZoneOffset.UTC), longs, strings, null))));
+			pending.notifyAll();
+			return seq;
+		}
+	}
+
+	/**
+	 * Waits for a posting to be durable. If the log failed first, the posting is taken back: it is removed from the queue,
+	 * which the writer cannot have flushed it from yet, and its amount is returned to the source and taken off the target.
+	 * Every later posting fails the same way, so postings checked against its amount are taken back too.
+	 * @param seq The posting's sequence number.
+	 * @param source The balance the amount was taken from, or null for a deposit.
+	 * @param target The balance the amount was added to, or null for a withdrawal.
+	 * @param amount The amount in cents.
+	 * @throws IllegalStateException Thrown if the log failed first. The posting may still reach the disk, in which case
+	 * the next start flushes it.
+	 */
+	private void durable(long seq, Balance source, Balance target, long amount) {
+		if (awaitDurable(seq)) {
+			return;
+		}
+		synchronized (pending) {
+			Iterator<Pending> it = pending.iterator();
+			while (it.hasNext()) {
+				if (it.next().seq == seq) {
+					it.remove();
+					break;
+				}
+			}
+			pending.notifyAll();
+		}
+		if (source != null) {
+			synchronized (source) {
+				source.cents += amount;
+			}
+		}
+		if (target != null) {
+			synchronized (target) {
+				target.cents -= amount;
+			}
+		}
+		throw new IllegalStateException("Posting " + seq + " could not be made durable");
+	}
+
+	/**
+	 * Blocks until a posting is durable, waiting through interrupts, which are kept for the caller.
+	 * @return Returns false only if the log failed first.
+	 */
+	private boolean awaitDurable(long seq) {
+		boolean interrupted = false;
+		boolean durable;
+		while (!(durable = log.awaitDurable(seq)) && Thread.interrupted()) {
+			interrupted = true;
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		return durable;
+	}
+
+	/**
+	 * @return Returns the balance held for the account, loading it from the database on first use, or null if there is no such account.
+	 */
+	private Balance balanceOf(AccountKey key) {
+		Balance balance = balances.get(key);
+		if (balance == null) {
+			long cents = storage.getBankAccountBalance(key.getBankName(), key.getAccType(), key.getUserID());
+			if (cents < 0) {
+				return null;
+			}
+			Balance loaded = new Balance(cents);
+			balance = balances.putIfAbsent(key, loaded);
+			if (balance == null) {
+				balance = loaded;
+			}
+		}
+		return balance;
+	}
+
+	/**
+	 * @return Returns the rows of Transactions a logged posting becomes, as Deposit, Withdraw and Transfer would write them.
+	 */
+	private static List<Transaction> rows(PostingLog.Record record) {
+		long[] l = record.longs;
+		String[] s = record.strings;
+		LocalDateTime time = LocalDateTime.ofEpochSecond(record.time, 0, ZoneOffset.UTC);
+		if (record.op == PostingLog.TRANSFER) {
+			return Arrays.asList(
+					new Transaction(l[0], s[0], s[1], time, s[2] + " " + s[3], "Transfer", "Withdrawal", l[2], l[3]),
+					new Transaction(l[1], s[2], s[3], time, s[0] + " " + s[1], "Transfer", "Deposit", l[2], l[4]));
+		}
+		String transType = record.op == PostingLog.WITHDRAWAL ? "Withdrawal" : "Deposit";
+		return Collections.singletonList(new Transaction(l[0], s[0], s[1], time, null, s[2], transType, l[1], l[2]));
+	}
+
+	/**
+	 * The writer thread: flushes batches as they queue up, backing off while the database cannot be written, until closed
+	 * or until the database refuses a posting.
+	 */
+	private void flush() {
+		long backoff = 100;
+		while (true) {
+			long head;
+			synchronized (pending) {
+				while (pending.isEmpty() && !closed) {
+					try {
+						pending.wait();
+					} catch (InterruptedException e) {
+						// Only close stops the writer.
+					}
+				}
+				if (pending.isEmpty()) {
+					return;
+				}
+				head = pending.peekFirst().seq;
+			}
+			if (!awaitDurable(head)) {
+				// The log failed; the callers of the postings left take them back.
+				stop();
+				return;
+			}
+			int flushed = flushNext();
+			if (refusal != null) {
+				refusal.printStackTrace();
+				stop();
+				return;
+			}
+			if (flushed > 0) {
+				backoff = 100;
+			} else if (closed) {
+				// Left in the log for the next start.
+				return;
+			} else {
+				sleep(backoff);
+				backoff = Math.min(backoff * 2, MAX_RETRY_BACKOFF_MILLIS);
+			}
+		}
+	}
+
+	/**
+	 * Stops the writer, leaving what it has not flushed in the log, and refuses postings from then on.
+	 */
+	private void stop() {
+		synchronized (pending) {
+			stopped = true;
+			pending.notifyAll();
+		}
+		// Read from the database from now on, which holds every posting the writer flushed.
+		balances.clear();
+	}
+
+	/**
+	 * Flushes the oldest batch of queued postings that are durable, of which there must be at least one.
+	 * @return Returns the number of postings flushed, 0 if the database could not be written.
+	 */
+	private int flushNext() {
+		List<Pending> batch = new ArrayList<Pending>();
+		long durableSeq = log.getDurableSeq();
+		synchronized (pending) {
+			int rows = 0;
+			Iterator<Pending> it = pending.iterator();
+			while (it.hasNext() && rows < batchSize) {
+				Pending next = it.next();
+				if (next.seq > durableSeq) {
+					break;
+				}
+				batch.add(next);
+				rows += next.rows.size();
+			}
+		}
+		int flushed = write(batch);
+		if (flushed > 0) {
+			synchronized (pending) {
+				for (int i = 0; i < flushed; i++) {
+					pending.removeFirst();
+				}
+				flushedSeq = batch.get(flushed - 1).seq;
+				pending.notifyAll();
+			}
+			try {
+				log.discard(flushedSeq);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		return flushed;
+	}
+
+	/**
+	 * Writes a batch in one transaction. If the database refuses a row, as the trigger refuses an overdraft, the batch is
+	 * written again one posting at a time up to the refused posting, which is kept in the log and recorded as the refusal.
+	 * @return Returns how many postings from the start of the batch are now flushed.
+	 */
+	private int write(List<Pending> batch) {
+		int flushed = 0;
+		try (Connection conn = connector.getConnection()) {
+			if (conn == null) {
+				return 0;
+			}
+			if (checkpointUncertain) {
+				// Skip whatever the failed write committed after all, rather than insert it twice.
+				long checkpoint = Database.getWriteBehindCheckpoint(conn, writer);
+				checkpointUncertain = false;
+				while (flushed < batch.size() && batch.get(flushed).seq <= checkpoint) {
+					flushed++;
+				}
+				if (flushed > 0) {
+					return flushed;
+				}
+			}
+			List<Transaction> rows = new ArrayList<Transaction>();
+			for (Pending posting : batch) {
+				rows.addAll(posting.rows);
+			}
+			try {
+				Database.appendTransactions(conn, rows, writer, batch.get(batch.size() - 1).seq);
+				return batch.size();
+			} catch (SQLException e) {
+				if (!isRefusal(e)) {
+					throw e;
+				}
+			}
+			for (Pending posting : batch) {
+				try {
+					Database.appendTransactions(conn, posting.rows, writer, posting.seq);
+				} catch (SQLException e) {
+					if (!isRefusal(e)) {
+						throw e;
+					}
+					refusal = e;
+					return flushed;
+				}
+				flushed++;
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+			checkpointUncertain = true;
+		}
+		return flushed;
+	}
+
+	/**
+	 * @return Returns true if the database rejected the data itself, so writing it again cannot succeed.
+	 */
+	private static boolean isRefusal(SQLException e) {
+		String state = e.getSQLState();
+		return state != null && (state.startsWith("45") || state.startsWith("23") || state.startsWith("22"));
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Runs an operation that changes balances in the database directly, once every posting is flushed and with postings
+	 * held off, and forgets the balances held here for the user so they are reloaded. If the writer stopped first, the
+	 * operation is not run, so the callers' results stay false: deleting an account a logged posting targets would leave
+	 * the log impossible to flush.
+	 */
+	private void direct(long userID, Runnable operation) {
+		postings.writeLock().lock();
+		try {
+			if (!awaitFlushed()) {
+				return;
+			}
+			operation.run();
+			for (AccountKey key : balances.keySet()) {
+				if (key.getUserID() == userID) {
+					balances.remove(key);
+				}
+			}
+		} finally {
+			postings.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public long createUser(String firstName, String lastName, String email, byte[] pw) {
+		return storage.createUser(firstName, lastName, email, pw);
+	}
+
+	@Override
+	public boolean deleteUser(final long userID) {
+		final boolean[] deleted = new boolean[1];
+		direct(userID, new Runnable() {
+			@Override
+			public void run() {
+				deleted[0] = storage.deleteUser(userID);
+			}
+		});
+		return deleted[0];
+	}
+
+	@Override
+	public Credentials getUserCredentials(String email) {
+		return storage.getUserCredentials(email);
+	}
+
+	@Override
+	public boolean updatePassword(long userID, byte[] pw) {
+		return storage.updatePassword(userID, pw);
+	}
+
+	@Override
+	public void markUserActive(long userID) {
+		storage.markUserActive(userID);
+	}
+
+	@Override
+	public boolean createBank(String bankName) {
+		return storage.createBank(bankName);
+	}
+
+	@Override
+	public List<Bank> getAllBanks() {
+		return storage.getAllBanks();
+	}
+
+	@Override
+	public long getBanksBalance(String bankName) {
+		return storage.getBanksBalance(bankName);
+	}
+
+	@Override
+	public boolean createBankAccount(String bankName, String accType, long userID) {
+		return storage.createBankAccount(bankName, accType, userID);
+	}
+
+	@Override
+	public boolean deleteBankAccount(final String bankName, final String accType, final long userID) {
+		final boolean[] deleted = new boolean[1];
+		direct(userID, new Runnable() {
+			@Override
+			public void run() {
+				deleted[0] = storage.deleteBankAccount(bankName, accType, userID);
+			}
+		});
+		return deleted[0];
+	}
+
+	@Override
+	public List<Account> getAllUserBankAccountsAtBank(String bankName, long userID) {
+		return storage.getAllUserBankAccountsAtBank(bankName, userID);
+	}
+
+	@Override
+	public long getBankAccountBalance(String bankName, String accType, long userID) {
+		Balance balance = balances.get(new AccountKey(userID, bankName, accType));
+		if (balance == null || stopped) {
+			return storage.getBankAccountBalance(bankName, accType, userID);
+		}
+		synchronized (balance) {
+			return balance.cents;
+		}
+	}
+
+	@Override
+	public long calculateNetWorth(long userID) {
+		return storage.calculateNetWorth(userID);
+	}
+
+	@Override
+	public Portfolio getPortfolio(long userID) {
+		return storage.getPortfolio(userID);
+	}
+
+	@Override
+	public List<Transaction> getRecentTransactions(long userID, String bankName, String accType) {
+		return storage.getRecentTransactions(userID, bankName, accType);
+	}
+
+	@Override
+	public List<Transaction> getMonthlyTransactions(long userID, String bankName, String accType, LocalDate filterDate) {
+		return storage.getMonthlyTransactions(userID, bankName, accType, filterDate);
+	}
+
+	@Override
+	public MonthlyStatement getMonthlyStatement(long userID, String bankName, String accType, LocalDate filterDate) {
+		return storage.getMonthlyStatement(userID, bankName, accType, filterDate);
+	}
+
+	@Override
+	public List<Loan> getLoans(long userID) {
+		return storage.getLoans(userID);
+	}
+
+	@Override
+	public boolean createLoan(final long userID, final String bankName, final long amount) {
+		final boolean[] created = new boolean[1];
+		direct(userID, new Runnable() {
+			@Override
+			public void run() {
+				created[0] = storage.createLoan(userID, bankName, amount);
+			}
+		});
+		return created[0];
+	}
+
+	/**
+	 * An account's balance including every acknowledged posting, guarded by itself.
+	 */
+	private static class Balance {
+		long cents;
+
+		Balance(long cents) {
+			this.cents = cents;
+		}
+	}
+
+	/**
+	 * A logged posting awaiting flushing, with the rows it becomes.
+	 */
+	private static class Pending {
+		final long seq;
+		final long queuedAt;
+		final List<Transaction> rows;
+
+		Pending(long seq, long queuedAt, List<Transaction> rows) {
+			this.seq = seq;
+			this.queuedAt = queuedAt;
+			this.rows = rows;
+		}
+	}
+}
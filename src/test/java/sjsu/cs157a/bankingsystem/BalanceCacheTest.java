@@ -0,0 +1,53 @@
+package sjsu.cs157a.bankingsystem;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for BalanceCache.
+ */
+public class BalanceCacheTest
+    extends TestCase
+{
+    public BalanceCacheTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( BalanceCacheTest.class );
+    }
+
+    public void testKeysIgnoreCaseLikeTheDatabase()
+    {
+        BalanceCache cache = new BalanceCache( 100, 60000 );
+        cache.putBalance( new AccountKey( 1, "Chase", "Checking" ), 500, cache.stamp( 1 ) );
+        assertEquals( Long.valueOf( 500 ), cache.getBalance( new AccountKey( 1, "CHASE", "checking" ) ) );
+
+        List<Account> accounts = new ArrayList<Account>();
+        accounts.add( new Account( "Ann", "Checking", 500 ) );
+        cache.putAccounts( 1, "Chase", accounts, cache.stamp( 1 ) );
+        cache.invalidate( new AccountKey( 1, "chase", "CHECKING" ) );
+        assertNull( cache.getBalance( new AccountKey( 1, "Chase", "Checking" ) ) );
+        assertNull( cache.getAccounts( 1, "Chase" ) );
+    }
+
+    public void testInvalidationOnlyDiscardsRacingReadsOfItsSegment()
+    {
+        BalanceCache cache = new BalanceCache( 100, 60000 );
+        long stamp = cache.stamp( 1 );
+        cache.invalidateUser( 1 );
+        cache.putBalance( new AccountKey( 1, "Chase", "Checking" ), 500, stamp );
+        assertNull( cache.getBalance( new AccountKey( 1, "Chase", "Checking" ) ) );
+
+        cache.putBalance( new AccountKey( 1, "Chase", "Checking" ), 700, cache.stamp( 1 ) );
+        assertEquals( Long.valueOf( 700 ), cache.getBalance( new AccountKey( 1, "Chase", "Checking" ) ) );
+        cache.invalidateUser( 1 );
+        assertNull( cache.getBalance( new AccountKey( 1, "Chase", "Checking" ) ) );
+    }
+}
@@ -0,0 +1,33 @@
+package sjsu.cs157a.bankingsystem;
+
+import java.util.Arrays;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for BankDirectory snapshots.
+ */
+public class BankDirectoryTest
+    extends TestCase
+{
+    public BankDirectoryTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( BankDirectoryTest.class );
+    }
+
+    public void testBanksAreFoundByNameInAnyCase()
+    {
+        BankDirectory.Snapshot snapshot = new BankDirectory.Snapshot( 1, Arrays.asList( new Bank( "CHASE", 100 ), new Bank( "Wells Fargo", 200 ) ), 0 );
+        assertEquals( "CHASE", snapshot.findBank( "chase" ).getBankName() );
+        assertEquals( 200, snapshot.findBank( "WELLS FARGO" ).getBalance() );
+        assertNull( snapshot.findBank( "Citi" ) );
+        assertSame( snapshot.getBank( 0 ), snapshot.findBank( "Chase" ) );
+    }
+}
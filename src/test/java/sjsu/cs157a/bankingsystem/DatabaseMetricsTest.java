@@ -0,0 +1,150 @@
+package sjsu.cs157a.bankingsystem;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for DatabaseMetrics and LatencyHistogram.
+ */
+public class DatabaseMetricsTest 
+    extends TestCase
+{
+    public DatabaseMetricsTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( DatabaseMetricsTest.class );
+    }
+
+    public void testHistogramPercentilesWithinBucketError()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for ( long micros = 1; micros <= 10000; micros++ ) {
+            histogram.record( micros );
+        }
+        assertEquals( 10000, histogram.getCount() );
+        assertWithin( 5000, histogram.getValueAtPercentile( 50 ) );
+        assertWithin( 9900, histogram.getValueAtPercentile( 99 ) );
+        assertWithin( 10000, histogram.getMaxValue() );
+        histogram.reset();
+        assertEquals( 0, histogram.getValueAtPercentile( 99 ) );
+    }
+
+    public void testBucketsCoverEveryValue()
+    {
+        for ( long value = 0; value < 5000; value++ ) {
+            int bucket = LatencyHistogram.bucketOf( value );
+            assertTrue( value <= LatencyHistogram.upperBoundOf( bucket ) );
+            assertTrue( bucket == 0 || value > LatencyHistogram.upperBoundOf( bucket - 1 ) );
+        }
+        LatencyHistogram.bucketOf( LatencyHistogram.MAX_VALUE );
+    }
+
+    public void testOperationNames()
+    {
+        assertEquals( "Deposit", DatabaseMetrics.operationName( "CALL Deposit(?, ?, ?, ?, ?);" ) );
+        assertEquals( "GetAllBanks", DatabaseMetrics.operationName( "CALL GetAllBanks()" ) );
+        assertEquals( "SELECT Transactions", DatabaseMetrics.operationName( "SELECT transID, amount FROM Transactions WHERE userID = ?" ) );
+        assertEquals( "UPDATE Accounts", DatabaseMetrics.operationName( "UPDATE Accounts SET balance = ?" ) );
+        assertEquals( "SELECT", DatabaseMetrics.operationName( "SELECT LAST_INSERT_ID()" ) );
+    }
+
+    public void testInstrumentedStatementRecordsCallsRowsAndErrors() throws SQLException
+    {
+        PreparedStatement failing = DatabaseMetrics.instrument( fakeStatement( 3, null ), "CALL MetricsTestProc(?);", null );
+        failing.executeUpdate();
+        failing.executeUpdate();
+        PreparedStatement deadlocked = DatabaseMetrics.instrument( fakeStatement( 0, new SQLException( "Deadlock", "40001" ) ), "CALL MetricsTestProc(?);", null );
+        try {
+            deadlocked.executeUpdate();
+            fail( "Expected SQLException" );
+        }
+        catch ( SQLException expected ) {
+            assertEquals( "40001", expected.getSQLState() );
+        }
+
+        OperationMetrics metrics = DatabaseMetrics.getOperation( "MetricsTestProc" );
+        assertEquals( 3, metrics.getCallCount() );
+        assertEquals( 1, metrics.getErrorCount() );
+        assertEquals( 6, metrics.getRowCount() );
+        assertEquals( Long.valueOf( 1 ), metrics.getErrorCounts().get( "40001" ) );
+        String text = DatabaseMetrics.toPrometheus();
+        assertTrue( text, text.contains( "bank_db_call_duration_seconds_count{operation=\"MetricsTestProc\"} 3" ) );
+        assertTrue( text, text.contains( "bank_db_errors_total{operation=\"MetricsTestProc\",sqlstate=\"40001\"} 1" ) );
+        assertTrue( text, text.contains( "bank_db_rows_total{operation=\"MetricsTestProc\"} 6" ) );
+    }
+
+    public void testConnectionErrorsAreReported() throws SQLException
+    {
+        final int[] reported = new int[1];
+        Runnable onConnectionError = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                reported[0]++;
+            }
+        };
+        PreparedStatement deadlocked = DatabaseMetrics.instrument( fakeStatement( 0, new SQLException( "Deadlock", "40001" ) ),
+                "CALL MetricsTestProc(?);", onConnectionError );
+        PreparedStatement disconnected = DatabaseMetrics.instrument( fakeStatement( 0, new SQLException( "Link failure", "08S01" ) ),
+                "CALL MetricsTestProc(?);", onConnectionError );
+        for ( PreparedStatement pstmt : new PreparedStatement[] { deadlocked, disconnected } ) {
+            try {
+                pstmt.executeUpdate();
+                fail( "Expected SQLException" );
+            }
+            catch ( SQLException expected ) {
+            }
+        }
+        assertEquals( 1, reported[0] );
+    }
+
+    public void testRowsReadAreRecordedUnderTheStatementsOperation() throws SQLException
+    {
+        PreparedStatement pstmt = DatabaseMetrics.instrument( fakeStatement( 0, null ), "SELECT amount FROM MetricsTestRows", null );
+        OperationMetrics metrics = DatabaseMetrics.getOperation( "SELECT MetricsTestRows" );
+        DatabaseMetrics.recordRowsRead( pstmt, 3 );
+        DatabaseMetrics.recordRowsRead( pstmt, 2 );
+        DatabaseMetrics.recordRowsRead( fakeStatement( 0, null ), 7 );
+        assertEquals( 5, metrics.getRowCount() );
+    }
+
+    private static void assertWithin( long expected, long actual )
+    {
+        assertTrue( "expected ~" + expected + " but was " + actual,
+                Math.abs( actual - expected ) <= expected / LatencyHistogram.SUB_BUCKETS );
+    }
+
+    /**
+     * A statement whose executeUpdate returns the given count, or throws the given exception.
+     */
+    private static PreparedStatement fakeStatement( final int updateCount, final SQLException failure )
+    {
+        return (PreparedStatement) Proxy.newProxyInstance( DatabaseMetricsTest.class.getClassLoader(),
+                new Class<?>[] { PreparedStatement.class }, new InvocationHandler()
+        {
+            @Override
+            public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable
+            {
+                if ( method.getName().equals( "executeUpdate" ) ) {
+                    if ( failure != null ) {
+                        throw failure;
+                    }
+                    return updateCount;
+                }
+                return null;
+            }
+        } );
+    }
+}
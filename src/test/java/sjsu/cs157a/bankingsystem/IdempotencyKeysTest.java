@@ -0,0 +1,72 @@
+package sjsu.cs157a.bankingsystem;
+
+import java.util.Arrays;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for IdempotencyKeys.
+ */
+public class IdempotencyKeysTest
+    extends TestCase
+{
+    public IdempotencyKeysTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( IdempotencyKeysTest.class );
+    }
+
+    public void testHashIsSixteenBytesAndStable()
+    {
+        byte[] key = IdempotencyKeys.hash( "Deposit", "3f2a9c" );
+        assertEquals( 16, key.length );
+        assertTrue( Arrays.equals( key, IdempotencyKeys.hash( "Deposit", "3f2a9c" ) ) );
+    }
+
+    public void testHashSeparatesOperations()
+    {
+        assertFalse( Arrays.equals( IdempotencyKeys.hash( "Deposit", "3f2a9c" ), IdempotencyKeys.hash( "Withdraw", "3f2a9c" ) ) );
+    }
+
+    public void testRemembersOutcomePerUser()
+    {
+        IdempotencyKeys keys = new IdempotencyKeys( 10, 60000 );
+        byte[] key = IdempotencyKeys.hash( "Withdraw", "retry-me" );
+        assertNull( keys.get( 1, key ) );
+        keys.put( 1, key, false );
+        assertEquals( Boolean.FALSE, keys.get( 1, key ) );
+        assertEquals( Boolean.FALSE, keys.get( 1, IdempotencyKeys.hash( "Withdraw", "retry-me" ) ) );
+        assertNull( keys.get( 2, key ) );
+        assertEquals( 2, keys.getHitCount() );
+        assertEquals( 2, keys.getMissCount() );
+    }
+
+    public void testEvictsLeastRecentlyUsed()
+    {
+        IdempotencyKeys keys = new IdempotencyKeys( 2, 60000 );
+        byte[] a = IdempotencyKeys.hash( "Deposit", "a" );
+        byte[] b = IdempotencyKeys.hash( "Deposit", "b" );
+        byte[] c = IdempotencyKeys.hash( "Deposit", "c" );
+        keys.put( 1, a, true );
+        keys.put( 1, b, true );
+        keys.get( 1, a );
+        keys.put( 1, c, true );
+        assertEquals( Boolean.TRUE, keys.get( 1, a ) );
+        assertNull( keys.get( 1, b ) );
+        assertEquals( Boolean.TRUE, keys.get( 1, c ) );
+    }
+
+    public void testDisabledWhenSizeIsZero()
+    {
+        IdempotencyKeys keys = new IdempotencyKeys( 0, 60000 );
+        byte[] key = IdempotencyKeys.hash( "CreateLoan", "k" );
+        keys.put( 1, key, true );
+        assertNull( keys.get( 1, key ) );
+    }
+}
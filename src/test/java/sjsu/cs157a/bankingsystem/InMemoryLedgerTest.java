@@ -0,0 +1,163 @@
+package sjsu.cs157a.bankingsystem;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for InMemoryLedger, checking it against the semantics of the MySQL procedures and triggers.
+ */
+public class InMemoryLedgerTest
+    extends TestCase
+{
+    private static final byte[] PW = "secret".getBytes( StandardCharsets.UTF_8 );
+
+    private InMemoryLedger ledger;
+    private long userID;
+
+    public InMemoryLedgerTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( InMemoryLedgerTest.class );
+    }
+
+    @Override
+    protected void setUp()
+    {
+        ledger = new InMemoryLedger( Clock.fixed( Instant.parse( "2026-03-15T12:00:00Z" ), ZoneOffset.UTC ) );
+        ledger.createBank( "Chase" );
+        userID = ledger.createUser( "Ann", "Lee", "ann@example.com", PW );
+        ledger.createBankAccount( "Chase", "Checking", userID );
+    }
+
+    public void testUsersAreUniqueByEmail()
+    {
+        assertEquals( -2, ledger.createUser( "Ann", "Other", "ann@example.com", PW ) );
+        assertEquals( userID, ledger.getUserCredentials( "ann@example.com" ).getUserID() );
+        assertNull( ledger.getUserCredentials( "bob@example.com" ) );
+        assertFalse( ledger.deleteUser( userID ) );
+    }
+
+    public void testAccountsNeedUserAndBank()
+    {
+        assertFalse( ledger.createBankAccount( "Chase", "Checking", userID ) );
+        assertFalse( ledger.createBankAccount( "Wells", "Checking", userID ) );
+        assertFalse( ledger.createBankAccount( "Chase", "Savings", userID + 1 ) );
+        assertEquals( -1, ledger.getBankAccountBalance( "Chase", "Savings", userID ) );
+    }
+
+    public void testPostingsMoveBalanceAndRecordNetBalance()
+    {
+        assertTrue( ledger.deposit( userID, "Chase", "Checking", "Paycheck", 10000 ) );
+        assertFalse( ledger.deposit( userID, "Chase", "Savings", "Paycheck", 10000 ) );
+        assertTrue( ledger.withdraw( userID, "Chase", "Checking", "Rent", 7500 ) );
+        assertFalse( ledger.withdraw( userID, "Chase", "Checking", "Rent", 7500 ) );
+        assertEquals( 2500, ledger.getBankAccountBalance( "Chase", "Checking", userID ) );
+
+        List<Transaction> recent = ledger.getRecentTransactions( userID, "Chase", "Checking" );
+        assertEquals( 2, recent.size() );
+        assertEquals( "Withdrawal", recent.get( 0 ).getTransType() );
+        assertEquals( 2500, recent.get( 0 ).getNetBalance() );
+        assertEquals( 10000, recent.get( 1 ).getNetBalance() );
+        assertFalse( ledger.deleteBankAccount( "Chase", "Checking", userID ) );
+    }
+
+    public void testNonPositiveAmountsAreRefused()
+    {
+        ledger.createBankAccount( "Chase", "Loans", userID );
+        ledger.deposit( userID, "Chase", "Checking", "Paycheck", 1000 );
+        assertFalse( ledger.deposit( userID, "Chase", "Checking", "Paycheck", -500 ) );
+        assertFalse( ledger.withdraw( userID, "Chase", "Checking", "Rent", -500 ) );
+        assertFalse( ledger.withdraw( userID, "Chase", "Checking", "Rent", 0 ) );
+        assertFalse( ledger.createLoan( userID, "Chase", -500 ) );
+        assertEquals( 1000, ledger.getBankAccountBalance( "Chase", "Checking", userID ) );
+        assertEquals( 1, ledger.getRecentTransactions( userID, "Chase", "Checking" ).size() );
+        assertTrue( ledger.getLoans( userID ).isEmpty() );
+    }
+
+    public void testMonthlyStatementRollsUpPostings()
+    {
+        ledger.deposit( userID, "Chase", "Checking", "Paycheck", 10000 );
+        ledger.withdraw( userID, "Chase", "Checking", "Rent", 4000 );
+        MonthlyStatement statement = ledger.getMonthlyStatement( userID, "Chase", "Checking", LocalDate.of( 2026, 3, 1 ) );
+        assertEquals( 0, statement.getOpeningBalance() );
+        assertEquals( 6000, statement.getClosingBalance() );
+        assertEquals( 2, statement.getTransCount() );
+        assertEquals( 10000, statement.getDepositTotal() );
+        assertEquals( 4000, statement.getWithdrawalTotal() );
+        assertNull( ledger.getMonthlyStatement( userID, "Chase", "Checking", LocalDate.of( 2026, 2, 1 ) ) );
+        assertEquals( 2, ledger.getMonthlyTransactions( userID, "Chase", "Checking", LocalDate.of( 2026, 3, 1 ) ).size() );
+    }
+
+    public void testTransferIsAllOrNothing()
+    {
+        ledger.createBankAccount( "Chase", "Savings", userID );
+        ledger.deposit( userID, "Chase", "Checking", "Paycheck", 5000 );
+        AccountKey checking = new AccountKey( userID, "Chase", "Checking" );
+        AccountKey savings = new AccountKey( userID, "Chase", "Savings" );
+        assertTrue( ledger.transfer( checking, savings, 3000 ) );
+        assertFalse( ledger.transfer( checking, savings, 3000 ) );
+        assertEquals( 2000, ledger.getBankAccountBalance( "Chase", "Checking", userID ) );
+        assertEquals( 3000, ledger.getBankAccountBalance( "Chase", "Savings", userID ) );
+        assertEquals( "Chase Checking", ledger.getRecentTransactions( userID, "Chase", "Savings" ).get( 0 ).getLocation() );
+    }
+
+    public void testLoansOnlyGoToLoansAccount()
+    {
+        assertFalse( ledger.createLoan( userID, "Chase", 50000 ) );
+        assertTrue( ledger.getLoans( userID ).isEmpty() );
+
+        ledger.createBankAccount( "Chase", "Loans", userID );
+        assertTrue( ledger.createLoan( userID, "Chase", 50000 ) );
+        List<Loan> loans = ledger.getLoans( userID );
+        assertEquals( 1, loans.size() );
+        assertEquals( 50000, ledger.getBankAccountBalance( "Chase", "Loans", userID ) );
+
+        long loanID = loans.get( 0 ).getLoanId();
+        assertTrue( ledger.updateLoan( userID, loanID, 20000 ) );
+        assertEquals( 20000, ledger.getBankAccountBalance( "Chase", "Loans", userID ) );
+        assertTrue( ledger.updateLoan( userID, loanID, 0 ) );
+        assertTrue( ledger.getLoans( userID ).isEmpty() );
+        assertEquals( 0, ledger.getBankAccountBalance( "Chase", "Loans", userID ) );
+    }
+
+    public void testConcurrentWithdrawalsNeverOverdraw() throws InterruptedException
+    {
+        ledger.deposit( userID, "Chase", "Checking", "Paycheck", 1000 );
+        final AtomicInteger applied = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch( 8 );
+        for ( int t = 0; t < 8; t++ )
+        {
+            new Thread( new Runnable()
+            {
+                public void run()
+                {
+                    for ( int i = 0; i < 100; i++ )
+                    {
+                        if ( ledger.withdraw( userID, "Chase", "Checking", "Coffee", 5 ) )
+                        {
+                            applied.incrementAndGet();
+                        }
+                    }
+                    done.countDown();
+                }
+            } ).start();
+        }
+        done.await();
+        assertEquals( 200, applied.get() );
+        assertEquals( 0, ledger.getBankAccountBalance( "Chase", "Checking", userID ) );
+    }
+}
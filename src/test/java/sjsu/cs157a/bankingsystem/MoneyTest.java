@@ -0,0 +1,75 @@
+package sjsu.cs157a.bankingsystem;
+
+import java.math.BigDecimal;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for Money.
+ */
+public class MoneyTest 
+    extends TestCase
+{
+    public MoneyTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( MoneyTest.class );
+    }
+
+    public void testParse()
+    {
+        assertEquals( 1200, Money.parse( "12" ) );
+        assertEquals( 1250, Money.parse( "12.5" ) );
+        assertEquals( 125005, Money.parse( "$1,250.05" ) );
+        assertEquals( -310, Money.parse( "-3.10" ) );
+        assertEquals( 5, Money.parse( ".05" ) );
+    }
+
+    public void testParseRejectsFractionsOfCents()
+    {
+        try {
+            Money.parse( "1.005" );
+            fail( "Expected NumberFormatException" );
+        }
+        catch ( NumberFormatException expected ) {
+        }
+        try {
+            Money.parse( "abc" );
+            fail( "Expected NumberFormatException" );
+        }
+        catch ( NumberFormatException expected ) {
+        }
+    }
+
+    public void testFormat()
+    {
+        assertEquals( "0.00", Money.format( 0 ) );
+        assertEquals( "0.07", Money.format( 7 ) );
+        assertEquals( "-0.07", Money.format( -7 ) );
+        assertEquals( "1250.05", Money.format( 125005 ) );
+    }
+
+    /**
+     * A float cannot represent every cent above $167,772.16; long cents can.
+     */
+    public void testExactAboveFloatPrecision()
+    {
+        long balance = Money.parse( "9999999999999.99" );
+        assertEquals( "9999999999999.99", Money.format( balance ) );
+        assertEquals( balance, Money.fromDecimal( Money.toDecimal( balance ) ) );
+        assertEquals( Money.parse( "167772.17" ), Money.add( Money.parse( "167772.16" ), 1 ) );
+    }
+
+    public void testFromDecimal()
+    {
+        assertEquals( 0, Money.fromDecimal( null ) );
+        assertEquals( 1234, Money.fromDecimal( new BigDecimal( "12.34" ) ) );
+        assertEquals( 1200, Money.fromDecimal( new BigDecimal( "12" ) ) );
+    }
+}
@@ -0,0 +1,65 @@
+package sjsu.cs157a.bankingsystem;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for PasswordHasher, and for logging in through User against an InMemoryLedger.
+ */
+public class PasswordHasherTest
+    extends TestCase
+{
+    public PasswordHasherTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( PasswordHasherTest.class );
+    }
+
+    public void testHashesAreSaltedAndVerify()
+    {
+        PasswordHasher hasher = new PasswordHasher( 1024, 1, 1, 1, 1 );
+        byte[] first = hasher.hash( "correct horse" );
+        byte[] second = hasher.hash( "correct horse" );
+        assertTrue( new String( first, StandardCharsets.UTF_8 ).startsWith( "$argon2id$v=19$m=1024,t=1,p=1$" ) );
+        assertFalse( new String( first, StandardCharsets.UTF_8 ).equals( new String( second, StandardCharsets.UTF_8 ) ) );
+        assertTrue( hasher.verify( "correct horse", first ) );
+        assertTrue( hasher.verify( "correct horse", second ) );
+        assertFalse( hasher.verify( "correct horsE", first ) );
+        assertFalse( hasher.needsRehash( first ) );
+        assertTrue( new PasswordHasher( 2048, 1, 1, 1, 1 ).needsRehash( first ) );
+        // A hash made at another cost still verifies, since it carries its own parameters.
+        assertTrue( new PasswordHasher( 2048, 1, 1, 1, 1 ).verify( "correct horse", first ) );
+    }
+
+    public void testLegacyHashesVerifyAndNeedRehash()
+    {
+        PasswordHasher hasher = new PasswordHasher( 1024, 1, 1, 1, 1 );
+        byte[] legacy = PasswordHasher.sha256( "correct horse" );
+        assertTrue( hasher.verify( "correct horse", legacy ) );
+        assertFalse( hasher.verify( "wrong horse", legacy ) );
+        assertTrue( hasher.needsRehash( legacy ) );
+        assertFalse( hasher.verify( "correct horse", "$argon2id$garbage".getBytes( StandardCharsets.UTF_8 ) ) );
+    }
+
+    public void testLoginUpgradesLegacyHash()
+    {
+        InMemoryLedger ledger = new InMemoryLedger( Clock.systemUTC() );
+        long userID = ledger.createUser( "Ann", "Lee", "ann@example.com", PasswordHasher.sha256( "password1" ) );
+        assertEquals( -1, User.login( ledger, "ann@example.com", "password2" ) );
+        assertEquals( -1, User.login( ledger, "bob@example.com", "password1" ) );
+        assertTrue( PasswordHasher.getInstance().needsRehash( ledger.getUserCredentials( "ann@example.com" ).getPw() ) );
+
+        assertEquals( userID, User.login( ledger, "ann@example.com", "password1" ) );
+        byte[] upgraded = ledger.getUserCredentials( "ann@example.com" ).getPw();
+        assertFalse( PasswordHasher.getInstance().needsRehash( upgraded ) );
+        assertEquals( userID, User.login( ledger, "ann@example.com", "password1" ) );
+    }
+}
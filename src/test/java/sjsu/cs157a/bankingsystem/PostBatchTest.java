@@ -0,0 +1,117 @@
+package sjsu.cs157a.bankingsystem;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Test for Database.postBatch against the database.
+ * Posts a batch large enough for the driver to send as multi-statements with a refused withdrawal in the middle, and
+ * checks that exactly the refused row is reported as failed and every other row is committed once.
+ * Requires the local MySQL server from config.json with the bank_system schema at version 6 or above; when no server
+ * is reachable the tests pass without checking anything.
+ */
+public class PostBatchTest
+    extends TestCase
+{
+    private static final String BANK = "POST BATCH TEST BANK";
+    private static final String ACC_TYPE = "Checking";
+
+    private Connection conn;
+    private long userID;
+    private boolean createdBank;
+
+    public PostBatchTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( PostBatchTest.class );
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        conn = TestDatabase.open( "PostBatchTest", 6 );
+        if ( conn == null ) {
+            return;
+        }
+        try ( PreparedStatement pstmt = conn.prepareStatement( "INSERT IGNORE INTO Banks(bankName, balance) VALUES (?, 0)" ) ) {
+            pstmt.setString( 1, BANK );
+            createdBank = pstmt.executeUpdate() == 1;
+        }
+        try ( PreparedStatement pstmt = conn.prepareStatement( "INSERT INTO Users(firstName, lastName, email) VALUES ('Post', 'Batch', ?)",
+                Statement.RETURN_GENERATED_KEYS ) ) {
+            pstmt.setString( 1, "post-batch-" + System.nanoTime() + "@example.com" );
+            pstmt.executeUpdate();
+            try ( ResultSet rs = pstmt.getGeneratedKeys() ) {
+                rs.next();
+                userID = rs.getLong( 1 );
+            }
+        }
+        try ( PreparedStatement pstmt = conn.prepareStatement( "INSERT INTO Accounts(userID, bankName, accType, balance) VALUES (?, ?, ?, 5.00)" ) ) {
+            pstmt.setLong( 1, userID );
+            pstmt.setString( 2, BANK );
+            pstmt.setString( 3, ACC_TYPE );
+            pstmt.executeUpdate();
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        if ( conn == null ) {
+            return;
+        }
+        try {
+            TestDatabase.execute( conn, "DELETE FROM MonthlyStatements WHERE userID = ?", userID );
+            TestDatabase.execute( conn, "DELETE FROM Transactions WHERE userID = ?", userID );
+            TestDatabase.execute( conn, "DELETE FROM Accounts WHERE userID = ?", userID );
+            TestDatabase.execute( conn, "DELETE FROM Users WHERE userID = ?", userID );
+            if ( createdBank ) {
+                try ( PreparedStatement pstmt = conn.prepareStatement( "DELETE FROM Banks WHERE bankName = ?" ) ) {
+                    pstmt.setString( 1, BANK );
+                    pstmt.executeUpdate();
+                }
+            }
+        }
+        finally {
+            conn.close();
+        }
+    }
+
+    public void testRefusedRowFailsAloneInARewrittenBatch() throws SQLException
+    {
+        if ( conn == null ) {
+            return;
+        }
+        List<Posting> postings = new ArrayList<Posting>();
+        for ( long amount : new long[] { 100, 100, 100, 1000, 100, 100 } ) {
+            postings.add( new Posting( userID, BANK, ACC_TYPE, Posting.WITHDRAW, amount ) );
+        }
+        try ( Connection pooled = SQLConnector.getInstance().getConnection() ) {
+            BatchResult result = Database.postBatch( pooled, postings, 100, 100 );
+            assertEquals( 5, result.getPosted() );
+            assertEquals( 1, result.getFailures().size() );
+            assertEquals( 3, result.getFailures().get( 0 ).getIndex() );
+        }
+        try ( PreparedStatement pstmt = conn.prepareStatement( "SELECT COUNT(*), MIN(netBalance) FROM Transactions WHERE userID = ?" ) ) {
+            pstmt.setLong( 1, userID );
+            try ( ResultSet rs = pstmt.executeQuery() ) {
+                rs.next();
+                assertEquals( 5, rs.getLong( 1 ) );
+                assertEquals( 0, Money.read( rs, 2 ) );
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package sjsu.cs157a.bankingsystem;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for PostingLog, recovering an InMemoryLedger from it.
+ */
+public class PostingLogTest
+    extends TestCase
+{
+    private static final byte[] PW = "secret".getBytes( StandardCharsets.UTF_8 );
+    private static final byte[] NEW_PW = "new secret".getBytes( StandardCharsets.UTF_8 );
+
+    private Path dir;
+
+    public PostingLogTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( PostingLogTest.class );
+    }
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        dir = Files.createTempDirectory( "posting-log" );
+    }
+
+    @Override
+    protected void tearDown() throws IOException
+    {
+        for ( Path path : files( "*" ) )
+        {
+            Files.delete( path );
+        }
+        Files.delete( dir );
+    }
+
+    private InMemoryLedger open() throws IOException
+    {
+        // Small segments, so a few hundred postings span several of them.
+        return new InMemoryLedger( Clock.systemUTC(), new PostingLog( dir, 4096, 100, 16 ) );
+    }
+
+    private long seed( InMemoryLedger ledger )
+    {
+        ledger.createBank( "Chase" );
+        long userID = ledger.createUser( "Ann", "Lee", "ann@example.com", PW );
+        ledger.createBankAccount( "Chase", "Checking", userID );
+        ledger.createBankAccount( "Chase", "Loans", userID );
+        for ( int i = 0; i < 200; i++ )
+        {
+            ledger.deposit( userID, "Chase", "Checking", "Paycheck", 100 );
+        }
+        ledger.withdraw( userID, "Chase", "Checking", "Rent", 5000 );
+        ledger.createLoan( userID, "Chase", 7000 );
+        return userID;
+    }
+
+    public void testReplayRebuildsBalances() throws IOException
+    {
+        InMemoryLedger ledger = open();
+        long userID = seed( ledger );
+        assertTrue( ledger.updatePassword( userID, NEW_PW ) );
+        ledger.close();
+        assertTrue( files( "postings-*.log" ).size() > 1 );
+
+        ledger = open();
+        Credentials credentials = ledger.getUserCredentials( "ann@example.com" );
+        assertEquals( userID, credentials.getUserID() );
+        assertTrue( Arrays.equals( NEW_PW, credentials.getPw() ) );
+        assertEquals( 15000, ledger.getBankAccountBalance( "Chase", "Checking", userID ) );
+        assertEquals( 7000, ledger.getBankAccountBalance( "Chase", "Loans", userID ) );
+        assertEquals( 201, ledger.getMonthlyStatement( userID, "Chase", "Checking", LocalDate.now( Clock.systemUTC() ) ).getTransCount() );
+        assertEquals( 201, ledger.getRecentTransactions( userID, "Chase", "Checking" ).size() );
+        ledger.close();
+    }
+
+    public void testSnapshotBoundsReplay() throws IOException
+    {
+        InMemoryLedger ledger = open();
+        long userID = seed( ledger );
+        assertTrue( ledger.snapshot() );
+        assertEquals( 1, files( "postings-*.log" ).size() );
+        assertEquals( 1, files( "snapshot-*.bin" ).size() );
+        ledger.deposit( userID, "Chase", "Checking", "Refund", 250 );
+        ledger.updateLoan( userID, ledger.getLoans( userID ).get( 0 ).getLoanId(), 0 );
+        ledger.close();
+
+        ledger = open();
+        assertEquals( 15250, ledger.getBankAccountBalance( "Chase", "Checking", userID ) );
+        assertEquals( 0, ledger.getBankAccountBalance( "Chase", "Loans", userID ) );
+        assertTrue( ledger.getLoans( userID ).isEmpty() );
+        // Only the posting since the snapshot is history; the statement was carried by the snapshot.
+        assertEquals( 1, ledger.getRecentTransactions( userID, "Chase", "Checking" ).size() );
+        assertEquals( 202, ledger.getMonthlyStatement( userID, "Chase", "Checking", LocalDate.now( Clock.systemUTC() ) ).getTransCount() );
+        assertEquals( -2, ledger.createUser( "Ann", "Lee", "ann@example.com", PW ) );
+        ledger.close();
+    }
+
+    public void testTornRecordIsDropped() throws IOException
+    {
+        InMemoryLedger ledger = open();
+        long userID = seed( ledger );
+        ledger.close();
+
+        List<Path> segments = files( "postings-*.log" );
+        try ( RandomAccessFile file = new RandomAccessFile( segments.get( segments.size() - 1 ).toFile(), "rw" ) )
+        {
+            long position = 0;
+            while ( true )
+            {
+                file.seek( position );
+                int length = file.readInt();
+                if ( length == 0 )
+                {
+                    break;
+                }
+                position += 8 + length;
+            }
+            file.seek( position );
+            file.writeInt( 40 );
+            file.writeInt( 12345 );
+            file.writeLong( 999 );
+        }
+
+        ledger = open();
+        assertEquals( 15000, ledger.getBankAccountBalance( "Chase", "Checking", userID ) );
+        ledger.deposit( userID, "Chase", "Checking", "Paycheck", 100 );
+        ledger.close();
+
+        ledger = open();
+        assertEquals( 15100, ledger.getBankAccountBalance( "Chase", "Checking", userID ) );
+        ledger.close();
+    }
+
+    private List<Path> files( String glob ) throws IOException
+    {
+        List<Path> paths = new ArrayList<Path>();
+        try ( DirectoryStream<Path> stream = Files.newDirectoryStream( dir, glob ) )
+        {
+            for ( Path path : stream )
+            {
+                paths.add( path );
+            }
+        }
+        Collections.sort( paths );
+        return paths;
+    }
+}
@@ -0,0 +1,147 @@
+package sjsu.cs157a.bankingsystem;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Query plan regression test for the history, loan and archive lookups.
+ * Copies the Transactions, Loans and Users table definitions (including their indexes) into temporary tables,
+ * seeds them, and asserts via EXPLAIN that the queries behind GetRecentTransactions, GetMonthlyTransactions,
+ * GetTransactionPage, GetLoans and the user archiver are index range or ref scans.
+ * Requires the local MySQL server from config.json with the bank_system schema at version 3 or above; when no server
+ * is reachable the tests pass without checking anything.
+ */
+public class QueryPlanTest 
+    extends TestCase
+{
+    private static final int ACCOUNTS = 50;
+    private static final int ROWS_PER_ACCOUNT = 100;
+
+    private Connection conn;
+
+    public QueryPlanTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( QueryPlanTest.class );
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        conn = TestDatabase.connect( "QueryPlanTest" );
+        if ( conn == null ) {
+            return;
+        }
+        try ( Statement stmt = conn.createStatement() ) {
+            stmt.execute( "CREATE TEMPORARY TABLE plan_Transactions LIKE Transactions" );
+            stmt.execute( "CREATE TEMPORARY TABLE plan_Loans LIKE Loans" );
+            stmt.execute( "CREATE TEMPORARY TABLE plan_Users LIKE Users" );
+        }
+        conn.setAutoCommit( false );
+        try ( PreparedStatement pstmt = conn.prepareStatement( "INSERT INTO plan_Transactions(userID, bankName, accType, transDateTime, transType, amount, netBalance) "
+                + "VALUES (?, ?, 'Checking', NOW() - INTERVAL ? DAY, 'Deposit', 1.00, ?)" ) ) {
+            for ( int account = 0; account < ACCOUNTS; account++ ) {
+                for ( int row = 0; row < ROWS_PER_ACCOUNT; row++ ) {
+                    pstmt.setLong( 1, account );
+                    pstmt.setString( 2, "BANK " + ( account % 5 ) );
+                    // Spread each account's history over two years.
+                    pstmt.setInt( 3, row * 7 );
+                    pstmt.setInt( 4, row );
+                    pstmt.addBatch();
+                }
+            }
+            pstmt.executeBatch();
+        }
+        try ( PreparedStatement pstmt = conn.prepareStatement( "INSERT INTO plan_Loans(userID, bankName, accType, amount) VALUES (?, ?, 'Loans', 100.00)" ) ) {
+            for ( int account = 0; account < ACCOUNTS * 20; account++ ) {
+                pstmt.setLong( 1, account );
+                pstmt.setString( 2, "BANK " + ( account % 5 ) );
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+        try ( PreparedStatement pstmt = conn.prepareStatement( "INSERT INTO plan_Users(firstName, lastName, email, updatedAt) VALUES ('First', 'Last', ?, NOW() - INTERVAL ? HOUR)" ) ) {
+            for ( int user = 0; user < ACCOUNTS * ROWS_PER_ACCOUNT; user++ ) {
+                pstmt.setString( 1, "user" + user + "@example.com" );
+                pstmt.setInt( 2, user * 3 );
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+        conn.commit();
+        try ( Statement stmt = conn.createStatement() ) {
+            stmt.execute( "ANALYZE TABLE plan_Transactions, plan_Loans, plan_Users" );
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        if ( conn != null ) {
+            conn.close();
+        }
+    }
+
+    public void testRecentTransactionsUseAccountTimeIndex() throws SQLException
+    {
+        assertIndexScan( "SELECT * FROM plan_Transactions t WHERE t.userID = 7 AND t.bankName = 'BANK 2' AND t.accType = 'Checking' "
+                + "AND t.transDateTime >= NOW() - INTERVAL 30 DAY ORDER BY t.transDateTime DESC, t.transID DESC",
+                "idx_transactions_account_time", "range" );
+    }
+
+    public void testMonthlyTransactionsUseAccountTimeIndex() throws SQLException
+    {
+        assertIndexScan( "SELECT * FROM plan_Transactions t WHERE t.userID = 7 AND t.bankName = 'BANK 2' AND t.accType = 'Checking' "
+                + "AND t.transDateTime >= CURDATE() - INTERVAL 3 MONTH AND t.transDateTime < CURDATE() - INTERVAL 2 MONTH "
+                + "ORDER BY t.transDateTime DESC, t.transID DESC",
+                "idx_transactions_account_time", "range" );
+    }
+
+    public void testTransactionPageUsesAccountTimeIndex() throws SQLException
+    {
+        assertIndexScan( "SELECT * FROM plan_Transactions t WHERE t.userID = 7 AND t.bankName = 'BANK 2' AND t.accType = 'Checking' "
+                + "AND (t.transDateTime < NOW() - INTERVAL 300 DAY OR (t.transDateTime = NOW() - INTERVAL 300 DAY AND t.transID < 1000)) ORDER BY t.transDateTime DESC, t.transID DESC LIMIT 20",
+                "idx_transactions_account_time", "range" );
+    }
+
+    public void testLoansUseUserIndex() throws SQLException
+    {
+        assertIndexScan( "SELECT loanID, bankName, amount FROM plan_Loans WHERE plan_Loans.userID = 7", "idx_loans_user", "ref" );
+    }
+
+    public void testArchiveUsesUpdatedAtIndex() throws SQLException
+    {
+        assertIndexScan( "SELECT userID, updatedAt FROM plan_Users WHERE updatedAt < NOW() - INTERVAL 14990 HOUR ORDER BY updatedAt, userID LIMIT 100",
+                "idx_users_updated_at", "range" );
+    }
+
+    /**
+     * Asserts that the first table access in a query's plan uses the given index with the given access type, and does not sort.
+     */
+    private void assertIndexScan( String query, String index, String accessType ) throws SQLException
+    {
+        if ( conn == null ) {
+            return;
+        }
+        try ( Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery( "EXPLAIN " + query ) ) {
+            assertTrue( "No plan for " + query, rs.next() );
+            String plan = "type=" + rs.getString( "type" ) + " key=" + rs.getString( "key" ) + " Extra=" + rs.getString( "Extra" );
+            assertEquals( plan, index, rs.getString( "key" ) );
+            assertEquals( plan, accessType, rs.getString( "type" ) );
+            String extra = rs.getString( "Extra" );
+            assertFalse( plan, extra != null && extra.contains( "filesort" ) );
+        }
+    }
+}
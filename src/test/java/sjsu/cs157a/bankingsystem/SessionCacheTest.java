@@ -0,0 +1,122 @@
+package sjsu.cs157a.bankingsystem;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for SessionCache, on a clock the test moves by hand.
+ */
+public class SessionCacheTest
+    extends TestCase
+{
+    private static final long TTL = 1000;
+
+    private ManualClock clock;
+
+    public SessionCacheTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( SessionCacheTest.class );
+    }
+
+    @Override
+    protected void setUp()
+    {
+        clock = new ManualClock();
+    }
+
+    public void testTtlSlidesWithUse()
+    {
+        SessionCache cache = new SessionCache( clock, 10, TTL );
+        Session session = cache.open( 7, "ann@example.com" );
+        String token = session.getToken();
+        assertTrue( token.length() >= 43 );
+        assertNull( cache.validate( "not a token" ) );
+
+        clock.millis += 900;
+        assertSame( session, cache.validate( token ) );
+        clock.millis += 900;
+        // Used 900 ms ago, so still live although signed in 1800 ms ago.
+        assertSame( session, cache.validate( token ) );
+        clock.millis += TTL;
+        assertNull( cache.validate( token ) );
+        assertEquals( 0, cache.size() );
+    }
+
+    public void testRevocation()
+    {
+        SessionCache cache = new SessionCache( clock, 10, TTL );
+        String first = cache.open( 7, "ann@example.com" ).getToken();
+        String second = cache.open( 7, "ann@example.com" ).getToken();
+        String other = cache.open( 8, "bob@example.com" ).getToken();
+
+        assertTrue( cache.revoke( first ) );
+        assertFalse( cache.revoke( first ) );
+        assertNull( cache.validate( first ) );
+        assertNotNull( cache.validate( second ) );
+
+        assertEquals( 1, cache.revokeUser( 7 ) );
+        assertNull( cache.validate( second ) );
+        assertEquals( 8, cache.validate( other ).getUserID() );
+        assertEquals( 1, cache.size() );
+    }
+
+    public void testSizeBoundEvictsIdleSessions()
+    {
+        SessionCache cache = new SessionCache( clock, 3, TTL );
+        String idle = cache.open( 1, "a@example.com" ).getToken();
+        String busy = cache.open( 2, "b@example.com" ).getToken();
+        clock.millis += 10;
+        String fresh = cache.open( 3, "c@example.com" ).getToken();
+        clock.millis += 10;
+        cache.validate( busy );
+
+        String newest = cache.open( 4, "d@example.com" ).getToken();
+        assertEquals( 3, cache.size() );
+        assertEquals( 1, cache.getEvictionCount() );
+        assertNull( cache.validate( idle ) );
+        assertNotNull( cache.validate( busy ) );
+        assertNotNull( cache.validate( fresh ) );
+        assertNotNull( cache.validate( newest ) );
+    }
+
+    private static class ManualClock
+        extends Clock
+    {
+        long millis = 1700000000000L;
+
+        @Override
+        public long millis()
+        {
+            return millis;
+        }
+
+        @Override
+        public Instant instant()
+        {
+            return Instant.ofEpochMilli( millis );
+        }
+
+        @Override
+        public ZoneId getZone()
+        {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone( ZoneId zone )
+        {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package sjsu.cs157a.bankingsystem;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+/**
+ * The local MySQL server from config.json, shared by the tests that run against the database.
+ * Each of those tests passes without checking anything when no server is reachable, or when the bank_system schema
+ * predates the migration it needs, and says so on standard output.
+ */
+final class TestDatabase
+{
+    private TestDatabase()
+    {
+    }
+
+    /**
+     * @param test The test's name, for the message printed when it is skipped.
+     * @param version The lowest schema version the test needs.
+     * @return Returns a connection to the local bank_system database, or null if no MySQL server is reachable or its
+     * schema is older than version.
+     */
+    static Connection open( String test, int version ) throws SQLException
+    {
+        Connection conn = connect( test );
+        if ( conn == null ) {
+            return null;
+        }
+        if ( schemaVersion( conn ) < version ) {
+            System.out.println( test + " skipped: the bank_system schema predates migration " + version );
+            conn.close();
+            return null;
+        }
+        return conn;
+    }
+
+    /**
+     * @param test The test's name, for the message printed when it is skipped.
+     * @return Returns a connection to the local bank_system database, or null if no MySQL server is reachable.
+     */
+    static Connection connect( String test )
+    {
+        String url = Config.getString( "url", null );
+        if ( url == null ) {
+            return null;
+        }
+        Properties props = new Properties();
+        props.setProperty( "user", Config.getString( "username", "" ) );
+        props.setProperty( "password", Config.getString( "password", "" ) );
+        props.setProperty( "connectTimeout", "2000" );
+        try {
+            return DriverManager.getConnection( url + SQLConnector.DB_NAME, props );
+        }
+        catch ( SQLException e ) {
+            System.out.println( test + " skipped: no MySQL server at " + url + " (" + e.getMessage() + ")" );
+            return null;
+        }
+    }
+
+    /**
+     * @return Returns the latest migration applied to the database, or 0 if it has none.
+     */
+    static int schemaVersion( Connection conn )
+    {
+        try ( Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery( "SELECT MAX(version) FROM SchemaVersion" ) ) {
+            return rs.next() ? rs.getInt( 1 ) : 0;
+        }
+        catch ( SQLException e ) {
+            return 0;
+        }
+    }
+
+    /**
+     * Runs an update whose only parameter is a user's ID, such as deleting the rows a test made for its user.
+     */
+    static void execute( Connection conn, String sql, long userID ) throws SQLException
+    {
+        try ( PreparedStatement pstmt = conn.prepareStatement( sql ) ) {
+            pstmt.setLong( 1, userID );
+            pstmt.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package sjsu.cs157a.bankingsystem;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the cursors of TransactionPage.
+ */
+public class TransactionPageTest
+    extends TestCase
+{
+    public TransactionPageTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( TransactionPageTest.class );
+    }
+
+    public void testMalformedCursorIsRejectedBeforeTheQuery()
+    {
+        String[] cursors = { "", "garbage", "2024-01-01T10:00/x", "not a date/42" };
+        for ( String cursor : cursors )
+        {
+            try
+            {
+                // No connection: the cursor must be refused before one is used.
+                Database.getTransactionPage( null, 1, "Chase", "Checking", 10, cursor );
+                fail( "Accepted the cursor " + cursor );
+            }
+            catch ( IllegalArgumentException e )
+            {
+                // expected
+            }
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package sjsu.cs157a.bankingsystem;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Stress test for Withdraw under parallel load.
+ * Opens one account holding less than the total asked for, then races thousands of withdrawals against it from many
+ * connections, and asserts that exactly as many succeed as the balance covers, the balance never goes negative, and
+ * every successful withdrawal is reflected once in both the balance and the transaction history.
+ * Requires the local MySQL server from config.json with the bank_system schema at version 6 or above; when no server
+ * is reachable the tests pass without checking anything.
+ */
+public class WithdrawStressTest
+    extends TestCase
+{
+    private static final String BANK = "WITHDRAW STRESS BANK";
+    private static final String ACC_TYPE = "Checking";
+    private static final int THREADS = 16;
+    private static final int WITHDRAWALS = 4000;
+    private static final long AMOUNT = 50;
+    // Covers exactly half of the withdrawals.
+    private static final long OPENING_BALANCE = AMOUNT * WITHDRAWALS / 2;
+
+    private Connection conn;
+    private long userID;
+    private boolean createdBank;
+
+    public WithdrawStressTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( WithdrawStressTest.class );
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        conn = TestDatabase.open( "WithdrawStressTest", 6 );
+        if ( conn == null ) {
+            return;
+        }
+        try ( PreparedStatement pstmt = conn.prepareStatement( "INSERT IGNORE INTO Banks(bankName, balance) VALUES (?, 0)" ) ) {
+            pstmt.setString( 1, BANK );
+            createdBank = pstmt.executeUpdate() == 1;
+        }
+        try ( PreparedStatement pstmt = conn.prepareStatement( "INSERT INTO Users(firstName, lastName, email) VALUES ('Stress', 'Test', ?)",
+                Statement.RETURN_GENERATED_KEYS ) ) {
+            pstmt.setString( 1, "withdraw-stress-" + System.nanoTime() + "@example.com" );
+            pstmt.executeUpdate();
+            try ( ResultSet rs = pstmt.getGeneratedKeys() ) {
+                rs.next();
+                userID = rs.getLong( 1 );
+            }
+        }
+        try ( PreparedStatement pstmt = conn.prepareStatement( "INSERT INTO Accounts(userID, bankName, accType, balance) VALUES (?, ?, ?, ?)" ) ) {
+            pstmt.setLong( 1, userID );
+            pstmt.setString( 2, BANK );
+            pstmt.setString( 3, ACC_TYPE );
+            Money.bind( pstmt, 4, OPENING_BALANCE );
+            pstmt.executeUpdate();
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        if ( conn == null ) {
+            return;
+        }
+        try {
+            TestDatabase.execute( conn, "DELETE FROM Transactions WHERE userID = ?", userID );
+            TestDatabase.execute( conn, "DELETE FROM Accounts WHERE userID = ?", userID );
+            TestDatabase.execute( conn, "DELETE FROM Users WHERE userID = ?", userID );
+            if ( createdBank ) {
+                try ( PreparedStatement pstmt = conn.prepareStatement( "DELETE FROM Banks WHERE bankName = ?" ) ) {
+                    pstmt.setString( 1, BANK );
+                    pstmt.executeUpdate();
+                }
+            }
+        }
+        finally {
+            conn.close();
+        }
+    }
+
+    public void testParallelWithdrawalsNeverOverdraw() throws Exception
+    {
+        if ( conn == null ) {
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool( THREADS );
+        final CountDownLatch start = new CountDownLatch( 1 );
+        List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+        try {
+            for ( int thread = 0; thread < THREADS; thread++ ) {
+                futures.add( executor.submit( new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception
+                    {
+                        try ( Connection worker = TestDatabase.connect( "WithdrawStressTest" ) ) {
+                            start.await();
+                            int succeeded = 0;
+                            for ( int i = 0; i < WITHDRAWALS / THREADS; i++ ) {
+                                if ( Database.withdraw( worker, userID, BANK, ACC_TYPE, "Withdraw", AMOUNT ) ) {
+                                    succeeded++;
+                                }
+                            }
+                            return succeeded;
+                        }
+                    }
+                } ) );
+            }
+            start.countDown();
+            int succeeded = 0;
+            for ( Future<Integer> future : futures ) {
+                succeeded += future.get();
+            }
+            assertEquals( "withdrawals covered by the opening balance", OPENING_BALANCE / AMOUNT, succeeded );
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals( 0, balance() );
+        try ( PreparedStatement pstmt = conn.prepareStatement( "SELECT COUNT(*), COUNT(DISTINCT netBalance), SUM(amount), MIN(netBalance) "
+                + "FROM Transactions WHERE userID = ? AND transType = 'Withdrawal'" ) ) {
+            pstmt.setLong( 1, userID );
+            try ( ResultSet rs = pstmt.executeQuery() ) {
+                rs.next();
+                long rows = rs.getLong( 1 );
+                assertEquals( OPENING_BALANCE / AMOUNT, rows );
+                // Each withdrawal saw the balance left by the one before it, so no two recorded the same net balance.
+                assertEquals( rows, rs.getLong( 2 ) );
+                assertEquals( OPENING_BALANCE, Money.read( rs, 3 ) );
+                assertEquals( 0, Money.read( rs, 4 ) );
+            }
+        }
+    }
+
+    public void testTriggerRefusesOverdraftOnDirectInsert() throws SQLException
+    {
+        if ( conn == null ) {
+            return;
+        }
+        try ( PreparedStatement pstmt = conn.prepareStatement( "INSERT INTO Transactions(userID, bankName, accType, transDateTime, transType, amount, netBalance) "
+                + "VALUES (?, ?, ?, NOW(), 'Withdrawal', ?, 0)" ) ) {
+            pstmt.setLong( 1, userID );
+            pstmt.setString( 2, BANK );
+            pstmt.setString( 3, ACC_TYPE );
+            Money.bind( pstmt, 4, OPENING_BALANCE + 1 );
+            pstmt.executeUpdate();
+            fail( "The trigger accepted a withdrawal larger than the balance" );
+        }
+        catch ( SQLException e ) {
+            assertEquals( Database.INSUFFICIENT_FUNDS, e.getSQLState() );
+        }
+        assertEquals( OPENING_BALANCE, balance() );
+    }
+
+    private long balance() throws SQLException
+    {
+        try ( PreparedStatement pstmt = conn.prepareStatement( "SELECT balance FROM Accounts WHERE userID = ? AND bankName = ? AND accType = ?" ) ) {
+            pstmt.setLong( 1, userID );
+            pstmt.setString( 2, BANK );
+            pstmt.setString( 3, ACC_TYPE );
+            try ( ResultSet rs = pstmt.executeQuery() ) {
+                rs.next();
+                return Money.read( rs, 1 );
+            }
+        }
+    }
+}
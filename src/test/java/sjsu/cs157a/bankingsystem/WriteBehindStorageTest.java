@@ -0,0 +1,209 @@
+package sjsu.cs157a.bankingsystem;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Test for WriteBehindStorage against the database.
+ * Acknowledges postings from the local log, then checks that the writer flushes every one of them, in order, into
+ * Transactions and Accounts, and that a restarted writer resumes from its checkpoint without repeating any. A posting
+ * the database refuses must stop the writer and stay in the log rather than be skipped.
+ * Requires the local MySQL server from config.json with the bank_system schema at version 10 or above; when no server
+ * is reachable the tests pass without checking anything.
+ */
+public class WriteBehindStorageTest
+    extends TestCase
+{
+    private static final String BANK = "WRITE BEHIND TEST BANK";
+    private static final String ACC_TYPE = "Checking";
+
+    private Connection conn;
+    private Path dir;
+    private String writer;
+    private long userID;
+    private boolean createdBank;
+
+    public WriteBehindStorageTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( WriteBehindStorageTest.class );
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        conn = TestDatabase.open( "WriteBehindStorageTest", 10 );
+        if ( conn == null ) {
+            return;
+        }
+        dir = Files.createTempDirectory( "write-behind" );
+        writer = "test-" + System.nanoTime();
+        try ( PreparedStatement pstmt = conn.prepareStatement( "INSERT IGNORE INTO Banks(bankName, balance) VALUES (?, 0)" ) ) {
+            pstmt.setString( 1, BANK );
+            createdBank = pstmt.executeUpdate() == 1;
+        }
+        try ( PreparedStatement pstmt = conn.prepareStatement( "INSERT INTO Users(firstName, lastName, email) VALUES ('Write', 'Behind', ?)",
+                Statement.RETURN_GENERATED_KEYS ) ) {
+            pstmt.setString( 1, "write-behind-" + System.nanoTime() + "@example.com" );
+            pstmt.executeUpdate();
+            try ( ResultSet rs = pstmt.getGeneratedKeys() ) {
+                rs.next();
+                userID = rs.getLong( 1 );
+            }
+        }
+        try ( PreparedStatement pstmt = conn.prepareStatement( "INSERT INTO Accounts(userID, bankName, accType, balance) VALUES (?, ?, ?, 0)" ) ) {
+            pstmt.setLong( 1, userID );
+            pstmt.setString( 2, BANK );
+            pstmt.setString( 3, ACC_TYPE );
+            pstmt.executeUpdate();
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        if ( conn == null ) {
+            return;
+        }
+        try {
+            TestDatabase.execute( conn, "DELETE FROM MonthlyStatements WHERE userID = ?", userID );
+            TestDatabase.execute( conn, "DELETE FROM Transactions WHERE userID = ?", userID );
+            TestDatabase.execute( conn, "DELETE FROM Accounts WHERE userID = ?", userID );
+            TestDatabase.execute( conn, "DELETE FROM Users WHERE userID = ?", userID );
+            try ( PreparedStatement pstmt = conn.prepareStatement( "DELETE FROM WriteBehindCheckpoints WHERE writer = ?" ) ) {
+                pstmt.setString( 1, writer );
+                pstmt.executeUpdate();
+            }
+            if ( createdBank ) {
+                try ( PreparedStatement pstmt = conn.prepareStatement( "DELETE FROM Banks WHERE bankName = ?" ) ) {
+                    pstmt.setString( 1, BANK );
+                    pstmt.executeUpdate();
+                }
+            }
+            try ( DirectoryStream<Path> stream = Files.newDirectoryStream( dir ) ) {
+                for ( Path path : stream ) {
+                    Files.delete( path );
+                }
+            }
+            Files.delete( dir );
+        }
+        finally {
+            conn.close();
+        }
+    }
+
+    public void testFlushesEveryPostingOnceInOrder() throws Exception
+    {
+        if ( conn == null ) {
+            return;
+        }
+        WriteBehindStorage storage = open();
+        for ( int i = 0; i < 1000; i++ ) {
+            storage.deposit( userID, BANK, ACC_TYPE, "Deposit", 100 );
+        }
+        assertTrue( storage.withdraw( userID, BANK, ACC_TYPE, "Withdraw", 60000 ) );
+        assertFalse( storage.withdraw( userID, BANK, ACC_TYPE, "Withdraw", 60000 ) );
+        assertEquals( 40000, storage.getBankAccountBalance( BANK, ACC_TYPE, userID ) );
+        assertTrue( storage.awaitFlushed() );
+        assertEquals( 0, storage.getLag() );
+        storage.close();
+
+        assertEquals( 40000, balance() );
+        try ( PreparedStatement pstmt = conn.prepareStatement( "SELECT COUNT(*), MAX(transID) = MAX(CASE WHEN netBalance = 40000 THEN transID END) "
+                + "FROM Transactions WHERE userID = ?" ) ) {
+            pstmt.setLong( 1, userID );
+            try ( ResultSet rs = pstmt.executeQuery() ) {
+                rs.next();
+                assertEquals( 1001, rs.getLong( 1 ) );
+                // The withdrawal was posted last, so it was flushed last.
+                assertTrue( rs.getBoolean( 2 ) );
+            }
+        }
+
+        // Restarting finds nothing past the checkpoint to flush again.
+        storage = open();
+        storage.deposit( userID, BANK, ACC_TYPE, "Deposit", 100 );
+        assertTrue( storage.awaitFlushed() );
+        storage.close();
+        assertEquals( 40100, balance() );
+    }
+
+    public void testRefusedPostingStopsTheWriter() throws Exception
+    {
+        if ( conn == null ) {
+            return;
+        }
+        WriteBehindStorage storage = open();
+        assertTrue( storage.deposit( userID, BANK, ACC_TYPE, "Deposit", 1000 ) );
+        assertTrue( storage.awaitFlushed() );
+        // Another process empties the account, so the writer's balance is ahead of the database's.
+        setBalance( 0 );
+        assertTrue( storage.withdraw( userID, BANK, ACC_TYPE, "Withdraw", 600 ) );
+        assertFalse( storage.awaitFlushed() );
+        assertNotNull( storage.getRefusal() );
+        assertEquals( 1, storage.getLag() );
+        assertEquals( 0, storage.getBankAccountBalance( BANK, ACC_TYPE, userID ) );
+        assertFalse( storage.deposit( userID, BANK, ACC_TYPE, "Deposit", 100 ) );
+        storage.close();
+
+        // The refused posting is still in the log, so the writer cannot start past it.
+        try {
+            open();
+            fail( "The refused posting was skipped" );
+        }
+        catch ( SQLException e ) {
+            assertNotNull( e.getCause() );
+        }
+
+        // Once the account can take it, the next start flushes it.
+        setBalance( 1000 );
+        storage = open();
+        assertEquals( 0, storage.getLag() );
+        storage.close();
+        assertEquals( 400, balance() );
+    }
+
+    private WriteBehindStorage open() throws IOException, SQLException
+    {
+        return new WriteBehindStorage( SQLConnector.getInstance(), new PostingLog( dir, 1 << 20, 1000, 256 ), writer, 100, 200 );
+    }
+
+    private long balance() throws SQLException
+    {
+        try ( PreparedStatement pstmt = conn.prepareStatement( "SELECT balance FROM Accounts WHERE userID = ? AND bankName = ? AND accType = ?" ) ) {
+            pstmt.setLong( 1, userID );
+            pstmt.setString( 2, BANK );
+            pstmt.setString( 3, ACC_TYPE );
+            try ( ResultSet rs = pstmt.executeQuery() ) {
+                rs.next();
+                return Money.read( rs, 1 );
+            }
+        }
+    }
+
+    private void setBalance( long cents ) throws SQLException
+    {
+        try ( PreparedStatement pstmt = conn.prepareStatement( "UPDATE Accounts SET balance = ? WHERE userID = ? AND bankName = ? AND accType = ?" ) ) {
+            Money.bind( pstmt, 1, cents );
+            pstmt.setLong( 2, userID );
+            pstmt.setString( 3, BANK );
+            pstmt.setString( 4, ACC_TYPE );
+            pstmt.executeUpdate();
+        }
+    }
+}